@@ -0,0 +1,127 @@
+#!/usr/bin/env python3
+#
+# This file is part of GooglePlaces.
+#
+# GooglePlaces is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation, either version 3 of the License, or
+# (at your option) any later version.
+#
+# GooglePlaces is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License
+# along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+"""Compare two JMH json result files and flag regressions.
+
+    compare.py [--threshold 0.10] baseline.json results.json
+
+A benchmark has regressed when its score is worse than the baseline by more
+than the threshold (a fraction), and the two scores' error intervals do not
+overlap, so that noisy benchmarks are not flagged for run to run variation.
+Throughput scores are better when higher, all other modes when lower.
+
+Exits with status 1 if anything regressed, 0 otherwise.
+"""
+
+import argparse
+import json
+import math
+import sys
+
+
+def key(result):
+    params = result.get("params") or {}
+    name = result["benchmark"].rsplit(".", 2)
+    name = ".".join(name[-2:])
+    if params:
+        name += "(" + ",".join("%s=%s" % item
+                                for item in sorted(params.items())) + ")"
+    return "%s [%s]" % (name, result["mode"])
+
+
+def load(path):
+    with open(path) as f:
+        results = json.load(f)
+    scores = {}
+    for result in results:
+        metric = result["primaryMetric"]
+        error = metric.get("scoreError")
+        if not isinstance(error, (int, float)) or math.isnan(error):
+            error = 0.0
+        scores[key(result)] = (result["mode"], metric["score"], error,
+                               metric["scoreUnit"])
+    return scores
+
+
+def compare(baseline, current, threshold):
+    rows = []
+    regressions = 0
+    for name in sorted(set(baseline) | set(current)):
+        if name not in current:
+            rows.append((name, "missing", "", "", ""))
+            continue
+        if name not in baseline:
+            rows.append((name, "new", "", fmt(current[name]), ""))
+            continue
+        mode, old, old_error, unit = baseline[name]
+        _, new, new_error, new_unit = current[name]
+        if unit != new_unit:
+            rows.append((name, "unit changed", fmt(baseline[name]),
+                         fmt(current[name]), ""))
+            continue
+        # Positive change is worse
+        if mode == "thrpt":
+            change = (old - new) / old if old else 0.0
+            overlap = new + new_error >= old - old_error
+        else:
+            change = (new - old) / old if old else 0.0
+            overlap = new - new_error <= old + old_error
+        if change > threshold and not overlap:
+            status = "REGRESSED"
+            regressions += 1
+        elif change < -threshold and not overlap:
+            status = "improved"
+        else:
+            status = "ok"
+        rows.append((name, status, fmt(baseline[name]), fmt(current[name]),
+                     "%+.1f%%" % (100 * change)))
+    return rows, regressions
+
+
+def fmt(score):
+    _, value, error, unit = score
+    if error:
+        return "%.3f ± %.3f %s" % (value, error, unit)
+    return "%.3f %s" % (value, unit)
+
+
+def main():
+    parser = argparse.ArgumentParser(
+        description=__doc__.split("\n\n")[0])
+    parser.add_argument("baseline")
+    parser.add_argument("results")
+    parser.add_argument("--threshold", type=float, default=0.10,
+                        help="the fraction by which a score may get worse "
+                             "(default 0.10)")
+    args = parser.parse_args()
+
+    rows, regressions = compare(load(args.baseline), load(args.results),
+                                args.threshold)
+    header = ("benchmark", "status", "baseline", "current", "worse by")
+    widths = [max(len(row[i]) for row in rows + [header])
+              for i in range(len(header))]
+    for row in [header] + rows:
+        print("  ".join(cell.ljust(width)
+                        for cell, width in zip(row, widths)).rstrip())
+    if regressions:
+        print("\n%d benchmark(s) regressed by more than %.0f%%"
+              % (regressions, 100 * args.threshold))
+        return 1
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,14 @@
+#!/bin/sh
+#
+# Build the benchmarks and run the autocomplete load test.  Arguments are
+# passed to it, for example
+#
+#   ./load.sh --users 5000 --ramp 60
+#   ./load.sh --help
+#
+set -e
+cd "$(dirname "$0")"
+mvn -B -q -f ../processor/pom.xml install
+mvn -B -q package
+java -cp target/benchmarks.jar \
+	com.jjm.android.googleplaces.loadtest.AutocompleteLoadTest "$@"
@@ -0,0 +1,13 @@
+#!/bin/sh
+#
+# Build the annotation processor and the benchmarks, then run them, writing
+# the results to results.json.  Arguments are passed to JMH, for example
+#
+#   ./run.sh ParseBenchmark -p mPayload=search-20
+#   ./compare.py baseline.json results.json
+#
+set -e
+cd "$(dirname "$0")"
+mvn -B -q -f ../processor/pom.xml install
+mvn -B -q package
+java -jar target/benchmarks.jar -rf json -rff results.json "$@"
@@ -0,0 +1,136 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.request.AccessLog;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.util.ApiKeys;
+import com.jjm.android.googleplaces.util.MpscRingBuffer;
+
+/**
+ * The cost of the access log: offering to the {@link MpscRingBuffer} from
+ * four threads while another drains it, and a whole <code>execute()</code>
+ * against a {@link StubServer} with the log off, on, and sampling a tenth
+ * of calls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessLogBenchmark {
+	@State(Scope.Benchmark)
+	public static class Buffer {
+		final MpscRingBuffer<Object> mBuffer = new MpscRingBuffer<Object>(
+				AccessLog.DEFAULT_CAPACITY);
+		volatile boolean mStopped;
+		Thread mConsumer;
+
+		@Setup
+		public void setUp() {
+			mConsumer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (!mStopped) {
+						if (mBuffer.poll() == null)
+							Thread.yield();
+					}
+				}
+			});
+			mConsumer.setDaemon(true);
+			mConsumer.start();
+		}
+
+		@TearDown
+		public void tearDown() throws InterruptedException {
+			mStopped = true;
+			mConsumer.join();
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean offerContended(Buffer buffer) {
+		return buffer.mBuffer.offer(buffer);
+	}
+
+	@State(Scope.Benchmark)
+	public static class Client {
+		@Param({ "off", "on", "sampled" })
+		public String mLog;
+
+		StubServer mServer;
+		PlacesClient mClient;
+		AutocompleteRequest mRequest;
+		AccessLog mAccessLog;
+		File mFile;
+
+		@Setup
+		public void setUp() throws IOException {
+			ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES,
+					"AIzaSyBenchmarkKey0123456789abcdefghij");
+			mServer = new StubServer();
+			mClient = new PlacesClient(mServer.newTransport(),
+					new JacksonFactory());
+			if (!mLog.equals("off")) {
+				mFile = File.createTempFile("access", ".log");
+				mAccessLog = new AccessLog(mFile).setSampleRate(
+						mLog.equals("sampled") ? 0.1 : 1).start();
+				mClient.setAccessLog(mAccessLog);
+			}
+			mRequest = new AutocompleteRequest().setInput("Harbour View");
+			mRequest.setLocation(-33.8670522, 151.1957362).setRadius(5E4);
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			mServer.stop();
+			if (mAccessLog != null) {
+				mAccessLog.close();
+				for (int i = 0; i < AccessLog.DEFAULT_MAX_FILES; i++)
+					new File(mFile.getPath() + (i > 0 ? "." + i : "")).delete();
+			}
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public AutocompleteResponse execute(Client client) throws IOException {
+		return client.mRequest.execute(client.mClient);
+	}
+}
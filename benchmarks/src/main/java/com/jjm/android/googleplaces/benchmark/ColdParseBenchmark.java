@@ -0,0 +1,88 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.ObjectParser;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
+
+/**
+ * The first parse of a response in a fresh process, which is what an
+ * application pays when it starts.  This includes loading the model classes,
+ * and for the reflective parser, inspecting their fields.  Each fork measures
+ * a single parse, so the score is the mean over the forks.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1, batchSize = 1)
+@Fork(20)
+@State(Scope.Thread)
+public class ColdParseBenchmark {
+	@Param({ "autocomplete-5", "search-20", "details-5" })
+	public String mPayload;
+
+	@Param({ "reflective", "generated" })
+	public String mParser;
+
+	private byte[] mBody;
+	private Class<?> mResponseClass;
+	private ObjectParser mObjectParser;
+
+	@Setup
+	public void setUp() throws IOException {
+		mBody = ParseBenchmark.body(mPayload);
+		mResponseClass = ParseBenchmark.responseClass(mPayload);
+		JsonFactory factory = new JacksonFactory();
+		// Looking up the generated parser here would load it before the
+		// measurement, so that is checked afterwards
+		mObjectParser = "generated".equals(mParser) ? new ModelObjectParser(
+				factory) : new JsonObjectParser(factory);
+		// Load the json parser itself, which both variants need anyway
+		factory.createJsonParser("{\"warm\":[1,\"up\"]}").close();
+	}
+
+	@Benchmark
+	public Object firstParse() throws IOException {
+		return mObjectParser.parseAndClose(new ByteArrayInputStream(mBody),
+				Payloads.UTF_8, mResponseClass);
+	}
+
+	@TearDown
+	public void tearDown() {
+		ParseBenchmark.parser(new JacksonFactory(), mParser, mResponseClass);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * Completing a batch of distinct requests against a {@link StubServer},
+ * either by blocking one thread per request or with
+ * {@link PlacesClient#executeAsync} on the client's bounded executor.  The
+ * score is the time for the whole batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+	@Param({ "10", "100", "1000" })
+	public int mConcurrency;
+
+	private StubServer mServer;
+	private PlacesClient mClient;
+	private ExecutorService mBlockingThreads;
+	private List<AutocompleteRequest> mRequests;
+	private List<Callable<AutocompleteResponse>> mBlockingCalls;
+
+	@Setup
+	public void setUp() throws IOException {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES,
+				"AIzaSyBenchmarkKey0123456789abcdefghij");
+		// Before the first connection, which reads these
+		PlacesClient.configureConnectionPool(mConcurrency, 60000);
+		mServer = new StubServer();
+		mClient = new PlacesClient(mServer.newTransport(), new JacksonFactory());
+		mClient.setExecutor(PlacesClient.createExecutor(
+				PlacesClient.DEFAULT_ASYNC_THREADS, mConcurrency));
+		mBlockingThreads = Executors.newFixedThreadPool(mConcurrency);
+		mRequests = new ArrayList<AutocompleteRequest>(mConcurrency);
+		mBlockingCalls = new ArrayList<Callable<AutocompleteResponse>>(
+				mConcurrency);
+		for (int i = 0; i < mConcurrency; i++) {
+			// Distinct inputs, so that nothing is coalesced
+			final AutocompleteRequest request = new AutocompleteRequest()
+					.setInput("Harbour " + i);
+			mRequests.add(request);
+			mBlockingCalls.add(new Callable<AutocompleteResponse>() {
+				@Override
+				public AutocompleteResponse call() throws IOException {
+					return request.execute(mClient);
+				}
+			});
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		mBlockingThreads.shutdownNow();
+		mClient.getExecutor().shutdownNow();
+		mServer.stop();
+	}
+
+	@Benchmark
+	public int blocking() throws InterruptedException, ExecutionException {
+		int count = 0;
+		for (Future<AutocompleteResponse> future : mBlockingThreads
+				.invokeAll(mBlockingCalls))
+			count += future.get().getPredictions().size();
+		return count;
+	}
+
+	@Benchmark
+	public int async() throws InterruptedException, ExecutionException {
+		List<ListenableFuture<AutocompleteResponse>> futures =
+				new ArrayList<ListenableFuture<AutocompleteResponse>>(
+						mConcurrency);
+		for (AutocompleteRequest request : mRequests)
+			futures.add(request.executeAsync(mClient));
+		int count = 0;
+		for (AutocompleteResponse response : Futures.allAsList(futures).get())
+			count += response.getPredictions().size();
+		return count;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.json.ElementListener;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.DetailsRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.request.SearchRequest;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.DetailsResponse;
+import com.jjm.android.googleplaces.response.Prediction;
+import com.jjm.android.googleplaces.response.SearchResponse;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * A whole <code>execute()</code> against a {@link StubServer}: building the
+ * url, the client's pipeline, a keep-alive http exchange over loopback and
+ * parsing the response.  {@link #autocompleteFreshTransport()} is the way
+ * requests were sent before {@link PlacesClient}, with a new transport and
+ * request factory for each, to compare with {@link #autocompletePooled()}
+ * over 1,000 back-to-back calls; run with <code>-prof gc</code> for the
+ * allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecuteBenchmark {
+	private StubServer mServer;
+	private PlacesClient mClient;
+	private AutocompleteRequest mAutocomplete;
+	private SearchRequest mSearch;
+	private DetailsRequest mDetails;
+
+	@Setup
+	public void setUp() throws IOException {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES,
+				"AIzaSyBenchmarkKey0123456789abcdefghij");
+		mServer = new StubServer();
+		mClient = new PlacesClient(mServer.newTransport(), new JacksonFactory());
+		mAutocomplete = new AutocompleteRequest().setInput("Harbour View");
+		mAutocomplete.setLocation(-33.8670522, 151.1957362).setRadius(5E4);
+		mSearch = new SearchRequest().setKeyword("fish");
+		mSearch.setLocation(-33.8670522, 151.1957362).setRadius(500.0);
+		mDetails = new DetailsRequest().setReference("CmRYAAAAciqGsTRX1mXR");
+	}
+
+	@TearDown
+	public void tearDown() {
+		mServer.stop();
+	}
+
+	@Benchmark
+	public AutocompleteResponse autocomplete() throws IOException {
+		return mAutocomplete.execute(mClient);
+	}
+
+	@Benchmark
+	public AutocompleteResponse autocompleteStreaming(final Blackhole bh)
+			throws IOException {
+		return mAutocomplete.execute(mClient, new ElementListener<Prediction>() {
+			@Override
+			public void onElement(Prediction element, int index) {
+				bh.consume(element);
+			}
+		});
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1000)
+	public void autocompletePooled(Blackhole bh) throws IOException {
+		for (int i = 0; i < 1000; i++)
+			bh.consume(mAutocomplete.execute(mClient));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1000)
+	public void autocompleteFreshTransport(Blackhole bh) throws IOException {
+		for (int i = 0; i < 1000; i++) {
+			HttpRequestFactory factory = mServer.newTransport()
+					.createRequestFactory(new HttpRequestInitializer() {
+						@Override
+						public void initialize(HttpRequest request)
+								throws IOException {
+							request.setParser(new JsonObjectParser(
+									new JacksonFactory()));
+						}
+					});
+			bh.consume(mAutocomplete.execute(factory));
+		}
+	}
+
+	@Benchmark
+	public SearchResponse search() throws IOException {
+		return mSearch.execute(mClient);
+	}
+
+	@Benchmark
+	public DetailsResponse details() throws IOException {
+		return mDetails.execute(mClient);
+	}
+}
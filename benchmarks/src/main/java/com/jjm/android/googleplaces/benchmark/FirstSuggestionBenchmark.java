@@ -0,0 +1,144 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.json.ElementListener;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.Prediction;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * How long the user waits for the first suggestion, against a
+ * {@link FakePlacesServer} that writes at <code>mBytesPerSecond</code>, as
+ * over a slow link. <code>streaming</code> returns when the first prediction
+ * is parsed, <code>whole</code> when the whole response is.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FirstSuggestionBenchmark {
+	/**
+	 * 0 is no limit; 16000 is about a poor 3G connection.
+	 */
+	@Param({ "0", "16000" })
+	public long mBytesPerSecond;
+
+	private FakePlacesServer mServer;
+	private PlacesClient mClient;
+	private AutocompleteRequest mRequest;
+	private ExecutorService mExecutor;
+	private Future<AutocompleteResponse> mStreaming;
+
+	@Setup
+	public void setUp() throws IOException {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES,
+				"AIzaSyBenchmarkKey0123456789abcdefghij");
+		mServer = new FakePlacesServer().setBytesPerSecond(mBytesPerSecond)
+				.start();
+		mClient = new PlacesClient(new NetHttpTransport(), new JacksonFactory());
+		mClient.setRootUrl(mServer.getRootUrl());
+		mRequest = new AutocompleteRequest().setInput("Harbour");
+		mRequest.setLocation(-33.8670522, 151.1957362).setRadius(5E4);
+		mExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	/**
+	 * Let the rest of the streaming response arrive before the next
+	 * invocation, so it doesn't share the link.
+	 */
+	@TearDown(Level.Invocation)
+	public void finishStreaming() throws Exception {
+		if (mStreaming != null) {
+			mStreaming.get();
+			mStreaming = null;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		mExecutor.shutdown();
+		mServer.close();
+	}
+
+	@Benchmark
+	public Prediction streaming() throws Exception {
+		final CountDownLatch first = new CountDownLatch(1);
+		final Prediction[] prediction = new Prediction[1];
+		mStreaming = mExecutor.submit(new Callable<AutocompleteResponse>() {
+			@Override
+			public AutocompleteResponse call() throws IOException {
+				try {
+					return mRequest.execute(mClient,
+							new ElementListener<Prediction>() {
+								@Override
+								public void onElement(Prediction element,
+										int index) {
+									if (index == 0) {
+										prediction[0] = element;
+										first.countDown();
+									}
+								}
+							});
+				} finally {
+					first.countDown();
+				}
+			}
+		});
+		first.await();
+		if (prediction[0] == null) {
+			// Throws the failure, if there was one
+			mStreaming.get();
+			throw new IllegalStateException("no predictions");
+		}
+		return prediction[0];
+	}
+
+	@Benchmark
+	public Prediction whole() throws IOException {
+		return mRequest.execute(mClient).getPredictions().get(0);
+	}
+}
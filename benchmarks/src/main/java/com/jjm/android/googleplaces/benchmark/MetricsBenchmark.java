@@ -0,0 +1,110 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.request.PlacesMetrics;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.util.ApiKeys;
+import com.jjm.android.googleplaces.util.LatencyHistogram;
+
+/**
+ * The cost of recording metrics: a single {@link LatencyHistogram#record},
+ * alone and contended, and a whole <code>execute()</code> against a
+ * {@link StubServer} with metrics on and off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+	private final LatencyHistogram mHistogram = new LatencyHistogram();
+	private long mNanos;
+
+	@Benchmark
+	public void record() {
+		// Spread over a few hundred buckets, as real latencies are
+		mNanos = (mNanos + 7919 * 1000) % (500 * 1000 * 1000);
+		mHistogram.record(mNanos);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordContended() {
+		mHistogram.record(System.nanoTime() & 0xFFFFFFF);
+	}
+
+	@Benchmark
+	public long snapshotPercentile() {
+		return mHistogram.snapshot().getPercentileNanos(99);
+	}
+
+	@State(Scope.Benchmark)
+	public static class Client {
+		@Param({ "off", "on" })
+		public String mMetrics;
+
+		StubServer mServer;
+		PlacesClient mClient;
+		AutocompleteRequest mRequest;
+
+		@Setup
+		public void setUp() throws IOException {
+			ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES,
+					"AIzaSyBenchmarkKey0123456789abcdefghij");
+			mServer = new StubServer();
+			mClient = new PlacesClient(mServer.newTransport(),
+					new JacksonFactory());
+			mClient.setMetrics(mMetrics.equals("on") ? new PlacesMetrics()
+					: null);
+			mRequest = new AutocompleteRequest().setInput("Harbour View");
+			mRequest.setLocation(-33.8670522, 151.1957362).setRadius(5E4);
+		}
+
+		@TearDown
+		public void tearDown() {
+			mServer.stop();
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public AutocompleteResponse execute(Client client) throws IOException {
+		return client.mRequest.execute(client.mClient);
+	}
+}
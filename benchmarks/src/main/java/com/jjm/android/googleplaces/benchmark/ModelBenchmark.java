@@ -0,0 +1,98 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.Prediction;
+import com.jjm.android.googleplaces.util.LatLng;
+
+/**
+ * The accessors the ui calls for every row: the address lines of a
+ * {@link Prediction}, and {@link LatLng} conversions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+	private List<Prediction> mPredictions;
+	private int mLatitudeE6 = -33867052;
+	private int mLongitudeE6 = 151195736;
+	private LatLng mLatLng;
+
+	@Setup
+	public void setUp() throws IOException {
+		AutocompleteResponse response = new ModelObjectParser(
+				new JacksonFactory()).parseAndClose(new ByteArrayInputStream(
+				Payloads.autocomplete(5)), Payloads.UTF_8,
+				AutocompleteResponse.class);
+		mPredictions = response.getPredictions();
+		mLatLng = new LatLng(-33.8670522, 151.1957362);
+	}
+
+	/**
+	 * Both address lines of each prediction in a 5 prediction response.
+	 */
+	@Benchmark
+	public void addressLines(Blackhole bh) {
+		for (int i = 0; i < mPredictions.size(); i++) {
+			Prediction prediction = mPredictions.get(i);
+			bh.consume(prediction.getAddressLine1());
+			bh.consume(prediction.getAddressLine2());
+		}
+	}
+
+	@Benchmark
+	public LatLng latLngFromE6() {
+		return new LatLng(mLatitudeE6, mLongitudeE6);
+	}
+
+	@Benchmark
+	public void latLngToE6(Blackhole bh) {
+		bh.consume(mLatLng.getLatitudeE6());
+		bh.consume(mLatLng.getLongitudeE6());
+	}
+
+	/**
+	 * The form used in request urls.
+	 */
+	@Benchmark
+	public String latLngToString() {
+		return mLatLng.toString();
+	}
+}
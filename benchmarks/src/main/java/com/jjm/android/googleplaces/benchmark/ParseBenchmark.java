@@ -0,0 +1,120 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.ObjectParser;
+import com.jjm.android.googleplaces.json.JsonModelParser;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.DetailsResponse;
+import com.jjm.android.googleplaces.response.SearchResponse;
+
+/**
+ * Steady state parsing of response bodies, by reflection with a
+ * {@link JsonObjectParser} and with the generated parsers through a
+ * {@link ModelObjectParser}.  See {@link ColdParseBenchmark} for the first
+ * parse in a fresh process.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+	@Param({ "autocomplete-5", "search-1", "search-20", "details-5" })
+	public String mPayload;
+
+	@Param({ "reflective", "generated" })
+	public String mParser;
+
+	private byte[] mBody;
+	private Class<?> mResponseClass;
+	private ObjectParser mObjectParser;
+
+	@Setup
+	public void setUp() {
+		mBody = body(mPayload);
+		mResponseClass = responseClass(mPayload);
+		mObjectParser = parser(new JacksonFactory(), mParser, mResponseClass);
+	}
+
+	@Benchmark
+	public Object parse() throws IOException {
+		return mObjectParser.parseAndClose(new ByteArrayInputStream(mBody),
+				Payloads.UTF_8, mResponseClass);
+	}
+
+	/**
+	 * The body for a payload name: the response type and its size.
+	 */
+	static byte[] body(String payload) {
+		int dash = payload.indexOf('-');
+		String type = payload.substring(0, dash);
+		int size = Integer.parseInt(payload.substring(dash + 1));
+		if ("autocomplete".equals(type))
+			return Payloads.autocomplete(size);
+		if ("search".equals(type))
+			return Payloads.search(size);
+		if ("details".equals(type))
+			return Payloads.details(size);
+		throw new IllegalArgumentException(payload);
+	}
+
+	static Class<?> responseClass(String payload) {
+		if (payload.startsWith("autocomplete"))
+			return AutocompleteResponse.class;
+		if (payload.startsWith("search"))
+			return SearchResponse.class;
+		if (payload.startsWith("details"))
+			return DetailsResponse.class;
+		throw new IllegalArgumentException(payload);
+	}
+
+	static ObjectParser parser(JsonFactory factory, String parser,
+			Class<?> responseClass) {
+		if ("reflective".equals(parser))
+			return new JsonObjectParser(factory);
+		if (!"generated".equals(parser))
+			throw new IllegalArgumentException(parser);
+		// Comparing reflection with itself would be a quiet failure
+		if (JsonModelParser.forClass(responseClass) == null)
+			throw new IllegalStateException("No generated parser for "
+					+ responseClass.getName()
+					+ "; was the annotation processor on the classpath?");
+		return new ModelObjectParser(factory);
+	}
+}
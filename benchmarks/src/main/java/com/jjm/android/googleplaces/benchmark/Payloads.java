@@ -0,0 +1,239 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Response bodies shaped like those returned by the places service, with
+ * every field it sends, not only the ones the model has {@link
+ * com.google.api.client.util.Key}s for.  The content is generated from a
+ * fixed seed so that every run parses the same bytes.
+ */
+public final class Payloads {
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String[] NAMES = { "Harbour View Café",
+			"Rhythmboat Cruises", "Darling Harbour Hotel", "The Little Snail",
+			"Sydney Aquarium", "Pyrmont Bridge Hotel", "Café Morso",
+			"Doltone House", "Zaaffran Restaurant", "Nick's Seafood" };
+	private static final String[] STREETS = { "Darling Dr", "Harris St",
+			"Murray St", "Pier St", "Union St", "Bank St", "Jones Bay Rd" };
+	private static final String[] TYPES = { "restaurant", "food",
+			"establishment", "bar", "cafe", "lodging", "travel_agency",
+			"aquarium", "point_of_interest" };
+	private static final String[] WORDS = { "Great", "food", "and", "a",
+			"lovely", "view", "of", "the", "harbour", "service", "was",
+			"slow", "but", "friendly", "would", "come", "back" };
+
+	private final Random mRandom;
+
+	private Payloads(long seed) {
+		mRandom = new Random(seed);
+	}
+
+	/**
+	 * An autocomplete response with the given number of predictions.
+	 */
+	public static byte[] autocomplete(int predictions) {
+		return new Payloads(predictions).autocompleteJson(predictions)
+				.getBytes(UTF_8);
+	}
+
+	/**
+	 * A search response with the given number of results.  A full page has
+	 * 20.
+	 */
+	public static byte[] search(int results) {
+		return new Payloads(1000 + results).searchJson(results).getBytes(UTF_8);
+	}
+
+	/**
+	 * A details response with the given number of reviews.
+	 */
+	public static byte[] details(int reviews) {
+		return new Payloads(2000 + reviews).detailsJson(reviews).getBytes(UTF_8);
+	}
+
+	private String autocompleteJson(int count) {
+		StringBuilder sb = new StringBuilder(512 * count + 64);
+		sb.append("{\n   \"predictions\" : [");
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(',');
+			String name = pick(NAMES);
+			String street = number() + " " + pick(STREETS);
+			String[] terms = { name, street, "Pyrmont", "New South Wales",
+					"Australia" };
+			sb.append("\n      {\n         \"description\" : \"");
+			int offset = 0;
+			for (int t = 0; t < terms.length; t++) {
+				if (t > 0)
+					sb.append(", ");
+				sb.append(terms[t]);
+			}
+			sb.append("\",\n         \"id\" : \"").append(hex(40))
+					.append("\",\n         \"matched_substrings\" : [ { \"length\" : 4, \"offset\" : 0 } ],")
+					.append("\n         \"reference\" : \"").append(token(180))
+					.append("\",\n         \"terms\" : [");
+			for (int t = 0; t < terms.length; t++) {
+				if (t > 0)
+					sb.append(',');
+				sb.append("\n            { \"offset\" : ").append(offset)
+						.append(", \"value\" : \"").append(terms[t])
+						.append("\" }");
+				offset += terms[t].length() + 2;
+			}
+			sb.append("\n         ],\n         \"types\" : ");
+			types(sb, 2);
+			sb.append("\n      }");
+		}
+		sb.append("\n   ],\n   \"status\" : \"OK\"\n}\n");
+		return sb.toString();
+	}
+
+	private String searchJson(int count) {
+		StringBuilder sb = new StringBuilder(1024 * count + 128);
+		sb.append("{\n   \"html_attributions\" : [ \"Listings by \\u003ca href=\\\"http://www.example.com/\\\"\\u003eExample\\u003c/a\\u003e\" ],");
+		if (count >= 20)
+			sb.append("\n   \"next_page_token\" : \"").append(token(240))
+					.append("\",");
+		sb.append("\n   \"results\" : [");
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append("\n      {");
+			placeFields(sb, false);
+			sb.append("\n      }");
+		}
+		sb.append("\n   ],\n   \"status\" : \"OK\"\n}\n");
+		return sb.toString();
+	}
+
+	private String detailsJson(int reviews) {
+		StringBuilder sb = new StringBuilder(2048 + 512 * reviews);
+		sb.append("{\n   \"html_attributions\" : [],\n   \"result\" : {");
+		placeFields(sb, true);
+		sb.append(",\n      \"reviews\" : [");
+		for (int i = 0; i < reviews; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append("\n         {\n            \"aspects\" : [ { \"rating\" : ")
+					.append(mRandom.nextInt(4))
+					.append(", \"type\" : \"overall\" } ],\n            \"author_name\" : \"")
+					.append(pick(WORDS)).append(' ').append(pick(WORDS))
+					.append("\",\n            \"author_url\" : \"https://plus.google.com/")
+					.append(number() * 100000L + number())
+					.append("\",\n            \"text\" : \"");
+			int words = 20 + mRandom.nextInt(60);
+			for (int w = 0; w < words; w++) {
+				if (w > 0)
+					sb.append(' ');
+				sb.append(pick(WORDS));
+			}
+			sb.append(".\",\n            \"time\" : ")
+					.append(1340000000 + mRandom.nextInt(10000000))
+					.append("\n         }");
+		}
+		sb.append("\n      ],\n      \"url\" : \"https://plus.google.com/")
+				.append(hex(20))
+				.append("/about\",\n      \"utc_offset\" : 600,\n      \"website\" : \"http://www.example.com/\"")
+				.append("\n   },\n   \"status\" : \"OK\"\n}\n");
+		return sb.toString();
+	}
+
+	private void placeFields(StringBuilder sb, boolean details) {
+		String name = pick(NAMES);
+		String street = number() + " " + pick(STREETS);
+		if (details) {
+			sb.append("\n      \"address_components\" : [")
+					.append(component(street, street, "route"))
+					.append(',').append(component("Pyrmont", "Pyrmont", "locality"))
+					.append(',').append(component("New South Wales", "NSW", "administrative_area_level_1"))
+					.append(',').append(component("Australia", "AU", "country"))
+					.append(',').append(component("2009", "2009", "postal_code"))
+					.append("\n      ],")
+					.append("\n      \"formatted_address\" : \"").append(street)
+					.append(", Pyrmont NSW 2009, Australia\",")
+					.append("\n      \"formatted_phone_number\" : \"(02) 9")
+					.append(number()).append(' ').append(number())
+					.append("\",");
+		}
+		sb.append("\n      \"geometry\" : { \"location\" : { \"lat\" : ")
+				.append(-33.87 + mRandom.nextDouble() / 100)
+				.append(", \"lng\" : ")
+				.append(151.19 + mRandom.nextDouble() / 100)
+				.append(" } },\n      \"icon\" : \"https://maps.gstatic.com/mapfiles/place_api/icons/restaurant-71.png\",")
+				.append("\n      \"id\" : \"").append(hex(40)).append("\",");
+		if (details)
+			sb.append("\n      \"international_phone_number\" : \"+61 2 9")
+					.append(number()).append(' ').append(number()).append("\",");
+		sb.append("\n      \"name\" : \"").append(name).append("\",")
+				.append("\n      \"opening_hours\" : { \"open_now\" : ")
+				.append(mRandom.nextBoolean()).append(" },")
+				.append("\n      \"photos\" : [ { \"height\" : 612, \"html_attributions\" : [], \"photo_reference\" : \"")
+				.append(token(160))
+				.append("\", \"width\" : 816 } ],")
+				.append("\n      \"rating\" : ").append((30 + mRandom.nextInt(21)) / 10.0)
+				.append(",\n      \"reference\" : \"").append(token(180))
+				.append("\",\n      \"types\" : ");
+		types(sb, 3);
+		sb.append(",\n      \"vicinity\" : \"").append(street)
+				.append(", Pyrmont\"");
+	}
+
+	private static String component(String longName, String shortName,
+			String type) {
+		return "\n         { \"long_name\" : \"" + longName
+				+ "\", \"short_name\" : \"" + shortName + "\", \"types\" : [ \""
+				+ type + "\", \"political\" ] }";
+	}
+
+	private void types(StringBuilder sb, int count) {
+		sb.append("[ ");
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append('"').append(pick(TYPES)).append('"');
+		}
+		sb.append(" ]");
+	}
+
+	private String pick(String[] values) {
+		return values[mRandom.nextInt(values.length)];
+	}
+
+	private int number() {
+		return 1 + mRandom.nextInt(998);
+	}
+
+	private String hex(int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = Character.forDigit(mRandom.nextInt(16), 16);
+		return new String(chars);
+	}
+
+	private String token(int length) {
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = alphabet.charAt(mRandom.nextInt(alphabet.length()));
+		return new String(chars);
+	}
+}
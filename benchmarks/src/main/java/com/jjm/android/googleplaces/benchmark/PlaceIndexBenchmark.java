@@ -0,0 +1,105 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.cache.PlaceIndex;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
+import com.jjm.android.googleplaces.response.SearchResponse;
+import com.jjm.android.googleplaces.testing.PlaceCorpus;
+import com.jjm.android.googleplaces.testing.PlaceCorpus.FakePlace;
+
+/**
+ * Searching a {@link PlaceIndex} of a {@link PlaceCorpus}, as the client
+ * does when a text search fails, for a query spelled right and one with
+ * typos; and indexing a page of results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+@State(Scope.Benchmark)
+public class PlaceIndexBenchmark {
+	@Param({ "10000", "100000" })
+	public int mSize;
+
+	@Param({ "harbour cafe", "harbur caffe", "golden hotel pitt st" })
+	public String mQuery;
+
+	private PlaceIndex mIndex;
+	private SearchResponse mPage;
+
+	@Setup
+	public void setUp() throws IOException {
+		ModelObjectParser parser = new ModelObjectParser(new JacksonFactory());
+		List<FakePlace> places = PlaceCorpus.generate(mSize,
+				PlaceCorpus.DEFAULT_CENTER, PlaceCorpus.DEFAULT_RADIUS_METERS,
+				1).getPlaces();
+		mIndex = new PlaceIndex();
+		mIndex.addAll(parse(parser, places));
+		mPage = parse(parser, places.subList(0, 20));
+	}
+
+	private static SearchResponse parse(ModelObjectParser parser,
+			List<FakePlace> places) throws IOException {
+		StringBuilder sb = new StringBuilder("{\"status\":\"OK\",\"results\":[");
+		for (int i = 0; i < places.size(); i++) {
+			FakePlace place = places.get(i);
+			if (i > 0)
+				sb.append(',');
+			sb.append("{\"id\":\"").append(place.getId())
+					.append("\",\"reference\":\"").append(place.getReference())
+					.append("\",\"name\":\"").append(place.getName())
+					.append("\",\"vicinity\":\"").append(place.getVicinity())
+					.append("\",\"formatted_address\":\"")
+					.append(place.getFormattedAddress()).append("\"}");
+		}
+		sb.append("]}");
+		return parser.parseAndClose(new ByteArrayInputStream(sb.toString()
+				.getBytes(Payloads.UTF_8)), Payloads.UTF_8,
+				SearchResponse.class);
+	}
+
+	@Benchmark
+	public List<Place> search() {
+		return mIndex.searchPlaces(mQuery, PlaceIndex.MAX_SEARCH_RESULTS);
+	}
+
+	@Benchmark
+	public void addPage() {
+		mIndex.addAll(mPage);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.cache.PredictionTrie;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.Prediction;
+
+/**
+ * Looking up candidates in a full {@link PredictionTrie}, as the
+ * autocomplete view does on every keystroke, for inputs matching many
+ * predictions and few; and adding a response's predictions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PredictionTrieBenchmark {
+	@Param({ "h", "harbour v", "pyrmont" })
+	public String mInput;
+
+	private PredictionTrie mTrie;
+	private AutocompleteResponse mResponse;
+	private final Prediction[] mResults = new Prediction[5];
+
+	@Setup
+	public void setUp() throws IOException {
+		AutocompleteResponse full = new ModelObjectParser(new JacksonFactory())
+				.parseAndClose(new ByteArrayInputStream(Payloads
+						.autocomplete(PredictionTrie.DEFAULT_MAX_PREDICTIONS)),
+						Payloads.UTF_8, AutocompleteResponse.class);
+		mTrie = new PredictionTrie();
+		mTrie.addAll(full.getPredictions());
+		mResponse = new ModelObjectParser(new JacksonFactory()).parseAndClose(
+				new ByteArrayInputStream(Payloads.autocomplete(5)),
+				Payloads.UTF_8, AutocompleteResponse.class);
+	}
+
+	@Benchmark
+	public int find() {
+		return mTrie.find(mInput, mResults);
+	}
+
+	@Benchmark
+	public void addResponse() {
+		mTrie.addAll(mResponse.getPredictions());
+	}
+}
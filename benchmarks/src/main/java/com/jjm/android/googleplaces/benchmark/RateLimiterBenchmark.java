@@ -0,0 +1,90 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jjm.android.googleplaces.request.ApiKeyRateLimiter;
+import com.jjm.android.googleplaces.util.TokenBucket;
+
+/**
+ * The cost of taking a permit, alone and with 32 threads contending.  The
+ * limits are high enough that permits are always available, so this
+ * measures the bookkeeping rather than any waiting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+	private static final String[] KEYS = { "key-a", "key-b", "key-c", "key-d" };
+	private static final double RATE = 1E12;
+
+	private TokenBucket mBucket;
+	private ApiKeyRateLimiter mLimiter;
+
+	@Setup
+	public void setUp() {
+		mBucket = TokenBucket.perSecond(RATE, 1000000000L);
+		mLimiter = new ApiKeyRateLimiter(RATE, 1000000000, 0);
+		for (String key : KEYS)
+			mLimiter.tryAcquire(key);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean bucket() {
+		return mBucket.tryAcquire();
+	}
+
+	@Benchmark
+	@Threads(32)
+	public boolean bucketContended() {
+		return mBucket.tryAcquire();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean limiter() {
+		return mLimiter.tryAcquire(KEYS[0]);
+	}
+
+	/**
+	 * 32 threads spread over 4 keys.
+	 */
+	@Benchmark
+	@Threads(32)
+	public boolean limiterContended() {
+		return mLimiter.tryAcquire(KEYS[ThreadLocalRandom.current().nextInt(
+				KEYS.length)]);
+	}
+}
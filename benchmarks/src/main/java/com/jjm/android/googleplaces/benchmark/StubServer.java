@@ -0,0 +1,185 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process http server on the loopback interface that answers every
+ * places endpoint with a canned body, so that benchmarks measure the client
+ * and not the network.  Use {@link #newTransport()} to send requests meant
+ * for the places service to it.
+ */
+public final class StubServer {
+	private static final String PLACES_ROOT = "https://maps.googleapis.com";
+
+	static {
+		// Otherwise Nagle's algorithm and delayed acks add 40ms to each
+		// exchange.  Read once, when the server classes are loaded.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer mServer;
+	private final ExecutorService mExecutor;
+	private final String mRoot;
+	private final AtomicLong mRequestCount = new AtomicLong();
+
+	private volatile byte[] mAutocomplete = Payloads.autocomplete(5);
+	private volatile byte[] mSearch = Payloads.search(20);
+	private volatile byte[] mDetails = Payloads.details(5);
+
+	public StubServer() throws IOException {
+		mServer = HttpServer.create(new InetSocketAddress(
+				InetAddress.getByName("127.0.0.1"), 0), 1024);
+		mExecutor = Executors.newCachedThreadPool();
+		mServer.setExecutor(mExecutor);
+		mServer.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				mRequestCount.incrementAndGet();
+				respond(exchange);
+			}
+		});
+		mServer.start();
+		mRoot = "http://127.0.0.1:" + mServer.getAddress().getPort();
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		byte[] body;
+		if (path.endsWith("/autocomplete/json"))
+			body = mAutocomplete;
+		else if (path.endsWith("/details/json"))
+			body = mDetails;
+		else if (path.endsWith("/search/json")
+				|| path.endsWith("/textsearch/json"))
+			body = mSearch;
+		else
+			body = null;
+		try {
+			if (body == null) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type",
+					"application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	public StubServer setAutocomplete(byte[] body) {
+		mAutocomplete = body;
+		return this;
+	}
+
+	public StubServer setSearch(byte[] body) {
+		mSearch = body;
+		return this;
+	}
+
+	public StubServer setDetails(byte[] body) {
+		mDetails = body;
+		return this;
+	}
+
+	/**
+	 * The url of the server, for example <code>http://127.0.0.1:4567</code>.
+	 */
+	public String getRoot() {
+		return mRoot;
+	}
+
+	public long getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	/**
+	 * A transport that sends requests for the places service to this server
+	 * instead, over a {@link NetHttpTransport}.
+	 */
+	public HttpTransport newTransport() {
+		return new LoopbackTransport(mRoot);
+	}
+
+	public void stop() {
+		mServer.stop(0);
+		mExecutor.shutdownNow();
+		try {
+			mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final class LoopbackTransport extends HttpTransport {
+		private final NetHttpTransport mDelegate = new NetHttpTransport();
+		private final String mRoot;
+
+		LoopbackTransport(String root) {
+			mRoot = root;
+		}
+
+		private String rewrite(String url) {
+			if (url.startsWith(PLACES_ROOT))
+				return mRoot + url.substring(PLACES_ROOT.length());
+			return url;
+		}
+
+		@Override
+		protected LowLevelHttpRequest buildDeleteRequest(String url)
+				throws IOException {
+			return mDelegate.buildDeleteRequest(rewrite(url));
+		}
+
+		@Override
+		protected LowLevelHttpRequest buildGetRequest(String url)
+				throws IOException {
+			return mDelegate.buildGetRequest(rewrite(url));
+		}
+
+		@Override
+		protected LowLevelHttpRequest buildPostRequest(String url)
+				throws IOException {
+			return mDelegate.buildPostRequest(rewrite(url));
+		}
+
+		@Override
+		protected LowLevelHttpRequest buildPutRequest(String url)
+				throws IOException {
+			return mDelegate.buildPutRequest(rewrite(url));
+		}
+	}
+}
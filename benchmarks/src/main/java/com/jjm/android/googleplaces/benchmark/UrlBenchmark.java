@@ -0,0 +1,152 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.benchmark;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.http.GenericUrl;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.DetailsRequest;
+import com.jjm.android.googleplaces.request.PlacesRequest;
+import com.jjm.android.googleplaces.request.SearchRequest;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * Building request urls.  The <code>legacy</code> benchmarks use request
+ * subclasses that override <code>prepareData</code>, which makes
+ * {@link PlacesRequest} fall back to copying the fields into a
+ * {@link GenericUrl} by reflection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UrlBenchmark {
+	public static class LegacyAutocompleteRequest extends AutocompleteRequest {
+		@Override
+		protected void prepareData(Map<String, Object> data) {
+			super.prepareData(data);
+		}
+	}
+
+	public static class LegacySearchRequest extends SearchRequest {
+		@Override
+		protected void prepareData(Map<String, Object> data) {
+			super.prepareData(data);
+		}
+	}
+
+	public static class LegacyDetailsRequest extends DetailsRequest {
+		@Override
+		protected void prepareData(Map<String, Object> data) {
+			super.prepareData(data);
+		}
+	}
+
+	@Param({ "autocomplete", "search", "details" })
+	public String mType;
+
+	private PlacesRequest<?> mRequest;
+	private PlacesRequest<?> mLegacy;
+
+	@Setup
+	public void setUp() {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES,
+				"AIzaSyBenchmarkKey0123456789abcdefghij");
+		if ("autocomplete".equals(mType)) {
+			mRequest = autocomplete(new AutocompleteRequest());
+			mLegacy = autocomplete(new LegacyAutocompleteRequest());
+		} else if ("search".equals(mType)) {
+			mRequest = search(new SearchRequest());
+			mLegacy = search(new LegacySearchRequest());
+		} else if ("details".equals(mType)) {
+			mRequest = details(new DetailsRequest());
+			mLegacy = details(new LegacyDetailsRequest());
+		} else {
+			throw new IllegalArgumentException(mType);
+		}
+		if (!mRequest.getUrl().equals(mLegacy.getUrl()))
+			throw new IllegalStateException(mRequest.getUrl() + " != "
+					+ mLegacy.getUrl());
+	}
+
+	private static PlacesRequest<?> autocomplete(AutocompleteRequest request) {
+		request.setInput("Harbour View Café, Pyrm").setOffset(18);
+		return request.setLocation(-33.8670522, 151.1957362)
+				.setRadius(5E4).setSensor(true);
+	}
+
+	private static PlacesRequest<?> search(SearchRequest request) {
+		request.setKeyword("fish & chips").setName("Nick's");
+		request.setTypes(Arrays.asList("restaurant", "food"));
+		return request.setLocation(-33.8670522, 151.1957362)
+				.setRadius(500.0).setSensor(false);
+	}
+
+	private static PlacesRequest<?> details(DetailsRequest request) {
+		return request.setReference(
+				"CmRYAAAAciqGsTRX1mXRvuXSH2ErwW-jCINE1aLiwP64MCWDN5vkaoKtJhxk"
+						+ "BVxKvNOZhdFEyxaY71ZVh6zqcqKHuOVDaE7bVRMg0tDgP6hEJ8y")
+				.setSensor(true);
+	}
+
+	@Benchmark
+	public GenericUrl genericUrl() {
+		return mRequest.getGenericUrl();
+	}
+
+	@Benchmark
+	public String genericUrlBuild() {
+		return mRequest.getGenericUrl().build();
+	}
+
+	@Benchmark
+	public String url() {
+		return mRequest.getUrl();
+	}
+
+	@Benchmark
+	public String canonicalUrl() {
+		return mRequest.getCanonicalUrl();
+	}
+
+	@Benchmark
+	public String legacyUrl() {
+		return mLegacy.getUrl();
+	}
+
+	@Benchmark
+	public String legacyCanonicalUrl() {
+		return mLegacy.getCanonicalUrl();
+	}
+}
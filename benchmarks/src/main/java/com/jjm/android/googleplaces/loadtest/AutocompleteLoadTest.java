@@ -0,0 +1,605 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.loadtest;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.jjm.android.googleplaces.cache.NegativePrefixCache;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.AutocompleteScheduler;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.Latency;
+import com.jjm.android.googleplaces.testing.PlaceCorpus;
+import com.jjm.android.googleplaces.testing.PlaceCorpus.FakePlace;
+import com.jjm.android.googleplaces.util.ApiKeys;
+import com.jjm.android.googleplaces.util.LatLng;
+
+/**
+ * <p>
+ * Replays keystroke traces of many simulated users through the logic the
+ * autocomplete view uses to decide when to search, an
+ * {@link AutocompleteScheduler} per session, against a
+ * {@link FakePlacesServer} or any other endpoint.
+ * </p>
+ *
+ * <p>
+ * Reports the requests each session makes, how many of them were
+ * superseded (the user had typed on by the time the response arrived), the
+ * time from each keystroke to suggestions for it or later text, and the
+ * rate of requests sent upstream.
+ * </p>
+ *
+ * <p>
+ * Every user shares one {@link PlacesClient}, with coalescing off, since
+ * real users don't share a client. Run with <code>--help</code> for the
+ * options.
+ * </p>
+ */
+public final class AutocompleteLoadTest {
+	private static final String USAGE = ""
+			+ "AutocompleteLoadTest [options]\n"
+			+ "  --users N            simulated users (1000)\n"
+			+ "  --sessions N         search sessions per user (1)\n"
+			+ "  --ramp SECONDS       spread the users' first sessions over this (10)\n"
+			+ "  --think SECONDS      mean pause between a user's sessions (5)\n"
+			+ "  --threshold N        characters typed before searching (1)\n"
+			+ "  --threads N          client threads (256)\n"
+			+ "  --traces FILE        replay these traces instead of generating them\n"
+			+ "  --write-traces FILE  write the traces used\n"
+			+ "  --seed N             seed for generated traces (1)\n"
+			+ "  --root URL           send requests here instead of a fake server\n"
+			+ "  --key KEY            api key (a made up one)\n"
+			+ "  --latency MEDIAN,P99 fake server latency in ms (60,300)\n"
+			+ "  --server-qps QPS     fake server limit per key (none)\n"
+			+ "  --error-rate RATE    fake server UNKOWN_ERROR rate (0)\n"
+			+ "  --unknown RATE       sessions typing a name that isn't there (0)\n"
+			+ "  --negative-cache on  skip inputs extending ones with no results (off)\n";
+
+	static final class Options {
+		int mUsers = 1000;
+		int mSessions = 1;
+		double mRampSeconds = 10;
+		double mThinkSeconds = 5;
+		int mThreshold = 1;
+		int mThreads = 256;
+		String mTraces;
+		String mWriteTraces;
+		long mSeed = 1;
+		String mRoot;
+		String mKey = "AIzaSyLoadTestKey0123456789abcdefghijk";
+		long mLatencyMedian = 60;
+		long mLatencyP99 = 300;
+		double mServerQps;
+		double mErrorRate;
+		double mUnknownRate;
+		boolean mNegativeCache;
+
+		static Options parse(String[] args) {
+			Options options = new Options();
+			for (int i = 0; i < args.length; i++) {
+				String name = args[i];
+				if (name.equals("--help") || name.equals("-h"))
+					return null;
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException(name + " needs a value");
+				String value = args[++i];
+				if (name.equals("--users"))
+					options.mUsers = Integer.parseInt(value);
+				else if (name.equals("--sessions"))
+					options.mSessions = Integer.parseInt(value);
+				else if (name.equals("--ramp"))
+					options.mRampSeconds = Double.parseDouble(value);
+				else if (name.equals("--think"))
+					options.mThinkSeconds = Double.parseDouble(value);
+				else if (name.equals("--threshold"))
+					options.mThreshold = Integer.parseInt(value);
+				else if (name.equals("--threads"))
+					options.mThreads = Integer.parseInt(value);
+				else if (name.equals("--traces"))
+					options.mTraces = value;
+				else if (name.equals("--write-traces"))
+					options.mWriteTraces = value;
+				else if (name.equals("--seed"))
+					options.mSeed = Long.parseLong(value);
+				else if (name.equals("--root"))
+					options.mRoot = value;
+				else if (name.equals("--key"))
+					options.mKey = value;
+				else if (name.equals("--latency")) {
+					String[] ms = value.split(",");
+					options.mLatencyMedian = Long.parseLong(ms[0]);
+					options.mLatencyP99 = Long.parseLong(ms[ms.length - 1]);
+				} else if (name.equals("--server-qps"))
+					options.mServerQps = Double.parseDouble(value);
+				else if (name.equals("--error-rate"))
+					options.mErrorRate = Double.parseDouble(value);
+				else if (name.equals("--unknown"))
+					options.mUnknownRate = Double.parseDouble(value);
+				else if (name.equals("--negative-cache"))
+					options.mNegativeCache = value.equals("on");
+				else
+					throw new IllegalArgumentException("unknown option " + name);
+			}
+			return options;
+		}
+	}
+
+	/**
+	 * One user typing one trace.
+	 */
+	private final class Session {
+		private final KeystrokeTrace mTrace;
+		private final AutocompleteScheduler mScheduler = new AutocompleteScheduler();
+		private final NegativePrefixCache mNegativeCache;
+		private final long[] mTypedNanos;
+		private int mTyped;
+		/** Keystrokes before this have had suggestions */
+		private int mAnswered;
+		/** The keystroke the search in flight is for */
+		private int mSearchKeystroke;
+		private String mShown;
+		private int mRequests;
+		private boolean mDone;
+
+		/**
+		 * @param startNanos
+		 *            when the first keystroke is due. Latencies are measured
+		 *            from when each keystroke was due rather than when the
+		 *            timer got to it, so an overloaded load generator doesn't
+		 *            hide latency.
+		 * @param negativeCache
+		 *            the user's cache of inputs with no results, or null
+		 */
+		Session(KeystrokeTrace trace, long startNanos,
+				NegativePrefixCache negativeCache) {
+			mTrace = trace;
+			mNegativeCache = negativeCache;
+			mTypedNanos = new long[trace.size()];
+			for (int i = 0; i < mTypedNanos.length; i++)
+				mTypedNanos[i] = startNanos
+						+ TimeUnit.MILLISECONDS.toNanos(trace.getMillis(i));
+			mScheduler.setThreshold(mThreshold);
+		}
+
+		synchronized void type(int keystroke) {
+			// The timer threads can run keystrokes that are close together
+			// out of order; a later one has already replaced this text
+			if (keystroke < mTyped)
+				return;
+			mTyped = keystroke + 1;
+			String text = mTrace.getText(keystroke);
+			mScheduler.setText(text);
+			if (!mScheduler.isSearching() && text.equals(mShown))
+				answer(keystroke, System.nanoTime());
+			maybeStartSearch();
+			maybeFinish();
+		}
+
+		private void maybeStartSearch() {
+			final String input = mScheduler.nextSearch();
+			if (input == null)
+				return;
+			mSearchKeystroke = mTyped - 1;
+			final AutocompleteRequest request = new AutocompleteRequest()
+					.setInput(input);
+			request.setLocation(mLocation).setRadius(mRadius);
+			if (mNegativeCache != null && mNegativeCache.isKnownEmpty(request)) {
+				// As the controller does, show no suggestions at once
+				mAvoided.incrementAndGet();
+				mShown = input;
+				answer(mTyped - 1, System.nanoTime());
+				mScheduler.onSearchFinished();
+				maybeStartSearch();
+				return;
+			}
+			mRequests++;
+			mIssued.incrementAndGet();
+			Futures.addCallback(request.executeAsync(mClient),
+					new FutureCallback<AutocompleteResponse>() {
+						@Override
+						public void onSuccess(AutocompleteResponse response) {
+							if (mNegativeCache != null)
+								mNegativeCache.record(request, response);
+							finished(input, response, null);
+						}
+
+						@Override
+						public void onFailure(Throwable t) {
+							finished(input, null, t);
+						}
+					});
+		}
+
+		synchronized void finished(String input, AutocompleteResponse response,
+				Throwable failure) {
+			long now = System.nanoTime();
+			boolean stale = mScheduler.isStale(input);
+			if (stale)
+				mSuperseded.incrementAndGet();
+			if (failure != null || response.getStatus() != Status.OK
+					&& response.getStatus() != Status.ZERO_RESULTS) {
+				mFailed.incrementAndGet();
+				if (mFailures.size() < 10)
+					mFailures.putIfAbsent(failure != null ? failure.toString()
+							: response.getStatus().name(), Boolean.TRUE);
+			} else {
+				mShown = input;
+				answer(stale ? mSearchKeystroke : mTyped - 1, now);
+			}
+			mScheduler.onSearchFinished();
+			maybeStartSearch();
+			maybeFinish();
+		}
+
+		/**
+		 * Suggestions are showing for every keystroke up to this one.
+		 */
+		private void answer(int keystroke, long nanos) {
+			for (int i = mAnswered; i <= keystroke; i++) {
+				if (mTrace.getText(i).length() >= mThreshold)
+					recordLatency(nanos - mTypedNanos[i]);
+			}
+			mAnswered = Math.max(mAnswered, keystroke + 1);
+		}
+
+		synchronized boolean isDone() {
+			return mDone;
+		}
+
+		synchronized String describe() {
+			return mTrace.getName() + ": typed " + mTyped + " of "
+					+ mTrace.size() + (mScheduler.isSearching() ? ", searching for \""
+							+ mScheduler.getSearchText() + "\"" : "");
+		}
+
+		private void maybeFinish() {
+			if (mDone || mTyped < mTrace.size() || mScheduler.isSearching())
+				return;
+			mDone = true;
+			for (int i = mAnswered; i < mTrace.size(); i++) {
+				if (mTrace.getText(i).length() >= mThreshold)
+					mUnanswered.incrementAndGet();
+			}
+			recordSession(mRequests);
+			mFinished.countDown();
+		}
+	}
+
+	/**
+	 * Counts the requests sent upstream, including retries and hedges.
+	 */
+	private final class CountingTransport extends HttpTransport {
+		private final NetHttpTransport mDelegate = new NetHttpTransport();
+
+		@Override
+		protected LowLevelHttpRequest buildDeleteRequest(String url)
+				throws IOException {
+			return mDelegate.buildDeleteRequest(url);
+		}
+
+		@Override
+		protected LowLevelHttpRequest buildGetRequest(String url)
+				throws IOException {
+			recordUpstream();
+			return mDelegate.buildGetRequest(url);
+		}
+
+		@Override
+		protected LowLevelHttpRequest buildPostRequest(String url)
+				throws IOException {
+			return mDelegate.buildPostRequest(url);
+		}
+
+		@Override
+		protected LowLevelHttpRequest buildPutRequest(String url)
+				throws IOException {
+			return mDelegate.buildPutRequest(url);
+		}
+	}
+
+	private final Options mOptions;
+	private final int mThreshold;
+	private final LatLng mLocation = PlaceCorpus.DEFAULT_CENTER;
+	private final double mRadius = 5E4;
+	private PlacesClient mClient;
+	private long mStartNanos;
+	private CountDownLatch mFinished;
+
+	private final AtomicLong mIssued = new AtomicLong();
+	private final AtomicLong mSuperseded = new AtomicLong();
+	private final AtomicLong mAvoided = new AtomicLong();
+	private final AtomicLong mFailed = new AtomicLong();
+	private final AtomicLong mUnanswered = new AtomicLong();
+	private final ConcurrentHashMap<String, Boolean> mFailures =
+			new ConcurrentHashMap<String, Boolean>();
+	private final ConcurrentHashMap<Long, AtomicLong> mUpstreamPerSecond =
+			new ConcurrentHashMap<Long, AtomicLong>();
+	private final AtomicLong mUpstream = new AtomicLong();
+	private final List<Long> mLatencies = new ArrayList<Long>();
+	private final List<Integer> mRequestsPerSession = new ArrayList<Integer>();
+	private final List<Session> mSessions = new ArrayList<Session>();
+
+	AutocompleteLoadTest(Options options) {
+		mOptions = options;
+		mThreshold = options.mThreshold;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+			return;
+		}
+		if (options == null) {
+			System.out.print(USAGE);
+			return;
+		}
+		new AutocompleteLoadTest(options).run(System.out);
+		System.exit(0);
+	}
+
+	void run(PrintStream out) throws Exception {
+		Options o = mOptions;
+		PlaceCorpus corpus = PlaceCorpus.createDefault();
+		FakePlacesServer server = null;
+		String root = o.mRoot;
+		if (root == null) {
+			server = new FakePlacesServer(corpus).setLatency(
+					Latency.logNormal(o.mLatencyMedian, o.mLatencyP99)).start();
+			if (o.mServerQps > 0)
+				server.setQueriesPerSecond(o.mServerQps,
+						(int) Math.max(1, o.mServerQps));
+			if (o.mErrorRate > 0)
+				server.setStatusRate(Status.UNKOWN_ERROR, o.mErrorRate);
+			root = server.getRootUrl();
+		}
+
+		List<KeystrokeTrace> traces = traces(corpus);
+		int sessions = o.mUsers * o.mSessions;
+		mFinished = new CountDownLatch(sessions);
+
+		PlacesClient.configureConnectionPool(o.mThreads, 60 * 1000);
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, o.mKey);
+		mClient = new PlacesClient(new CountingTransport(), new JacksonFactory())
+				.setRootUrl(root).setRequestCoalescer(null).setExecutor(
+						PlacesClient.createExecutor(o.mThreads, 1000000));
+
+		// Schedule every keystroke of every session
+		ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+		Random random = new Random(o.mSeed);
+		long endMillis = 0;
+		mStartNanos = System.nanoTime();
+		for (int user = 0; user < o.mUsers; user++) {
+			long startMillis = (long) (random.nextDouble() * o.mRampSeconds * 1000);
+			NegativePrefixCache negativeCache = o.mNegativeCache ? new NegativePrefixCache()
+					: null;
+			for (int s = 0; s < o.mSessions; s++) {
+				KeystrokeTrace trace = traces.get((user * o.mSessions + s)
+						% traces.size());
+				final Session session = new Session(trace, mStartNanos
+						+ TimeUnit.MILLISECONDS.toNanos(startMillis),
+						negativeCache);
+				mSessions.add(session);
+				for (int k = 0; k < trace.size(); k++) {
+					final int keystroke = k;
+					timer.schedule(new Runnable() {
+						@Override
+						public void run() {
+							session.type(keystroke);
+						}
+					}, startMillis + trace.getMillis(k), TimeUnit.MILLISECONDS);
+				}
+				if (trace.size() == 0)
+					mFinished.countDown();
+				startMillis += trace.getDurationMillis()
+						+ (long) (-Math.log(1 - random.nextDouble())
+								* o.mThinkSeconds * 1000);
+				endMillis = Math.max(endMillis, startMillis);
+			}
+		}
+		out.printf(Locale.US, "%d sessions of %d users, sending to %s%n",
+				sessions, o.mUsers, root);
+
+		boolean complete = mFinished.await(endMillis + 120 * 1000,
+				TimeUnit.MILLISECONDS);
+		long elapsedNanos = System.nanoTime() - mStartNanos;
+		timer.shutdownNow();
+		if (!complete) {
+			// Sessions still going when the time ran out
+			int shown = 0;
+			for (Session session : mSessions) {
+				if (session.isDone())
+					continue;
+				if (shown++ == 10)
+					break;
+				out.println(session.describe());
+			}
+		}
+		report(out, sessions, complete, elapsedNanos, server);
+		if (server != null)
+			server.close();
+	}
+
+	private List<KeystrokeTrace> traces(PlaceCorpus corpus) throws IOException {
+		Options o = mOptions;
+		List<KeystrokeTrace> traces;
+		if (o.mTraces != null) {
+			InputStreamReader in = new InputStreamReader(new FileInputStream(
+					o.mTraces), "UTF-8");
+			try {
+				traces = KeystrokeTrace.read(in);
+			} finally {
+				in.close();
+			}
+			if (traces.isEmpty())
+				throw new IOException(o.mTraces + " has no traces");
+		} else {
+			Random random = new Random(o.mSeed);
+			List<FakePlace> places = corpus.getPlaces();
+			int count = o.mUsers * o.mSessions;
+			traces = new ArrayList<KeystrokeTrace>(count);
+			for (int i = 0; i < count; i++) {
+				FakePlace place = places.get(random.nextInt(places.size()));
+				// Some users add the suburb
+				String target = random.nextInt(4) == 0 ? place.getName() + " "
+						+ place.getLocality() : place.getName();
+				// Some misremember it, and type on past the point where
+				// nothing matches
+				if (random.nextDouble() < o.mUnknownRate && target.length() > 3)
+					target = target.substring(0, 2)
+							+ (char) ('q' + random.nextInt(10))
+							+ target.substring(3);
+				traces.add(KeystrokeTrace.generate("s" + i, target, 2, random));
+			}
+		}
+		if (o.mWriteTraces != null) {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(
+					o.mWriteTraces), "UTF-8");
+			try {
+				KeystrokeTrace.write(traces, writer);
+			} finally {
+				writer.close();
+			}
+		}
+		return traces;
+	}
+
+	private void recordUpstream() {
+		mUpstream.incrementAndGet();
+		Long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()
+				- mStartNanos);
+		AtomicLong count = mUpstreamPerSecond.get(second);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = mUpstreamPerSecond.putIfAbsent(second, created);
+			if (count == null)
+				count = created;
+		}
+		count.incrementAndGet();
+	}
+
+	private synchronized void recordLatency(long nanos) {
+		mLatencies.add(nanos);
+	}
+
+	private synchronized void recordSession(int requests) {
+		mRequestsPerSession.add(requests);
+	}
+
+	private synchronized void report(PrintStream out, int sessions,
+			boolean complete, long elapsedNanos, FakePlacesServer server) {
+		double seconds = elapsedNanos / 1E9;
+		if (!complete)
+			out.printf(Locale.US, "timed out: %d of %d sessions finished%n",
+					mRequestsPerSession.size(), sessions);
+		out.printf(Locale.US, "%-26s %.1f s%n", "elapsed", seconds);
+		out.printf(Locale.US, "%-26s %d%n", "sessions", mRequestsPerSession
+				.size());
+
+		long issued = mIssued.get();
+		Collections.sort(mRequestsPerSession);
+		out.printf(Locale.US, "%-26s %d, %.2f per session (p50 %d, p90 %d, max %d)%n",
+				"requests", issued, issued / (double) Math.max(1,
+						mRequestsPerSession.size()),
+				percentile(mRequestsPerSession, 50), percentile(
+						mRequestsPerSession, 90), percentile(
+						mRequestsPerSession, 100));
+		out.printf(Locale.US, "%-26s %d (%.1f%%)%n", "superseded", mSuperseded
+				.get(), percent(mSuperseded.get(), issued));
+		if (mOptions.mNegativeCache)
+			out.printf(Locale.US, "%-26s %d (%.1f%% of searches)%n",
+					"known empty, not sent", mAvoided.get(), percent(mAvoided
+							.get(), issued + mAvoided.get()));
+		out.printf(Locale.US, "%-26s %d (%.1f%%)%n", "failed", mFailed.get(),
+				percent(mFailed.get(), issued));
+		for (String failure : mFailures.keySet())
+			out.printf("%-26s %s%n", "", failure);
+
+		Collections.sort(mLatencies);
+		out.printf(Locale.US, "%-26s %d answered, %d unanswered%n",
+				"keystrokes", mLatencies.size(), mUnanswered.get());
+		out.printf(Locale.US,
+				"%-26s p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f ms%n",
+				"keystroke to suggestion", millis(percentile(mLatencies, 50)),
+				millis(percentile(mLatencies, 90)), millis(percentile(
+						mLatencies, 99)), millis(percentile(mLatencies, 99.9)),
+				millis(percentile(mLatencies, 100)));
+
+		long peak = 0;
+		for (AtomicLong count : mUpstreamPerSecond.values())
+			peak = Math.max(peak, count.get());
+		out.printf(Locale.US, "%-26s %d, mean %.1f qps, peak %d qps%n",
+				"upstream requests", mUpstream.get(), mUpstream.get()
+						/ seconds, peak);
+		if (server != null) {
+			StringBuilder statuses = new StringBuilder();
+			for (Status status : Status.values()) {
+				long count = server.getStatusCount(status);
+				if (count > 0)
+					statuses.append(' ').append(status.name()).append(' ')
+							.append(count);
+			}
+			out.printf(Locale.US, "%-26s %d,%s%n", "server requests", server
+					.getRequestCount(), statuses);
+		}
+	}
+
+	private static <T> T percentile(List<T> sorted, double percentile) {
+		if (sorted.isEmpty())
+			return null;
+		int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+		return sorted.get(Math.max(0, Math.min(sorted.size(), rank) - 1));
+	}
+
+	private static double millis(Long nanos) {
+		return nanos == null ? Double.NaN : nanos / 1E6;
+	}
+
+	private static double percent(long part, long whole) {
+		return whole == 0 ? 0 : 100.0 * part / whole;
+	}
+}
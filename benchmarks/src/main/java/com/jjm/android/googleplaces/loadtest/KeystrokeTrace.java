@@ -0,0 +1,192 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.testing.Latency;
+
+/**
+ * The keystrokes of one search session: the text in the search box after
+ * each keystroke, and when it was typed.
+ *
+ * <p>
+ * Traces are stored one keystroke per line, as the session name, the
+ * milliseconds since the session started and the text, separated by tabs:
+ * </p>
+ *
+ * <pre>
+ * s1	0	H
+ * s1	212	Ha
+ * s1	380	Har
+ * </pre>
+ */
+public final class KeystrokeTrace {
+	/**
+	 * The time between keystrokes of a phone keyboard user: a median of
+	 * 250ms, with one in a hundred over 900ms.
+	 */
+	public static final Latency DEFAULT_INTERVAL = Latency.logNormal(250, 900);
+	/**
+	 * The pause before noticing and deleting a typo.
+	 */
+	public static final Latency DEFAULT_TYPO_PAUSE = Latency.uniform(300, 800);
+	public static final double DEFAULT_TYPO_RATE = 0.03;
+
+	private static final String KEYS = "qwertyuiopasdfghjklzxcvbnm";
+
+	private final String mName;
+	private final long[] mMillis;
+	private final String[] mTexts;
+
+	public KeystrokeTrace(String name, List<Long> millis, List<String> texts) {
+		Preconditions.checkArgument(millis.size() == texts.size());
+		mName = Preconditions.checkNotNull(name);
+		mMillis = new long[millis.size()];
+		mTexts = texts.toArray(new String[texts.size()]);
+		long last = 0;
+		for (int i = 0; i < mMillis.length; i++) {
+			mMillis[i] = millis.get(i);
+			Preconditions.checkArgument(mMillis[i] >= last,
+					"keystrokes out of order in %s", name);
+			last = mMillis[i];
+		}
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public int size() {
+		return mTexts.length;
+	}
+
+	/**
+	 * The time of a keystroke, in milliseconds since the session started.
+	 */
+	public long getMillis(int keystroke) {
+		return mMillis[keystroke];
+	}
+
+	/**
+	 * The text in the search box after a keystroke.
+	 */
+	public String getText(int keystroke) {
+		return mTexts[keystroke];
+	}
+
+	public long getDurationMillis() {
+		return mMillis.length == 0 ? 0 : mMillis[mMillis.length - 1];
+	}
+
+	/**
+	 * Simulate a user typing the start of <code>target</code>, stopping
+	 * somewhere after <code>minLength</code> characters, as when they see
+	 * the suggestion they want. Now and then they hit a wrong key and delete
+	 * it.
+	 */
+	public static KeystrokeTrace generate(String name, String target,
+			int minLength, Random random) {
+		return generate(name, target, minLength, random, DEFAULT_INTERVAL,
+				DEFAULT_TYPO_RATE, DEFAULT_TYPO_PAUSE);
+	}
+
+	public static KeystrokeTrace generate(String name, String target,
+			int minLength, Random random, Latency interval, double typoRate,
+			Latency typoPause) {
+		Preconditions.checkArgument(minLength > 0);
+		int length = Math.min(target.length(), minLength
+				+ random.nextInt(Math.max(1, target.length() - minLength + 1)));
+		List<Long> millis = new ArrayList<Long>(length + 4);
+		List<String> texts = new ArrayList<String>(length + 4);
+		long now = 0;
+		for (int i = 1; i <= length; i++) {
+			String text = target.substring(0, i);
+			if (i > 1 && random.nextDouble() < typoRate) {
+				String typed = text.substring(0, i - 1);
+				millis.add(now);
+				texts.add(typed + KEYS.charAt(random.nextInt(KEYS.length())));
+				now += typoPause.nextMillis(random);
+				millis.add(now);
+				texts.add(typed);
+				now += interval.nextMillis(random);
+			}
+			millis.add(now);
+			texts.add(text);
+			now += interval.nextMillis(random);
+		}
+		return new KeystrokeTrace(name, millis, texts);
+	}
+
+	/**
+	 * Read traces written by {@link #write(List, Writer)}. The keystrokes of
+	 * a session must be in order, but sessions may be interleaved.
+	 */
+	public static List<KeystrokeTrace> read(Reader reader) throws IOException {
+		BufferedReader in = new BufferedReader(reader);
+		Map<String, List<Long>> millis = new LinkedHashMap<String, List<Long>>();
+		Map<String, List<String>> texts = new LinkedHashMap<String, List<String>>();
+		String line;
+		int lineNumber = 0;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			if (line.length() == 0 || line.startsWith("#"))
+				continue;
+			String[] fields = line.split("\t", 3);
+			if (fields.length != 3)
+				throw new IOException("line " + lineNumber
+						+ ": expected session, millis and text");
+			if (!millis.containsKey(fields[0])) {
+				millis.put(fields[0], new ArrayList<Long>());
+				texts.put(fields[0], new ArrayList<String>());
+			}
+			try {
+				millis.get(fields[0]).add(Long.parseLong(fields[1]));
+			} catch (NumberFormatException e) {
+				throw new IOException("line " + lineNumber + ": bad millis "
+						+ fields[1]);
+			}
+			texts.get(fields[0]).add(fields[2]);
+		}
+		List<KeystrokeTrace> traces = new ArrayList<KeystrokeTrace>();
+		for (String name : millis.keySet())
+			traces.add(new KeystrokeTrace(name, millis.get(name), texts
+					.get(name)));
+		return Collections.unmodifiableList(traces);
+	}
+
+	public static void write(List<KeystrokeTrace> traces, Writer out)
+			throws IOException {
+		for (KeystrokeTrace trace : traces) {
+			for (int i = 0; i < trace.size(); i++) {
+				out.write(trace.mName + "\t" + trace.mMillis[i] + "\t"
+						+ trace.mTexts[i] + "\n");
+			}
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,1011 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.testing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.testing.PlaceCorpus.FakePlace;
+import com.jjm.android.googleplaces.util.LatLng;
+import com.jjm.android.googleplaces.util.TokenBucket;
+
+/**
+ * <p>
+ * A stand-in for the places service that runs in the same process, for
+ * tests and benchmarks. It serves the autocomplete, search, text search and
+ * details json endpoints from a {@link PlaceCorpus}, over plain http on the
+ * loopback interface. Point a client at it with
+ * {@link com.jjm.android.googleplaces.request.PlacesClient#setRootUrl(String)}
+ * or a single request with
+ * {@link com.jjm.android.googleplaces.request.PlacesRequest#setRootUrl(String)},
+ * passing {@link #getRootUrl()}.
+ * </p>
+ *
+ * <p>
+ * It answers like the service does: missing or denied api keys get
+ * <code>REQUEST_DENIED</code>, missing parameters
+ * <code>INVALID_REQUEST</code>, searches with more than a page of results
+ * return a <code>next_page_token</code> that is only accepted once
+ * {@link #setPageTokenDelay(long)} has passed, and keys over their quota get
+ * <code>OVER_QUERY_LIMIT</code>. On top of that it can be made slow or
+ * unreliable: response latency, bandwidth, and the rate of injected
+ * statuses, http errors and dropped connections are all configurable, and
+ * can be changed while it is running.
+ * </p>
+ *
+ * <p>
+ * The server uses only <code>java.net</code>, so it also runs on a device.
+ * Each connection is served by its own thread, and connections are kept
+ * alive.
+ * </p>
+ */
+public class FakePlacesServer implements Closeable {
+	/**
+	 * The endpoints served. Search is served at both
+	 * <code>place/search</code> and <code>place/nearbysearch</code>.
+	 */
+	public static enum Endpoint {
+		AUTOCOMPLETE, SEARCH, TEXT_SEARCH, DETAILS
+	}
+
+	public static final long DEFAULT_PAGE_TOKEN_DELAY_MILLIS = 2000;
+	public static final int PAGE_SIZE = 20;
+	public static final int MAX_PREDICTIONS = 5;
+	/**
+	 * The largest radius search accepts, in meters.
+	 */
+	public static final double MAX_SEARCH_RADIUS = 50000;
+
+	private static final String PATH_PREFIX = "/maps/api/place/";
+	private static final long PAGE_TOKEN_LIFETIME_MILLIS = 5 * 60 * 1000;
+	private static final int MAX_PAGE_TOKENS = 1024;
+	private static final int MAX_LINE_LENGTH = 8192;
+	private static final String ICON =
+			"https://maps.gstatic.com/mapfiles/place_api/icons/generic_business-71.png";
+
+	private static final class PageToken {
+		final List<FakePlace> mResults;
+		final int mOffset;
+		final long mActiveAtMillis;
+		final long mExpiresAtMillis;
+
+		PageToken(List<FakePlace> results, int offset, long delayMillis) {
+			long now = System.currentTimeMillis();
+			mResults = results;
+			mOffset = offset;
+			mActiveAtMillis = now + delayMillis;
+			mExpiresAtMillis = now + PAGE_TOKEN_LIFETIME_MILLIS;
+		}
+	}
+
+	private final PlaceCorpus mCorpus;
+	private final Random mRandom;
+	private ServerSocket mServerSocket;
+	private ExecutorService mExecutor;
+	private final Set<Socket> mSockets = Collections
+			.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+	private volatile boolean mClosed;
+
+	private volatile Latency[] mLatency;
+	private volatile long mBytesPerSecond;
+	private volatile double[] mStatusRates = new double[Status.values().length];
+	private volatile double mHttpErrorRate;
+	private volatile double mDisconnectRate;
+	private volatile long mPageTokenDelayMillis = DEFAULT_PAGE_TOKEN_DELAY_MILLIS;
+	private volatile boolean mRequireApiKey = true;
+	private final Set<String> mDeniedKeys = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private volatile double mQueriesPerSecond;
+	private volatile int mBurst;
+	private final ConcurrentHashMap<String, TokenBucket> mBuckets =
+			new ConcurrentHashMap<String, TokenBucket>();
+	private volatile long mDailyQuota;
+	private final ConcurrentHashMap<String, AtomicLong> mDailyCounts =
+			new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentHashMap<String, PageToken> mPageTokens =
+			new ConcurrentHashMap<String, PageToken>();
+
+	private final AtomicLong mRequestCount = new AtomicLong();
+	private final AtomicLongArray mEndpointCounts = new AtomicLongArray(
+			Endpoint.values().length);
+	private final AtomicLongArray mStatusCounts = new AtomicLongArray(Status
+			.values().length);
+	private final AtomicLong mThrottledCount = new AtomicLong();
+	private final AtomicLong mHttpErrorCount = new AtomicLong();
+	private final AtomicLong mDisconnectCount = new AtomicLong();
+
+	/**
+	 * A server for {@link PlaceCorpus#createDefault()}.
+	 */
+	public FakePlacesServer() {
+		this(PlaceCorpus.createDefault());
+	}
+
+	public FakePlacesServer(PlaceCorpus corpus) {
+		this(corpus, new Random());
+	}
+
+	/**
+	 * @param random
+	 *            the source of latencies, injected failures and page tokens
+	 */
+	public FakePlacesServer(PlaceCorpus corpus, Random random) {
+		mCorpus = Preconditions.checkNotNull(corpus);
+		mRandom = Preconditions.checkNotNull(random);
+		Latency[] latency = new Latency[Endpoint.values().length];
+		Arrays.fill(latency, Latency.none());
+		mLatency = latency;
+	}
+
+	/**
+	 * Start listening on an ephemeral port of the loopback interface.
+	 */
+	public FakePlacesServer start() throws IOException {
+		return start(0);
+	}
+
+	/**
+	 * Start listening on the loopback interface.
+	 *
+	 * @param port
+	 *            the port, or 0 for any free port
+	 */
+	public synchronized FakePlacesServer start(int port) throws IOException {
+		Preconditions.checkState(mServerSocket == null, "already started");
+		ServerSocket serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(new InetSocketAddress(InetAddress
+				.getByName("127.0.0.1"), port), 256);
+		mServerSocket = serverSocket;
+		mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger mCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "FakePlacesServer-"
+						+ mCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * The port the server is listening on.
+	 */
+	public int getPort() {
+		Preconditions.checkState(mServerSocket != null, "not started");
+		return mServerSocket.getLocalPort();
+	}
+
+	/**
+	 * The url to pass to
+	 * {@link com.jjm.android.googleplaces.request.PlacesClient#setRootUrl(String)}.
+	 */
+	public String getRootUrl() {
+		return "http://127.0.0.1:" + getPort();
+	}
+
+	public PlaceCorpus getCorpus() {
+		return mCorpus;
+	}
+
+	/**
+	 * Stop the server, closing every connection.
+	 */
+	@Override
+	public synchronized void close() {
+		if (mClosed)
+			return;
+		mClosed = true;
+		closeQuietly(mServerSocket);
+		for (Socket socket : mSockets)
+			closeQuietly(socket);
+		if (mExecutor != null)
+			mExecutor.shutdownNow();
+	}
+
+	// //////////////////////
+	// Behavior
+	// //////////////////////
+
+	/**
+	 * Delay every response.
+	 */
+	public FakePlacesServer setLatency(Latency latency) {
+		Preconditions.checkNotNull(latency);
+		Latency[] all = new Latency[Endpoint.values().length];
+		Arrays.fill(all, latency);
+		mLatency = all;
+		return this;
+	}
+
+	/**
+	 * Delay the responses of one endpoint.
+	 */
+	public synchronized FakePlacesServer setLatency(Endpoint endpoint,
+			Latency latency) {
+		Preconditions.checkNotNull(latency);
+		Latency[] all = mLatency.clone();
+		all[endpoint.ordinal()] = latency;
+		mLatency = all;
+		return this;
+	}
+
+	/**
+	 * Limit the rate response bodies are written at, as over a slow mobile
+	 * link. Bodies are written in small pieces, so the client sees the
+	 * beginning of a body well before the end.
+	 *
+	 * @param bytesPerSecond
+	 *            the rate, or 0 for no limit
+	 */
+	public FakePlacesServer setBytesPerSecond(long bytesPerSecond) {
+		Preconditions.checkArgument(bytesPerSecond >= 0);
+		mBytesPerSecond = bytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Answer a fraction of requests with a status instead of a result. For
+	 * example, <code>setStatusRate(Status.UNKOWN_ERROR, 0.05)</code> fails 5%
+	 * of requests. The rates of all statuses may add up to at most 1.
+	 */
+	public synchronized FakePlacesServer setStatusRate(Status status,
+			double rate) {
+		Preconditions.checkArgument(rate >= 0 && rate <= 1);
+		double[] rates = mStatusRates.clone();
+		rates[status.ordinal()] = rate;
+		double total = 0;
+		for (double r : rates)
+			total += r;
+		Preconditions.checkArgument(total <= 1, "status rates add up to %s",
+				total);
+		mStatusRates = rates;
+		return this;
+	}
+
+	/**
+	 * Answer a fraction of requests with an http 500 error.
+	 */
+	public FakePlacesServer setHttpErrorRate(double rate) {
+		Preconditions.checkArgument(rate >= 0 && rate <= 1);
+		mHttpErrorRate = rate;
+		return this;
+	}
+
+	/**
+	 * Close the connection without answering a fraction of requests.
+	 */
+	public FakePlacesServer setDisconnectRate(double rate) {
+		Preconditions.checkArgument(rate >= 0 && rate <= 1);
+		mDisconnectRate = rate;
+		return this;
+	}
+
+	/**
+	 * How long after a page of results is returned its
+	 * <code>next_page_token</code> becomes valid. Until then, requests with
+	 * the token get <code>INVALID_REQUEST</code>.
+	 */
+	public FakePlacesServer setPageTokenDelay(long delayMillis) {
+		Preconditions.checkArgument(delayMillis >= 0);
+		mPageTokenDelayMillis = delayMillis;
+		return this;
+	}
+
+	/**
+	 * Whether requests without a key are denied. They are by default.
+	 */
+	public FakePlacesServer setRequireApiKey(boolean requireApiKey) {
+		mRequireApiKey = requireApiKey;
+		return this;
+	}
+
+	/**
+	 * Answer every request made with a key with <code>REQUEST_DENIED</code>.
+	 */
+	public FakePlacesServer denyApiKey(String apiKey) {
+		mDeniedKeys.add(Preconditions.checkNotNull(apiKey));
+		return this;
+	}
+
+	public FakePlacesServer allowApiKey(String apiKey) {
+		mDeniedKeys.remove(apiKey);
+		return this;
+	}
+
+	/**
+	 * Throttle each api key, answering requests beyond the rate with
+	 * <code>OVER_QUERY_LIMIT</code>.
+	 *
+	 * @param perSecond
+	 *            the requests per second allowed per key, or 0 for no limit
+	 * @param burst
+	 *            the number of requests a key may make at once
+	 */
+	public synchronized FakePlacesServer setQueriesPerSecond(double perSecond,
+			int burst) {
+		Preconditions.checkArgument(perSecond >= 0);
+		Preconditions.checkArgument(burst > 0);
+		mQueriesPerSecond = perSecond;
+		mBurst = burst;
+		mBuckets.clear();
+		return this;
+	}
+
+	/**
+	 * Allow each key this many requests, after which it gets
+	 * <code>OVER_QUERY_LIMIT</code> until {@link #resetQuotas()}.
+	 *
+	 * @param perKey
+	 *            the quota, or 0 for none
+	 */
+	public FakePlacesServer setDailyQuota(long perKey) {
+		Preconditions.checkArgument(perKey >= 0);
+		mDailyQuota = perKey;
+		return this;
+	}
+
+	/**
+	 * Start a new day: every key gets its full quota back.
+	 */
+	public FakePlacesServer resetQuotas() {
+		mDailyCounts.clear();
+		mBuckets.clear();
+		return this;
+	}
+
+	// //////////////////////
+	// Counters
+	// //////////////////////
+
+	/**
+	 * The number of requests received, including ones that failed.
+	 */
+	public long getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	public long getRequestCount(Endpoint endpoint) {
+		return mEndpointCounts.get(endpoint.ordinal());
+	}
+
+	/**
+	 * The number of responses sent with a status.
+	 */
+	public long getStatusCount(Status status) {
+		return mStatusCounts.get(status.ordinal());
+	}
+
+	/**
+	 * The number of requests refused by the rate or daily quota.
+	 */
+	public long getThrottledCount() {
+		return mThrottledCount.get();
+	}
+
+	public long getHttpErrorCount() {
+		return mHttpErrorCount.get();
+	}
+
+	public long getDisconnectCount() {
+		return mDisconnectCount.get();
+	}
+
+	// //////////////////////
+	// Http
+	// //////////////////////
+
+	private void accept() {
+		while (!mClosed) {
+			final Socket socket;
+			try {
+				socket = mServerSocket.accept();
+			} catch (IOException e) {
+				// Closed
+				return;
+			}
+			mSockets.add(socket);
+			try {
+				mExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				});
+			} catch (RuntimeException e) {
+				// Shut down while accepting
+				mSockets.remove(socket);
+				closeQuietly(socket);
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(
+					socket.getOutputStream());
+			for (;;) {
+				String requestLine = readLine(in);
+				if (requestLine == null)
+					return;
+				boolean close = requestLine.endsWith("HTTP/1.0");
+				String header;
+				while ((header = readLine(in)) != null && header.length() > 0) {
+					int colon = header.indexOf(':');
+					if (colon > 0
+							&& "connection".equalsIgnoreCase(header.substring(
+									0, colon).trim()))
+						close = "close".equalsIgnoreCase(header.substring(
+								colon + 1).trim());
+				}
+				if (header == null || !handle(requestLine, out) || close)
+					return;
+			}
+		} catch (IOException e) {
+			// The client went away, or the server was closed
+		} finally {
+			mSockets.remove(socket);
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * Answer a request.
+	 *
+	 * @return false if the connection should be dropped.
+	 */
+	private boolean handle(String requestLine, OutputStream out)
+			throws IOException {
+		String[] parts = requestLine.split(" ");
+		if (parts.length != 3) {
+			write(out, 400, "Bad Request", "text/plain", "bad request");
+			return false;
+		}
+		if (!"GET".equals(parts[0])) {
+			write(out, 405, "Method Not Allowed", "text/plain",
+					"only GET is supported");
+			return true;
+		}
+		String target = parts[1];
+		int q = target.indexOf('?');
+		String path = q < 0 ? target : target.substring(0, q);
+		Endpoint endpoint = endpointFor(path);
+		if (endpoint == null) {
+			write(out, 404, "Not Found", "text/plain", path + " not found");
+			return true;
+		}
+		mRequestCount.incrementAndGet();
+		mEndpointCounts.incrementAndGet(endpoint.ordinal());
+		sleep(mLatency[endpoint.ordinal()].nextMillis(mRandom));
+		if (mRandom.nextDouble() < mDisconnectRate) {
+			mDisconnectCount.incrementAndGet();
+			return false;
+		}
+		if (mRandom.nextDouble() < mHttpErrorRate) {
+			mHttpErrorCount.incrementAndGet();
+			write(out, 500, "Internal Server Error", "text/plain",
+					"injected error");
+			return true;
+		}
+		Map<String, String> params = parseQuery(q < 0 ? "" : target
+				.substring(q + 1));
+		write(out, 200, "OK", "application/json; charset=UTF-8", respond(
+				endpoint, params));
+		return true;
+	}
+
+	private static Endpoint endpointFor(String path) {
+		if (!path.startsWith(PATH_PREFIX))
+			return null;
+		String name = path.substring(PATH_PREFIX.length());
+		if (name.equals("autocomplete/json"))
+			return Endpoint.AUTOCOMPLETE;
+		if (name.equals("search/json") || name.equals("nearbysearch/json"))
+			return Endpoint.SEARCH;
+		if (name.equals("textsearch/json"))
+			return Endpoint.TEXT_SEARCH;
+		if (name.equals("details/json"))
+			return Endpoint.DETAILS;
+		return null;
+	}
+
+	private void write(OutputStream out, int code, String reason,
+			String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		String head = "HTTP/1.1 " + code + " " + reason + "\r\nContent-Type: "
+				+ contentType + "\r\nContent-Length: " + bytes.length
+				+ "\r\n\r\n";
+		out.write(head.getBytes("US-ASCII"));
+		long bytesPerSecond = mBytesPerSecond;
+		if (bytesPerSecond <= 0) {
+			out.write(bytes);
+			out.flush();
+			return;
+		}
+		out.flush();
+		// About 50 writes a second
+		int chunk = (int) Math.max(1, bytesPerSecond / 50);
+		long start = System.nanoTime();
+		for (int offset = 0; offset < bytes.length; offset += chunk) {
+			int length = Math.min(chunk, bytes.length - offset);
+			long due = start + (offset + length) * 1000000000L
+					/ bytesPerSecond;
+			long wait = due - System.nanoTime();
+			if (wait > 0)
+				sleep(TimeUnit.NANOSECONDS.toMillis(wait));
+			out.write(bytes, offset, length);
+			out.flush();
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+		for (;;) {
+			int b = in.read();
+			if (b < 0)
+				return line.size() > 0 ? line.toString("ISO-8859-1") : null;
+			if (b == '\n')
+				break;
+			if (b != '\r')
+				line.write(b);
+			if (line.size() > MAX_LINE_LENGTH)
+				throw new IOException("line too long");
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+	private static Map<String, String> parseQuery(String query)
+			throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<String, String>();
+		for (String param : query.split("&")) {
+			if (param.length() == 0)
+				continue;
+			int eq = param.indexOf('=');
+			String name = eq < 0 ? param : param.substring(0, eq);
+			String value = eq < 0 ? "" : param.substring(eq + 1);
+			params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(
+					value, "UTF-8"));
+		}
+		return params;
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		if (millis <= 0)
+			return;
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("server closed");
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	private static void closeQuietly(ServerSocket socket) {
+		if (socket == null)
+			return;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	// //////////////////////
+	// Places
+	// //////////////////////
+
+	private String respond(Endpoint endpoint, Map<String, String> params) {
+		String key = params.get("key");
+		Status status = null;
+		if (key == null || key.length() == 0) {
+			if (mRequireApiKey)
+				status = Status.REQUEST_DENIED;
+		} else if (mDeniedKeys.contains(key)) {
+			status = Status.REQUEST_DENIED;
+		}
+		if (status == null && params.get("sensor") == null)
+			status = Status.REQUEST_DENIED;
+		if (status == null && !takeQuota(key != null ? key : ""))
+			status = Status.OVER_QUERY_LIMIT;
+		if (status == null)
+			status = injectedStatus();
+		if (status != null)
+			return empty(endpoint, status);
+		try {
+			switch (endpoint) {
+			case AUTOCOMPLETE:
+				return autocomplete(params);
+			case SEARCH:
+				return search(params);
+			case TEXT_SEARCH:
+				return textSearch(params);
+			case DETAILS:
+				return details(params);
+			default:
+				throw new AssertionError(endpoint);
+			}
+		} catch (IllegalArgumentException e) {
+			// A malformed parameter
+			return empty(endpoint, Status.INVALID_REQUEST);
+		}
+	}
+
+	private boolean takeQuota(String key) {
+		long quota = mDailyQuota;
+		if (quota > 0) {
+			AtomicLong count = mDailyCounts.get(key);
+			if (count == null) {
+				AtomicLong created = new AtomicLong();
+				count = mDailyCounts.putIfAbsent(key, created);
+				if (count == null)
+					count = created;
+			}
+			if (count.incrementAndGet() > quota) {
+				mThrottledCount.incrementAndGet();
+				return false;
+			}
+		}
+		double perSecond = mQueriesPerSecond;
+		if (perSecond > 0) {
+			TokenBucket bucket = mBuckets.get(key);
+			if (bucket == null) {
+				TokenBucket created = TokenBucket.perSecond(perSecond, mBurst);
+				bucket = mBuckets.putIfAbsent(key, created);
+				if (bucket == null)
+					bucket = created;
+			}
+			if (!bucket.tryAcquire()) {
+				mThrottledCount.incrementAndGet();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Status injectedStatus() {
+		double[] rates = mStatusRates;
+		double r = mRandom.nextDouble();
+		for (int i = 0; i < rates.length; i++) {
+			r -= rates[i];
+			if (r < 0)
+				return Status.values()[i];
+		}
+		return null;
+	}
+
+	private String autocomplete(Map<String, String> params) {
+		String input = params.get("input");
+		if (input == null || input.length() == 0)
+			return empty(Endpoint.AUTOCOMPLETE, Status.INVALID_REQUEST);
+		String offset = params.get("offset");
+		if (offset != null)
+			input = input.substring(0, Math.min(input.length(), Integer
+					.parseInt(offset)));
+		LatLng location = parseLocation(params.get("location"));
+		double radius = parseRadius(params.get("radius"));
+		List<FakePlace> places = mCorpus.autocomplete(input, location,
+				radius >= 0 ? radius : PlaceCorpus.DEFAULT_RADIUS_METERS,
+				parseTypes(params.get("types")), MAX_PREDICTIONS);
+		if (places.isEmpty())
+			return empty(Endpoint.AUTOCOMPLETE, Status.ZERO_RESULTS);
+		StringBuilder sb = new StringBuilder(512 * places.size());
+		sb.append("{\"predictions\":[");
+		for (int i = 0; i < places.size(); i++) {
+			if (i > 0)
+				sb.append(',');
+			prediction(sb, places.get(i), input.trim().length());
+		}
+		sb.append("],");
+		return end(sb, Status.OK);
+	}
+
+	private String search(Map<String, String> params) {
+		String pageToken = params.get("pagetoken");
+		if (pageToken != null)
+			return page(Endpoint.SEARCH, pageToken);
+		LatLng location = parseLocation(params.get("location"));
+		double radius = parseRadius(params.get("radius"));
+		String keyword = params.get("keyword");
+		String name = params.get("name");
+		List<String> types = parseTypes(params.get("types"));
+		boolean byDistance = "distance".equalsIgnoreCase(params.get("rankby"));
+		if (location == null)
+			return empty(Endpoint.SEARCH, Status.INVALID_REQUEST);
+		if (byDistance) {
+			if (radius >= 0 || keyword == null && name == null
+					&& types == null)
+				return empty(Endpoint.SEARCH, Status.INVALID_REQUEST);
+		} else if (radius < 0 || radius > MAX_SEARCH_RADIUS) {
+			return empty(Endpoint.SEARCH, Status.INVALID_REQUEST);
+		}
+		return results(Endpoint.SEARCH, mCorpus.nearby(location, radius,
+				keyword, name, types), 0);
+	}
+
+	private String textSearch(Map<String, String> params) {
+		String pageToken = params.get("pagetoken");
+		if (pageToken != null)
+			return page(Endpoint.TEXT_SEARCH, pageToken);
+		String query = params.get("query");
+		if (query == null || query.length() == 0)
+			return empty(Endpoint.TEXT_SEARCH, Status.INVALID_REQUEST);
+		LatLng location = parseLocation(params.get("location"));
+		double radius = parseRadius(params.get("radius"));
+		if (location != null && radius < 0)
+			return empty(Endpoint.TEXT_SEARCH, Status.INVALID_REQUEST);
+		return results(Endpoint.TEXT_SEARCH, mCorpus.textSearch(query,
+				location, radius, parseTypes(params.get("types"))), 0);
+	}
+
+	private String page(Endpoint endpoint, String token) {
+		PageToken page = mPageTokens.get(token);
+		if (page == null || page.mActiveAtMillis > System.currentTimeMillis())
+			return empty(endpoint, Status.INVALID_REQUEST);
+		return results(endpoint, page.mResults, page.mOffset);
+	}
+
+	private String results(Endpoint endpoint, List<FakePlace> places,
+			int offset) {
+		if (places.isEmpty())
+			return empty(endpoint, Status.ZERO_RESULTS);
+		int end = Math.min(places.size(), offset + PAGE_SIZE);
+		StringBuilder sb = new StringBuilder(1024 * (end - offset));
+		sb.append("{\"html_attributions\":[],");
+		if (end < places.size())
+			sb.append("\"next_page_token\":").append(
+					quote(newPageToken(places, end))).append(',');
+		sb.append("\"results\":[");
+		for (int i = offset; i < end; i++) {
+			if (i > offset)
+				sb.append(',');
+			sb.append('{');
+			placeFields(sb, places.get(i), false);
+			sb.append('}');
+		}
+		sb.append("],");
+		return end(sb, Status.OK);
+	}
+
+	private String newPageToken(List<FakePlace> places, int offset) {
+		long now = System.currentTimeMillis();
+		if (mPageTokens.size() >= MAX_PAGE_TOKENS) {
+			for (Iterator<PageToken> it = mPageTokens.values().iterator(); it
+					.hasNext();) {
+				if (it.next().mExpiresAtMillis < now)
+					it.remove();
+			}
+		}
+		String token = PlaceCorpus.token(mRandom, 200);
+		mPageTokens.put(token, new PageToken(places, offset,
+				mPageTokenDelayMillis));
+		return token;
+	}
+
+	private String details(Map<String, String> params) {
+		String reference = params.get("reference");
+		if (reference == null || reference.length() == 0)
+			return empty(Endpoint.DETAILS, Status.INVALID_REQUEST);
+		FakePlace place = mCorpus.getByReference(reference);
+		if (place == null)
+			return empty(Endpoint.DETAILS, Status.INVALID_REQUEST);
+		if (mCorpus.isRemoved(place))
+			return empty(Endpoint.DETAILS, Status.ZERO_RESULTS);
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append("{\"html_attributions\":[],\"result\":{");
+		placeFields(sb, place, true);
+		sb.append("},");
+		return end(sb, Status.OK);
+	}
+
+	/**
+	 * A response with no results.
+	 */
+	private String empty(Endpoint endpoint, Status status) {
+		StringBuilder sb = new StringBuilder(64);
+		switch (endpoint) {
+		case AUTOCOMPLETE:
+			sb.append("{\"predictions\":[],");
+			break;
+		case DETAILS:
+			sb.append("{\"html_attributions\":[],");
+			break;
+		default:
+			sb.append("{\"html_attributions\":[],\"results\":[],");
+			break;
+		}
+		return end(sb, status);
+	}
+
+	private String end(StringBuilder sb, Status status) {
+		mStatusCounts.incrementAndGet(status.ordinal());
+		return sb.append("\"status\":").append(quote(status.name())).append(
+				'}').toString();
+	}
+
+	private static void prediction(StringBuilder sb, FakePlace place,
+			int matched) {
+		sb.append("{\"description\":").append(quote(place.getDescription()))
+				.append(",\"id\":").append(quote(place.getId()))
+				.append(",\"matched_substrings\":[{\"length\":")
+				.append(Math.min(matched, place.getName().length()))
+				.append(",\"offset\":0}],\"reference\":")
+				.append(quote(place.getReference())).append(",\"terms\":[");
+		int offset = 0;
+		List<String> terms = place.getTerms();
+		for (int i = 0; i < terms.size(); i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append("{\"offset\":").append(offset).append(",\"value\":")
+					.append(quote(terms.get(i))).append('}');
+			offset += terms.get(i).length() + 2;
+		}
+		sb.append("],\"types\":");
+		strings(sb, place.getTypes());
+		sb.append('}');
+	}
+
+	private static void placeFields(StringBuilder sb, FakePlace place,
+			boolean details) {
+		if (details) {
+			sb.append("\"formatted_address\":").append(
+					quote(place.getFormattedAddress())).append(',');
+			if (place.getPhone() != null)
+				sb.append("\"formatted_phone_number\":").append(
+						quote(place.getPhone())).append(',');
+		}
+		sb.append("\"geometry\":{\"location\":{\"lat\":").append(
+				place.getLatitude()).append(",\"lng\":").append(
+				place.getLongitude()).append("}},\"icon\":")
+				.append(quote(ICON)).append(",\"id\":").append(
+						quote(place.getId()));
+		if (details && place.getPhone() != null)
+			sb.append(",\"international_phone_number\":").append(
+					quote(place.getPhone().replaceFirst("^\\(0(\\d)\\) ",
+							"+61 $1 ")));
+		sb.append(",\"name\":").append(quote(place.getName()));
+		if (place.getRating() > 0)
+			sb.append(",\"rating\":").append(place.getRating());
+		sb.append(",\"reference\":").append(quote(place.getReference()))
+				.append(",\"types\":");
+		strings(sb, place.getTypes());
+		if (details)
+			sb.append(",\"url\":").append(
+					quote("https://plus.google.com/" + place.getId()
+							+ "/about"));
+		sb.append(",\"vicinity\":").append(quote(place.getVicinity()));
+	}
+
+	private static void strings(StringBuilder sb, List<String> strings) {
+		sb.append('[');
+		for (int i = 0; i < strings.size(); i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(quote(strings.get(i)));
+		}
+		sb.append(']');
+	}
+
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static LatLng parseLocation(String location) {
+		if (location == null)
+			return null;
+		int comma = location.indexOf(',');
+		if (comma < 0)
+			throw new IllegalArgumentException(location);
+		return new LatLng(Double.parseDouble(location.substring(0, comma)),
+				Double.parseDouble(location.substring(comma + 1)));
+	}
+
+	/**
+	 * @return the radius, or -1 if there is none.
+	 */
+	private static double parseRadius(String radius) {
+		if (radius == null)
+			return -1;
+		double r = Double.parseDouble(radius);
+		if (r < 0)
+			throw new IllegalArgumentException(radius);
+		return r;
+	}
+
+	private static List<String> parseTypes(String types) {
+		if (types == null || types.length() == 0)
+			return null;
+		List<String> list = new ArrayList<String>();
+		for (String type : types.split("\\|")) {
+			if (type.length() > 0)
+				list.add(type);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.testing;
+
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A distribution of response delays for {@link FakePlacesServer}.
+ */
+public abstract class Latency {
+	private static final double Z_99 = 2.3263478740408408;
+
+	private static final Latency NONE = fixed(0);
+
+	/**
+	 * Draw a delay.
+	 *
+	 * @return the delay in milliseconds, at least 0.
+	 */
+	public abstract long nextMillis(Random random);
+
+	/**
+	 * No delay.
+	 */
+	public static Latency none() {
+		return NONE;
+	}
+
+	public static Latency fixed(final long millis) {
+		Preconditions.checkArgument(millis >= 0);
+		return new Latency() {
+			@Override
+			public long nextMillis(Random random) {
+				return millis;
+			}
+
+			@Override
+			public String toString() {
+				return "fixed(" + millis + ")";
+			}
+		};
+	}
+
+	/**
+	 * Delays spread evenly between <code>minMillis</code> and
+	 * <code>maxMillis</code>.
+	 */
+	public static Latency uniform(final long minMillis, final long maxMillis) {
+		Preconditions.checkArgument(minMillis >= 0 && maxMillis >= minMillis);
+		return new Latency() {
+			@Override
+			public long nextMillis(Random random) {
+				return minMillis
+						+ (long) (random.nextDouble() * (maxMillis - minMillis));
+			}
+
+			@Override
+			public String toString() {
+				return "uniform(" + minMillis + "," + maxMillis + ")";
+			}
+		};
+	}
+
+	/**
+	 * Exponentially distributed delays, as between independent arrivals.
+	 */
+	public static Latency exponential(final double meanMillis) {
+		Preconditions.checkArgument(meanMillis >= 0);
+		return new Latency() {
+			@Override
+			public long nextMillis(Random random) {
+				return Math.round(-meanMillis * Math.log(1 - random.nextDouble()));
+			}
+
+			@Override
+			public String toString() {
+				return "exponential(" + meanMillis + ")";
+			}
+		};
+	}
+
+	/**
+	 * Log-normally distributed delays, which is the usual shape of service
+	 * latencies: most are close to the median, with a long tail.
+	 *
+	 * @param medianMillis
+	 *            the median delay
+	 * @param p99Millis
+	 *            the 99th percentile delay
+	 */
+	public static Latency logNormal(final double medianMillis,
+			final double p99Millis) {
+		Preconditions.checkArgument(medianMillis > 0);
+		Preconditions.checkArgument(p99Millis >= medianMillis);
+		final double mu = Math.log(medianMillis);
+		final double sigma = Math.log(p99Millis / medianMillis) / Z_99;
+		return new Latency() {
+			@Override
+			public long nextMillis(Random random) {
+				return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+			}
+
+			@Override
+			public String toString() {
+				return "logNormal(" + medianMillis + "," + p99Millis + ")";
+			}
+		};
+	}
+
+	/**
+	 * This distribution, except that a fraction of delays are drawn from
+	 * <code>tail</code> instead. This models occasional slow responses,
+	 * such as those hedged requests are meant for.
+	 *
+	 * @param probability
+	 *            the fraction of delays drawn from <code>tail</code>
+	 */
+	public Latency withTail(final double probability, final Latency tail) {
+		Preconditions.checkArgument(probability >= 0 && probability <= 1);
+		Preconditions.checkNotNull(tail);
+		final Latency body = this;
+		return new Latency() {
+			@Override
+			public long nextMillis(Random random) {
+				return random.nextDouble() < probability ? tail
+						.nextMillis(random) : body.nextMillis(random);
+			}
+
+			@Override
+			public String toString() {
+				return body + ".withTail(" + probability + "," + tail + ")";
+			}
+		};
+	}
+}
@@ -0,0 +1,517 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.testing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.util.LatLng;
+
+/**
+ * <p>
+ * A synthetic set of places for {@link FakePlacesServer} to search.  The
+ * places are generated from a seed, so a corpus is the same every time it
+ * is created with the same arguments.
+ * </p>
+ *
+ * <p>
+ * Matching is a simplified version of what the places service does:
+ * autocomplete matches the beginnings of the words of a description, search
+ * filters by distance, keyword, name and types, and text search matches
+ * every word of the query.
+ * </p>
+ */
+public class PlaceCorpus {
+	/**
+	 * Sydney, where the places service documentation's examples are.
+	 */
+	public static final LatLng DEFAULT_CENTER = new LatLng(-33.8670522,
+			151.1957362);
+	public static final int DEFAULT_SIZE = 2000;
+	public static final double DEFAULT_RADIUS_METERS = 20000;
+
+	/**
+	 * The most results a search returns, over every page.
+	 */
+	public static final int MAX_RESULTS = 60;
+
+	private static final double EARTH_RADIUS_METERS = 6371009;
+
+	private static final String[] ADJECTIVES = { "Harbour", "Golden", "Blue",
+			"Little", "Royal", "Old", "Grand", "Green", "Silver", "Corner",
+			"Sunny", "Red", "Pier", "Garden", "Bridge", "Caf\u00e9" };
+	private static final String[] KINDS = { "Caf\u00e9", "Restaurant", "Hotel",
+			"Bar", "Pharmacy", "Books", "Bakery", "Bank", "Gym", "Cinema",
+			"Museum", "Seafood" };
+	private static final String[][] KIND_TYPES = { { "cafe", "food" },
+			{ "restaurant", "food" }, { "lodging" }, { "bar" },
+			{ "pharmacy", "health" }, { "book_store", "store" },
+			{ "bakery", "food", "store" }, { "bank", "finance" }, { "gym" },
+			{ "movie_theater" }, { "museum" }, { "restaurant", "food" } };
+	private static final String[] STREETS = { "George St", "Pitt St",
+			"Harris St", "Darling Dr", "Oxford St", "King St", "Crown St",
+			"Elizabeth St", "Macquarie St", "Bourke St", "Glebe Point Rd" };
+	private static final String[] LOCALITIES = { "Sydney", "Pyrmont",
+			"Surry Hills", "Glebe", "Newtown", "Darlinghurst", "Ultimo",
+			"The Rocks", "Paddington", "Redfern" };
+
+	/**
+	 * One place in the corpus.
+	 */
+	public static class FakePlace {
+		private final String mId;
+		private final String mReference;
+		private final String mName;
+		private final String mStreet;
+		private final String mLocality;
+		private final List<String> mTypes;
+		private final double mLatitude;
+		private final double mLongitude;
+		private final double mRating;
+		private final String mPhone;
+		private final String[] mWords;
+		private final String mLowerName;
+
+		public FakePlace(String id, String reference, String name,
+				String street, String locality, List<String> types,
+				double latitude, double longitude, double rating, String phone) {
+			mId = Preconditions.checkNotNull(id);
+			mReference = Preconditions.checkNotNull(reference);
+			mName = Preconditions.checkNotNull(name);
+			mStreet = street;
+			mLocality = locality;
+			mTypes = Collections.unmodifiableList(new ArrayList<String>(types));
+			mLatitude = latitude;
+			mLongitude = longitude;
+			mRating = rating;
+			mPhone = phone;
+			mWords = words(getDescription() + " " + join(types, " "));
+			mLowerName = name.toLowerCase(Locale.US);
+		}
+
+		public String getId() {
+			return mId;
+		}
+
+		public String getReference() {
+			return mReference;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public String getStreet() {
+			return mStreet;
+		}
+
+		public String getLocality() {
+			return mLocality;
+		}
+
+		public List<String> getTypes() {
+			return mTypes;
+		}
+
+		public double getLatitude() {
+			return mLatitude;
+		}
+
+		public double getLongitude() {
+			return mLongitude;
+		}
+
+		/**
+		 * The rating, from 1 to 5, or 0 if the place has none.
+		 */
+		public double getRating() {
+			return mRating;
+		}
+
+		public String getPhone() {
+			return mPhone;
+		}
+
+		/**
+		 * The terms of the place's autocomplete description, in order.
+		 */
+		public List<String> getTerms() {
+			List<String> terms = new ArrayList<String>(5);
+			terms.add(mName);
+			if (mStreet != null)
+				terms.add(mStreet);
+			if (mLocality != null)
+				terms.add(mLocality);
+			terms.add("New South Wales");
+			terms.add("Australia");
+			return terms;
+		}
+
+		/**
+		 * The description autocomplete returns: the terms, separated by
+		 * commas.
+		 */
+		public String getDescription() {
+			return join(getTerms(), ", ");
+		}
+
+		/**
+		 * The street and locality.
+		 */
+		public String getVicinity() {
+			if (mStreet == null)
+				return mLocality;
+			return mLocality == null ? mStreet : mStreet + ", " + mLocality;
+		}
+
+		public String getFormattedAddress() {
+			return getVicinity() + " NSW, Australia";
+		}
+
+		/**
+		 * The distance from a point, in meters.
+		 */
+		public double distanceTo(double latitude, double longitude) {
+			return distance(mLatitude, mLongitude, latitude, longitude);
+		}
+	}
+
+	private final List<FakePlace> mPlaces;
+	private final ConcurrentHashMap<String, FakePlace> mByReference =
+			new ConcurrentHashMap<String, FakePlace>();
+	private final ConcurrentHashMap<String, Boolean> mRemoved =
+			new ConcurrentHashMap<String, Boolean>();
+
+	public PlaceCorpus(List<FakePlace> places) {
+		mPlaces = Collections.unmodifiableList(new ArrayList<FakePlace>(
+				places));
+		for (FakePlace place : mPlaces)
+			mByReference.put(place.getReference(), place);
+	}
+
+	/**
+	 * {@link #DEFAULT_SIZE} places within {@link #DEFAULT_RADIUS_METERS} of
+	 * {@link #DEFAULT_CENTER}.
+	 */
+	public static PlaceCorpus createDefault() {
+		return generate(DEFAULT_SIZE, DEFAULT_CENTER, DEFAULT_RADIUS_METERS, 1);
+	}
+
+	/**
+	 * Generate places scattered uniformly over a circle.
+	 *
+	 * @param size
+	 *            the number of places
+	 * @param center
+	 *            the center of the circle
+	 * @param radiusMeters
+	 *            the radius of the circle
+	 * @param seed
+	 *            the corpus is determined by the seed and the other
+	 *            arguments
+	 */
+	public static PlaceCorpus generate(int size, LatLng center,
+			double radiusMeters, long seed) {
+		Preconditions.checkArgument(size >= 0);
+		Preconditions.checkArgument(radiusMeters > 0);
+		Random random = new Random(seed);
+		List<FakePlace> places = new ArrayList<FakePlace>(size);
+		double metersPerDegree = Math.PI * EARTH_RADIUS_METERS / 180;
+		double cosLatitude = Math.cos(Math.toRadians(center.getLatitude()));
+		for (int i = 0; i < size; i++) {
+			int kind = random.nextInt(KINDS.length);
+			String name = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+					+ KINDS[kind];
+			List<String> types = new ArrayList<String>(Arrays
+					.asList(KIND_TYPES[kind]));
+			types.add("establishment");
+			double r = radiusMeters * Math.sqrt(random.nextDouble());
+			double theta = 2 * Math.PI * random.nextDouble();
+			double latitude = center.getLatitude() + r * Math.sin(theta)
+					/ metersPerDegree;
+			double longitude = center.getLongitude() + r * Math.cos(theta)
+					/ (metersPerDegree * cosLatitude);
+			double rating = random.nextInt(5) == 0 ? 0
+					: (10 + random.nextInt(41)) / 10.0;
+			String street = (1 + random.nextInt(400)) + " "
+					+ STREETS[random.nextInt(STREETS.length)];
+			String phone = String.format(Locale.US, "(02) %04d %04d",
+					random.nextInt(10000), random.nextInt(10000));
+			places.add(new FakePlace(hex(random, 40), token(random, 160), name,
+					street, LOCALITIES[random.nextInt(LOCALITIES.length)],
+					types, latitude, longitude, rating, phone));
+		}
+		return new PlaceCorpus(places);
+	}
+
+	public List<FakePlace> getPlaces() {
+		return mPlaces;
+	}
+
+	public int size() {
+		return mPlaces.size();
+	}
+
+	/**
+	 * @return the place, or null if there is none with that reference.
+	 */
+	public FakePlace getByReference(String reference) {
+		return mByReference.get(reference);
+	}
+
+	/**
+	 * Make a place disappear from results. Its reference stays valid, but
+	 * details requests for it find nothing, as for a place that has closed.
+	 */
+	public void remove(String reference) {
+		if (mByReference.containsKey(reference))
+			mRemoved.put(reference, Boolean.TRUE);
+	}
+
+	public boolean isRemoved(FakePlace place) {
+		return mRemoved.containsKey(place.getReference());
+	}
+
+	/**
+	 * Places whose description has a word starting with each word of the
+	 * input, places whose names start with the input first.
+	 *
+	 * @param location
+	 *            if not null, places within <code>radius</code> of it come
+	 *            first
+	 * @param radius
+	 *            the radius in meters, ignored without a location
+	 * @param types
+	 *            if not null, only places with one of these types match
+	 * @param limit
+	 *            the most places to return
+	 */
+	public List<FakePlace> autocomplete(String input, LatLng location,
+			double radius, List<String> types, int limit) {
+		final String[] words = words(input);
+		if (words.length == 0)
+			return Collections.emptyList();
+		String prefix = input.trim().toLowerCase(Locale.US);
+		// Rank by name match, then nearness, then prominence. The first two
+		// are worked out once per place, rather than in every comparison.
+		List<List<FakePlace>> tiers = new ArrayList<List<FakePlace>>(4);
+		for (int i = 0; i < 4; i++)
+			tiers.add(new ArrayList<FakePlace>());
+		for (FakePlace place : mPlaces) {
+			if (isRemoved(place) || !hasType(place, types)
+					|| !matchesPrefixes(place, words))
+				continue;
+			int tier = place.mLowerName.startsWith(prefix) ? 0 : 2;
+			if (location != null && !within(place, location, radius))
+				tier++;
+			tiers.get(tier).add(place);
+		}
+		List<FakePlace> matches = new ArrayList<FakePlace>(limit);
+		for (List<FakePlace> tier : tiers) {
+			if (matches.size() >= limit)
+				break;
+			sortByProminence(tier);
+			matches.addAll(head(tier, limit - matches.size()));
+		}
+		return matches;
+	}
+
+	/**
+	 * Places within <code>radius</code> of <code>location</code> that match
+	 * every filter given.
+	 *
+	 * @param radius
+	 *            the radius in meters, or a negative number to rank by
+	 *            distance with no limit
+	 * @param keyword
+	 *            matched against the description and types, or null
+	 * @param name
+	 *            matched against the name, or null
+	 * @param types
+	 *            places must have one of these types, or null
+	 */
+	public List<FakePlace> nearby(final LatLng location, double radius,
+			String keyword, String name, List<String> types) {
+		String[] keywords = keyword != null ? words(keyword) : null;
+		String[] names = name != null ? words(name) : null;
+		List<FakePlace> matches = new ArrayList<FakePlace>();
+		for (FakePlace place : mPlaces) {
+			if (isRemoved(place) || !hasType(place, types))
+				continue;
+			if (radius >= 0 && !within(place, location, radius))
+				continue;
+			if (keywords != null && !matchesPrefixes(place, keywords))
+				continue;
+			if (names != null && !matchesPrefixes(words(place.getName()), names))
+				continue;
+			matches.add(place);
+		}
+		if (radius < 0) {
+			Collections.sort(matches, new Comparator<FakePlace>() {
+				@Override
+				public int compare(FakePlace a, FakePlace b) {
+					return Double.compare(a.distanceTo(location.getLatitude(),
+							location.getLongitude()), b.distanceTo(location
+							.getLatitude(), location.getLongitude()));
+				}
+			});
+		} else {
+			sortByProminence(matches);
+		}
+		return head(matches, MAX_RESULTS);
+	}
+
+	/**
+	 * Places matching every word of a query, optionally within
+	 * <code>radius</code> of <code>location</code>.
+	 */
+	public List<FakePlace> textSearch(String query, LatLng location,
+			double radius, List<String> types) {
+		String[] words = words(query);
+		List<FakePlace> matches = new ArrayList<FakePlace>();
+		if (words.length == 0)
+			return matches;
+		for (FakePlace place : mPlaces) {
+			if (isRemoved(place) || !hasType(place, types))
+				continue;
+			if (location != null && !within(place, location, radius))
+				continue;
+			if (matchesPrefixes(place, words))
+				matches.add(place);
+		}
+		sortByProminence(matches);
+		return head(matches, MAX_RESULTS);
+	}
+
+	private static boolean matchesPrefixes(FakePlace place, String[] prefixes) {
+		return matchesPrefixes(place.mWords, prefixes);
+	}
+
+	private static boolean matchesPrefixes(String[] words, String[] prefixes) {
+		for (String prefix : prefixes) {
+			boolean found = false;
+			for (String word : words) {
+				if (word.startsWith(prefix)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found)
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean hasType(FakePlace place, List<String> types) {
+		if (types == null || types.isEmpty())
+			return true;
+		for (String type : types) {
+			if (place.getTypes().contains(type))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean within(FakePlace place, LatLng location,
+			double radius) {
+		return place.distanceTo(location.getLatitude(), location
+				.getLongitude()) <= radius;
+	}
+
+	private static void sortByProminence(List<FakePlace> places) {
+		Collections.sort(places, new Comparator<FakePlace>() {
+			@Override
+			public int compare(FakePlace a, FakePlace b) {
+				return byProminence(a, b);
+			}
+		});
+	}
+
+	private static int byProminence(FakePlace a, FakePlace b) {
+		int c = Double.compare(b.getRating(), a.getRating());
+		return c != 0 ? c : a.getId().compareTo(b.getId());
+	}
+
+	private static <T> List<T> head(List<T> list, int limit) {
+		return list.size() <= limit ? list : new ArrayList<T>(list.subList(0,
+				limit));
+	}
+
+	/**
+	 * The great circle distance between two points, in meters.
+	 */
+	static double distance(double lat1, double lng1, double lat2, double lng2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLng = Math.toRadians(lng2 - lng1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+				+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+				* Math.sin(dLng / 2) * Math.sin(dLng / 2);
+		return 2 * EARTH_RADIUS_METERS
+				* Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+
+	/**
+	 * Lower case words, split on anything but letters and digits.
+	 */
+	static String[] words(String s) {
+		List<String> words = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i <= s.length(); i++) {
+			boolean letter = i < s.length()
+					&& Character.isLetterOrDigit(s.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				words.add(s.substring(start, i).toLowerCase(Locale.US));
+				start = -1;
+			}
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	private static String join(List<String> strings, String separator) {
+		StringBuilder sb = new StringBuilder();
+		for (String s : strings) {
+			if (sb.length() > 0)
+				sb.append(separator);
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	private static String hex(Random random, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = Character.forDigit(random.nextInt(16), 16);
+		return new String(chars);
+	}
+
+	static String token(Random random, int length) {
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		return new String(chars);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jjm.android.googleplaces.cache.DiskResponseCache.CachedResponse;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+public class DiskResponseCacheTest {
+	@Rule
+	public final TemporaryFolder mFolder = new TemporaryFolder();
+
+	private File mDirectory;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mDirectory = mFolder.newFolder("cache");
+	}
+
+	@Test
+	public void freshEntry() {
+		DiskResponseCache cache = new DiskResponseCache(mDirectory);
+		cache.put(request("harb"), body(10, 'a'));
+		CachedResponse cached = cache.get(request("harb"));
+		assertNotNull(cached);
+		assertTrue(cached.isFresh());
+		assertArrayEquals(body(10, 'a'), cached.getBody());
+		assertEquals(1, cache.getHitCount());
+		assertNull(cache.get(request("gold")));
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void staleEntry() throws Exception {
+		DiskResponseCache cache = new DiskResponseCache(mDirectory).setTtl(
+				AutocompleteRequest.class, 50, TimeUnit.MILLISECONDS)
+				.setMaxStale(1, TimeUnit.HOURS);
+		cache.put(request("harb"), body(10, 'a'));
+		Thread.sleep(100);
+		CachedResponse cached = cache.get(request("harb"));
+		assertNotNull(cached);
+		assertFalse(cached.isFresh());
+		assertEquals(1, cache.getStaleHitCount());
+
+		assertTrue(cache.beginRevalidation(cached));
+		assertFalse(cache.beginRevalidation(cache.get(request("harb"))));
+		cache.endRevalidation(cached);
+		assertTrue(cache.beginRevalidation(cached));
+	}
+
+	@Test
+	public void expiredEntry() throws Exception {
+		DiskResponseCache cache = new DiskResponseCache(mDirectory).setTtl(
+				AutocompleteRequest.class, 50, TimeUnit.MILLISECONDS)
+				.setMaxStale(50, TimeUnit.MILLISECONDS);
+		cache.put(request("harb"), body(10, 'a'));
+		Thread.sleep(150);
+		assertNull(cache.get(request("harb")));
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void leastRecentlyUsedIsTrimmed() {
+		// Room for two entries of 1000 bytes and their headers, not three
+		DiskResponseCache cache = new DiskResponseCache(mDirectory, 2500);
+		cache.put(request("aaaa"), body(1000, 'a'));
+		cache.put(request("bbbb"), body(1000, 'b'));
+		assertNotNull(cache.get(request("aaaa")));
+		cache.put(request("cccc"), body(1000, 'c'));
+
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(1, cache.getEvictionCount());
+		assertTrue(cache.getSize() <= 2500);
+		assertNull(cache.get(request("bbbb")));
+		assertNotNull(cache.get(request("aaaa")));
+		assertNotNull(cache.get(request("cccc")));
+	}
+
+	@Test
+	public void leftoverTempFilesAreDeletedOnLoad() throws Exception {
+		new DiskResponseCache(mDirectory).put(request("harb"), body(10, 'a'));
+		File temp = new File(mDirectory, "0123456789abcdef.7.tmp");
+		assertTrue(temp.createNewFile());
+
+		DiskResponseCache cache = new DiskResponseCache(mDirectory);
+		assertEquals(1, cache.getEntryCount());
+		assertFalse(temp.exists());
+		assertNotNull(cache.get(request("harb")));
+	}
+
+	private static AutocompleteRequest request(String input) {
+		return new AutocompleteRequest().setInput(input);
+	}
+
+	private static byte[] body(int length, char c) {
+		byte[] body = new byte[length];
+		Arrays.fill(body, (byte) c);
+		return body;
+	}
+}
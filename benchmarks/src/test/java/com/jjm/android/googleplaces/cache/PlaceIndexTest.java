@@ -0,0 +1,62 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.response.Prediction;
+
+public class PlaceIndexTest {
+	private static final JsonFactory JSON = new JacksonFactory();
+
+	@Test
+	public void placeAndItsPredictionAreBothKept() throws Exception {
+		PlaceIndex index = new PlaceIndex();
+		Place place = JSON.fromString("{\"id\": \"abc\", \"reference\": \"r1\","
+				+ " \"name\": \"Harbour Cafe\", \"vicinity\": \"1 Quay St\"}",
+				Place.class);
+		Prediction prediction = JSON.fromString("{\"id\": \"abc\","
+				+ " \"reference\": \"r2\","
+				+ " \"description\": \"Harbour Cafe, Quay St\","
+				+ " \"terms\": [{\"value\": \"Harbour Cafe\", \"offset\": 0}]}",
+				Prediction.class);
+		index.add(place);
+		index.add(prediction);
+		assertEquals(2, index.size());
+
+		List<Place> places = index.searchPlaces("harbour cafe", 5);
+		assertEquals(1, places.size());
+		assertEquals("abc", places.get(0).getId());
+		List<Prediction> predictions = index.searchPredictions("harb", 5);
+		assertEquals(1, predictions.size());
+		assertEquals("abc", predictions.get(0).getId());
+
+		// Adding either again still replaces only its own kind
+		index.add(prediction);
+		index.add(place);
+		assertEquals(2, index.size());
+		assertEquals(1, index.searchPlaces("harbour cafe", 5).size());
+		assertEquals(1, index.searchPredictions("harb", 5).size());
+	}
+}
@@ -0,0 +1,131 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.response.Prediction;
+
+public class PredictionTrieTest {
+	private static final JsonFactory JSON = new JacksonFactory();
+
+	@Test
+	public void keysThatBranchPartWayAlongAnEdgeAreSplit() throws Exception {
+		PredictionTrie trie = new PredictionTrie();
+		trie.addAll(Arrays.asList(prediction("1", "Harbour View"),
+				prediction("2", "Harbour Street"), prediction("3", "Harb")));
+		assertEquals(3, trie.find("harb", 10).size());
+		assertEquals(2, trie.find("harbour", 10).size());
+		assertIds(trie.find("harbour v", 10), "1");
+		assertIds(trie.find("Harbour  STREET", 10), "2");
+		assertIds(trie.find("harbour x", 10));
+		assertIds(trie.find("harbor", 10));
+	}
+
+	@Test
+	public void evictionMergesTheEdgesLeftBehind() throws Exception {
+		PredictionTrie trie = new PredictionTrie(8);
+		trie.addAll(Arrays.asList(prediction("street", "Harbour Street")));
+		trie.onChosen(prediction("view", "Harbour View"));
+		for (int i = 0; i < 7; i++)
+			trie.addAll(Arrays.asList(prediction("other" + i, "Other " + i)));
+		// Evicted down to seven, the oldest single hits first
+		assertEquals(7, trie.size());
+		assertIds(trie.find("harbour s", 10));
+		assertIds(trie.find("harbour", 10), "view");
+		assertIds(trie.find("harbour view", 10), "view");
+
+		// The merged edge splits again
+		trie.addAll(Arrays.asList(prediction("street", "Harbour Street")));
+		assertIds(trie.find("harbour s", 10), "street");
+		assertEquals(2, trie.find("harbour", 10).size());
+	}
+
+	@Test
+	public void predictionFoundByManyKeysIsReturnedOnce() throws Exception {
+		PredictionTrie trie = new PredictionTrie();
+		// Found under "s" by its description and by its second term
+		trie.addAll(Arrays.asList(prediction("1", "Surry Hills, Sydney",
+				"Surry Hills", "Sydney")));
+		assertIds(trie.find("s", 10), "1");
+		assertIds(trie.find("sydney", 10), "1");
+		assertIds(trie.find("surry hills s", 10), "1");
+	}
+
+	@Test
+	public void bestScoringPredictionsComeFirst() throws Exception {
+		PredictionTrie trie = new PredictionTrie();
+		Prediction a = prediction("a", "Cafe A");
+		Prediction b = prediction("b", "Cafe B");
+		Prediction c = prediction("c", "Cafe C");
+		trie.addAll(Arrays.asList(a, b, c));
+		trie.onChosen(b);
+		assertIds(trie.find("cafe", 10), "b", "c", "a");
+		assertIds(trie.find("cafe", 1), "b");
+
+		trie.onChosen(a);
+		trie.onChosen(a);
+		assertIds(trie.find("cafe", 10), "a", "b", "c");
+	}
+
+	@Test
+	public void readdedPredictionIsFoundByItsNewDescription() throws Exception {
+		PredictionTrie trie = new PredictionTrie();
+		trie.addAll(Arrays.asList(prediction("1", "Old Name, Sydney",
+				"Old Name", "Sydney")));
+		trie.addAll(Arrays.asList(prediction("1", "New Name, Sydney",
+				"New Name", "Sydney")));
+		assertEquals(1, trie.size());
+		assertIds(trie.find("old", 10));
+		assertIds(trie.find("new name", 10), "1");
+		assertIds(trie.find("sydney", 10), "1");
+		assertEquals("New Name, Sydney", trie.find("new", 1).get(0)
+				.getDescription());
+	}
+
+	private static void assertIds(List<Prediction> found, String... ids) {
+		assertEquals(ids.length, found.size());
+		for (int i = 0; i < ids.length; i++)
+			assertEquals(ids[i], found.get(i).getId());
+	}
+
+	private static Prediction prediction(String id, String description,
+			String... terms) throws Exception {
+		StringBuilder json = new StringBuilder("{\"id\": \"").append(id)
+				.append("\", \"description\": \"").append(description)
+				.append("\", \"terms\": [");
+		int offset = 0;
+		for (int i = 0; i < terms.length; i++) {
+			if (i > 0)
+				json.append(", ");
+			offset = description.indexOf(terms[i], offset);
+			assertTrue(offset >= 0);
+			json.append("{\"value\": \"").append(terms[i])
+					.append("\", \"offset\": ").append(offset).append('}');
+		}
+		json.append("]}");
+		return JSON.fromString(json.toString(), Prediction.class);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.Latency;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * The limit backs off while the server throttles with
+ * <code>OVER_QUERY_LIMIT</code>, and grows back once it stops.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+	private static final int THREADS = 32;
+	private static final int INITIAL_LIMIT = 16;
+
+	private FakePlacesServer mServer;
+	private AdaptiveConcurrencyLimiter mLimiter;
+	private PlacesClient mClient;
+	private ExecutorService mCallers;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mServer = new FakePlacesServer().setLatency(Latency.fixed(20)).start();
+		// Only throttling should cut the limit, not the latency of a busy
+		// server in the same process
+		mLimiter = new AdaptiveConcurrencyLimiter(INITIAL_LIMIT, 1, 64)
+				.setLatencyTolerance(1000);
+		mClient = new PlacesClient(new PlacesTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl())
+				.setRequestCoalescer(null)
+				.setConcurrencyLimiter(mLimiter);
+		mCallers = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mCallers.shutdownNow();
+		mServer.close();
+	}
+
+	@Test
+	public void backsOffWhenThrottledAndRecovers() throws Exception {
+		mServer.setQueriesPerSecond(20, 5);
+		load(2000);
+		double throttled = mLimiter.getLimit();
+		assertTrue("cut count " + mLimiter.getCutCount(),
+				mLimiter.getCutCount() > 0);
+		assertTrue("limit " + throttled, throttled <= INITIAL_LIMIT / 2);
+
+		mServer.setQueriesPerSecond(0, 1);
+		load(2000);
+		double recovered = mLimiter.getLimit();
+		assertTrue("limit " + throttled + " -> " + recovered,
+				recovered >= throttled + 4);
+	}
+
+	/**
+	 * Send requests from every thread for a while.
+	 */
+	private void load(long millis) throws Exception {
+		final long end = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(millis);
+		final AtomicInteger count = new AtomicInteger();
+		List<Future<?>> callers = new ArrayList<Future<?>>();
+		for (int i = 0; i < THREADS; i++) {
+			callers.add(mCallers.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					while (System.nanoTime() - end < 0) {
+						new AutocompleteRequest().setInput(
+								"harb" + count.incrementAndGet()).execute(
+								mClient);
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<?> caller : callers)
+			caller.get(millis + 10000, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * Waiting for a permit is bounded, and never waits for the daily quota.  The
+ * permit is for the key the request is sent with.
+ */
+public class ApiKeyRateLimiterTest {
+	@Test
+	public void acquireFailsFastOnceTheDailyQuotaIsUsed() throws Exception {
+		ApiKeyRateLimiter limiter = new ApiKeyRateLimiter(1000, 10, 2);
+		limiter.acquire("key");
+		limiter.acquire("key");
+		long start = System.nanoTime();
+		try {
+			limiter.acquire("key");
+			fail("acquired past the daily quota");
+		} catch (RateLimitExceededException e) {
+			// Expected
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void acquireAsyncFailsFastOnceTheDailyQuotaIsUsed()
+			throws Exception {
+		ApiKeyRateLimiter limiter = new ApiKeyRateLimiter(1000, 10, 1);
+		limiter.acquireAsync("key").get(1, TimeUnit.SECONDS);
+		try {
+			limiter.acquireAsync("key").get(1, TimeUnit.SECONDS);
+			fail("acquired past the daily quota");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RateLimitExceededException);
+		}
+	}
+
+	@Test
+	public void acquireWaitsNoLongerThanTheMaximum() throws Exception {
+		ApiKeyRateLimiter limiter = new ApiKeyRateLimiter(1, 1, 0)
+				.setMaxWait(100, TimeUnit.MILLISECONDS);
+		limiter.acquire("key");
+		try {
+			// The next token is a second away
+			limiter.acquire("key");
+			fail("waited past the maximum");
+		} catch (RateLimitExceededException e) {
+			// Expected
+		}
+
+		limiter.setMaxWait(2, TimeUnit.SECONDS);
+		long start = System.nanoTime();
+		limiter.acquire("key");
+		assertTrue(System.nanoTime() - start > TimeUnit.MILLISECONDS
+				.toNanos(500));
+	}
+
+	@Test
+	public void asyncPermitIsForTheKeyTheRequestIsSentWith() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "spent-key-0001");
+		AutocompleteRequest request = new AutocompleteRequest();
+		request.setInput("harb");
+		// The request's key is quarantined, so it will be sent with the other
+		ApiKeys.addPooledApiKey(ApiKeys.ID_GOOGLE_PLACES, "fresh-key-0002");
+		ApiKeys.reportStatus("spent-key-0001", Status.OVER_QUERY_LIMIT);
+
+		ApiKeyRateLimiter limiter = new ApiKeyRateLimiter(1000, 10, 0)
+				.setLimits("spent-key-0001", 1000, 10, 1)
+				.setMode(ApiKeyRateLimiter.Mode.ASYNC);
+		limiter.acquire("spent-key-0001");
+		FakePlacesServer server = new FakePlacesServer().start();
+		try {
+			PlacesClient client = new PlacesClient(new PlacesTransport(),
+					new JacksonFactory()).setRootUrl(server.getRootUrl())
+					.setRateLimiter(limiter);
+			request.executeAsync(client).get(10, TimeUnit.SECONDS);
+			assertEquals(2, limiter.getAcquiredCount());
+			assertEquals(0, limiter.getRejectedCount());
+		} finally {
+			server.close();
+			ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		}
+	}
+
+	@Test
+	public void messageDoesNotContainTheKey() {
+		String message = new RateLimitExceededException(
+				"AIzaSyExampleExampleExample1234").getMessage();
+		assertFalse(message, message.contains("AIzaSyExample"));
+		assertTrue(message, message.contains("1234"));
+	}
+}
@@ -0,0 +1,82 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.cache.PlaceCache;
+import com.jjm.android.googleplaces.request.DetailsRequest.Result;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.FakePlacesServer.Endpoint;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * Bulk details requests go through the client's place cache.
+ */
+public class BulkDetailsTest {
+	private FakePlacesServer mServer;
+	private PlacesClient mClient;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mServer = new FakePlacesServer().start();
+		mClient = new PlacesClient(new PlacesTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl()).setPlaceCache(
+						new PlaceCache());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mServer.close();
+	}
+
+	@Test
+	public void cachedDetailsAreNotRequestedAgain() throws Exception {
+		List<Place> places = new TextSearchRequest().setQuery("restaurant")
+				.execute(mClient).getResults();
+		assertTrue(places.size() > 1);
+
+		assertEquals(places.size(), fetchAll(places));
+		long requests = mServer.getRequestCount(Endpoint.DETAILS);
+		assertEquals(places.size(), requests);
+
+		assertEquals(places.size(), fetchAll(places));
+		assertEquals(requests, mServer.getRequestCount(Endpoint.DETAILS));
+	}
+
+	/**
+	 * @return the number of successful results.
+	 */
+	private int fetchAll(List<Place> places) {
+		int successful = 0;
+		for (Result result : DetailsRequest.getAll(places, 4, mClient)) {
+			if (result.isSuccessful())
+				successful++;
+		}
+		return successful;
+	}
+}
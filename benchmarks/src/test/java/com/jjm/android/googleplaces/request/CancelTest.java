@@ -0,0 +1,73 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.Latency;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * Cancelling an asynchronous request releases its thread before the
+ * response headers arrive.
+ */
+public class CancelTest {
+	private FakePlacesServer mServer;
+	private PlacesClient mClient;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mServer = new FakePlacesServer().start();
+		mClient = new PlacesClient(new PlacesTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl())
+				.setExecutor(Executors.newSingleThreadExecutor());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mServer.close();
+	}
+
+	@Test
+	public void cancelReleasesTheThreadBeforeHeaders() throws Exception {
+		mServer.setLatency(Latency.fixed(3000));
+		ListenableFuture<AutocompleteResponse> slow = new AutocompleteRequest()
+				.setInput("harb").executeAsync(mClient);
+		Thread.sleep(100);
+		slow.cancel(true);
+
+		// The only thread is free for the next request at once
+		mServer.setLatency(Latency.none());
+		long start = System.nanoTime();
+		new AutocompleteRequest().setInput("gold").executeAsync(mClient)
+				.get(10, TimeUnit.SECONDS);
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("next request took " + millis + "ms", millis < 1000);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.Latency;
+import com.jjm.android.googleplaces.testing.PlaceCorpus;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * A hedged request answers shortly after the hedge delay even when the
+ * original exchange hits the latency tail.
+ */
+public class HedgingTest {
+	private static final int REQUESTS = 200;
+	private static final long HEDGE_DELAY_MILLIS = 100;
+
+	private FakePlacesServer mServer;
+	private PlacesClient mClient;
+	private HedgingPolicy mPolicy;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mServer = new FakePlacesServer(PlaceCorpus.createDefault(),
+				new Random(42)).setLatency(
+				Latency.fixed(20).withTail(0.03, Latency.fixed(2000))).start();
+		mPolicy = HedgingPolicy.fixedDelay(HEDGE_DELAY_MILLIS).setMaxHedgeRate(1);
+		// A NetHttpTransport exchange can't be aborted before its headers
+		// arrive, so the caller must not be the one waiting on it
+		mClient = new PlacesClient(new NetHttpTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl()).setHedgingPolicy(mPolicy);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mServer.close();
+	}
+
+	@Test
+	public void hedgingCutsTheTail() throws Exception {
+		long[] millis = new long[REQUESTS];
+		for (int i = 0; i < REQUESTS; i++) {
+			long start = System.nanoTime();
+			new AutocompleteRequest().setInput("harb" + i).execute(mClient);
+			millis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+					- start);
+		}
+		Arrays.sort(millis);
+		long p99 = millis[REQUESTS * 99 / 100 - 1];
+		assertTrue("hedges won " + mPolicy.getHedgeWinCount(),
+				mPolicy.getHedgeWinCount() > 0);
+		assertTrue("p99 " + p99 + "ms", p99 < HEDGE_DELAY_MILLIS + 200);
+	}
+}
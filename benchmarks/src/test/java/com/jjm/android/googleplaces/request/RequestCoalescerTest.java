@@ -0,0 +1,119 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.FakePlacesServer.Endpoint;
+import com.jjm.android.googleplaces.testing.Latency;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * Identical requests made at once reach the server once.
+ */
+public class RequestCoalescerTest {
+	private static final int CALLERS = 16;
+
+	private FakePlacesServer mServer;
+	private PlacesClient mClient;
+	private ExecutorService mCallers;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		// Long enough for every caller to arrive while the first is waiting
+		mServer = new FakePlacesServer().setLatency(Latency.fixed(500))
+				.start();
+		mClient = new PlacesClient(new NetHttpTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl());
+		mCallers = Executors.newFixedThreadPool(CALLERS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mCallers.shutdownNow();
+		mServer.close();
+	}
+
+	@Test
+	public void parallelExecutesShareOneRequest() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<AutocompleteResponse>> results = new ArrayList<Future<AutocompleteResponse>>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(mCallers.submit(new Callable<AutocompleteResponse>() {
+				@Override
+				public AutocompleteResponse call() throws Exception {
+					start.await();
+					return new AutocompleteRequest().setInput("harb").execute(
+							mClient);
+				}
+			}));
+		}
+		start.countDown();
+
+		AutocompleteResponse first = results.get(0).get(10, TimeUnit.SECONDS);
+		for (Future<AutocompleteResponse> result : results)
+			assertSame(first, result.get(10, TimeUnit.SECONDS));
+		assertEquals(1, mServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		assertEquals(CALLERS, mClient.getRequestCoalescer().getRequestCount());
+		assertEquals(CALLERS - 1, mClient.getRequestCoalescer()
+				.getCoalescedCount());
+	}
+
+	@Test
+	public void parallelExecuteAsyncsShareOneRequest() throws Exception {
+		List<ListenableFuture<AutocompleteResponse>> results = new ArrayList<ListenableFuture<AutocompleteResponse>>();
+		for (int i = 0; i < CALLERS; i++)
+			results.add(new AutocompleteRequest().setInput("harb")
+					.executeAsync(mClient));
+
+		AutocompleteResponse first = results.get(0).get(10, TimeUnit.SECONDS);
+		for (ListenableFuture<AutocompleteResponse> result : results)
+			assertSame(first, result.get(10, TimeUnit.SECONDS));
+		assertEquals(1, mServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+	}
+
+	@Test
+	public void differentRequestsAreNotShared() throws Exception {
+		ListenableFuture<AutocompleteResponse> a = new AutocompleteRequest()
+				.setInput("harb").executeAsync(mClient);
+		ListenableFuture<AutocompleteResponse> b = new AutocompleteRequest()
+				.setInput("gold").executeAsync(mClient);
+		a.get(10, TimeUnit.SECONDS);
+		b.get(10, TimeUnit.SECONDS);
+		assertEquals(2, mServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+	}
+}
@@ -0,0 +1,103 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.cache.DiskResponseCache;
+import com.jjm.android.googleplaces.response.SearchResponse;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.FakePlacesServer.Endpoint;
+import com.jjm.android.googleplaces.testing.Latency;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * How the client stores responses in its response cache.
+ */
+public class ResponseCacheTest {
+	@Rule
+	public final TemporaryFolder mFolder = new TemporaryFolder();
+
+	private FakePlacesServer mServer;
+	private DiskResponseCache mCache;
+	private PlacesClient mClient;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mServer = new FakePlacesServer().start();
+		mCache = new DiskResponseCache(mFolder.getRoot());
+		mClient = new PlacesClient(new PlacesTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl()).setResponseCache(mCache);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mServer.close();
+	}
+
+	@Test
+	public void revalidationIsStoredUnderTheRequestItWasFor()
+			throws Exception {
+		mCache.setTtl(AutocompleteRequest.class, 0, TimeUnit.MILLISECONDS);
+		AutocompleteRequest request = new AutocompleteRequest();
+		request.setInput("harb").execute(mClient);
+
+		// Answered stale, and refreshed slowly in the background while the
+		// caller reuses the request
+		mServer.setLatency(Latency.fixed(300));
+		request.execute(mClient);
+		request.setInput("gold");
+		Thread.sleep(1000);
+
+		assertEquals(2, mServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		assertEquals(1, mCache.getEntryCount());
+		assertNull(mCache.get(new AutocompleteRequest().setInput("gold")));
+		assertNotNull(mCache.get(new AutocompleteRequest().setInput("harb")));
+	}
+
+	@Test
+	public void searchWithPageTokenIsNotStored() throws Exception {
+		SearchResponse page = new TextSearchRequest().setQuery("restaurant")
+				.execute(mClient);
+		assertNotNull(page.getNextPageToken());
+		assertEquals(0, mCache.getEntryCount());
+	}
+
+	@Test
+	public void cloneIsIndependent() {
+		TextSearchRequest request = new TextSearchRequest();
+		request.setQuery("restaurant").setPageToken("one");
+		PlacesRequest<SearchResponse> copy = request.clone();
+		String url = request.getCanonicalUrl();
+		request.setPageToken("two");
+		assertEquals(url, copy.getCanonicalUrl());
+		assertTrue(copy instanceof TextSearchRequest);
+	}
+}
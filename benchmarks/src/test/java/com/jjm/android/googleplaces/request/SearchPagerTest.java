@@ -0,0 +1,96 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.response.PlacesResponse.BadStatusException;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+public class SearchPagerTest {
+	private FakePlacesServer mServer;
+	private PlacesClient mClient;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mServer = new FakePlacesServer().setPageTokenDelay(500).start();
+		mClient = new PlacesClient(new PlacesTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mServer.close();
+	}
+
+	@Test
+	public void closedPagerEndsAfterTheCurrentPage() throws Exception {
+		SearchPager pager = new SearchPager(
+				new TextSearchRequest().setQuery("restaurant"), mClient);
+		assertTrue(pager.hasNext());
+		pager.next();
+		assertTrue("only one page of results", pager.hasNextPage());
+		pager.close();
+		assertFalse(pager.hasNextPage());
+
+		int rest = 0;
+		while (pager.hasNext()) {
+			pager.next();
+			rest++;
+		}
+		assertTrue(rest < FakePlacesServer.PAGE_SIZE);
+		assertFalse(pager.hasNext());
+	}
+
+	@Test
+	public void pagesThroughEveryPage() throws Exception {
+		// Each token becomes valid half a second after its page arrives
+		SearchPager pager = new SearchPager(
+				new TextSearchRequest().setQuery("restaurant"), mClient);
+		int count = 0;
+		while (pager.hasNext()) {
+			pager.next();
+			count++;
+		}
+		assertEquals(3, pager.getPageCount());
+		assertEquals(3 * FakePlacesServer.PAGE_SIZE, count);
+		assertFalse(pager.hasNextPage());
+	}
+
+	@Test
+	public void badStatusEndsThePager() throws Exception {
+		SearchPager pager = new SearchPager(
+				new TextSearchRequest().setQuery(""), mClient);
+		try {
+			pager.hasNext();
+			fail("no exception for INVALID_REQUEST");
+		} catch (SearchPager.PageException e) {
+			assertTrue(e.getCause() instanceof BadStatusException);
+		}
+		assertFalse(pager.hasNext());
+	}
+}
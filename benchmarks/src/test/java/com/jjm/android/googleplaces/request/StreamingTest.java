@@ -0,0 +1,110 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.jjm.android.googleplaces.cache.DiskResponseCache;
+import com.jjm.android.googleplaces.cache.PlaceIndex;
+import com.jjm.android.googleplaces.json.ElementListener;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.Prediction;
+import com.jjm.android.googleplaces.testing.FakePlacesServer;
+import com.jjm.android.googleplaces.testing.FakePlacesServer.Endpoint;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * Streaming requests go through the same response cache and place index as
+ * the others.
+ */
+public class StreamingTest {
+	@Rule
+	public final TemporaryFolder mFolder = new TemporaryFolder();
+
+	private FakePlacesServer mServer;
+	private PlacesClient mClient;
+
+	@Before
+	public void setUp() throws Exception {
+		ApiKeys.addApiKey(ApiKeys.ID_GOOGLE_PLACES, "test-key");
+		mServer = new FakePlacesServer().start();
+		mClient = new PlacesClient(new PlacesTransport(), new JacksonFactory())
+				.setRootUrl(mServer.getRootUrl()).setResponseCache(
+						new DiskResponseCache(mFolder.getRoot()));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mServer.close();
+	}
+
+	@Test
+	public void cachedResponseIsReplayed() throws Exception {
+		List<Prediction> streamed = new ArrayList<Prediction>();
+		AutocompleteResponse first = stream("harb", streamed);
+		assertTrue(first.getPredictions().size() > 0);
+		assertEquals(first.getPredictions().size(), streamed.size());
+
+		List<Prediction> replayed = new ArrayList<Prediction>();
+		AutocompleteResponse second = stream("harb", replayed);
+		assertEquals(1, mServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		assertEquals(second.getPredictions().size(), replayed.size());
+		for (int i = 0; i < streamed.size(); i++) {
+			assertEquals(streamed.get(i).getDescription(), replayed.get(i)
+					.getDescription());
+		}
+	}
+
+	@Test
+	public void failedRequestIsAnsweredFromTheIndex() throws Exception {
+		PlaceIndex index = new PlaceIndex();
+		mClient.setResponseCache(null).setPlaceIndex(index);
+		List<Prediction> streamed = new ArrayList<Prediction>();
+		stream("harb", streamed);
+		assertTrue(index.size() > 0);
+
+		mServer.setHttpErrorRate(1);
+		List<Prediction> replayed = new ArrayList<Prediction>();
+		AutocompleteResponse offline = stream("harb", replayed);
+		assertTrue(offline.isOffline());
+		assertTrue(replayed.size() > 0);
+		assertEquals(offline.getPredictions().size(), replayed.size());
+	}
+
+	private AutocompleteResponse stream(String input,
+			final List<Prediction> elements) throws Exception {
+		return new AutocompleteRequest().setInput(input).execute(mClient,
+				new ElementListener<Prediction>() {
+					@Override
+					public void onElement(Prediction prediction, int index) {
+						assertEquals(elements.size(), index);
+						elements.add(prediction);
+					}
+				});
+	}
+}
@@ -0,0 +1,47 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+
+public class ApiKeyPoolTest {
+	@Test
+	public void burstOfOverQueryLimitIsOneStrike() throws Exception {
+		ApiKeyPool pool = new ApiKeyPool().setQuarantine(50, 50).add("key", 1);
+		// If every response counted, the quarantine would be 50ms << 9
+		for (int i = 0; i < 10; i++)
+			pool.reportStatus("key", Status.OVER_QUERY_LIMIT);
+		assertTrue(pool.isQuarantined("key"));
+		Thread.sleep(200);
+		assertFalse(pool.isQuarantined("key"));
+	}
+
+	@Test
+	public void requestDeniedDoesNotShortenQuarantine() throws Exception {
+		ApiKeyPool pool = new ApiKeyPool().setQuarantine(60 * 1000, 10).add(
+				"key", 1);
+		pool.reportStatus("key", Status.OVER_QUERY_LIMIT);
+		pool.reportStatus("key", Status.REQUEST_DENIED);
+		Thread.sleep(100);
+		assertTrue(pool.isQuarantined("key"));
+	}
+}
@@ -0,0 +1,43 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ApiKeysTest {
+	@Test
+	public void addApiKeyReplacesTheKey() {
+		ApiKeys.addApiKey("replaced", "old");
+		ApiKeys.addApiKey("replaced", "new");
+		assertEquals(Collections.singletonMap("new", 1),
+				ApiKeys.getKeyPool("replaced").getKeys());
+		assertEquals("new", ApiKeys.getApiKey("replaced"));
+	}
+
+	@Test
+	public void addPooledApiKeyKeepsTheOtherKeys() {
+		ApiKeys.addApiKey("pooled", "first");
+		ApiKeys.addPooledApiKey("pooled", "second", 2);
+		assertEquals(2, ApiKeys.getKeyPool("pooled").getKeys().size());
+		assertEquals(Integer.valueOf(2), 
+				ApiKeys.getKeyPool("pooled").getKeys().get("second"));
+	}
+}
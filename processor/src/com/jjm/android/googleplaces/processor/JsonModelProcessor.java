@@ -0,0 +1,401 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * <p>
+ * Generates a <code>JsonModelParser</code> for every class with
+ * <code>com.google.api.client.util.Key</code> fields, so that responses can
+ * be parsed without reflection. The parser for <code>com.example.Foo</code>
+ * is <code>com.example.Foo_JsonParser</code>, and is found at runtime by
+ * <code>JsonModelParser.forClass</code>.
+ * </p>
+ *
+ * <p>
+ * The generated code sets fields directly, so they must not be private.
+ * Classes with private <code>Key</code> fields are skipped with a note, and
+ * keep being parsed by reflection. Request classes are skipped too, since
+ * they are never parsed.
+ * </p>
+ *
+ * <p>
+ * Classes that can't be instantiated, such as abstract classes, get no
+ * parser of their own. Their <code>Key</code> fields are parsed by the
+ * parsers of their subclasses instead.
+ * </p>
+ */
+public class JsonModelProcessor extends AbstractProcessor {
+	private static final String KEY = "com.google.api.client.util.Key";
+	private static final String KEY_DEFAULT = "##default";
+	private static final String BASE = "com.jjm.android.googleplaces.json.JsonModelParser";
+	private static final String[] SKIPPED_SUPERCLASSES = {
+			"com.jjm.android.googleplaces.request.PlacesRequest",
+			"com.google.api.client.http.GenericUrl" };
+
+	private static final class KeyField {
+		final VariableElement mField;
+		final String mName;
+		final TypeElement mOwner;
+
+		KeyField(VariableElement field, String name, TypeElement owner) {
+			mField = field;
+			mName = name;
+			mOwner = owner;
+		}
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(KEY);
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment env) {
+		TypeElement key = processingEnv.getElementUtils().getTypeElement(KEY);
+		if (key == null)
+			return false;
+		Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+		for (Element e : env.getElementsAnnotatedWith(key)) {
+			if (e.getKind() == ElementKind.FIELD
+					&& e.getEnclosingElement() instanceof TypeElement)
+				types.add((TypeElement) e.getEnclosingElement());
+		}
+		for (TypeElement type : types) {
+			if (canGenerate(type)) {
+				try {
+					generate(type);
+				} catch (IOException e) {
+					processingEnv.getMessager().printMessage(
+							Diagnostic.Kind.ERROR,
+							"Could not write parser: " + e, type);
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean canGenerate(TypeElement type) {
+		if (type.getKind() != ElementKind.CLASS
+				|| type.getModifiers().contains(Modifier.PRIVATE))
+			return false;
+		if (type.getNestingKind() == NestingKind.MEMBER
+				&& !type.getModifiers().contains(Modifier.STATIC))
+			return false;
+		if (type.getNestingKind() == NestingKind.LOCAL
+				|| type.getNestingKind() == NestingKind.ANONYMOUS)
+			return false;
+		for (TypeElement t = type; t != null; t = superclass(t)) {
+			for (String skipped : SKIPPED_SUPERCLASSES) {
+				if (t.getQualifiedName().contentEquals(skipped))
+					return false;
+			}
+		}
+		if (!isInstantiable(type))
+			return false;
+		PackageElement pkg = packageOf(type);
+		for (KeyField field : parsedFields(type)) {
+			if (field.mField.getModifiers().contains(Modifier.PRIVATE)
+					|| field.mField.getModifiers().contains(Modifier.FINAL)) {
+				processingEnv.getMessager().printMessage(
+						Diagnostic.Kind.NOTE,
+						type + " has private or final @Key fields, it will be"
+								+ " parsed by reflection", field.mField);
+				return false;
+			}
+			if (!field.mField.getModifiers().contains(Modifier.PUBLIC)
+					&& !packageOf(field.mOwner).equals(pkg)) {
+				processingEnv.getMessager().printMessage(
+						Diagnostic.Kind.NOTE,
+						type + " inherits @Key fields from another package,"
+								+ " it will be parsed by reflection",
+						field.mField);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		String pkg = packageOf(type).getQualifiedName().toString();
+		String simpleName = binaryName(type).substring(
+				pkg.length() == 0 ? 0 : pkg.length() + 1).replace('$', '_')
+				+ "_JsonParser";
+		String typeName = type.getQualifiedName().toString();
+		TypeElement superType = parserSuperclass(type);
+		List<KeyField> fields = parsedFields(type);
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				pkg.length() == 0 ? simpleName : pkg + "." + simpleName, type);
+		Writer writer = file.openWriter();
+		PrintWriter out = new PrintWriter(writer);
+		try {
+			if (pkg.length() != 0)
+				out.println("package " + pkg + ";");
+			out.println();
+			out.println("/**");
+			out.println(" * Generated by " + getClass().getName()
+					+ ", do not edit.");
+			out.println(" */");
+			out.println("public final class " + simpleName + " extends "
+					+ BASE + "<" + typeName + "> {");
+			List<String> typeConstants = new ArrayList<String>();
+			StringBuilder body = new StringBuilder();
+			for (int i = 0; i < fields.size(); i++) {
+				KeyField field = fields.get(i);
+				String reader = reader(field.mField.asType(), field.mOwner
+						.getQualifiedName().toString(), field.mField
+						.getSimpleName().toString(), typeConstants);
+				body.append("\t\tif (\"").append(escape(field.mName))
+						.append("\".equals(name)) {\n");
+				body.append("\t\t\ttarget.").append(field.mField.getSimpleName())
+						.append(" = ").append(reader).append(";\n");
+				body.append("\t\t\treturn true;\n");
+				body.append("\t\t}\n");
+			}
+			for (String constant : typeConstants)
+				out.println(constant);
+			out.println();
+			out.println("\tpublic " + simpleName + "() {");
+			out.println("\t\tsuper("
+					+ (superType != null ? erasure(superType.asType())
+							+ ".class" : "null") + ");");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tprotected " + typeName + " newInstance() {");
+			out.println("\t\treturn new " + typeName + "();");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\t@SuppressWarnings(\"unchecked\")");
+			out.println("\tprotected boolean parseField(Object object, String name,");
+			out.println("\t\t\tcom.google.api.client.json.JsonParser parser)");
+			out.println("\t\t\tthrows java.io.IOException {");
+			if (!fields.isEmpty())
+				out.println("\t\t" + typeName + " target = (" + typeName
+						+ ") object;");
+			out.print(body);
+			out.println("\t\treturn parseInherited(object, name, parser);");
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The expression that reads a value of the given type.
+	 */
+	private String reader(TypeMirror type, String owner, String field,
+			List<String> typeConstants) {
+		switch (type.getKind()) {
+		case INT:
+			return "readInt(parser)";
+		case LONG:
+			return "readLong(parser)";
+		case DOUBLE:
+			return "readDouble(parser)";
+		case FLOAT:
+			return "readFloat(parser)";
+		case BOOLEAN:
+			return "readBoolean(parser)";
+		default:
+			break;
+		}
+		if (type.getKind() == TypeKind.DECLARED) {
+			DeclaredType declared = (DeclaredType) type;
+			TypeElement element = (TypeElement) declared.asElement();
+			String name = element.getQualifiedName().toString();
+			if (name.equals("java.lang.String"))
+				return "readString(parser)";
+			if (name.equals("java.lang.Integer"))
+				return "Integer.valueOf(readInt(parser))";
+			if (name.equals("java.lang.Long"))
+				return "Long.valueOf(readLong(parser))";
+			if (name.equals("java.lang.Double"))
+				return "Double.valueOf(readDouble(parser))";
+			if (name.equals("java.lang.Float"))
+				return "Float.valueOf(readFloat(parser))";
+			if (name.equals("java.lang.Boolean"))
+				return "Boolean.valueOf(readBoolean(parser))";
+			if (element.getKind() == ElementKind.ENUM)
+				return "readEnum(parser, " + name + ".class)";
+			if ((name.equals("java.util.List") || name
+					.equals("java.util.Collection"))
+					&& declared.getTypeArguments().size() == 1) {
+				TypeMirror arg = declared.getTypeArguments().get(0);
+				if (arg.getKind() == TypeKind.DECLARED) {
+					TypeElement argElement = (TypeElement) ((DeclaredType) arg)
+							.asElement();
+					if (argElement.getQualifiedName().contentEquals(
+							"java.lang.String"))
+						return "readStringList(parser)";
+					if (((DeclaredType) arg).getTypeArguments().isEmpty()
+							&& isModel(argElement))
+						return "readObjectList(parser, "
+								+ argElement.getQualifiedName() + ".class)";
+				}
+			}
+			if (declared.getTypeArguments().isEmpty() && isModel(element))
+				return "readObject(parser, " + name + ".class)";
+		}
+		String constant = "TYPE_" + field;
+		typeConstants.add("\tprivate static final java.lang.reflect.Type "
+				+ constant + " = fieldType(" + owner + ".class, \"" + field
+				+ "\");");
+		return "(" + type + ") readValue(parser, " + constant + ")";
+	}
+
+	/**
+	 * Does the class, or one of its superclasses, have {@link #KEY} fields?
+	 */
+	private boolean isModel(TypeElement type) {
+		for (TypeElement t = type; t != null; t = superclass(t)) {
+			if (!keyFields(t).isEmpty())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The nearest superclass with its own parser, which is the nearest
+	 * instantiable superclass with {@link #KEY} fields.
+	 */
+	private TypeElement parserSuperclass(TypeElement type) {
+		for (TypeElement t = superclass(type); t != null; t = superclass(t)) {
+			if (isInstantiable(t) && !keyFields(t).isEmpty())
+				return t;
+		}
+		return null;
+	}
+
+	/**
+	 * The fields a parser for the class sets itself: its own, and those of
+	 * the superclasses below {@link #parserSuperclass(TypeElement)}, which
+	 * have no parser of their own.
+	 */
+	private List<KeyField> parsedFields(TypeElement type) {
+		List<KeyField> fields = keyFields(type);
+		TypeElement stop = parserSuperclass(type);
+		for (TypeElement t = superclass(type); t != null && !t.equals(stop); t = superclass(t))
+			fields.addAll(keyFields(t));
+		return fields;
+	}
+
+	private List<KeyField> keyFields(TypeElement type) {
+		List<KeyField> fields = new ArrayList<KeyField>();
+		for (VariableElement field : ElementFilter.fieldsIn(type
+				.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC))
+				continue;
+			for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+				TypeElement annotationType = (TypeElement) annotation
+						.getAnnotationType().asElement();
+				if (!annotationType.getQualifiedName().contentEquals(KEY))
+					continue;
+				String name = field.getSimpleName().toString();
+				for (ExecutableElement method : annotation
+						.getElementValues().keySet()) {
+					if (method.getSimpleName().contentEquals("value")) {
+						AnnotationValue value = annotation.getElementValues()
+								.get(method);
+						if (!KEY_DEFAULT.equals(value.getValue()))
+							name = value.getValue().toString();
+					}
+				}
+				fields.add(new KeyField(field, name, type));
+			}
+		}
+		return fields;
+	}
+
+	private static boolean isInstantiable(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.ABSTRACT))
+			return false;
+		List<ExecutableElement> constructors = ElementFilter
+				.constructorsIn(type.getEnclosedElements());
+		for (ExecutableElement constructor : constructors) {
+			if (constructor.getParameters().isEmpty()
+					&& !constructor.getModifiers().contains(Modifier.PRIVATE))
+				return true;
+		}
+		return false;
+	}
+
+	private static TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED)
+			return null;
+		TypeElement element = (TypeElement) ((DeclaredType) superclass)
+				.asElement();
+		return element.getQualifiedName().contentEquals("java.lang.Object") ? null
+				: element;
+	}
+
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	private static PackageElement packageOf(Element element) {
+		while (!(element instanceof PackageElement))
+			element = element.getEnclosingElement();
+		return (PackageElement) element;
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
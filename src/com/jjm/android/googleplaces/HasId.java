@@ -0,0 +1,26 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.jjm.android.googleplaces;
+
+/**
+ * Interface for classes that carry the stable id of a place.  Unlike 
+ * a reference, the id of a place is the same across searches, so it 
+ * can be used to tell whether two results are the same place.
+ */
+public interface HasId {
+	String getId();
+}
@@ -10,16 +10,16 @@ import com.jjm.android.googleplaces.util.LatLng;
  * @author Jon Mason <jonathan.j.mason@gmail.com>
  * TODO Document Place
  */
-public class Place extends GenericData implements HasReference { 
+public class Place extends GenericData implements HasReference, HasId { 
 	public static class Geometry {
 		@Key public LatLng location;
 	}
-	@Key("id") private String mId;
-	@Key("name") private String mName;
-	@Key("reference") private String mReference; 
-	@Key("geometry") private Geometry mGeometry;
-	@Key("formatted_address") private String mFormattedAddress; 
-	@Key("vicinity") private String mVicinity;
+	@Key("id") String mId;
+	@Key("name") String mName;
+	@Key("reference") String mReference; 
+	@Key("geometry") Geometry mGeometry;
+	@Key("formatted_address") String mFormattedAddress; 
+	@Key("vicinity") String mVicinity;
 	
 	public String getId() {
 		return mId;
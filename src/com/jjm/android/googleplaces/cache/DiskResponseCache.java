@@ -0,0 +1,537 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.DetailsRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.request.PlacesRequest;
+import com.jjm.android.googleplaces.request.SearchRequest;
+import com.jjm.android.googleplaces.request.TextSearchRequest;
+
+/**
+ * <p>
+ * A cache of response bodies on disk, keyed by the canonical url of the
+ * request, which leaves out the api key. Install one with
+ * {@link PlacesClient#setResponseCache(DiskResponseCache)}, and every request
+ * executed by that client is answered from it when it can be.
+ * </p>
+ * <p>
+ * Each request class has its own time to live. A response older than that
+ * is stale: for up to {@link #setMaxStale(long, TimeUnit)} longer it is still
+ * returned at once, while the client fetches a fresh one in the background.
+ * The places terms only allow caching for a limited time, so no response is
+ * used once it is {@link #MAX_AGE_MILLIS} old, whatever the settings.
+ * {@link PlacesClient} doesn't store search responses with a next page
+ * token, as the token would expire long before the response.
+ * </p>
+ * <p>
+ * Each response is a file in the cache directory, written to a temporary
+ * file and renamed into place, so a crash never leaves a partial entry.
+ * Once the files take more than the size cap, the least recently used are
+ * deleted.
+ * </p>
+ */
+public class DiskResponseCache {
+	public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+	/**
+	 * The time to live of requests without one of their own.
+	 */
+	public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+	public static final long DEFAULT_MAX_STALE_MILLIS = TimeUnit.DAYS
+			.toMillis(1);
+	/**
+	 * The oldest a response may be and still be used.
+	 */
+	public static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+	private static final int MAGIC = 0x504c4331; // "PLC1"
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File mDirectory;
+	private final long mMaxBytes;
+	private final Map<Class<?>, Long> mTtls = new HashMap<Class<?>, Long>();
+	private volatile long mMaxStaleMillis = DEFAULT_MAX_STALE_MILLIS;
+
+	// Guarded by this
+	private final LinkedHashMap<String, Long> mSizes = new LinkedHashMap<String, Long>(
+			16, 0.75f, true);
+	private long mBytes;
+	private boolean mLoaded;
+	private final Set<String> mRevalidating = new HashSet<String>();
+
+	private final AtomicLong mTempCount = new AtomicLong();
+	private final AtomicLong mHits = new AtomicLong();
+	private final AtomicLong mStaleHits = new AtomicLong();
+	private final AtomicLong mMisses = new AtomicLong();
+	private final AtomicLong mEvictions = new AtomicLong();
+	private final AtomicLong mWriteErrors = new AtomicLong();
+
+	/**
+	 * A response read from the cache.
+	 */
+	public static final class CachedResponse {
+		private final String mName;
+		private final byte[] mBody;
+		private final long mAgeMillis;
+		private final boolean mFresh;
+
+		CachedResponse(String name, byte[] body, long ageMillis, boolean fresh) {
+			mName = name;
+			mBody = body;
+			mAgeMillis = ageMillis;
+			mFresh = fresh;
+		}
+
+		/**
+		 * @return the response body, as UTF-8 json.
+		 */
+		public byte[] getBody() {
+			return mBody;
+		}
+
+		public long getAgeMillis() {
+			return mAgeMillis;
+		}
+
+		/**
+		 * @return false if the response is stale and should be revalidated.
+		 */
+		public boolean isFresh() {
+			return mFresh;
+		}
+	}
+
+	/**
+	 * Receives the responses read by {@link DiskResponseCache#readAll}.
+	 */
+	public interface EntryReader {
+		/**
+		 * @param url
+		 *            the canonical url of the request
+		 * @param body
+		 *            the response body, as UTF-8 json
+		 */
+		void onEntry(String url, byte[] body);
+	}
+
+	/**
+	 * @param directory
+	 *            where to keep the responses. Nothing else should be kept
+	 *            there.
+	 */
+	public DiskResponseCache(File directory) {
+		this(directory, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param directory
+	 *            where to keep the responses. Nothing else should be kept
+	 *            there.
+	 * @param maxBytes
+	 *            the most the responses may take on disk
+	 */
+	public DiskResponseCache(File directory, long maxBytes) {
+		Preconditions.checkArgument(maxBytes > 0);
+		mDirectory = Preconditions.checkNotNull(directory);
+		mMaxBytes = maxBytes;
+		// Predictions and search results change more often than a place
+		mTtls.put(AutocompleteRequest.class, TimeUnit.HOURS.toMillis(1));
+		mTtls.put(SearchRequest.class, TimeUnit.HOURS.toMillis(1));
+		mTtls.put(TextSearchRequest.class, TimeUnit.HOURS.toMillis(1));
+		mTtls.put(DetailsRequest.class, TimeUnit.DAYS.toMillis(1));
+	}
+
+	public File getDirectory() {
+		return mDirectory;
+	}
+
+	/**
+	 * Set how long responses to a request class are fresh for, at most
+	 * {@link #MAX_AGE_MILLIS}. Subclasses use it unless they have their own.
+	 */
+	public synchronized DiskResponseCache setTtl(
+			Class<? extends PlacesRequest<?>> requestClass, long duration,
+			TimeUnit unit) {
+		long millis = unit.toMillis(duration);
+		Preconditions.checkArgument(millis >= 0 && millis <= MAX_AGE_MILLIS);
+		mTtls.put(requestClass, millis);
+		return this;
+	}
+
+	/**
+	 * How long a response to the request is fresh for.
+	 */
+	public synchronized long getTtlMillis(PlacesRequest<?> request) {
+		for (Class<?> c = request.getClass(); c != null; c = c.getSuperclass()) {
+			Long ttl = mTtls.get(c);
+			if (ttl != null)
+				return ttl;
+		}
+		return DEFAULT_TTL_MILLIS;
+	}
+
+	/**
+	 * Set how long after it goes stale a response is still returned while a
+	 * fresh one is fetched. Pass 0 to never return stale responses.
+	 */
+	public DiskResponseCache setMaxStale(long duration, TimeUnit unit) {
+		long millis = unit.toMillis(duration);
+		Preconditions.checkArgument(millis >= 0);
+		mMaxStaleMillis = millis;
+		return this;
+	}
+
+	public long getMaxStaleMillis() {
+		return mMaxStaleMillis;
+	}
+
+	/**
+	 * Read the response to a request. This reads from disk, so shouldn't be
+	 * called on the ui thread.
+	 * 
+	 * @return the response, or null if there is none that can be used.
+	 */
+	public CachedResponse get(PlacesRequest<?> request) {
+		String url = request.getCanonicalUrl();
+		String name = fileName(url);
+		synchronized (this) {
+			load();
+			if (!mSizes.containsKey(name)) {
+				mMisses.incrementAndGet();
+				return null;
+			}
+			mSizes.get(name); // Mark it used
+		}
+		File file = new File(mDirectory, name);
+		long storedAt;
+		byte[] body;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != MAGIC)
+				throw new IOException("not a cache entry");
+			storedAt = in.readLong();
+			if (!url.equals(in.readUTF())) {
+				// Another url with the same hash
+				mMisses.incrementAndGet();
+				return null;
+			}
+			body = new byte[in.readInt()];
+			in.readFully(body);
+		} catch (IOException e) {
+			remove(name);
+			mMisses.incrementAndGet();
+			return null;
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+
+		long age = Math.max(0, System.currentTimeMillis() - storedAt);
+		long ttl = getTtlMillis(request);
+		if (age < ttl) {
+			mHits.incrementAndGet();
+			return new CachedResponse(name, body, age, true);
+		}
+		if (age < Math.min(MAX_AGE_MILLIS, ttl + mMaxStaleMillis)) {
+			mStaleHits.incrementAndGet();
+			return new CachedResponse(name, body, age, false);
+		}
+		remove(name);
+		mMisses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Read every response that is not past {@link #MAX_AGE_MILLIS}, such as
+	 * to index them, least recently used first. This doesn't count as using
+	 * them. It reads the whole cache from disk, so shouldn't be called on the
+	 * ui thread.
+	 */
+	public void readAll(EntryReader reader) {
+		String[] names;
+		synchronized (this) {
+			load();
+			names = mSizes.keySet().toArray(new String[mSizes.size()]);
+		}
+		long now = System.currentTimeMillis();
+		for (String name : names) {
+			String url;
+			byte[] body;
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(new File(mDirectory, name))));
+				if (in.readInt() != MAGIC
+						|| now - in.readLong() >= MAX_AGE_MILLIS)
+					continue;
+				url = in.readUTF();
+				body = new byte[in.readInt()];
+				in.readFully(body);
+			} catch (IOException e) {
+				// Removed since, or damaged, which get() will deal with
+				continue;
+			} finally {
+				Closeables.closeQuietly(in);
+			}
+			reader.onEntry(url, body);
+		}
+	}
+
+	/**
+	 * Store the response to a request, replacing any there was. Failures are
+	 * counted in {@link #getWriteErrors()} rather than thrown, as the
+	 * response can still be used.
+	 * 
+	 * @param body
+	 *            the response body, as UTF-8 json
+	 */
+	public void put(PlacesRequest<?> request, byte[] body) {
+		put(request.getCanonicalUrl(), body);
+	}
+
+	/**
+	 * Store a response under the canonical url of its request, as returned
+	 * by {@link PlacesRequest#getCanonicalUrl()} when the request was sent.
+	 * Use this when the request may have changed since.
+	 * 
+	 * @param body
+	 *            the response body, as UTF-8 json
+	 */
+	public void put(String canonicalUrl, byte[] body) {
+		String url = Preconditions.checkNotNull(canonicalUrl);
+		String name = fileName(url);
+		synchronized (this) {
+			load();
+		}
+		File temp = new File(mDirectory, name + "."
+				+ mTempCount.incrementAndGet() + TEMP_SUFFIX);
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp)));
+			out.writeInt(MAGIC);
+			out.writeLong(System.currentTimeMillis());
+			out.writeUTF(url);
+			out.writeInt(body.length);
+			out.write(body);
+			out.close();
+			out = null;
+			long size = temp.length();
+			synchronized (this) {
+				if (!temp.renameTo(new File(mDirectory, name)))
+					throw new IOException("can't rename " + temp);
+				Long previous = mSizes.put(name, size);
+				mBytes += size - (previous != null ? previous : 0);
+				trim();
+			}
+		} catch (IOException e) {
+			mWriteErrors.incrementAndGet();
+			temp.delete();
+		} finally {
+			Closeables.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Delete the response to a request, if there is one.
+	 */
+	public void remove(PlacesRequest<?> request) {
+		remove(fileName(request.getCanonicalUrl()));
+	}
+
+	/**
+	 * Delete every response.
+	 */
+	public synchronized void clear() {
+		load();
+		for (String name : mSizes.keySet())
+			new File(mDirectory, name).delete();
+		mSizes.clear();
+		mBytes = 0;
+	}
+
+	/**
+	 * Claim the revalidation of a stale response, so that only one request
+	 * fetches it.
+	 * 
+	 * @return false if it is already being revalidated.
+	 */
+	public synchronized boolean beginRevalidation(CachedResponse response) {
+		return mRevalidating.add(response.mName);
+	}
+
+	/**
+	 * Release a claim made by {@link #beginRevalidation(CachedResponse)},
+	 * whether or not a fresh response was stored.
+	 */
+	public synchronized void endRevalidation(CachedResponse response) {
+		mRevalidating.remove(response.mName);
+	}
+
+	/**
+	 * The number of fresh responses returned.
+	 */
+	public long getHitCount() {
+		return mHits.get();
+	}
+
+	/**
+	 * The number of stale responses returned.
+	 */
+	public long getStaleHitCount() {
+		return mStaleHits.get();
+	}
+
+	/**
+	 * The number of requests there was no usable response for.
+	 */
+	public long getMissCount() {
+		return mMisses.get();
+	}
+
+	/**
+	 * The number of responses deleted to keep under the size cap.
+	 */
+	public long getEvictionCount() {
+		return mEvictions.get();
+	}
+
+	/**
+	 * The number of responses that couldn't be stored.
+	 */
+	public long getWriteErrors() {
+		return mWriteErrors.get();
+	}
+
+	/**
+	 * The number of bytes the responses take on disk.
+	 */
+	public synchronized long getSize() {
+		load();
+		return mBytes;
+	}
+
+	public synchronized int getEntryCount() {
+		load();
+		return mSizes.size();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"hits %d, stale %d, misses %d, evictions %d, %d entries, %d bytes",
+				getHitCount(), getStaleHitCount(), getMissCount(),
+				getEvictionCount(), getEntryCount(), getSize());
+	}
+
+	private synchronized void remove(String name) {
+		Long size = mSizes.remove(name);
+		if (size != null)
+			mBytes -= size;
+		new File(mDirectory, name).delete();
+	}
+
+	/**
+	 * Delete the least recently used responses until they fit.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<String, Long>> it = mSizes.entrySet().iterator();
+		while (mBytes > mMaxBytes && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			new File(mDirectory, eldest.getKey()).delete();
+			mBytes -= eldest.getValue();
+			it.remove();
+			mEvictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Index the directory, the first time it is needed, oldest first as the
+	 * order of use isn't kept across processes. Temporary files left by a
+	 * crash are deleted.
+	 */
+	private void load() {
+		if (mLoaded)
+			return;
+		mLoaded = true;
+		mDirectory.mkdirs();
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+			return;
+		final Map<File, Long> modified = new HashMap<File, Long>();
+		for (File file : files)
+			modified.put(file, file.lastModified());
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				long ma = modified.get(a), mb = modified.get(b);
+				return ma < mb ? -1 : ma > mb ? 1 : 0;
+			}
+		});
+		for (File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				file.delete();
+			} else if (file.isFile()) {
+				mSizes.put(file.getName(), file.length());
+				mBytes += file.length();
+			}
+		}
+		trim();
+	}
+
+	private static String fileName(String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					url.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+						Character.forDigit(b & 0xf, 16));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.util.LatLng;
+
+/**
+ * <p>
+ * Remembers autocomplete inputs that had no predictions, so that inputs
+ * extending them can be answered without a request: if "xqzv" has no
+ * predictions, "xqzvb" almost certainly has none either.
+ * </p>
+ * <p>
+ * An input is only known to be empty for requests like the one that found
+ * it empty: near the same location, to within a grid of
+ * {@link #setBucketDegrees(double)}, and with the same radius, types and
+ * language. Entries expire after a short time to live, and inputs shorter
+ * than {@link #setMinLength(int)} are never recorded, as the service
+ * corrects typos in longer ones. Inputs are compared ignoring case.
+ * </p>
+ * <p>
+ * This is thread safe.
+ * </p>
+ */
+public class NegativePrefixCache {
+	public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	public static final int DEFAULT_MIN_LENGTH = 3;
+	/** About 5km of latitude */
+	public static final double DEFAULT_BUCKET_DEGREES = 0.05;
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private final LinkedHashMap<String, Long> mExpiries; // Guarded by this
+	private volatile long mTtlMillis = DEFAULT_TTL_MILLIS;
+	private volatile int mMinLength = DEFAULT_MIN_LENGTH;
+	private volatile double mBucketDegrees = DEFAULT_BUCKET_DEGREES;
+	private long mRecorded; // Guarded by this
+	private long mAvoided; // Guarded by this
+
+	public NegativePrefixCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the most inputs remembered; the oldest are forgotten first.
+	 */
+	public NegativePrefixCache(final int maxEntries) {
+		Preconditions.checkArgument(maxEntries > 0);
+		mExpiries = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param ttl
+	 *            how long an input is known to be empty for
+	 */
+	public NegativePrefixCache setTtl(long ttl, TimeUnit unit) {
+		Preconditions.checkArgument(ttl >= 0);
+		mTtlMillis = unit.toMillis(ttl);
+		return this;
+	}
+
+	/**
+	 * @param minLength
+	 *            the shortest input that is recorded
+	 */
+	public NegativePrefixCache setMinLength(int minLength) {
+		Preconditions.checkArgument(minLength > 0);
+		mMinLength = minLength;
+		return this;
+	}
+
+	/**
+	 * @param bucketDegrees
+	 *            the size of the grid cells, in degrees of latitude and
+	 *            longitude, that requests must be in the same one of
+	 */
+	public NegativePrefixCache setBucketDegrees(double bucketDegrees) {
+		Preconditions.checkArgument(bucketDegrees > 0);
+		mBucketDegrees = bucketDegrees;
+		return this;
+	}
+
+	/**
+	 * Record the response to a request, remembering its input if it had no
+	 * predictions.
+	 */
+	public void record(AutocompleteRequest request,
+			AutocompleteResponse response) {
+		if (response.getStatus() != Status.ZERO_RESULTS)
+			return;
+		String input = input(request);
+		if (input == null || input.length() < mMinLength)
+			return;
+		String key = key(request, input);
+		long expiry = System.currentTimeMillis() + mTtlMillis;
+		synchronized (this) {
+			// Put it last, as the newest
+			mExpiries.remove(key);
+			mExpiries.put(key, expiry);
+			mRecorded++;
+		}
+	}
+
+	/**
+	 * @return true if the request's input is, or extends, an input known to
+	 *         have no predictions. The request can then be skipped.
+	 */
+	public boolean isKnownEmpty(AutocompleteRequest request) {
+		String input = input(request);
+		int minLength = mMinLength;
+		if (input == null || input.length() < minLength)
+			return false;
+		String prefix = key(request, "");
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (mExpiries.isEmpty())
+				return false;
+			for (int i = minLength; i <= input.length(); i++) {
+				String key = prefix + input.substring(0, i);
+				Long expiry = mExpiries.get(key);
+				if (expiry == null)
+					continue;
+				if (expiry > now) {
+					mAvoided++;
+					return true;
+				}
+				mExpiries.remove(key);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The number of times {@link #isKnownEmpty(AutocompleteRequest)} returned
+	 * true.
+	 */
+	public synchronized long getAvoidedCount() {
+		return mAvoided;
+	}
+
+	/**
+	 * The number of inputs recorded as having no predictions.
+	 */
+	public synchronized long getRecordedCount() {
+		return mRecorded;
+	}
+
+	public synchronized int size() {
+		return mExpiries.size();
+	}
+
+	public synchronized void clear() {
+		mExpiries.clear();
+	}
+
+	/**
+	 * The input as the service sees it: up to the offset, if there is one.
+	 */
+	private static String input(AutocompleteRequest request) {
+		String input = request.getInput();
+		if (input == null)
+			return null;
+		Integer offset = request.getOffset();
+		if (offset != null && offset >= 0 && offset < input.length())
+			input = input.substring(0, offset);
+		return input.toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Everything about the request that affects its predictions, followed
+	 * by the input.
+	 */
+	private String key(AutocompleteRequest request, String input) {
+		StringBuilder sb = new StringBuilder();
+		LatLng location = request.getLocation();
+		if (location != null) {
+			double bucket = mBucketDegrees;
+			sb.append((long) Math.floor(location.getLatitude() / bucket))
+					.append(',').append(
+							(long) Math.floor(location.getLongitude() / bucket));
+		}
+		sb.append('|').append(request.getRadius());
+		sb.append('|').append(request.getLanguage()).append('|');
+		List<String> types = request.getTypes();
+		for (String type : types)
+			sb.append(type).append(',');
+		sb.append('|').append(input);
+		return sb.toString();
+	}
+}
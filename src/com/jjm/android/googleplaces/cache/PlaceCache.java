@@ -0,0 +1,209 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.jjm.android.googleplaces.HasId;
+import com.jjm.android.googleplaces.HasReference;
+import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.request.DetailsRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+
+/**
+ * <p>
+ * An in-memory cache of place details, keyed by the place's id. A place's
+ * reference differs from one search to the next, but its id doesn't, so
+ * this finds the details of a place however it was found again. References
+ * seen alongside an id are indexed, so that items with only a reference can
+ * be looked up too.
+ * </p>
+ * <p>
+ * Both maps are segmented, so reads don't contend on a lock. They are
+ * bounded by the approximate number of bytes the entries retain, rather
+ * than by their number, as details vary a lot in size. Install one with
+ * {@link PlacesClient#setPlaceCache(PlaceCache)} for
+ * {@link DetailsRequest#get(HasReference, PlacesClient)} to use it.
+ * </p>
+ */
+public class PlaceCache {
+	public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+	/**
+	 * How long details are kept. This is the same as the time to live of
+	 * details responses in a {@link DiskResponseCache}.
+	 */
+	public static final long DEFAULT_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	// Rough sizes of objects on a 32 bit vm, in bytes
+	private static final int OBJECT_BYTES = 16;
+	private static final int STRING_BYTES = 40;
+	private static final int ENTRY_BYTES = 32;
+
+	private static final Weigher<String, Place> PLACE_WEIGHER = new Weigher<String, Place>() {
+		@Override
+		public int weigh(String id, Place place) {
+			return (int) Math.min(Integer.MAX_VALUE, ENTRY_BYTES
+					+ estimateBytes(id) + estimateBytes(place));
+		}
+	};
+
+	private static final Weigher<String, String> REFERENCE_WEIGHER = new Weigher<String, String>() {
+		@Override
+		public int weigh(String reference, String id) {
+			// The id is shared with the place's entry
+			return (int) (ENTRY_BYTES + estimateBytes(reference));
+		}
+	};
+
+	private final Cache<String, Place> mPlaces;
+	private final Cache<String, String> mIds;
+
+	public PlaceCache() {
+		this(DEFAULT_MAX_BYTES, DEFAULT_EXPIRY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param maxBytes
+	 *            the most the cache may retain, approximately. A quarter of
+	 *            it is given to the index of references.
+	 * @param expiry
+	 *            how long details are kept
+	 */
+	public PlaceCache(long maxBytes, long expiry, TimeUnit unit) {
+		Preconditions.checkArgument(maxBytes > 0);
+		mPlaces = CacheBuilder.newBuilder().maximumWeight(maxBytes - maxBytes / 4)
+				.weigher(PLACE_WEIGHER).expireAfterWrite(expiry, unit).build();
+		mIds = CacheBuilder.newBuilder().maximumWeight(maxBytes / 4)
+				.weigher(REFERENCE_WEIGHER).build();
+	}
+
+	/**
+	 * The details of the place with the given id, or null if they aren't
+	 * cached.
+	 */
+	public Place getById(String id) {
+		return id != null ? mPlaces.getIfPresent(id) : null;
+	}
+
+	/**
+	 * The details of a place, found by its id if the item has one, or else
+	 * by its reference.
+	 * 
+	 * @return the details, or null if they aren't cached.
+	 */
+	public Place get(HasReference item) {
+		String id = item instanceof HasId ? ((HasId) item).getId() : null;
+		if (id == null && item.getReference() != null)
+			id = mIds.getIfPresent(item.getReference());
+		return getById(id);
+	}
+
+	/**
+	 * Cache the details of a place. Only details should be cached: the
+	 * places in search results have a few of the fields.
+	 */
+	public void put(Place place) {
+		String id = Preconditions.checkNotNull(place.getId());
+		mPlaces.put(id, place);
+		addReference(place.getReference(), id);
+	}
+
+	/**
+	 * Record that a reference is to the place with the given id, so that
+	 * {@link #get(HasReference)} finds it by reference. Ids and references
+	 * from search results and predictions can be recorded before their
+	 * details are known.
+	 */
+	public void addReference(String reference, String id) {
+		if (reference != null && id != null)
+			mIds.put(reference, id);
+	}
+
+	/**
+	 * Record the reference of an item that has an id as well.
+	 * 
+	 * @see #addReference(String, String)
+	 */
+	public <T extends HasReference & HasId> void addReference(T item) {
+		addReference(item.getReference(), item.getId());
+	}
+
+	public void invalidate(String id) {
+		mPlaces.invalidate(id);
+	}
+
+	public void clear() {
+		mPlaces.invalidateAll();
+		mIds.invalidateAll();
+	}
+
+	/**
+	 * The number of places cached.
+	 */
+	public long size() {
+		return mPlaces.size();
+	}
+
+	/**
+	 * The hits, misses and evictions of the places, not counting the index.
+	 */
+	public CacheStats getStats() {
+		return mPlaces.stats();
+	}
+
+	@Override
+	public String toString() {
+		return size() + " places, " + mIds.size() + " references, "
+				+ getStats();
+	}
+
+	/**
+	 * Roughly the number of bytes an object retains, following maps and
+	 * collections, which include the {@link Place}'s fields and any unknown
+	 * ones it was parsed with.
+	 */
+	static long estimateBytes(Object value) {
+		if (value == null)
+			return 0;
+		if (value instanceof String)
+			return STRING_BYTES + 2 * ((String) value).length();
+		if (value instanceof Map<?, ?>) {
+			long bytes = OBJECT_BYTES;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				bytes += ENTRY_BYTES + estimateBytes(entry.getKey())
+						+ estimateBytes(entry.getValue());
+			return bytes;
+		}
+		if (value instanceof Collection<?>) {
+			long bytes = OBJECT_BYTES;
+			for (Object element : (Collection<?>) value)
+				bytes += 4 + estimateBytes(element);
+			return bytes;
+		}
+		if (value instanceof Place.Geometry)
+			return OBJECT_BYTES + estimateBytes(((Place.Geometry) value).location);
+		// Numbers, booleans, LatLng and such
+		return OBJECT_BYTES + 16;
+	}
+}
@@ -0,0 +1,499 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
+import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.PlacesClient;
+import com.jjm.android.googleplaces.request.PlacesRequest;
+import com.jjm.android.googleplaces.request.TextSearchRequest;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.DetailsResponse;
+import com.jjm.android.googleplaces.response.PlacesResponse;
+import com.jjm.android.googleplaces.response.Prediction;
+import com.jjm.android.googleplaces.response.Prediction.Term;
+import com.jjm.android.googleplaces.response.SearchResponse;
+
+/**
+ * <p>
+ * A full text index of the places and predictions seen, so that text
+ * searches and autocompletes can still be answered, from what has been seen
+ * before, when the network is down. Install one with
+ * {@link PlacesClient#setPlaceIndex(PlaceIndex)}: the client adds every
+ * response to it, and answers a {@link TextSearchRequest} or an
+ * {@link AutocompleteRequest} from it when the request fails or the circuit
+ * is open. {@link #addAll(DiskResponseCache, ModelObjectParser)} indexes the
+ * responses persisted by an earlier process.
+ * </p>
+ * <p>
+ * Places are indexed by their name, vicinity and formatted address, and
+ * predictions by their description, as the trigrams of each word padded
+ * with a space at either end. Case, accents and punctuation are ignored. A
+ * query matches the entries that share at least {@link #MIN_SIMILARITY} of
+ * its trigrams, which tolerates a typo or two a word: "harbur" shares " ha",
+ * "har", "arb" and "ur " with "harbour". Matches are ranked by the trigrams
+ * shared, those in the name counting twice, then by the shorter text.
+ * </p>
+ * <p>
+ * Adding a place with the id of a place already held deletes the old one,
+ * and likewise for predictions; a place and the prediction for it are
+ * separate entries. Past the maximum the oldest are deleted. The postings are rebuilt once
+ * more than half of their entries are deleted. This is thread safe.
+ * Searching 100,000 entries takes a few milliseconds, so should be done off
+ * the ui thread.
+ * </p>
+ */
+public class PlaceIndex {
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+	/**
+	 * The fraction of the trigrams of a query that an entry must share to
+	 * match it.
+	 */
+	public static final double MIN_SIMILARITY = 0.5;
+	/** The results given for a text search, a full page */
+	public static final int MAX_SEARCH_RESULTS = 20;
+	/** The predictions given for an autocomplete, as the service does */
+	public static final int MAX_PREDICTIONS = 5;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String PLACE_KEY = "p:";
+	private static final String PREDICTION_KEY = "a:";
+
+	/**
+	 * The entries with a trigram, in the order added. Each is the entry's
+	 * index shifted left one, with the low bit set if the trigram is in its
+	 * name.
+	 */
+	private static final class Postings {
+		int[] mEntries = new int[4];
+		int mSize;
+
+		void add(int posting) {
+			if (mSize == mEntries.length)
+				mEntries = Arrays.copyOf(mEntries, mSize * 2);
+			mEntries[mSize++] = posting;
+		}
+	}
+
+	private final int mMaxEntries;
+	private final HashMap<Long, Postings> mPostings = new HashMap<Long, Postings>();
+	/**
+	 * The index of the entry with each key, which is the id prefixed with
+	 * {@link #PLACE_KEY} or {@link #PREDICTION_KEY}, as a prediction has the
+	 * id of its place
+	 */
+	private final HashMap<String, Integer> mIndexes = new HashMap<String, Integer>();
+	/** The place or prediction of each entry, null once it is deleted */
+	private Object[] mValues = new Object[64];
+	private String[] mIds = new String[64];
+	/** The number of distinct trigrams of each entry */
+	private int[] mGramCounts = new int[64];
+	private int mEntryCount;
+	private int mLiveCount;
+	/** No entry before this is live */
+	private int mOldest;
+
+	/** The trigrams of the text being added, and whether each is in the name */
+	private final Map<Long, Boolean> mGrams = new LinkedHashMap<Long, Boolean>();
+	/**
+	 * For each entry while searching, the trigrams it shares with the query,
+	 * plus those in its name shifted left 16.
+	 */
+	private int[] mScores = new int[64];
+	private int[] mTouched = new int[64];
+
+	public PlaceIndex() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the most places and predictions held
+	 */
+	public PlaceIndex(int maxEntries) {
+		Preconditions.checkArgument(maxEntries > 0);
+		mMaxEntries = maxEntries;
+	}
+
+	/**
+	 * Index a place, replacing any place with the same id.
+	 */
+	public synchronized void add(Place place) {
+		String id = place.getId() != null ? place.getId() : place
+				.getReference();
+		if (id != null)
+			add(PLACE_KEY + id, place);
+	}
+
+	/**
+	 * Index a prediction, replacing any prediction with the same id, or
+	 * failing that the same description. A place with the same id is kept.
+	 */
+	public synchronized void add(Prediction prediction) {
+		String id = prediction.getId() != null ? prediction.getId()
+				: prediction.getDescription();
+		if (id != null)
+			add(PREDICTION_KEY + id, prediction);
+	}
+
+	/**
+	 * Index the places or predictions of a search, text search, details or
+	 * autocomplete response.
+	 */
+	public synchronized void addAll(PlacesResponse response) {
+		if (response instanceof SearchResponse) {
+			for (Place place : ((SearchResponse) response).getResults())
+				add(place);
+		} else if (response instanceof DetailsResponse) {
+			Place place = ((DetailsResponse) response).getResult();
+			if (place != null)
+				add(place);
+		} else if (response instanceof AutocompleteResponse) {
+			for (Prediction prediction : ((AutocompleteResponse) response)
+					.getPredictions())
+				add(prediction);
+		}
+	}
+
+	/**
+	 * Index every response in a cache, such as when the process starts. This
+	 * reads the whole cache, so shouldn't be called on the ui thread.
+	 * 
+	 * @return the number of responses indexed
+	 */
+	public int addAll(DiskResponseCache cache, final ModelObjectParser parser) {
+		final int[] count = new int[1];
+		cache.readAll(new DiskResponseCache.EntryReader() {
+			@Override
+			public void onEntry(String url, byte[] body) {
+				Class<? extends PlacesResponse> responseClass = responseClass(url);
+				if (responseClass == null)
+					return;
+				PlacesResponse response;
+				try {
+					response = parser.parseAndClose(new ByteArrayInputStream(
+							body), UTF_8, responseClass);
+				} catch (IOException e) {
+					return;
+				} catch (RuntimeException e) {
+					return;
+				}
+				addAll(response);
+				count[0]++;
+			}
+		});
+		return count[0];
+	}
+
+	/**
+	 * Find the places best matching a query.
+	 * 
+	 * @return at most <code>max</code> places, best first
+	 */
+	public List<Place> searchPlaces(String query, int max) {
+		return search(query, false, Place.class, max);
+	}
+
+	/**
+	 * Find the predictions best matching an autocomplete input, whose last
+	 * word may be only partly typed.
+	 * 
+	 * @return at most <code>max</code> predictions, best first
+	 */
+	public List<Prediction> searchPredictions(String input, int max) {
+		return search(input, true, Prediction.class, max);
+	}
+
+	/**
+	 * Answer a request from the index, when it can't be sent.
+	 * 
+	 * @return a response for which {@link PlacesResponse#isOffline()} is
+	 *         true, or null if the request isn't a text search or autocomplete,
+	 *         or nothing matches.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends PlacesResponse> T answer(PlacesRequest<T> request) {
+		if (request instanceof TextSearchRequest) {
+			TextSearchRequest textSearch = (TextSearchRequest) request;
+			String query = textSearch.getQuery();
+			// Later pages can't be answered, as the first was made up
+			if (query == null || textSearch.getPageToken() != null)
+				return null;
+			List<Place> results = searchPlaces(query, MAX_SEARCH_RESULTS);
+			return results.isEmpty() ? null : (T) SearchResponse
+					.offline(results);
+		} else if (request instanceof AutocompleteRequest) {
+			AutocompleteRequest autocomplete = (AutocompleteRequest) request;
+			String input = autocomplete.getInput();
+			if (input == null)
+				return null;
+			Integer offset = autocomplete.getOffset();
+			if (offset != null && offset < input.length())
+				input = input.substring(0, offset);
+			List<Prediction> predictions = searchPredictions(input,
+					MAX_PREDICTIONS);
+			return predictions.isEmpty() ? null : (T) AutocompleteResponse
+					.offline(predictions);
+		}
+		return null;
+	}
+
+	/**
+	 * The number of places and predictions held.
+	 */
+	public synchronized int size() {
+		return mLiveCount;
+	}
+
+	public synchronized void clear() {
+		mPostings.clear();
+		mIndexes.clear();
+		Arrays.fill(mValues, 0, mEntryCount, null);
+		Arrays.fill(mIds, 0, mEntryCount, null);
+		mEntryCount = 0;
+		mLiveCount = 0;
+		mOldest = 0;
+	}
+
+	private void add(String key, Object value) {
+		Integer previous = mIndexes.get(key);
+		if (previous != null)
+			delete(previous);
+		if (mEntryCount == mValues.length) {
+			int size = mEntryCount * 2;
+			mValues = Arrays.copyOf(mValues, size);
+			mIds = Arrays.copyOf(mIds, size);
+			mGramCounts = Arrays.copyOf(mGramCounts, size);
+			mScores = Arrays.copyOf(mScores, size);
+		}
+		int index = mEntryCount++;
+		mValues[index] = value;
+		mIds[index] = key;
+		mIndexes.put(key, index);
+		mLiveCount++;
+
+		mGrams.clear();
+		if (value instanceof Place) {
+			Place place = (Place) value;
+			addGrams(place.getName(), false, true);
+			addGrams(place.getVicinity(), false, false);
+			addGrams(place.getFormattedAddress(), false, false);
+		} else {
+			Prediction prediction = (Prediction) value;
+			List<Term> terms = prediction.getTerms();
+			if (!terms.isEmpty())
+				addGrams(terms.get(0).getValue(), false, true);
+			addGrams(prediction.getDescription(), false, false);
+		}
+		for (Map.Entry<Long, Boolean> gram : mGrams.entrySet()) {
+			Postings postings = mPostings.get(gram.getKey());
+			if (postings == null) {
+				postings = new Postings();
+				mPostings.put(gram.getKey(), postings);
+			}
+			postings.add(index << 1 | (gram.getValue() ? 1 : 0));
+		}
+		mGramCounts[index] = mGrams.size();
+
+		while (mLiveCount > mMaxEntries)
+			delete(mOldest);
+		if (mEntryCount - mLiveCount > mLiveCount)
+			rebuild();
+	}
+
+	private void delete(int index) {
+		if (mValues[index] != null) {
+			mValues[index] = null;
+			mIndexes.remove(mIds[index]);
+			mIds[index] = null;
+			mLiveCount--;
+		}
+		while (mOldest < mEntryCount && mValues[mOldest] == null)
+			mOldest++;
+	}
+
+	/**
+	 * Index the live entries again, leaving out the deleted ones.
+	 */
+	private void rebuild() {
+		Object[] values = Arrays.copyOfRange(mValues, mOldest, mEntryCount);
+		String[] ids = Arrays.copyOfRange(mIds, mOldest, mEntryCount);
+		clear();
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null)
+				add(ids[i], values[i]);
+		}
+	}
+
+	private synchronized <T> List<T> search(String query, boolean prefix,
+			Class<T> type, int max) {
+		mGrams.clear();
+		addGrams(query, prefix, false);
+		int queryGrams = mGrams.size();
+		if (queryGrams == 0 || max <= 0)
+			return new ArrayList<T>(0);
+
+		int touched = 0;
+		for (Long gram : mGrams.keySet()) {
+			Postings postings = mPostings.get(gram);
+			if (postings == null)
+				continue;
+			int[] entries = postings.mEntries;
+			for (int i = 0; i < postings.mSize; i++) {
+				int index = entries[i] >>> 1;
+				if (mScores[index] == 0) {
+					if (touched == mTouched.length)
+						mTouched = Arrays.copyOf(mTouched, touched * 2);
+					mTouched[touched++] = index;
+				}
+				mScores[index] += 1 + ((entries[i] & 1) << 16);
+			}
+		}
+
+		// Keep the best few in order, as few are wanted
+		int minShared = Math.max(1,
+				(int) Math.ceil(queryGrams * MIN_SIMILARITY));
+		int[] best = new int[max];
+		int[] bestScores = new int[max];
+		int found = 0;
+		for (int t = 0; t < touched; t++) {
+			int index = mTouched[t];
+			int scores = mScores[index];
+			mScores[index] = 0;
+			int shared = scores & 0xFFFF;
+			if (shared < minShared || !type.isInstance(mValues[index]))
+				continue;
+			int score = shared + (scores >>> 16);
+			int i = found < max ? found++ : max;
+			while (i > 0 && isBetter(index, score, best[i - 1],
+					bestScores[i - 1]))
+				i--;
+			if (i == max)
+				continue;
+			int end = Math.min(found, max) - 1;
+			System.arraycopy(best, i, best, i + 1, end - i);
+			System.arraycopy(bestScores, i, bestScores, i + 1, end - i);
+			best[i] = index;
+			bestScores[i] = score;
+		}
+
+		List<T> results = new ArrayList<T>(found);
+		for (int i = 0; i < found; i++)
+			results.add(type.cast(mValues[best[i]]));
+		return results;
+	}
+
+	private boolean isBetter(int index, int score, int other, int otherScore) {
+		if (score != otherScore)
+			return score > otherScore;
+		if (mGramCounts[index] != mGramCounts[other])
+			return mGramCounts[index] < mGramCounts[other];
+		return index > other;
+	}
+
+	/**
+	 * Add the trigrams of each word of a text to {@link #mGrams}.
+	 * 
+	 * @param prefix
+	 *            if the last word may be incomplete, so isn't padded at the
+	 *            end
+	 */
+	private void addGrams(String text, boolean prefix, boolean name) {
+		if (text == null)
+			return;
+		String normalized = normalize(text);
+		int start = 0;
+		while (start < normalized.length()) {
+			int end = normalized.indexOf(' ', start);
+			if (end < 0)
+				end = normalized.length();
+			boolean last = end == normalized.length();
+			// The word, padded with a space either side, so that a single
+			// letter has a trigram
+			long a = ' ', b = normalized.charAt(start);
+			for (int i = start + 1; i <= end; i++) {
+				if (i == end && last && prefix)
+					break;
+				long c = i < end ? normalized.charAt(i) : ' ';
+				addGram(a << 32 | b << 16 | c, name);
+				a = b;
+				b = c;
+			}
+			start = end + 1;
+		}
+	}
+
+	private void addGram(long gram, boolean name) {
+		Long key = Long.valueOf(gram);
+		Boolean inName = mGrams.get(key);
+		if (inName == null || !inName && name)
+			mGrams.put(key, name);
+	}
+
+	/**
+	 * @return the text lower cased, without accents or punctuation, and
+	 *         with single spaces between the words.
+	 */
+	static String normalize(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) > 0x7f) {
+				text = Normalizer.normalize(text, Normalizer.Form.NFD);
+				break;
+			}
+		}
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				sb.append(Character.toLowerCase(c));
+			} else if (Character.isWhitespace(c) || c == ',' || c == '-'
+					|| c == '/') {
+				if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ')
+					sb.append(' ');
+			}
+		}
+		int length = sb.length();
+		if (length > 0 && sb.charAt(length - 1) == ' ')
+			sb.setLength(length - 1);
+		return sb.toString();
+	}
+
+	private static Class<? extends PlacesResponse> responseClass(String url) {
+		int query = url.indexOf('?');
+		String path = query < 0 ? url : url.substring(0, query);
+		if (path.endsWith("/autocomplete/json"))
+			return AutocompleteResponse.class;
+		if (path.endsWith("/details/json"))
+			return DetailsResponse.class;
+		if (path.endsWith("search/json"))
+			return SearchResponse.class;
+		return null;
+	}
+}
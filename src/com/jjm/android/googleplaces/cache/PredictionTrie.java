@@ -0,0 +1,466 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.Prediction;
+import com.jjm.android.googleplaces.response.Prediction.Term;
+
+/**
+ * <p>
+ * The predictions seen recently, indexed for prefix search so that a longer
+ * input can be answered from them at once, while a request for it is in
+ * flight. Each prediction is found by a prefix of its description or of any
+ * of its terms. Case, punctuation and repeated spaces are ignored, so
+ * "harbour view s" finds "Harbour View, Surry Hills".
+ * </p>
+ * <p>
+ * The trie holds at most a fixed number of predictions. Each has a score
+ * that counts the times it has been seen or chosen, halving every
+ * {@link #HALF_LIFE} predictions added since it was last seen, and the
+ * lowest scoring are evicted. Candidates are returned best first.
+ * </p>
+ * <p>
+ * {@link #find(CharSequence, Prediction[])} allocates nothing once the trie
+ * has warmed up, so it can run on the ui thread for every keystroke. This
+ * is thread safe.
+ * </p>
+ */
+public class PredictionTrie {
+	public static final int DEFAULT_MAX_PREDICTIONS = 512;
+	/**
+	 * The number of predictions added, or chosen, over which a score halves.
+	 */
+	public static final int HALF_LIFE = 256;
+	/** Choosing a prediction counts as seeing it this many times */
+	private static final int CHOSEN_HITS = 4;
+
+	private static final char[] NO_CHARS = new char[0];
+	private static final Node[] NO_NODES = new Node[0];
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+
+	/**
+	 * A node of the trie. Runs of nodes with a single child and no entries
+	 * are merged into one edge, as a key is mostly such a run below the
+	 * point where it branches from the others, and walking them one
+	 * character at a time made collecting a subtree slow.
+	 */
+	private static final class Node {
+		/** The characters on the edge into this node; empty for the root */
+		String mEdge;
+		/** The first character of each child's edge, sorted */
+		char[] mChars = NO_CHARS;
+		Node[] mChildren = NO_NODES;
+		int mChildCount;
+		/** The entries with a key ending here */
+		Entry[] mEntries = NO_ENTRIES;
+		int mEntryCount;
+
+		Node child(char c) {
+			int i = Arrays.binarySearch(mChars, 0, mChildCount, c);
+			return i >= 0 ? mChildren[i] : null;
+		}
+
+		Node(String edge) {
+			mEdge = edge;
+		}
+
+		/**
+		 * Add a child, whose edge must start with a character no other
+		 * child's does.
+		 */
+		void addChild(Node child) {
+			char c = child.mEdge.charAt(0);
+			int i = -Arrays.binarySearch(mChars, 0, mChildCount, c) - 1;
+			if (mChildCount == mChars.length) {
+				int size = Math.max(2, mChildCount * 2);
+				mChars = Arrays.copyOf(mChars, size);
+				mChildren = Arrays.copyOf(mChildren, size);
+			}
+			System.arraycopy(mChars, i, mChars, i + 1, mChildCount - i);
+			System.arraycopy(mChildren, i, mChildren, i + 1, mChildCount - i);
+			mChars[i] = c;
+			mChildren[i] = child;
+			mChildCount++;
+		}
+
+		/** Replace the child whose edge starts with the same character */
+		void replaceChild(Node child) {
+			int i = Arrays.binarySearch(mChars, 0, mChildCount,
+					child.mEdge.charAt(0));
+			mChildren[i] = child;
+		}
+
+		void removeChild(char c) {
+			int i = Arrays.binarySearch(mChars, 0, mChildCount, c);
+			if (i < 0)
+				return;
+			mChildCount--;
+			System.arraycopy(mChars, i + 1, mChars, i, mChildCount - i);
+			System.arraycopy(mChildren, i + 1, mChildren, i, mChildCount - i);
+			mChildren[mChildCount] = null;
+		}
+
+		void addEntry(Entry entry) {
+			if (mEntryCount == mEntries.length)
+				mEntries = Arrays.copyOf(mEntries, Math.max(1, mEntryCount * 2));
+			mEntries[mEntryCount++] = entry;
+		}
+
+		void removeEntry(Entry entry) {
+			for (int i = 0; i < mEntryCount; i++) {
+				if (mEntries[i] == entry) {
+					mEntryCount--;
+					mEntries[i] = mEntries[mEntryCount];
+					mEntries[mEntryCount] = null;
+					return;
+				}
+			}
+		}
+
+		boolean isEmpty() {
+			return mChildCount == 0 && mEntryCount == 0;
+		}
+	}
+
+	private static final class Entry {
+		Prediction mPrediction;
+		final String mId;
+		String[] mKeys;
+		int mHits;
+		long mLastUsed;
+		/** The lookup that last collected this, to skip duplicates */
+		int mStamp;
+		/** Set while collecting */
+		double mScore;
+		/** The tick at which the score was computed */
+		long mScoredAt = -1;
+
+		Entry(String id, String[] keys) {
+			mId = id;
+			mKeys = keys;
+		}
+	}
+
+	private static final Comparator<Entry> BY_SCORE = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			return Double.compare(a.mScore, b.mScore);
+		}
+	};
+
+	private final int mMaxPredictions;
+	private final Node mRoot = new Node("");
+	private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+	private long mTick;
+	private int mStamp;
+	private Entry[] mFound = new Entry[16];
+	private int mFoundCount;
+
+	public PredictionTrie() {
+		this(DEFAULT_MAX_PREDICTIONS);
+	}
+
+	/**
+	 * @param maxPredictions
+	 *            the most predictions held
+	 */
+	public PredictionTrie(int maxPredictions) {
+		Preconditions.checkArgument(maxPredictions > 0);
+		mMaxPredictions = maxPredictions;
+	}
+
+	/**
+	 * Add the predictions of a response. Predictions with the same id, or
+	 * failing that the same description, as one already held replace it
+	 * and add to its score, and are found by their own description and
+	 * terms from then on.
+	 */
+	public synchronized void addAll(List<Prediction> predictions) {
+		for (Prediction prediction : predictions)
+			add(prediction, 1);
+		if (mEntries.size() > mMaxPredictions)
+			evict();
+	}
+
+	/**
+	 * Record that the user chose a prediction, which raises its score.
+	 */
+	public synchronized void onChosen(Prediction prediction) {
+		add(prediction, CHOSEN_HITS);
+		if (mEntries.size() > mMaxPredictions)
+			evict();
+	}
+
+	/**
+	 * Find the best predictions for an input.
+	 * 
+	 * @param results
+	 *            filled with the predictions, best first
+	 * @return the number of predictions found, at most
+	 *         <code>results.length</code>.
+	 */
+	public synchronized int find(CharSequence input, Prediction[] results) {
+		Node node = mRoot;
+		// How far along the edge into the node the input has matched
+		int matched = 0;
+		char last = ' ';
+		for (int i = 0; i < input.length(); i++) {
+			char c = normalize(input.charAt(i));
+			if (c == 0 || c == ' ' && last == ' ')
+				continue;
+			last = c;
+			if (matched < node.mEdge.length()) {
+				if (node.mEdge.charAt(matched) != c)
+					return 0;
+				matched++;
+			} else {
+				node = node.child(c);
+				if (node == null)
+					return 0;
+				matched = 1;
+			}
+		}
+		if (node == mRoot)
+			return 0;
+
+		mStamp++;
+		mFoundCount = 0;
+		collect(node);
+		// Select the best, as there are usually few of them wanted
+		int count = Math.min(results.length, mFoundCount);
+		for (int i = 0; i < count; i++) {
+			int best = i;
+			for (int j = i + 1; j < mFoundCount; j++) {
+				if (mFound[j].mScore > mFound[best].mScore)
+					best = j;
+			}
+			Entry entry = mFound[best];
+			mFound[best] = mFound[i];
+			mFound[i] = entry;
+			results[i] = entry.mPrediction;
+		}
+		Arrays.fill(mFound, 0, mFoundCount, null);
+		return count;
+	}
+
+	/**
+	 * Find the best predictions for an input.
+	 * 
+	 * @see #find(CharSequence, Prediction[])
+	 */
+	public List<Prediction> find(CharSequence input, int max) {
+		Prediction[] results = new Prediction[max];
+		int count = find(input, results);
+		List<Prediction> list = new ArrayList<Prediction>(count);
+		for (int i = 0; i < count; i++)
+			list.add(results[i]);
+		return list;
+	}
+
+	/**
+	 * The number of predictions held.
+	 */
+	public synchronized int size() {
+		return mEntries.size();
+	}
+
+	public synchronized void clear() {
+		mEntries.clear();
+		mRoot.mChars = NO_CHARS;
+		mRoot.mChildren = NO_NODES;
+		mRoot.mChildCount = 0;
+	}
+
+	private void collect(Node node) {
+		for (int i = 0; i < node.mEntryCount; i++) {
+			Entry entry = node.mEntries[i];
+			if (entry.mStamp == mStamp)
+				continue;
+			entry.mStamp = mStamp;
+			// The scores only change as predictions are added, not between
+			// the keystrokes of one input
+			if (entry.mScoredAt != mTick) {
+				entry.mScore = score(entry);
+				entry.mScoredAt = mTick;
+			}
+			if (mFoundCount == mFound.length)
+				mFound = Arrays.copyOf(mFound, mFoundCount * 2);
+			mFound[mFoundCount++] = entry;
+		}
+		for (int i = 0; i < node.mChildCount; i++)
+			collect(node.mChildren[i]);
+	}
+
+	private double score(Entry entry) {
+		return entry.mHits
+				* Math.pow(0.5, (mTick - entry.mLastUsed) / (double) HALF_LIFE);
+	}
+
+	private void add(Prediction prediction, int hits) {
+		String id = prediction.getId() != null ? prediction.getId()
+				: prediction.getDescription();
+		if (id == null)
+			return;
+		mTick++;
+		Entry entry = mEntries.get(id);
+		if (entry == null) {
+			entry = new Entry(id, keys(prediction));
+			mEntries.put(id, entry);
+			for (String key : entry.mKeys)
+				insert(key, entry);
+		} else {
+			// Carry the score forward to now
+			entry.mHits = (int) Math.ceil(score(entry));
+			String[] keys = keys(prediction);
+			if (!Arrays.equals(keys, entry.mKeys)) {
+				// The description or terms changed, as when a place is
+				// renamed, so it is found by its new keys only
+				for (String key : entry.mKeys)
+					remove(mRoot, key, 0, entry);
+				entry.mKeys = keys;
+				for (String key : keys)
+					insert(key, entry);
+			}
+		}
+		entry.mPrediction = prediction;
+		entry.mHits += hits;
+		entry.mLastUsed = mTick;
+	}
+
+	/**
+	 * Evict the lowest scoring predictions, an eighth of the maximum at a
+	 * time so as not to do this for every response.
+	 */
+	private void evict() {
+		Entry[] entries = mEntries.values().toArray(new Entry[mEntries.size()]);
+		for (Entry entry : entries)
+			entry.mScore = score(entry);
+		Arrays.sort(entries, BY_SCORE);
+		int target = mMaxPredictions - Math.max(1, mMaxPredictions / 8);
+		for (int i = 0; i < entries.length - target; i++) {
+			Entry entry = entries[i];
+			mEntries.remove(entry.mId);
+			for (String key : entry.mKeys)
+				remove(mRoot, key, 0, entry);
+		}
+	}
+
+	private void insert(String key, Entry entry) {
+		Node node = mRoot;
+		int i = 0;
+		while (i < key.length()) {
+			Node child = node.child(key.charAt(i));
+			if (child == null) {
+				child = new Node(key.substring(i));
+				node.addChild(child);
+				node = child;
+				break;
+			}
+			String edge = child.mEdge;
+			int common = 1;
+			while (common < edge.length() && i + common < key.length()
+					&& edge.charAt(common) == key.charAt(i + common))
+				common++;
+			if (common < edge.length()) {
+				// The key branches, or ends, part way along the edge
+				Node split = new Node(edge.substring(0, common));
+				child.mEdge = edge.substring(common);
+				split.addChild(child);
+				node.replaceChild(split);
+				child = split;
+			}
+			node = child;
+			i += common;
+		}
+		node.addEntry(entry);
+	}
+
+	/**
+	 * @return true if the node is left empty and should be removed.
+	 */
+	private static boolean remove(Node node, String key, int index,
+			Entry entry) {
+		if (index == key.length()) {
+			node.removeEntry(entry);
+		} else {
+			char c = key.charAt(index);
+			Node child = node.child(c);
+			if (child == null || !key.startsWith(child.mEdge, index))
+				return false;
+			if (remove(child, key, index + child.mEdge.length(), entry)) {
+				node.removeChild(c);
+			} else if (child.mEntryCount == 0 && child.mChildCount == 1) {
+				// Merge the edge that no longer branches
+				Node grandchild = child.mChildren[0];
+				grandchild.mEdge = child.mEdge + grandchild.mEdge;
+				node.replaceChild(grandchild);
+			}
+		}
+		return node.isEmpty();
+	}
+
+	/**
+	 * The normalized description, and each term that isn't a prefix of it.
+	 */
+	private static String[] keys(Prediction prediction) {
+		List<String> keys = new ArrayList<String>();
+		String description = normalize(prediction.getDescription());
+		if (description.length() > 0)
+			keys.add(description);
+		for (Term term : prediction.getTerms()) {
+			String key = normalize(term.getValue());
+			if (key.length() > 0 && !description.startsWith(key)
+					&& !keys.contains(key))
+				keys.add(key);
+		}
+		return keys.toArray(new String[keys.size()]);
+	}
+
+	static String normalize(String s) {
+		if (s == null)
+			return "";
+		StringBuilder sb = new StringBuilder(s.length());
+		char last = ' ';
+		for (int i = 0; i < s.length(); i++) {
+			char c = normalize(s.charAt(i));
+			if (c == 0 || c == ' ' && last == ' ')
+				continue;
+			sb.append(c);
+			last = c;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the character lower cased, a space for whitespace, or 0 for
+	 *         punctuation, which is ignored.
+	 */
+	private static char normalize(char c) {
+		if (Character.isLetterOrDigit(c))
+			return Character.toLowerCase(c);
+		if (Character.isWhitespace(c))
+			return ' ';
+		return 0;
+	}
+}
@@ -16,7 +16,9 @@
  */
 package com.jjm.android.googleplaces.content;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
 import android.app.SearchManager;
 import android.content.ContentProvider;
@@ -27,10 +29,14 @@ import android.database.MatrixCursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import com.jjm.android.googleplaces.cache.DiskResponseCache;
+import com.jjm.android.googleplaces.cache.PlaceIndex;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
 import com.jjm.android.googleplaces.request.AutocompleteRequest;
+import com.jjm.android.googleplaces.request.CircuitOpenException;
+import com.jjm.android.googleplaces.request.PlacesClient;
 import com.jjm.android.googleplaces.response.AutocompleteResponse;
 import com.jjm.android.googleplaces.response.Prediction;
-import com.jjm.android.googleplaces.util.Helpers;
 
 /**
  * <p>
@@ -48,6 +54,12 @@ import com.jjm.android.googleplaces.util.Helpers;
  * <code>"content://com.jjm.android.googleplaces.content.GooglePlacesProvider/autocomplete/text"</code>
  * </p>
  * 
+ * <p>
+ * Suggestions are cached: if {@link PlacesClient#getDefault()} has no
+ * response cache when the provider is created, it is given a
+ * {@link DiskResponseCache} in the application's cache directory.
+ * </p>
+ * 
  * @author Jon Mason <jonathan.j.mason@gmail.com>
  */
 public class GooglePlacesProvider extends ContentProvider {
@@ -55,6 +67,12 @@ public class GooglePlacesProvider extends ContentProvider {
 
 	public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY);
 
+	/**
+	 * The directory in the application's cache directory that responses are
+	 * cached in.
+	 */
+	public static final String CACHE_DIRECTORY = "googleplaces";
+
 	private static final int MATCH_AUTOCOMPLETE = 1;
 	private static final UriMatcher sUriMatcher = new UriMatcher(
 			UriMatcher.NO_MATCH);
@@ -69,6 +87,28 @@ public class GooglePlacesProvider extends ContentProvider {
 	 */
 	@Override
 	public boolean onCreate() {
+		final PlacesClient client = PlacesClient.getDefault();
+		if (client.getResponseCache() == null) {
+			client.setResponseCache(new DiskResponseCache(new File(
+					getContext().getCacheDir(), CACHE_DIRECTORY)));
+		}
+		if (client.getPlaceIndex() == null) {
+			// Suggest places seen before when offline, starting with those
+			// cached by earlier runs
+			final PlaceIndex index = new PlaceIndex();
+			client.setPlaceIndex(index);
+			try {
+				client.getExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						index.addAll(client.getResponseCache(),
+								new ModelObjectParser(client.getJsonFactory()));
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// It will fill as responses arrive
+			}
+		}
 		return true;
 	}
 
@@ -86,20 +126,23 @@ public class GooglePlacesProvider extends ContentProvider {
 			throw new IllegalArgumentException("invalid uri " + uri);
 		// TODO Support location parameters
 		String text = uri.getLastPathSegment();
+		MatrixCursor cursor = new MatrixCursor(new String[]{
+				BaseColumns._ID,
+				SearchManager.SUGGEST_COLUMN_TEXT_1,
+				SearchManager.SUGGEST_COLUMN_INTENT_DATA});
 		AutocompleteResponse response = null;
 		try {
 			response = new AutocompleteRequest()
 					.setInput(text).useCurrentLocation(getContext())
-					.execute(Helpers.createJsonRequestFactory());
+					.execute();
+		} catch (CircuitOpenException e) {
+			// The service is failing, don't make the search ui wait for it
+			return cursor;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		} 
 		
 		response.getStatus().throwBadStatus();
-		MatrixCursor cursor = new MatrixCursor(new String[]{
-				BaseColumns._ID,
-				SearchManager.SUGGEST_COLUMN_TEXT_1,
-				SearchManager.SUGGEST_COLUMN_INTENT_DATA});
 		long id = 0;
 		for(Prediction prediction : response.getPredictions()){
 			cursor.addRow(new Object[]{
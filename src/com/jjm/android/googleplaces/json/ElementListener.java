@@ -0,0 +1,36 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.json;
+
+/**
+ * Receives the elements of an array as they are parsed, before the rest of
+ * the response has arrived.
+ *
+ * @see JsonModelParser#parseStreaming(com.google.api.client.json.JsonParser,
+ *      Class, String, Class, ElementListener)
+ */
+public interface ElementListener<E> {
+	/**
+	 * Called on the parsing thread for each element.
+	 *
+	 * @param element
+	 *            the element, which is complete
+	 * @param index
+	 *            its position in the array
+	 */
+	void onElement(E element, int index);
+}
@@ -0,0 +1,373 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.json;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.JsonToken;
+import com.google.api.client.util.ClassInfo;
+import com.google.api.client.util.FieldInfo;
+import com.google.api.client.util.GenericData;
+import com.google.api.client.util.Key;
+import com.google.api.client.util.Types;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Base class of the parsers generated by the <code>processor</code> module
+ * for classes with {@link Key} fields. A generated parser for
+ * <code>com.example.Foo</code> is named <code>com.example.Foo_JsonParser</code>
+ * (<code>Foo_Bar_JsonParser</code> for a nested class <code>Foo.Bar</code>)
+ * and sets the fields directly instead of through reflection.
+ * </p>
+ *
+ * <p>
+ * Each generated parser only handles the fields its class declares, and
+ * passes other fields to the parser of its superclass. Fields that no parser
+ * handles are stored in {@link GenericData} objects, or skipped.
+ * </p>
+ *
+ * <p>
+ * {@link #forClass(Class)} finds the generated parser for a class at
+ * runtime. Classes without one, for example because they were compiled
+ * without the processor, are parsed by reflection as before.
+ * </p>
+ */
+public abstract class JsonModelParser<T> {
+	private static final String SUFFIX = "_JsonParser";
+	private static final Object NONE = new Object();
+	private static final ConcurrentHashMap<Class<?>, Object> sParsers =
+			new ConcurrentHashMap<Class<?>, Object>();
+
+	private final JsonModelParser<?> mSuper;
+	private final boolean mComplete;
+
+	/**
+	 * @param superclass
+	 *            the nearest superclass with {@link Key} fields, or null if
+	 *            there is none.
+	 */
+	protected JsonModelParser(Class<?> superclass) {
+		mSuper = superclass != null ? forClass(superclass) : null;
+		mComplete = superclass == null || mSuper != null;
+	}
+
+	/**
+	 * The generated parser for a class.
+	 *
+	 * @return the parser, or null if the class, or one of its superclasses,
+	 *         has no generated parser.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> JsonModelParser<T> forClass(Class<T> cls) {
+		Object parser = sParsers.get(cls);
+		if (parser == null) {
+			parser = load(cls);
+			Object existing = sParsers.putIfAbsent(cls, parser);
+			if (existing != null)
+				parser = existing;
+		}
+		return parser != NONE ? (JsonModelParser<T>) parser : null;
+	}
+
+	private static Object load(Class<?> cls) {
+		String name = cls.getName().replace('$', '_') + SUFFIX;
+		try {
+			Class<?> parserClass = Class.forName(name, true,
+					cls.getClassLoader());
+			JsonModelParser<?> parser = (JsonModelParser<?>) parserClass
+					.getDeclaredConstructor().newInstance();
+			return parser.mComplete ? parser : NONE;
+		} catch (ClassNotFoundException e) {
+			return NONE;
+		} catch (NoSuchMethodException e) {
+			return NONE;
+		} catch (InstantiationException e) {
+			return NONE;
+		} catch (IllegalAccessException e) {
+			return NONE;
+		} catch (InvocationTargetException e) {
+			return NONE;
+		}
+	}
+
+	/**
+	 * Create an empty instance to parse into.
+	 */
+	protected abstract T newInstance();
+
+	/**
+	 * Parse the value of a field. The parser is positioned on the first
+	 * token of the value, which is not {@link JsonToken#VALUE_NULL}, and
+	 * must be left on its last token.
+	 *
+	 * @return false if the field is unknown.
+	 */
+	protected abstract boolean parseField(Object target, String name,
+			JsonParser parser) throws IOException;
+
+	/**
+	 * Pass a field this class doesn't declare to the superclass parser.
+	 */
+	protected final boolean parseInherited(Object target, String name,
+			JsonParser parser) throws IOException {
+		return mSuper != null && mSuper.parseField(target, name, parser);
+	}
+
+	/**
+	 * Parse an object. The parser is positioned before or on its
+	 * {@link JsonToken#START_OBJECT}, and is left on its
+	 * {@link JsonToken#END_OBJECT}.
+	 *
+	 * @return the object, or null for a json null.
+	 */
+	public final T parse(JsonParser parser) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == null)
+			token = parser.nextToken();
+		if (token == JsonToken.VALUE_NULL)
+			return null;
+		if (token != JsonToken.START_OBJECT)
+			throw new IllegalArgumentException("expected object but got "
+					+ token);
+		T target = newInstance();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			if (parser.nextToken() == JsonToken.VALUE_NULL)
+				continue;
+			if (!parseField(target, name, parser))
+				parseUnknown(target, name, parser);
+		}
+		return target;
+	}
+
+	/**
+	 * <p>
+	 * Parse an object, passing each element of one of its array fields to a
+	 * listener as soon as it has been parsed. The other fields are parsed as
+	 * usual. Once the whole object has been read, the array field is set to
+	 * a list of all the elements.
+	 * </p>
+	 *
+	 * <p>
+	 * Fields that come after the array, such as a status, are only known
+	 * once this returns, so listeners should treat elements as provisional.
+	 * </p>
+	 *
+	 * @param arrayField
+	 *            the json name of the array field
+	 * @param elementClass
+	 *            the class of its elements
+	 */
+	public static <T, E> T parseStreaming(JsonParser parser, Class<T> cls,
+			String arrayField, Class<E> elementClass,
+			ElementListener<? super E> listener) throws IOException {
+		JsonModelParser<T> model = forClass(cls);
+		JsonToken token = parser.getCurrentToken();
+		if (token == null)
+			token = parser.nextToken();
+		if (token != JsonToken.START_OBJECT)
+			throw new IllegalArgumentException("expected object but got "
+					+ token);
+		T target = model != null ? model.newInstance() : Types.newInstance(cls);
+		List<E> elements = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			if (parser.nextToken() == JsonToken.VALUE_NULL)
+				continue;
+			if (name.equals(arrayField)) {
+				expectArray(parser);
+				elements = new ArrayList<E>();
+				JsonModelParser<E> elementModel = forClass(elementClass);
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					if (parser.getCurrentToken() == JsonToken.VALUE_NULL)
+						continue;
+					E element = elementModel != null ? elementModel
+							.parse(parser) : parser.parse(elementClass, null);
+					listener.onElement(element, elements.size());
+					elements.add(element);
+				}
+			} else if (model != null) {
+				if (!model.parseField(target, name, parser))
+					parseUnknown(target, name, parser);
+			} else {
+				FieldInfo field = ClassInfo.of(cls).getFieldInfo(name);
+				if (field != null)
+					field.setValue(target,
+							parser.parse(field.getGenericType(), false, null));
+				else
+					parseUnknown(target, name, parser);
+			}
+		}
+		if (elements != null) {
+			FieldInfo field = ClassInfo.of(cls).getFieldInfo(arrayField);
+			Preconditions.checkArgument(field != null, "%s has no field %s",
+					cls, arrayField);
+			field.setValue(target, elements);
+		}
+		return target;
+	}
+
+	/**
+	 * Pass the elements of an array field of an object that has already been
+	 * parsed to a listener, as {@link #parseStreaming} would have. This lets
+	 * an object that didn't come from a stream, such as a cached response,
+	 * be delivered the same way.
+	 *
+	 * @param arrayField
+	 *            the json name of the array field
+	 * @param elementClass
+	 *            the class of its elements
+	 */
+	public static <E> void replay(Object object, String arrayField,
+			Class<E> elementClass, ElementListener<? super E> listener) {
+		FieldInfo field = ClassInfo.of(object.getClass()).getFieldInfo(
+				arrayField);
+		Preconditions.checkArgument(field != null, "%s has no field %s",
+				object.getClass(), arrayField);
+		Object elements = field.getValue(object);
+		if (!(elements instanceof List))
+			return;
+		int index = 0;
+		for (Object element : (List<?>) elements) {
+			if (element != null)
+				listener.onElement(elementClass.cast(element), index++);
+		}
+	}
+
+	private static void parseUnknown(Object target, String name,
+			JsonParser parser) throws IOException {
+		if (target instanceof GenericData)
+			((GenericData) target).set(name,
+					parser.parse(Object.class, false, null));
+		else
+			parser.skipChildren();
+	}
+
+	protected static String readString(JsonParser parser) throws IOException {
+		return parser.getText();
+	}
+
+	protected static int readInt(JsonParser parser) throws IOException {
+		return parser.getCurrentToken() == JsonToken.VALUE_STRING ? Integer
+				.parseInt(parser.getText()) : parser.getIntValue();
+	}
+
+	protected static long readLong(JsonParser parser) throws IOException {
+		return parser.getCurrentToken() == JsonToken.VALUE_STRING ? Long
+				.parseLong(parser.getText()) : parser.getLongValue();
+	}
+
+	protected static double readDouble(JsonParser parser) throws IOException {
+		return parser.getCurrentToken() == JsonToken.VALUE_STRING ? Double
+				.parseDouble(parser.getText()) : parser.getDoubleValue();
+	}
+
+	protected static float readFloat(JsonParser parser) throws IOException {
+		return parser.getCurrentToken() == JsonToken.VALUE_STRING ? Float
+				.parseFloat(parser.getText()) : parser.getFloatValue();
+	}
+
+	protected static boolean readBoolean(JsonParser parser) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.VALUE_STRING)
+			return Boolean.parseBoolean(parser.getText());
+		return token == JsonToken.VALUE_TRUE;
+	}
+
+	/**
+	 * Read an enum constant, mapping names with
+	 * {@link com.google.api.client.util.Value} annotations the same way the
+	 * reflective parser does.
+	 */
+	protected static <E extends Enum<E>> E readEnum(JsonParser parser,
+			Class<E> enumClass) throws IOException {
+		FieldInfo info = ClassInfo.of(enumClass).getFieldInfo(parser.getText());
+		if (info == null)
+			throw new IllegalArgumentException("no enum constant of "
+					+ enumClass.getName() + " named " + parser.getText());
+		return info.<E> enumValue();
+	}
+
+	/**
+	 * Read an object, using its generated parser if it has one.
+	 */
+	protected static <E> E readObject(JsonParser parser, Class<E> cls)
+			throws IOException {
+		JsonModelParser<E> model = forClass(cls);
+		if (model != null)
+			return model.parse(parser);
+		return parser.parse(cls, null);
+	}
+
+	protected static List<String> readStringList(JsonParser parser)
+			throws IOException {
+		List<String> list = new ArrayList<String>();
+		expectArray(parser);
+		while (parser.nextToken() != JsonToken.END_ARRAY)
+			list.add(parser.getCurrentToken() == JsonToken.VALUE_NULL ? null
+					: parser.getText());
+		return list;
+	}
+
+	protected static <E> List<E> readObjectList(JsonParser parser, Class<E> cls)
+			throws IOException {
+		List<E> list = new ArrayList<E>();
+		expectArray(parser);
+		JsonModelParser<E> model = forClass(cls);
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			if (parser.getCurrentToken() == JsonToken.VALUE_NULL)
+				list.add(null);
+			else
+				list.add(model != null ? model.parse(parser) : parser.parse(
+						cls, null));
+		}
+		return list;
+	}
+
+	/**
+	 * Read a value of a type the generated code doesn't handle itself, using
+	 * the reflective parser.
+	 */
+	protected static Object readValue(JsonParser parser, Type type)
+			throws IOException {
+		return parser.parse(type, false, null);
+	}
+
+	/**
+	 * The declared type of a field, for {@link #readValue(JsonParser, Type)}.
+	 */
+	protected static Type fieldType(Class<?> cls, String field) {
+		try {
+			return cls.getDeclaredField(field).getGenericType();
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void expectArray(JsonParser parser) {
+		if (parser.getCurrentToken() != JsonToken.START_ARRAY)
+			throw new IllegalArgumentException("expected array but got "
+					+ parser.getCurrentToken());
+	}
+}
@@ -0,0 +1,90 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.util.ObjectParser;
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link ObjectParser} that uses the generated {@link JsonModelParser}
+ * of a class when there is one, and a {@link JsonObjectParser} otherwise.
+ */
+public class ModelObjectParser implements ObjectParser {
+	private final JsonFactory mJsonFactory;
+	private final JsonObjectParser mFallback;
+
+	public ModelObjectParser(JsonFactory jsonFactory) {
+		mJsonFactory = Preconditions.checkNotNull(jsonFactory);
+		mFallback = new JsonObjectParser(jsonFactory);
+	}
+
+	public JsonFactory getJsonFactory() {
+		return mJsonFactory;
+	}
+
+	@Override
+	public <T> T parseAndClose(InputStream in, Charset charset, Class<T> dataClass)
+			throws IOException {
+		JsonModelParser<T> model = JsonModelParser.forClass(dataClass);
+		if (model == null)
+			return mFallback.parseAndClose(in, charset, dataClass);
+		return parseAndClose(mJsonFactory.createJsonParser(in, charset), model);
+	}
+
+	@Override
+	public Object parseAndClose(InputStream in, Charset charset, Type dataType)
+			throws IOException {
+		if (dataType instanceof Class<?>)
+			return parseAndClose(in, charset, (Class<?>) dataType);
+		return mFallback.parseAndClose(in, charset, dataType);
+	}
+
+	@Override
+	public <T> T parseAndClose(Reader reader, Class<T> dataClass)
+			throws IOException {
+		JsonModelParser<T> model = JsonModelParser.forClass(dataClass);
+		if (model == null)
+			return mFallback.parseAndClose(reader, dataClass);
+		return parseAndClose(mJsonFactory.createJsonParser(reader), model);
+	}
+
+	@Override
+	public Object parseAndClose(Reader reader, Type dataType)
+			throws IOException {
+		if (dataType instanceof Class<?>)
+			return parseAndClose(reader, (Class<?>) dataType);
+		return mFallback.parseAndClose(reader, dataType);
+	}
+
+	private static <T> T parseAndClose(JsonParser parser,
+			JsonModelParser<T> model) throws IOException {
+		try {
+			return model.parse(parser);
+		} finally {
+			parser.close();
+		}
+	}
+}
@@ -0,0 +1,412 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.util.MpscRingBuffer;
+
+/**
+ * <p>
+ * A log of the calls a {@link PlacesClient} makes, one json object per line:
+ * </p>
+ * 
+ * <pre>
+ * {"time":1350000000000,"endpoint":"https://maps.googleapis.com/maps/api/place/autocomplete/json",
+ *  "query":"input=harb&amp;sensor=false","attempt":1,"status":"OK","error":null,"micros":48211,"bytes":3052}
+ * </pre>
+ * <p>
+ * The query is the request's canonical one, so it never includes the api
+ * key. Bytes is null if the body wasn't read.
+ * </p>
+ * <p>
+ * Logging a call never blocks: the entry is put in a bounded
+ * {@link MpscRingBuffer} and written by a background thread, and if the
+ * buffer is full the entry is dropped and counted in {@link #getDropped()}.
+ * Set a sample rate to log a fraction of calls. The file is rolled once it
+ * reaches {@link #setMaxFileBytes(long)}, keeping
+ * {@link #setMaxFiles(int)} files, named <code>access.log</code>,
+ * <code>access.log.1</code>, and so on.
+ * </p>
+ * 
+ * @see PlacesClient#setAccessLog(AccessLog)
+ */
+public class AccessLog implements Closeable {
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final long DEFAULT_MAX_FILE_BYTES = 4 * 1024 * 1024;
+	public static final int DEFAULT_MAX_FILES = 3;
+	/** How often the writer looks for new entries */
+	private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File mFile;
+	private final MpscRingBuffer<Entry> mBuffer;
+	private final Random mRandom = new Random();
+	private final AtomicLong mLogged = new AtomicLong();
+	private final AtomicLong mSampledOut = new AtomicLong();
+	private final AtomicLong mDropped = new AtomicLong();
+	private volatile long mWritten;
+	private volatile long mWriteErrors;
+	private volatile double mSampleRate = 1;
+	private volatile long mMaxFileBytes = DEFAULT_MAX_FILE_BYTES;
+	private volatile int mMaxFiles = DEFAULT_MAX_FILES;
+	private volatile boolean mClosed;
+	private Thread mWriter;
+
+	// Used by the writer thread only
+	private FileChannel mChannel;
+	private long mFileBytes;
+	private final StringBuilder mLines = new StringBuilder(WRITE_BUFFER_BYTES);
+	private final ByteBuffer mBytes = ByteBuffer
+			.allocateDirect(WRITE_BUFFER_BYTES);
+	private final CharsetEncoder mEncoder = UTF_8.newEncoder();
+
+	/**
+	 * @param file
+	 *            the file to append to
+	 */
+	public AccessLog(File file) {
+		this(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param file
+	 *            the file to append to
+	 * @param capacity
+	 *            the most entries waiting to be written
+	 */
+	public AccessLog(File file, int capacity) {
+		mFile = Preconditions.checkNotNull(file);
+		mBuffer = new MpscRingBuffer<Entry>(capacity);
+	}
+
+	public File getFile() {
+		return mFile;
+	}
+
+	/**
+	 * @param sampleRate
+	 *            the fraction of calls to log, from 0 to 1. The default is
+	 *            1, every call.
+	 */
+	public AccessLog setSampleRate(double sampleRate) {
+		Preconditions.checkArgument(sampleRate >= 0 && sampleRate <= 1);
+		mSampleRate = sampleRate;
+		return this;
+	}
+
+	public double getSampleRate() {
+		return mSampleRate;
+	}
+
+	/**
+	 * @param maxFileBytes
+	 *            the size at which the file is rolled
+	 */
+	public AccessLog setMaxFileBytes(long maxFileBytes) {
+		Preconditions.checkArgument(maxFileBytes > 0);
+		mMaxFileBytes = maxFileBytes;
+		return this;
+	}
+
+	/**
+	 * @param maxFiles
+	 *            the number of files kept, including the one being written
+	 */
+	public AccessLog setMaxFiles(int maxFiles) {
+		Preconditions.checkArgument(maxFiles > 0);
+		mMaxFiles = maxFiles;
+		return this;
+	}
+
+	/**
+	 * Start the writer thread. Calls logged before this wait in the buffer.
+	 */
+	public synchronized AccessLog start() {
+		Preconditions.checkState(!mClosed, "closed");
+		if (mWriter == null) {
+			mWriter = PlacesExecutors.threadFactory("PlacesAccessLog")
+					.newThread(new Runnable() {
+						@Override
+						public void run() {
+							write();
+						}
+					});
+			mWriter.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Write the entries already logged, then stop the writer thread. Calls
+	 * logged afterwards are dropped.
+	 */
+	@Override
+	public void close() throws IOException {
+		Thread writer;
+		synchronized (this) {
+			mClosed = true;
+			writer = mWriter;
+		}
+		if (writer == null)
+			return;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The number of calls put in the buffer to be written.
+	 */
+	public long getLogged() {
+		return mLogged.get();
+	}
+
+	/**
+	 * The number of calls not logged because of the sample rate.
+	 */
+	public long getSampledOut() {
+		return mSampledOut.get();
+	}
+
+	/**
+	 * The number of calls not logged because the buffer was full, or the log
+	 * was closed.
+	 */
+	public long getDropped() {
+		return mDropped.get();
+	}
+
+	/**
+	 * The number of entries written to the file.
+	 */
+	public long getWritten() {
+		return mWritten;
+	}
+
+	/**
+	 * The number of times writing to the file failed. The entries being
+	 * written are lost.
+	 */
+	public long getWriteErrors() {
+		return mWriteErrors;
+	}
+
+	/**
+	 * Log a call, from the thread that made it.
+	 * 
+	 * @param bytes
+	 *            the size of the body, or -1 if it wasn't read
+	 */
+	void log(PlacesRequest<?> request, int attempt, Status status,
+			Throwable error, long nanos, long bytes) {
+		double sampleRate = mSampleRate;
+		if (sampleRate < 1 && mRandom.nextDouble() >= sampleRate) {
+			mSampledOut.incrementAndGet();
+			return;
+		}
+		if (mClosed) {
+			mDropped.incrementAndGet();
+			return;
+		}
+		Entry entry = new Entry(System.currentTimeMillis(),
+				request.getCanonicalUrl(), attempt, status, error, nanos, bytes);
+		if (mBuffer.offer(entry))
+			mLogged.incrementAndGet();
+		else
+			mDropped.incrementAndGet();
+	}
+
+	private void write() {
+		long written = 0;
+		while (true) {
+			boolean closed = mClosed;
+			int lines = 0;
+			Entry entry;
+			while ((entry = mBuffer.poll()) != null) {
+				entry.appendTo(mLines);
+				lines++;
+				if (mLines.length() >= WRITE_BUFFER_BYTES) {
+					written += flush(lines);
+					lines = 0;
+				}
+			}
+			if (lines > 0)
+				written += flush(lines);
+			mWritten = written;
+			if (closed)
+				break;
+			LockSupport.parkNanos(this, POLL_NANOS);
+		}
+		closeChannel();
+		// Count anything logged while closing
+		while (mBuffer.poll() != null) {
+			mLogged.decrementAndGet();
+			mDropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Write the buffered lines, rolling the file first if it is full.
+	 * 
+	 * @return the number of lines written.
+	 */
+	private int flush(int lines) {
+		try {
+			if (mChannel != null && mFileBytes >= mMaxFileBytes)
+				roll();
+			if (mChannel == null)
+				open();
+			CharBuffer chars = CharBuffer.wrap(mLines);
+			mEncoder.reset();
+			CoderResult result;
+			do {
+				result = mEncoder.encode(chars, mBytes, true);
+				if (result.isOverflow() || !chars.hasRemaining())
+					drain();
+			} while (chars.hasRemaining());
+			mEncoder.flush(mBytes);
+			drain();
+			return lines;
+		} catch (IOException e) {
+			mWriteErrors++;
+			closeChannel();
+			mBytes.clear();
+			return 0;
+		} finally {
+			mLines.setLength(0);
+		}
+	}
+
+	private void drain() throws IOException {
+		mBytes.flip();
+		while (mBytes.hasRemaining())
+			mFileBytes += mChannel.write(mBytes);
+		mBytes.clear();
+	}
+
+	private void open() throws IOException {
+		mChannel = new FileOutputStream(mFile, true).getChannel();
+		mFileBytes = mChannel.size();
+	}
+
+	private void roll() throws IOException {
+		closeChannel();
+		int maxFiles = mMaxFiles;
+		new File(mFile.getPath() + "." + (maxFiles - 1)).delete();
+		for (int i = maxFiles - 2; i > 0; i--)
+			new File(mFile.getPath() + "." + i).renameTo(new File(mFile
+					.getPath() + "." + (i + 1)));
+		if (maxFiles > 1)
+			mFile.renameTo(new File(mFile.getPath() + ".1"));
+		else
+			mFile.delete();
+	}
+
+	private void closeChannel() {
+		if (mChannel == null)
+			return;
+		try {
+			mChannel.close();
+		} catch (IOException e) {
+			mWriteErrors++;
+		}
+		mChannel = null;
+	}
+
+	private static final class Entry {
+		private final long mTime;
+		private final String mUrl;
+		private final int mAttempt;
+		private final Status mStatus;
+		private final Throwable mError;
+		private final long mNanos;
+		private final long mBytes;
+
+		Entry(long time, String url, int attempt, Status status,
+				Throwable error, long nanos, long bytes) {
+			mTime = time;
+			mUrl = url;
+			mAttempt = attempt;
+			mStatus = status;
+			mError = error;
+			mNanos = nanos;
+			mBytes = bytes;
+		}
+
+		void appendTo(StringBuilder sb) {
+			int query = mUrl.indexOf('?');
+			String endpoint = query < 0 ? mUrl : mUrl.substring(0, query);
+			sb.append("{\"time\":").append(mTime);
+			sb.append(",\"endpoint\":");
+			appendString(sb, endpoint);
+			sb.append(",\"query\":");
+			appendString(sb, query < 0 ? "" : mUrl.substring(query + 1));
+			sb.append(",\"attempt\":").append(mAttempt);
+			sb.append(",\"status\":");
+			appendString(sb, mStatus != null ? mStatus.name() : null);
+			sb.append(",\"error\":");
+			appendString(sb, mError != null ? mError.getClass().getName()
+					: null);
+			sb.append(",\"micros\":").append(
+					TimeUnit.NANOSECONDS.toMicros(mNanos));
+			sb.append(",\"bytes\":");
+			if (mBytes < 0)
+				sb.append("null");
+			else
+				sb.append(mBytes);
+			sb.append("}\n");
+		}
+
+		private static void appendString(StringBuilder sb, String s) {
+			if (s == null) {
+				sb.append("null");
+				return;
+			}
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\')
+					sb.append('\\').append(c);
+				else if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+			sb.append('"');
+		}
+	}
+}
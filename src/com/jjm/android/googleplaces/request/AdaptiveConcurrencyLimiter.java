@@ -0,0 +1,301 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+
+/**
+ * <p>
+ * Limits the number of requests in flight, adjusting the limit with additive
+ * increase / multiplicative decrease (AIMD). Each healthy response grows the
+ * limit by <code>increase / limit</code>, so the limit grows by about
+ * <code>increase</code> per round trip. A response with
+ * {@link Status#OVER_QUERY_LIMIT} or {@link Status#UNKOWN_ERROR}, a read
+ * timeout, or a latency more than <code>latencyTolerance</code> times the
+ * smoothed latency, multiplies the limit by <code>backoffRatio</code>.
+ * </p>
+ *
+ * <p>
+ * The limit is cut at most once per round trip: overload signals from
+ * requests that started before the last cut are ignored, since they
+ * describe the old limit.
+ * </p>
+ *
+ * <p>
+ * Install a limiter with
+ * {@link PlacesClient#setConcurrencyLimiter(AdaptiveConcurrencyLimiter)}.
+ * The current limit and a history of its changes are available for metrics.
+ * </p>
+ */
+public class AdaptiveConcurrencyLimiter {
+	public static final int DEFAULT_INITIAL_LIMIT = 4;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 64;
+	public static final double DEFAULT_INCREASE = 1;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+	public static final double DEFAULT_LATENCY_TOLERANCE = 3;
+
+	private static final int HISTORY_SIZE = 256;
+	private static final double LATENCY_SMOOTHING = 0.05;
+
+	/**
+	 * A change of the limit.
+	 */
+	public static class Sample {
+		private final long mTimeMillis;
+		private final double mLimit;
+
+		Sample(long timeMillis, double limit) {
+			mTimeMillis = timeMillis;
+			mLimit = limit;
+		}
+
+		/**
+		 * When the limit changed, as returned by
+		 * {@link System#currentTimeMillis()}.
+		 */
+		public long getTimeMillis() {
+			return mTimeMillis;
+		}
+
+		/**
+		 * The new limit.
+		 */
+		public double getLimit() {
+			return mLimit;
+		}
+
+		@Override
+		public String toString() {
+			return mTimeMillis + ":" + mLimit;
+		}
+	}
+
+	private final int mMinLimit;
+	private final int mMaxLimit;
+	private double mIncrease = DEFAULT_INCREASE;
+	private double mBackoffRatio = DEFAULT_BACKOFF_RATIO;
+	private double mLatencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+
+	// All guarded by this
+	private double mLimit;
+	private int mInFlight;
+	private double mLatencyNanos;
+	private long mLastCutNanos;
+	private long mCutCount;
+	private final Sample[] mHistory = new Sample[HISTORY_SIZE];
+	private int mHistoryCount;
+
+	public AdaptiveConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * @param initialLimit
+	 *            the limit to start with
+	 * @param minLimit
+	 *            the limit is never cut below this
+	 * @param maxLimit
+	 *            the limit never grows above this
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit,
+			int maxLimit) {
+		Preconditions.checkArgument(minLimit > 0);
+		Preconditions.checkArgument(maxLimit >= minLimit);
+		Preconditions.checkArgument(initialLimit >= minLimit
+				&& initialLimit <= maxLimit);
+		mMinLimit = minLimit;
+		mMaxLimit = maxLimit;
+		mLimit = initialLimit;
+		mLastCutNanos = System.nanoTime();
+		record();
+	}
+
+	/**
+	 * @param increase
+	 *            how much the limit grows per round trip while healthy
+	 */
+	public synchronized AdaptiveConcurrencyLimiter setIncrease(double increase) {
+		Preconditions.checkArgument(increase > 0);
+		mIncrease = increase;
+		return this;
+	}
+
+	/**
+	 * @param backoffRatio
+	 *            what the limit is multiplied by on overload, between 0 and 1
+	 */
+	public synchronized AdaptiveConcurrencyLimiter setBackoffRatio(
+			double backoffRatio) {
+		Preconditions.checkArgument(backoffRatio > 0 && backoffRatio < 1);
+		mBackoffRatio = backoffRatio;
+		return this;
+	}
+
+	/**
+	 * @param latencyTolerance
+	 *            how many times the smoothed latency a response may take
+	 *            before it counts as a latency spike
+	 */
+	public synchronized AdaptiveConcurrencyLimiter setLatencyTolerance(
+			double latencyTolerance) {
+		Preconditions.checkArgument(latencyTolerance > 1);
+		mLatencyTolerance = latencyTolerance;
+		return this;
+	}
+
+	/**
+	 * Wait until a request may start.
+	 *
+	 * @return a token to pass to the matching <code>on...</code> call.
+	 */
+	public synchronized long acquire() throws InterruptedIOException {
+		try {
+			while (mInFlight >= (int) mLimit)
+				wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException ex = new InterruptedIOException(
+					"interrupted waiting for concurrency limiter");
+			ex.initCause(e);
+			throw ex;
+		}
+		mInFlight++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Start a request if the limit allows it.
+	 *
+	 * @return a token to pass to the matching <code>on...</code> call, or
+	 *         {@link Long#MIN_VALUE} if the limit has been reached.
+	 */
+	public synchronized long tryAcquire() {
+		if (mInFlight >= (int) mLimit)
+			return Long.MIN_VALUE;
+		mInFlight++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Report the response to a request started with <code>token</code>.
+	 */
+	public void onResponse(long token, Status status) {
+		long now = System.nanoTime();
+		long latency = now - token;
+		synchronized (this) {
+			boolean overload = status == Status.OVER_QUERY_LIMIT
+					|| status == Status.UNKOWN_ERROR
+					|| (mLatencyNanos > 0 && latency > mLatencyTolerance
+							* mLatencyNanos);
+			if (overload) {
+				cut(token);
+			} else {
+				mLatencyNanos = mLatencyNanos == 0 ? latency : mLatencyNanos
+						+ LATENCY_SMOOTHING * (latency - mLatencyNanos);
+				// Only grow if the limit is actually being used
+				if (mInFlight >= (int) mLimit - 1 && mLimit < mMaxLimit) {
+					mLimit = Math.min(mMaxLimit, mLimit + mIncrease / mLimit);
+					record();
+				}
+			}
+			release();
+		}
+	}
+
+	/**
+	 * Report that a request started with <code>token</code> timed out, which
+	 * is treated as overload.
+	 */
+	public synchronized void onTimeout(long token) {
+		cut(token);
+		release();
+	}
+
+	/**
+	 * Report that a request started with <code>token</code> failed in a way
+	 * that says nothing about load, such as a connection error. The limit is
+	 * not changed.
+	 */
+	public synchronized void onIgnore(long token) {
+		release();
+	}
+
+	private void cut(long token) {
+		if (token - mLastCutNanos < 0)
+			return;
+		mLastCutNanos = System.nanoTime();
+		mCutCount++;
+		mLimit = Math.max(mMinLimit, mLimit * mBackoffRatio);
+		record();
+	}
+
+	private void release() {
+		mInFlight--;
+		notifyAll();
+	}
+
+	private void record() {
+		mHistory[mHistoryCount++ % HISTORY_SIZE] = new Sample(
+				System.currentTimeMillis(), mLimit);
+	}
+
+	/**
+	 * The current limit. Requests may start while fewer than
+	 * <code>(int) getLimit()</code> are in flight.
+	 */
+	public synchronized double getLimit() {
+		return mLimit;
+	}
+
+	/**
+	 * The number of requests in flight.
+	 */
+	public synchronized int getInFlight() {
+		return mInFlight;
+	}
+
+	/**
+	 * The number of times the limit has been cut.
+	 */
+	public synchronized long getCutCount() {
+		return mCutCount;
+	}
+
+	/**
+	 * The smoothed latency of healthy responses, in nanoseconds.
+	 */
+	public synchronized long getLatencyNanos() {
+		return (long) mLatencyNanos;
+	}
+
+	/**
+	 * The most recent changes of the limit, oldest first.
+	 */
+	public synchronized List<Sample> getHistory() {
+		int n = Math.min(mHistoryCount, HISTORY_SIZE);
+		List<Sample> history = new ArrayList<Sample>(n);
+		for (int i = mHistoryCount - n; i < mHistoryCount; i++)
+			history.add(mHistory[i % HISTORY_SIZE]);
+		return history;
+	}
+}
@@ -0,0 +1,301 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.jjm.android.googleplaces.util.TokenBucket;
+
+/**
+ * <p>
+ * Paces requests per api key, using one {@link TokenBucket} for the per
+ * second rate and another for the daily quota. Every key gets the default
+ * limits unless it has been given its own with
+ * {@link #setLimits(String, double, int, long)}.
+ * </p>
+ *
+ * <p>
+ * Acquiring a permit is lock-free: a map lookup and a compare-and-set per
+ * bucket. Install a limiter with
+ * {@link PlacesClient#setRateLimiter(ApiKeyRateLimiter)}; the client then
+ * acquires a permit before each attempt, according to {@link #getMode()}.
+ * </p>
+ *
+ * <p>
+ * Waiting never outlasts {@link #setMaxWait(long, TimeUnit)}, and never
+ * waits for the daily quota at all: once a key's quota is used up, the next
+ * token is hours away, so permits for it fail with a
+ * {@link RateLimitExceededException} in every mode.
+ * </p>
+ */
+public class ApiKeyRateLimiter {
+	/**
+	 * How {@link PlacesClient} waits for a permit.
+	 */
+	public static enum Mode {
+		/**
+		 * Block the executing thread until a permit is available, for up to
+		 * the maximum wait.
+		 */
+		BLOCKING,
+		/**
+		 * Fail with a {@link RateLimitExceededException} if no permit is
+		 * available now.
+		 */
+		FAIL_FAST,
+		/**
+		 * For asynchronous requests, delay submitting the request until a
+		 * permit is available instead of occupying an executor thread.
+		 * Synchronous requests block.
+		 */
+		ASYNC
+	}
+
+	/**
+	 * The default longest a permit may wait in {@link Mode#BLOCKING} or
+	 * {@link Mode#ASYNC} mode.
+	 */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 30 * 1000;
+
+	private static final class Limits {
+		final TokenBucket mPerSecond;
+		final TokenBucket mPerDay;
+
+		Limits(double perSecond, int burst, long perDay) {
+			mPerSecond = TokenBucket.perSecond(perSecond, burst);
+			mPerDay = perDay > 0 ? new TokenBucket(perDay, 1, TimeUnit.DAYS,
+					perDay) : null;
+		}
+
+		/**
+		 * Reserve from both buckets, returning the wait or -1. The daily
+		 * bucket is never waited for.
+		 */
+		long reserve(long maxWaitNanos) {
+			if (mPerDay != null && mPerDay.reserve(0) < 0)
+				return -1;
+			long wait = mPerSecond.reserve(maxWaitNanos);
+			if (wait < 0) {
+				if (mPerDay != null)
+					mPerDay.release();
+				return -1;
+			}
+			return wait;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Limits> mLimits =
+			new ConcurrentHashMap<String, Limits>();
+	private final double mPerSecond;
+	private final int mBurst;
+	private final long mPerDay;
+	private volatile Mode mMode = Mode.BLOCKING;
+	private volatile long mMaxWaitNanos = TimeUnit.MILLISECONDS
+			.toNanos(DEFAULT_MAX_WAIT_MILLIS);
+
+	private final AtomicLong mAcquiredCount = new AtomicLong();
+	private final AtomicLong mRejectedCount = new AtomicLong();
+	private final AtomicLong mDelayedCount = new AtomicLong();
+	private final AtomicLong mWaitNanos = new AtomicLong();
+
+	/**
+	 * @param perSecond
+	 *            the default number of requests per second per key
+	 * @param burst
+	 *            the default number of requests a key may make at once
+	 * @param perDay
+	 *            the default number of requests per day per key, or 0 for no
+	 *            daily limit
+	 */
+	public ApiKeyRateLimiter(double perSecond, int burst, long perDay) {
+		Preconditions.checkArgument(perSecond > 0);
+		Preconditions.checkArgument(burst > 0);
+		Preconditions.checkArgument(perDay >= 0);
+		mPerSecond = perSecond;
+		mBurst = burst;
+		mPerDay = perDay;
+	}
+
+	/**
+	 * Give a key its own limits.
+	 *
+	 * @see #ApiKeyRateLimiter(double, int, long)
+	 */
+	public ApiKeyRateLimiter setLimits(String apiKey, double perSecond,
+			int burst, long perDay) {
+		mLimits.put(Preconditions.checkNotNull(apiKey), new Limits(perSecond,
+				burst, perDay));
+		return this;
+	}
+
+	public Mode getMode() {
+		return mMode;
+	}
+
+	public ApiKeyRateLimiter setMode(Mode mode) {
+		mMode = Preconditions.checkNotNull(mode);
+		return this;
+	}
+
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(mMaxWaitNanos);
+	}
+
+	/**
+	 * Set the longest {@link #acquire(String)} and
+	 * {@link #acquireAsync(String)} wait for a permit. If a permit would take
+	 * longer they fail with a {@link RateLimitExceededException}.
+	 */
+	public ApiKeyRateLimiter setMaxWait(long duration, TimeUnit unit) {
+		Preconditions.checkArgument(duration >= 0);
+		mMaxWaitNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	private Limits limitsFor(String apiKey) {
+		Limits limits = mLimits.get(apiKey);
+		if (limits == null) {
+			Limits created = new Limits(mPerSecond, mBurst, mPerDay);
+			limits = mLimits.putIfAbsent(apiKey, created);
+			if (limits == null)
+				limits = created;
+		}
+		return limits;
+	}
+
+	/**
+	 * Take a permit for the key if one is available now.
+	 *
+	 * @return true if a permit was taken.
+	 */
+	public boolean tryAcquire(String apiKey) {
+		if (limitsFor(apiKey).reserve(0) < 0) {
+			mRejectedCount.incrementAndGet();
+			return false;
+		}
+		mAcquiredCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Take a permit for the key, blocking until it is available.
+	 * 
+	 * @throws RateLimitExceededException
+	 *             if the key's daily quota is used up, or the wait would be
+	 *             longer than {@link #getMaxWaitMillis()}
+	 */
+	public void acquire(String apiKey) throws InterruptedIOException,
+			RateLimitExceededException {
+		long wait = limitsFor(apiKey).reserve(mMaxWaitNanos);
+		if (wait < 0) {
+			mRejectedCount.incrementAndGet();
+			throw new RateLimitExceededException(apiKey);
+		}
+		mAcquiredCount.incrementAndGet();
+		if (wait > 0) {
+			mDelayedCount.incrementAndGet();
+			mWaitNanos.addAndGet(wait);
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException ex = new InterruptedIOException(
+						"interrupted waiting for rate limiter");
+				ex.initCause(e);
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * Take a permit for the key without blocking.
+	 *
+	 * @return a future that completes when the permit may be used, or fails
+	 *         at once with a {@link RateLimitExceededException} if the key's
+	 *         daily quota is used up, or the wait would be longer than
+	 *         {@link #getMaxWaitMillis()}.
+	 */
+	public ListenableFuture<Void> acquireAsync(String apiKey) {
+		long wait = limitsFor(apiKey).reserve(mMaxWaitNanos);
+		if (wait < 0) {
+			mRejectedCount.incrementAndGet();
+			return Futures.immediateFailedFuture(new RateLimitExceededException(
+					apiKey));
+		}
+		mAcquiredCount.incrementAndGet();
+		if (wait <= 0)
+			return Futures.immediateFuture(null);
+		mDelayedCount.incrementAndGet();
+		mWaitNanos.addAndGet(wait);
+		final SettableFuture<Void> future = SettableFuture.create();
+		PlacesExecutors.scheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				future.set(null);
+			}
+		}, wait, TimeUnit.NANOSECONDS);
+		return future;
+	}
+
+	/**
+	 * Acquire a permit for a synchronous attempt, according to the mode.
+	 */
+	void acquireForCall(String apiKey) throws InterruptedIOException,
+			RateLimitExceededException {
+		if (mMode == Mode.FAIL_FAST) {
+			if (!tryAcquire(apiKey))
+				throw new RateLimitExceededException(apiKey);
+		} else {
+			acquire(apiKey);
+		}
+	}
+
+	/**
+	 * The number of permits handed out.
+	 */
+	public long getAcquiredCount() {
+		return mAcquiredCount.get();
+	}
+
+	/**
+	 * The number of permits refused.
+	 */
+	public long getRejectedCount() {
+		return mRejectedCount.get();
+	}
+
+	/**
+	 * The number of permits that had to wait.
+	 */
+	public long getDelayedCount() {
+		return mDelayedCount.get();
+	}
+
+	/**
+	 * The total time permits have waited, in nanoseconds.
+	 */
+	public long getWaitNanos() {
+		return mWaitNanos.get();
+	}
+}
@@ -16,10 +16,14 @@
  */
 package com.jjm.android.googleplaces.request;
 
+import java.io.IOException;
+
 import android.content.Context;
 
 import com.google.api.client.util.Key;
+import com.jjm.android.googleplaces.json.ElementListener;
 import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.Prediction;
 
 /**
  * TODO Document PlacesAutocompleteRequest
@@ -79,6 +83,32 @@ public class AutocompleteRequest extends PlacesRequest<AutocompleteResponse> {
 		return this;
 	}
 
+	/**
+	 * Execute the request using {@link PlacesClient#getDefault()}, passing
+	 * each prediction to <code>listener</code> as soon as it has arrived.
+	 * 
+	 * @see #execute(PlacesClient, ElementListener)
+	 */
+	public AutocompleteResponse execute(
+			ElementListener<? super Prediction> listener) throws IOException {
+		return execute(PlacesClient.getDefault(), listener);
+	}
+
+	/**
+	 * Execute the request, passing each prediction to <code>listener</code>
+	 * as soon as it has arrived. The status of the response is only known
+	 * once this returns, so the predictions should be treated as provisional
+	 * until then.
+	 * 
+	 * @see PlacesClient#executeStreaming(PlacesRequest, String, Class,
+	 *      ElementListener)
+	 */
+	public AutocompleteResponse execute(PlacesClient client,
+			ElementListener<? super Prediction> listener) throws IOException {
+		return client.executeStreaming(this, "predictions", Prediction.class,
+				listener);
+	}
+
 	public static AutocompleteRequest of(Context locationSource, String input) {
 		return (AutocompleteRequest) 
 				new AutocompleteRequest()
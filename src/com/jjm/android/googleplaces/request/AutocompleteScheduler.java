@@ -0,0 +1,139 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Decides when to send autocomplete requests as the user types. At most one
+ * request is in flight: text typed while one is running is searched for
+ * when it finishes, skipping whatever was typed in between. Text shorter
+ * than the threshold, or the same as the last text searched for, is not
+ * searched for.
+ * </p>
+ *
+ * <p>
+ * This holds no references to views, so the same logic drives
+ * {@link com.jjm.android.googleplaces.view.PlacesAutocompleteController} and
+ * load tests run off the device. It is not thread safe; call it from one
+ * thread, or while holding a lock.
+ * </p>
+ *
+ * <pre>
+ * scheduler.setText(text);
+ * String input = scheduler.nextSearch();
+ * if (input != null)
+ * 	// search for input, then call scheduler.onSearchFinished()
+ * 	// and nextSearch() again
+ * </pre>
+ */
+public class AutocompleteScheduler {
+	private String mText = "";
+	private String mSearchText;
+	private boolean mSearching;
+	private int mThreshold = 1;
+	private boolean mActive = true;
+
+	public boolean isActive() {
+		return mActive;
+	}
+
+	/**
+	 * No searches are started while inactive. Call {@link #nextSearch()}
+	 * after activating to search for text typed in the meantime.
+	 */
+	public void setActive(boolean active) {
+		mActive = active;
+	}
+
+	public int getThreshold() {
+		return mThreshold;
+	}
+
+	/**
+	 * @param threshold
+	 *            the length text must have to be searched for, at least 1.
+	 */
+	public void setThreshold(int threshold) {
+		mThreshold = Math.max(1, threshold);
+	}
+
+	/**
+	 * @return the text the user has typed.
+	 */
+	public String getText() {
+		return mText;
+	}
+
+	/**
+	 * Record the text the user has typed.
+	 */
+	public void setText(String text) {
+		mText = Preconditions.checkNotNull(text);
+	}
+
+	/**
+	 * @return true if a search started by {@link #nextSearch()} hasn't
+	 *         finished.
+	 */
+	public boolean isSearching() {
+		return mSearching;
+	}
+
+	/**
+	 * @return the text last searched for, or null if there has been no
+	 *         search.
+	 */
+	public String getSearchText() {
+		return mSearchText;
+	}
+
+	/**
+	 * Start a search if one is due.
+	 *
+	 * @return the input to search for, or null if there should be no search
+	 *         now. If not null, the caller must search for it and call
+	 *         {@link #onSearchFinished()} when done, whether the search
+	 *         succeeded or not.
+	 */
+	public String nextSearch() {
+		if (!mActive || mSearching)
+			return null;
+		if (mText.equals(mSearchText) || mText.length() < mThreshold)
+			return null;
+		mSearchText = mText;
+		mSearching = true;
+		return mText;
+	}
+
+	/**
+	 * Record that the search returned by {@link #nextSearch()} has finished.
+	 */
+	public void onSearchFinished() {
+		mSearching = false;
+	}
+
+	/**
+	 * @return true if the user has typed something else since
+	 *         <code>input</code> was searched for, so the results of that
+	 *         search are out of date when they arrive.
+	 */
+	public boolean isStale(String input) {
+		return !mText.equals(input);
+	}
+}
@@ -0,0 +1,173 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jjm.android.googleplaces.HasId;
+import com.jjm.android.googleplaces.HasReference;
+import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.cache.PlaceCache;
+import com.jjm.android.googleplaces.request.DetailsRequest.Result;
+import com.jjm.android.googleplaces.response.DetailsResponse;
+
+/**
+ * <p>
+ * Fetches details for a stream of references, keeping up to
+ * <code>parallelism</code> requests in flight ahead of the consumer. Results
+ * are returned in input order. Only the window of pending requests and a
+ * bounded table of recent keys are held in memory, so inputs of any size can
+ * be processed.
+ * </p>
+ * <p>
+ * Entries with the same id, or failing that the same reference, as a recent
+ * entry share its request. Entries found in the client's {@link PlaceCache}
+ * aren't requested at all, and the details fetched are added to it.
+ * </p>
+ */
+final class BulkDetailsIterator implements Iterator<Result> {
+	/**
+	 * The minimum number of recent keys remembered for de-duplication.
+	 */
+	private static final int MIN_RECENT_KEYS = 256;
+
+	private static final class Pending {
+		final HasReference mSource;
+		final ListenableFuture<DetailsResponse> mFuture;
+		final Place mCached;
+
+		Pending(HasReference source, ListenableFuture<DetailsResponse> future) {
+			mSource = source;
+			mFuture = future;
+			mCached = null;
+		}
+
+		Pending(HasReference source, Place cached) {
+			mSource = source;
+			mFuture = null;
+			mCached = cached;
+		}
+	}
+
+	private final Iterator<? extends HasReference> mSource;
+	private final int mParallelism;
+	private final PlacesClient mClient;
+	private final ArrayDeque<Pending> mWindow;
+	private final Map<String, ListenableFuture<DetailsResponse>> mRecent;
+
+	BulkDetailsIterator(Iterator<? extends HasReference> source,
+			int parallelism, PlacesClient client) {
+		mSource = source;
+		mParallelism = parallelism;
+		mClient = client;
+		mWindow = new ArrayDeque<Pending>(parallelism);
+		final int recentKeys = Math.max(MIN_RECENT_KEYS, 4 * parallelism);
+		mRecent = new LinkedHashMap<String, ListenableFuture<DetailsResponse>>(
+				16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, ListenableFuture<DetailsResponse>> eldest) {
+				return size() > recentKeys;
+			}
+		};
+	}
+
+	@Override
+	public boolean hasNext() {
+		fill();
+		return !mWindow.isEmpty();
+	}
+
+	@Override
+	public Result next() {
+		fill();
+		Pending pending = mWindow.poll();
+		if (pending == null)
+			throw new NoSuchElementException();
+		// Keep the window full while we wait on the head
+		fill();
+		if (pending.mFuture == null)
+			return new Result(pending.mSource, pending.mCached, null);
+		try {
+			DetailsResponse response = pending.mFuture.get();
+			response.throwBadStatus();
+			Place place = response.getResult();
+			PlaceCache cache = mClient.getPlaceCache();
+			if (cache != null)
+				DetailsRequest.addToCache(cache, pending.mSource, place);
+			return new Result(pending.mSource, place, null);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException ex = new InterruptedIOException();
+			ex.initCause(e);
+			return new Result(pending.mSource, null, ex);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				return new Result(pending.mSource, null, (Exception) cause);
+			return new Result(pending.mSource, null, new IOException(cause));
+		} catch (RuntimeException e) {
+			return new Result(pending.mSource, null, e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void fill() {
+		PlaceCache cache = mClient.getPlaceCache();
+		while (mWindow.size() < mParallelism && mSource.hasNext()) {
+			HasReference source = mSource.next();
+			Place cached = cache != null ? cache.get(source) : null;
+			if (cached != null) {
+				mWindow.add(new Pending(source, cached));
+				continue;
+			}
+			String key = keyOf(source);
+			ListenableFuture<DetailsResponse> future = key != null ? mRecent
+					.get(key) : null;
+			if (future == null) {
+				future = DetailsRequest.of(source).executeAsync(mClient);
+				if (key != null)
+					mRecent.put(key, future);
+			}
+			mWindow.add(new Pending(source, future));
+		}
+	}
+
+	private static String keyOf(HasReference source) {
+		if (source instanceof HasId) {
+			String id = ((HasId) source).getId();
+			if (id != null)
+				return "id:" + id;
+		}
+		String reference = source.getReference();
+		return reference != null ? "ref:" + reference : null;
+	}
+}
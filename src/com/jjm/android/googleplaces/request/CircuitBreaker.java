@@ -0,0 +1,287 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Stops sending requests to an endpoint that is failing, so callers fail
+ * fast with a {@link CircuitOpenException} instead of waiting out a timeout.
+ * </p>
+ *
+ * <p>
+ * The breaker records the outcome of the last <code>windowSize</code>
+ * requests. Once at least <code>minimumRequests</code> have been recorded,
+ * it opens if the fraction of failures reaches the failure threshold, or
+ * the fraction of slow responses reaches the slow threshold. Failures are
+ * transport errors, http 5xx responses and {@link
+ * com.jjm.android.googleplaces.response.PlacesResponse.Status#UNKOWN_ERROR}.
+ * </p>
+ *
+ * <p>
+ * After the open duration, the breaker is half open: up to
+ * <code>probes</code> requests are let through. If they all succeed the
+ * breaker closes, if any fails it opens again, for twice as long as last
+ * time (up to {@link #MAX_OPEN_MILLIS}).
+ * </p>
+ *
+ * <p>
+ * {@link PlacesClient} keeps one breaker per endpoint, see
+ * {@link PlacesClient#getCircuitBreaker(String)}.
+ * </p>
+ */
+public class CircuitBreaker {
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	public static final int DEFAULT_MINIMUM_REQUESTS = 10;
+	public static final double DEFAULT_FAILURE_THRESHOLD = 0.5;
+	public static final double DEFAULT_SLOW_THRESHOLD = 0.8;
+	public static final long DEFAULT_SLOW_MILLIS = 5000;
+	public static final long DEFAULT_OPEN_MILLIS = 5000;
+	public static final long MAX_OPEN_MILLIS = 60 * 1000;
+	public static final int DEFAULT_PROBES = 2;
+
+	private static final byte OUTCOME_SUCCESS = 0;
+	private static final byte OUTCOME_SLOW = 1;
+	private static final byte OUTCOME_FAILURE = 2;
+
+	private final String mEndpoint;
+	private final int mWindowSize;
+	private int mMinimumRequests = DEFAULT_MINIMUM_REQUESTS;
+	private double mFailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private double mSlowThreshold = DEFAULT_SLOW_THRESHOLD;
+	private long mSlowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_MILLIS);
+	private long mOpenMillis = DEFAULT_OPEN_MILLIS;
+	private int mProbes = DEFAULT_PROBES;
+
+	// All guarded by this
+	private State mState = State.CLOSED;
+	private final byte[] mOutcomes;
+	private int mOutcomeCount;
+	private int mFailures;
+	private int mSlow;
+	private long mOpenedAt;
+	private long mCurrentOpenMillis;
+	private int mProbesStarted;
+	private int mProbesSucceeded;
+	private long mOpenCount;
+	private long mRejectedCount;
+
+	public CircuitBreaker(String endpoint) {
+		this(endpoint, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param endpoint
+	 *            the base url of the endpoint, used in exception messages
+	 * @param windowSize
+	 *            the number of recent requests whose outcome is considered
+	 */
+	public CircuitBreaker(String endpoint, int windowSize) {
+		Preconditions.checkArgument(windowSize > 0);
+		mEndpoint = Preconditions.checkNotNull(endpoint);
+		mWindowSize = windowSize;
+		mOutcomes = new byte[windowSize];
+	}
+
+	/**
+	 * @param minimumRequests
+	 *            the number of outcomes that must be recorded before the
+	 *            breaker can open
+	 */
+	public synchronized CircuitBreaker setMinimumRequests(int minimumRequests) {
+		Preconditions.checkArgument(minimumRequests > 0
+				&& minimumRequests <= mWindowSize);
+		mMinimumRequests = minimumRequests;
+		return this;
+	}
+
+	/**
+	 * @param failureThreshold
+	 *            the fraction of failed requests that opens the breaker
+	 */
+	public synchronized CircuitBreaker setFailureThreshold(
+			double failureThreshold) {
+		Preconditions.checkArgument(failureThreshold > 0
+				&& failureThreshold <= 1);
+		mFailureThreshold = failureThreshold;
+		return this;
+	}
+
+	/**
+	 * @param slowThreshold
+	 *            the fraction of slow requests that opens the breaker
+	 * @param slowMillis
+	 *            requests taking at least this long are slow
+	 */
+	public synchronized CircuitBreaker setSlowThreshold(double slowThreshold,
+			long slowMillis) {
+		Preconditions.checkArgument(slowThreshold > 0 && slowThreshold <= 1);
+		Preconditions.checkArgument(slowMillis > 0);
+		mSlowThreshold = slowThreshold;
+		mSlowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+		return this;
+	}
+
+	/**
+	 * @param openMillis
+	 *            how long the breaker stays open the first time it opens
+	 * @param probes
+	 *            the number of requests let through while half open
+	 */
+	public synchronized CircuitBreaker setOpenDuration(long openMillis,
+			int probes) {
+		Preconditions.checkArgument(openMillis > 0);
+		Preconditions.checkArgument(probes > 0);
+		mOpenMillis = openMillis;
+		mProbes = probes;
+		return this;
+	}
+
+	/**
+	 * Take permission to send a request.
+	 *
+	 * @throws CircuitOpenException
+	 *             if the breaker is open, or half open with all its probes
+	 *             in flight.
+	 */
+	synchronized void acquire() throws CircuitOpenException {
+		if (mState == State.CLOSED)
+			return;
+		long now = System.currentTimeMillis();
+		if (mState == State.OPEN) {
+			long remaining = mOpenedAt + mCurrentOpenMillis - now;
+			if (remaining > 0) {
+				mRejectedCount++;
+				throw new CircuitOpenException(mEndpoint, remaining);
+			}
+			mState = State.HALF_OPEN;
+			mProbesStarted = 0;
+			mProbesSucceeded = 0;
+		}
+		if (mProbesStarted >= mProbes) {
+			mRejectedCount++;
+			throw new CircuitOpenException(mEndpoint, 0);
+		}
+		mProbesStarted++;
+	}
+
+	/**
+	 * Record a request that got a healthy response.
+	 */
+	synchronized void onSuccess(long latencyNanos) {
+		if (mState == State.HALF_OPEN) {
+			if (++mProbesSucceeded >= mProbes)
+				close();
+		} else if (mState == State.CLOSED) {
+			record(latencyNanos >= mSlowNanos ? OUTCOME_SLOW : OUTCOME_SUCCESS);
+		}
+	}
+
+	/**
+	 * Record a request that failed.
+	 */
+	synchronized void onFailure() {
+		if (mState == State.HALF_OPEN)
+			open(Math.min(MAX_OPEN_MILLIS, mCurrentOpenMillis * 2));
+		else if (mState == State.CLOSED)
+			record(OUTCOME_FAILURE);
+	}
+
+	/**
+	 * Record a request whose outcome says nothing about the endpoint, such
+	 * as a cancelled request. A half open breaker may send another probe.
+	 */
+	synchronized void onIgnore() {
+		if (mState == State.HALF_OPEN && mProbesStarted > mProbesSucceeded)
+			mProbesStarted--;
+	}
+
+	private void record(byte outcome) {
+		int slot = mOutcomeCount % mWindowSize;
+		if (mOutcomeCount >= mWindowSize)
+			count(mOutcomes[slot], -1);
+		mOutcomes[slot] = outcome;
+		count(outcome, 1);
+		mOutcomeCount++;
+		int n = Math.min(mOutcomeCount, mWindowSize);
+		if (n >= mMinimumRequests
+				&& (mFailures >= mFailureThreshold * n || mSlow >= mSlowThreshold
+						* n))
+			open(mOpenMillis);
+	}
+
+	private void count(byte outcome, int delta) {
+		if (outcome == OUTCOME_FAILURE)
+			mFailures += delta;
+		else if (outcome == OUTCOME_SLOW)
+			mSlow += delta;
+	}
+
+	private void open(long openMillis) {
+		mState = State.OPEN;
+		mOpenedAt = System.currentTimeMillis();
+		mCurrentOpenMillis = openMillis;
+		mOpenCount++;
+	}
+
+	private void close() {
+		mState = State.CLOSED;
+		mOutcomeCount = 0;
+		mFailures = 0;
+		mSlow = 0;
+	}
+
+	/**
+	 * Close the breaker and forget all recorded outcomes.
+	 */
+	public synchronized void reset() {
+		close();
+	}
+
+	public String getEndpoint() {
+		return mEndpoint;
+	}
+
+	/**
+	 * The current state. An open breaker whose open duration has passed is
+	 * reported as open until the next request probes it.
+	 */
+	public synchronized State getState() {
+		return mState;
+	}
+
+	/**
+	 * The number of times the breaker has opened.
+	 */
+	public synchronized long getOpenCount() {
+		return mOpenCount;
+	}
+
+	/**
+	 * The number of requests refused while open.
+	 */
+	public synchronized long getRejectedCount() {
+		return mRejectedCount;
+	}
+}
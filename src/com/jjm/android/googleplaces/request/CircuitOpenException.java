@@ -0,0 +1,51 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is refused because the {@link CircuitBreaker} for
+ * its endpoint is open. Nothing was sent to the service, so callers can fall
+ * back to cached data straight away.
+ */
+@SuppressWarnings("serial")
+public class CircuitOpenException extends IOException {
+	private final String mEndpoint;
+	private final long mRetryAfterMillis;
+
+	CircuitOpenException(String endpoint, long retryAfterMillis) {
+		super("Circuit open for " + endpoint + ", retry after "
+				+ retryAfterMillis + "ms");
+		mEndpoint = endpoint;
+		mRetryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * The base url of the endpoint.
+	 */
+	public String getEndpoint() {
+		return mEndpoint;
+	}
+
+	/**
+	 * How long until the circuit lets a probe request through.
+	 */
+	public long getRetryAfterMillis() {
+		return mRetryAfterMillis;
+	}
+}
@@ -17,13 +17,16 @@
 package com.jjm.android.googleplaces.request;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
 
 import com.google.api.client.util.Key;
+import com.google.common.base.Preconditions;
 import com.jjm.android.googleplaces.HasReference;
 import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.cache.PlaceCache;
 import com.jjm.android.googleplaces.response.DetailsResponse;
 import com.jjm.android.googleplaces.response.Prediction;
-import com.jjm.android.googleplaces.util.Helpers;
 
 /**
  * <p>Represents a request to the place details service.</p>  
@@ -86,12 +89,135 @@ public class DetailsRequest extends PlacesRequest<DetailsResponse> {
 	 * @throws IOException
 	 */
 	public static Place get(HasReference reference) throws IOException {
+		return get(reference, PlacesClient.getDefault());
+	}
+
+	/**
+	 * <p> Get the details for a given reference using the given client.
+	 * <p> If the client has a {@link PlaceCache}, the details are looked
+	 *     up there first, by id if the item has one and by reference if
+	 *     not, and the details fetched are added to it.
+	 * <p> This shouldn't be called from a ui thread.
+	 * @param reference a source for a reference
+	 * @return the details
+	 * @throws IOException
+	 */
+	public static Place get(HasReference reference, PlacesClient client)
+			throws IOException {
+		PlaceCache cache = client.getPlaceCache();
+		if (cache != null) {
+			Place place = cache.get(reference);
+			if (place != null)
+				return place;
+		}
 		DetailsResponse resp = (DetailsResponse) of(reference)
-				.execute(Helpers.createJsonRequestFactory())
+				.execute(client)
 				.throwBadStatus();
-		return resp.getResult();
+		Place place = resp.getResult();
+		if (cache != null)
+			addToCache(cache, reference, place);
+		return place;
+	}
+
+	/**
+	 * Add details fetched for a reference to a cache.
+	 */
+	static void addToCache(PlaceCache cache, HasReference reference,
+			Place place) {
+		if (place != null && place.getId() != null) {
+			cache.put(place);
+			cache.addReference(reference.getReference(), place.getId());
+		}
 	}
 	
+	/**
+	 * The default number of details requests kept in flight by 
+	 * {@link #getAll(Collection)}.
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/**
+	 * The outcome of fetching the details for one item passed to 
+	 * {@link DetailsRequest#getAll(Iterable, int, PlacesClient)}.
+	 */
+	public static class Result {
+		private final HasReference mSource;
+		private final Place mPlace;
+		private final Exception mException;
+
+		Result(HasReference source, Place place, Exception exception) {
+			mSource = source;
+			mPlace = place;
+			mException = exception;
+		}
+
+		/**
+		 * The item the details were requested for.
+		 */
+		public HasReference getSource() {
+			return mSource;
+		}
+
+		/**
+		 * The details, or null if the request failed.
+		 */
+		public Place getPlace() {
+			return mPlace;
+		}
+
+		/**
+		 * The exception the request failed with, or null if it succeeded.
+		 * A bad response status is reported as a 
+		 * {@link com.jjm.android.googleplaces.response.PlacesResponse.BadStatusException}.
+		 */
+		public Exception getException() {
+			return mException;
+		}
+
+		public boolean isSuccessful() {
+			return mException == null;
+		}
+	}
+
+	/**
+	 * Get the details for many items using the default client.
+	 * @see #getAll(Iterable, int, PlacesClient)
+	 */
+	public static Iterable<Result> getAll(
+			Collection<? extends HasReference> references) {
+		return getAll(references, DEFAULT_PARALLELISM, 
+				PlacesClient.getDefault());
+	}
+
+	/**
+	 * <p> Get the details for many items, keeping up to 
+	 * <code>parallelism</code> requests in flight at once.  The actual
+	 * concurrency is also bounded by the client's executor. 
+	 * <p> The returned iterable yields one {@link Result} per input item,
+	 * in input order, as soon as that item's details are available.  The 
+	 * input is consumed lazily, so memory use does not grow with its size.
+	 * A failed item is reported in its result and does not stop the batch.
+	 * <p> Items with the same id (or the same reference, for items without
+	 * an id) as a recent item share its request.
+	 * <p> If the client has a {@link PlaceCache}, it is used as by
+	 * {@link #get(HasReference, PlacesClient)}: cached items are not
+	 * requested, and the details fetched are added to it.
+	 * <p> Iterating blocks, so this shouldn't be done on a ui thread.
+	 */
+	public static Iterable<Result> getAll(
+			final Iterable<? extends HasReference> references,
+			final int parallelism, final PlacesClient client) {
+		Preconditions.checkArgument(parallelism > 0);
+		Preconditions.checkNotNull(client);
+		return new Iterable<Result>() {
+			@Override
+			public Iterator<Result> iterator() {
+				return new BulkDetailsIterator(references.iterator(),
+						parallelism, client);
+			}
+		};
+	}
+
 	public static DetailsRequest of(HasReference ref){
 		return new DetailsRequest().setReference(ref.getReference());
 	}
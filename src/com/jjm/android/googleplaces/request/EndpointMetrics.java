@@ -0,0 +1,210 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.AutocompleteResponse;
+import com.jjm.android.googleplaces.response.DetailsResponse;
+import com.jjm.android.googleplaces.response.PlacesResponse;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.response.SearchResponse;
+import com.jjm.android.googleplaces.util.LatencyHistogram;
+
+/**
+ * <p>
+ * What one endpoint of the places service has done for a
+ * {@link PlacesClient}: a histogram of attempt latencies, the statuses of
+ * the responses, transport errors, and the bytes and result objects
+ * received.
+ * </p>
+ * <p>
+ * Each attempt is recorded once, including retries and hedges. Latency runs
+ * from sending the request to having parsed the response, and is recorded
+ * for failed attempts too. Everything is lock-free.
+ * </p>
+ */
+public class EndpointMetrics {
+	private final String mEndpoint;
+	private final LatencyHistogram mLatency = new LatencyHistogram();
+	private final AtomicLongArray mStatusCounts = new AtomicLongArray(Status
+			.values().length);
+	private final AtomicLong mTimeouts = new AtomicLong();
+	private final AtomicLong mHttpErrors = new AtomicLong();
+	private final AtomicLong mTransportErrors = new AtomicLong();
+	private final AtomicLong mCancellations = new AtomicLong();
+	private final AtomicLong mResponseBytes = new AtomicLong();
+	private final AtomicLong mResults = new AtomicLong();
+
+	/**
+	 * @param endpoint
+	 *            the base url of the endpoint
+	 */
+	public EndpointMetrics(String endpoint) {
+		mEndpoint = Preconditions.checkNotNull(endpoint);
+	}
+
+	/**
+	 * @return the base url of the endpoint.
+	 */
+	public String getEndpoint() {
+		return mEndpoint;
+	}
+
+	/**
+	 * @return the last segment of the endpoint's path before the format, such
+	 *         as <code>autocomplete</code>.
+	 */
+	public String getName() {
+		String path = mEndpoint;
+		if (path.endsWith("/json") || path.endsWith("/xml"))
+			path = path.substring(0, path.lastIndexOf('/'));
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	void onResponse(long nanos, PlacesResponse response) {
+		mLatency.record(nanos);
+		Status status = response.getStatus();
+		if (status != null)
+			mStatusCounts.incrementAndGet(status.ordinal());
+		int results = countResults(response);
+		if (results > 0)
+			mResults.addAndGet(results);
+	}
+
+	void onException(long nanos, IOException e, PlacesCall call) {
+		mLatency.record(nanos);
+		if (e instanceof SocketTimeoutException)
+			mTimeouts.incrementAndGet();
+		else if (call.isCancelled() || e instanceof InterruptedIOException)
+			mCancellations.incrementAndGet();
+		else if (e instanceof HttpResponseException)
+			mHttpErrors.incrementAndGet();
+		else
+			mTransportErrors.incrementAndGet();
+	}
+
+	void onResponseBytes(long bytes) {
+		mResponseBytes.addAndGet(bytes);
+	}
+
+	private static int countResults(PlacesResponse response) {
+		if (response instanceof AutocompleteResponse)
+			return ((AutocompleteResponse) response).getPredictions().size();
+		if (response instanceof SearchResponse)
+			return ((SearchResponse) response).getResults().size();
+		if (response instanceof DetailsResponse)
+			return ((DetailsResponse) response).getResult() != null ? 1 : 0;
+		return 0;
+	}
+
+	/**
+	 * Latencies of attempts that got a response, and of those that failed.
+	 */
+	public LatencyHistogram getLatency() {
+		return mLatency;
+	}
+
+	/**
+	 * The number of responses with a status.
+	 */
+	public long getStatusCount(Status status) {
+		return mStatusCounts.get(status.ordinal());
+	}
+
+	/**
+	 * The number of responses parsed, whatever their status.
+	 */
+	public long getResponseCount() {
+		long count = 0;
+		for (int i = 0; i < mStatusCounts.length(); i++)
+			count += mStatusCounts.get(i);
+		return count;
+	}
+
+	/**
+	 * The number of attempts that timed out connecting or reading.
+	 */
+	public long getTimeoutCount() {
+		return mTimeouts.get();
+	}
+
+	/**
+	 * The number of responses with an http error status.
+	 */
+	public long getHttpErrorCount() {
+		return mHttpErrors.get();
+	}
+
+	/**
+	 * The number of attempts that failed with any other
+	 * {@link IOException}, such as a refused connection or a malformed
+	 * body.
+	 */
+	public long getTransportErrorCount() {
+		return mTransportErrors.get();
+	}
+
+	/**
+	 * The number of attempts cancelled or interrupted by the caller.
+	 */
+	public long getCancellationCount() {
+		return mCancellations.get();
+	}
+
+	/**
+	 * The bytes of response bodies the parser read, after any
+	 * decompression.
+	 */
+	public long getResponseBytes() {
+		return mResponseBytes.get();
+	}
+
+	/**
+	 * The number of predictions, places or place details received.
+	 */
+	public long getResultCount() {
+		return mResults.get();
+	}
+
+	@Override
+	public String toString() {
+		LatencyHistogram.Snapshot latency = mLatency.snapshot();
+		StringBuilder sb = new StringBuilder(getName());
+		sb.append(": ").append(latency.getCount()).append(" attempts, p50 ")
+				.append(latency.getPercentileNanos(50) / 1000000).append("ms p99 ")
+				.append(latency.getPercentileNanos(99) / 1000000).append("ms max ")
+				.append(latency.getMaxNanos() / 1000000).append("ms");
+		for (Status status : Status.values()) {
+			long count = getStatusCount(status);
+			if (count > 0)
+				sb.append(", ").append(status).append(' ').append(count);
+		}
+		sb.append(", ").append(getTimeoutCount()).append(" timeouts, ")
+				.append(getHttpErrorCount()).append(" http errors, ")
+				.append(getTransportErrorCount()).append(" transport errors, ")
+				.append(getResponseBytes()).append(" bytes, ")
+				.append(getResultCount()).append(" results");
+		return sb.toString();
+	}
+}
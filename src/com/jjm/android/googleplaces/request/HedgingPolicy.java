@@ -0,0 +1,219 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Controls hedged requests: if an attempt has not answered after a delay, a
+ * duplicate is sent, the first response wins and the other is cancelled.
+ * This trades a little extra quota for a shorter latency tail, which is most
+ * useful for {@link AutocompleteRequest}s.
+ * </p>
+ *
+ * <p>
+ * The delay is either fixed, or a percentile of the latencies recently seen
+ * by this policy. Until enough latencies have been seen, the fixed delay is
+ * used. Hedges are limited to a fraction of requests, so at most
+ * <code>1 + maxHedgeRate</code> times the normal quota is used.
+ * </p>
+ *
+ * <p>
+ * Hedging is opt-in: set a policy on a request with
+ * {@link PlacesRequest#setHedgingPolicy(HedgingPolicy)}, or on a client with
+ * {@link PlacesClient#setHedgingPolicy(HedgingPolicy)}.
+ * </p>
+ */
+public class HedgingPolicy {
+	public static final long DEFAULT_DELAY_MILLIS = 300;
+	public static final double DEFAULT_MAX_HEDGE_RATE = 0.1;
+
+	private static final int LATENCY_SAMPLES = 128;
+	private static final int MIN_LATENCY_SAMPLES = 32;
+	private static final int RECOMPUTE_INTERVAL = 16;
+	private static final long CREDIT_SCALE = 1000;
+	private static final long MAX_CREDIT = 10 * CREDIT_SCALE;
+
+	private final long mDelayNanos;
+	private final double mPercentile;
+	private volatile double mMaxHedgeRate = DEFAULT_MAX_HEDGE_RATE;
+
+	// Guarded by mLatencies
+	private final long[] mLatencies = new long[LATENCY_SAMPLES];
+	private final long[] mSorted = new long[LATENCY_SAMPLES];
+	private int mLatencyCount;
+	private volatile long mPercentileNanos = -1;
+
+	private final AtomicLong mCredit = new AtomicLong(CREDIT_SCALE);
+	private final AtomicLong mRequestCount = new AtomicLong();
+	private final AtomicLong mHedgeCount = new AtomicLong();
+	private final AtomicLong mHedgeWinCount = new AtomicLong();
+	private final AtomicLong mSuppressedCount = new AtomicLong();
+
+	private HedgingPolicy(long delayNanos, double percentile) {
+		mDelayNanos = delayNanos;
+		mPercentile = percentile;
+	}
+
+	/**
+	 * A policy that hedges after a fixed delay.
+	 */
+	public static HedgingPolicy fixedDelay(long delayMillis) {
+		Preconditions.checkArgument(delayMillis >= 0);
+		return new HedgingPolicy(TimeUnit.MILLISECONDS.toNanos(delayMillis), -1);
+	}
+
+	/**
+	 * A policy that hedges once an attempt has taken longer than the given
+	 * percentile of recently observed latencies.
+	 *
+	 * @param percentile
+	 *            between 0 and 1, for example 0.95
+	 * @param initialDelayMillis
+	 *            the delay to use until enough latencies have been seen
+	 */
+	public static HedgingPolicy percentile(double percentile,
+			long initialDelayMillis) {
+		Preconditions.checkArgument(percentile > 0 && percentile < 1);
+		Preconditions.checkArgument(initialDelayMillis >= 0);
+		return new HedgingPolicy(
+				TimeUnit.MILLISECONDS.toNanos(initialDelayMillis), percentile);
+	}
+
+	public double getMaxHedgeRate() {
+		return mMaxHedgeRate;
+	}
+
+	/**
+	 * @param maxHedgeRate
+	 *            the largest fraction of requests that may be hedged, for
+	 *            example 0.1 for 10%.
+	 */
+	public HedgingPolicy setMaxHedgeRate(double maxHedgeRate) {
+		Preconditions.checkArgument(maxHedgeRate >= 0 && maxHedgeRate <= 1);
+		mMaxHedgeRate = maxHedgeRate;
+		return this;
+	}
+
+	/**
+	 * The current hedging delay, in nanoseconds.
+	 */
+	public long getDelayNanos() {
+		long percentile = mPercentileNanos;
+		return percentile >= 0 ? percentile : mDelayNanos;
+	}
+
+	/**
+	 * Called when a hedgeable attempt starts.
+	 */
+	void onRequest() {
+		mRequestCount.incrementAndGet();
+		long deposit = (long) (mMaxHedgeRate * CREDIT_SCALE);
+		for (;;) {
+			long credit = mCredit.get();
+			long next = Math.min(MAX_CREDIT, credit + deposit);
+			if (credit == next || mCredit.compareAndSet(credit, next))
+				return;
+		}
+	}
+
+	/**
+	 * Take permission to send a hedge.
+	 *
+	 * @return false if that would exceed the hedge rate.
+	 */
+	boolean tryHedge() {
+		for (;;) {
+			long credit = mCredit.get();
+			if (credit < CREDIT_SCALE) {
+				mSuppressedCount.incrementAndGet();
+				return false;
+			}
+			if (mCredit.compareAndSet(credit, credit - CREDIT_SCALE)) {
+				mHedgeCount.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Record the latency of a completed exchange.
+	 */
+	void recordLatency(long nanos) {
+		if (mPercentile < 0)
+			return;
+		synchronized (mLatencies) {
+			mLatencies[mLatencyCount++ % LATENCY_SAMPLES] = nanos;
+			if (mLatencyCount >= MIN_LATENCY_SAMPLES
+					&& mLatencyCount % RECOMPUTE_INTERVAL == 0) {
+				int n = Math.min(mLatencyCount, LATENCY_SAMPLES);
+				System.arraycopy(mLatencies, 0, mSorted, 0, n);
+				Arrays.sort(mSorted, 0, n);
+				mPercentileNanos = mSorted[(int) Math.min(n - 1,
+						Math.ceil(mPercentile * n) - 1)];
+			}
+		}
+	}
+
+	/**
+	 * Record that a hedge answered before the original attempt.
+	 */
+	void onHedgeWon() {
+		mHedgeWinCount.incrementAndGet();
+	}
+
+	/**
+	 * The number of attempts made under this policy.
+	 */
+	public long getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	/**
+	 * The number of hedges sent.
+	 */
+	public long getHedgeCount() {
+		return mHedgeCount.get();
+	}
+
+	/**
+	 * The number of hedges that answered before the original attempt.
+	 */
+	public long getHedgeWinCount() {
+		return mHedgeWinCount.get();
+	}
+
+	/**
+	 * The number of hedges not sent because of the hedge rate limit.
+	 */
+	public long getSuppressedCount() {
+		return mSuppressedCount.get();
+	}
+
+	/**
+	 * The fraction of hedges that won, or 0 if none have been sent.
+	 */
+	public double getHedgeWinRate() {
+		long hedges = mHedgeCount.get();
+		return hedges == 0 ? 0 : (double) mHedgeWinCount.get() / hedges;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+/**
+ * Sends the metrics of a {@link PlacesClient} somewhere, such as the log or
+ * an analytics service.
+ *
+ * @see PlacesMetrics#addExporter(MetricsExporter)
+ */
+public interface MetricsExporter {
+	/**
+	 * Export the metrics. This is called on a shared timer thread, so it
+	 * must not block; hand anything slow to another thread.
+	 *
+	 * @param metrics
+	 *            the metrics, which keep changing while this runs. Use
+	 *            {@link com.jjm.android.googleplaces.util.LatencyHistogram#snapshot()}
+	 *            to read a histogram consistently.
+	 */
+	void export(PlacesMetrics metrics);
+}
@@ -0,0 +1,40 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import com.jjm.android.googleplaces.response.SearchResponse;
+
+/**
+ * A request whose results come in pages. Each {@link SearchResponse} may
+ * have a {@link SearchResponse#getNextPageToken()}, which is sent back with
+ * the same request to get the next page.
+ *
+ * @see SearchPager
+ */
+public interface PageableRequest {
+	/**
+	 * @return the token of the page to request, or null for the first page.
+	 */
+	String getPageToken();
+
+	/**
+	 * @param pageToken
+	 *            the token of the page to request, or null for the first
+	 *            page.
+	 */
+	PageableRequest setPageToken(String pageToken);
+}
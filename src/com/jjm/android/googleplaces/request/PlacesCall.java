@@ -0,0 +1,215 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.api.client.http.HttpResponse;
+
+/**
+ * Tracks the http exchange of a single execution so that it can be aborted
+ * from another thread. Interrupting a thread blocked reading a socket does
+ * nothing, so cancelling disconnects the underlying connection instead. With
+ * a {@link PlacesTransport} that is as soon as the connection is made; with
+ * other transports, once the response headers have arrived.
+ */
+final class PlacesCall {
+	/** The call exchanging on each thread, for {@link PlacesTransport} */
+	private static final ThreadLocal<PlacesCall> sCurrent = new ThreadLocal<PlacesCall>();
+
+	private volatile HttpURLConnection mConnection;
+	private volatile HttpResponse mResponse;
+	private volatile boolean mCancelled;
+	private String mPermitKey;
+	private boolean mTimed;
+	private long mHeadersNanos;
+	private long mResponseBytes = -1;
+	private List<PlacesCall> mChildren; // Guarded by this
+
+	/**
+	 * Throw if this call has been cancelled.
+	 */
+	void checkCancelled() throws InterruptedIOException {
+		if (mCancelled)
+			throw new InterruptedIOException("call cancelled");
+	}
+
+	/**
+	 * Make this the call that connections made on this thread belong to,
+	 * until {@link #detach()}.
+	 */
+	void attach() {
+		sCurrent.set(this);
+	}
+
+	static void detach() {
+		sCurrent.remove();
+	}
+
+	/**
+	 * @return the call exchanging on this thread, or null if there is none.
+	 */
+	static PlacesCall current() {
+		return sCurrent.get();
+	}
+
+	/**
+	 * Called by {@link PlacesTransport} before connecting. If the call was
+	 * cancelled in the meantime the connection is disconnected.
+	 */
+	void setConnection(HttpURLConnection connection)
+			throws InterruptedIOException {
+		mConnection = connection;
+		if (mCancelled) {
+			connection.disconnect();
+			checkCancelled();
+		}
+	}
+
+	/**
+	 * Called once the response headers have arrived. If the call was
+	 * cancelled in the meantime the response is disconnected.
+	 */
+	void setResponse(HttpResponse response) throws IOException {
+		if (mTimed)
+			mHeadersNanos = System.nanoTime();
+		mResponse = response;
+		if (mCancelled) {
+			disconnect(response);
+			checkCancelled();
+		}
+	}
+
+	/**
+	 * Abort the call. Any thread reading the response will get an
+	 * {@link IOException}.
+	 */
+	void cancel() {
+		List<PlacesCall> children;
+		synchronized (this) {
+			mCancelled = true;
+			children = mChildren;
+			mChildren = null;
+		}
+		HttpResponse response = mResponse;
+		if (response != null) {
+			disconnect(response);
+		} else {
+			HttpURLConnection connection = mConnection;
+			if (connection != null)
+				connection.disconnect();
+		}
+		if (children != null) {
+			for (PlacesCall child : children)
+				child.cancel();
+		}
+	}
+
+	/**
+	 * Create a call that is cancelled along with this one. This is used when
+	 * one execution makes several exchanges at once.
+	 *
+	 * @param inheritPermit
+	 *            whether the child takes over the permit held by this call
+	 */
+	PlacesCall newChild(boolean inheritPermit) {
+		PlacesCall child = new PlacesCall();
+		if (inheritPermit)
+			child.mPermitKey = takePermit();
+		synchronized (this) {
+			if (mCancelled) {
+				child.mCancelled = true;
+			} else {
+				if (mChildren == null)
+					mChildren = new ArrayList<PlacesCall>(2);
+				mChildren.add(child);
+			}
+		}
+		return child;
+	}
+
+	/**
+	 * Record that a rate limiter permit was acquired for an api key before 
+	 * the call started.  The call must then be sent with that key.
+	 */
+	void setPermitHeld(String apiKey) {
+		mPermitKey = apiKey;
+	}
+
+	/**
+	 * Use the permit acquired before the call started, if there is one.
+	 *
+	 * @return the api key the permit was acquired for, or null if no permit
+	 *         was held.
+	 */
+	String takePermit() {
+		String apiKey = mPermitKey;
+		mPermitKey = null;
+		return apiKey;
+	}
+
+	/**
+	 * Record when the response headers arrive, for a {@link RequestTracer}.
+	 */
+	void setTimed() {
+		mTimed = true;
+		mHeadersNanos = 0;
+	}
+
+	/**
+	 * @return when the response headers arrived, from
+	 *         {@link System#nanoTime()}, or 0 if they haven't or the call
+	 *         isn't timed.
+	 */
+	long getHeadersNanos() {
+		return mHeadersNanos;
+	}
+
+	/**
+	 * Record the size of the response body, once it has been read.
+	 * 
+	 * @param bytes
+	 *            the size, or -1 if it is unknown
+	 */
+	void setResponseBytes(long bytes) {
+		mResponseBytes = bytes;
+	}
+
+	/**
+	 * @return the size of the response body of the last exchange, or -1 if
+	 *         it is unknown.
+	 */
+	long getResponseBytes() {
+		return mResponseBytes;
+	}
+
+	boolean isCancelled() {
+		return mCancelled;
+	}
+
+	private static void disconnect(HttpResponse response) {
+		try {
+			response.disconnect();
+		} catch (IOException e) {
+			// Nothing to do, we're giving up on it anyway
+		}
+	}
+}
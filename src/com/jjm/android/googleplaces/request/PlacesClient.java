@@ -0,0 +1,1248 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.api.client.extensions.android3.json.AndroidJsonFactory;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonParser;
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.jjm.android.googleplaces.cache.DiskResponseCache;
+import com.jjm.android.googleplaces.cache.DiskResponseCache.CachedResponse;
+import com.jjm.android.googleplaces.cache.PlaceCache;
+import com.jjm.android.googleplaces.cache.PlaceIndex;
+import com.jjm.android.googleplaces.json.ElementListener;
+import com.jjm.android.googleplaces.json.JsonModelParser;
+import com.jjm.android.googleplaces.json.ModelObjectParser;
+import com.jjm.android.googleplaces.request.RequestTracer.Phase;
+import com.jjm.android.googleplaces.request.RequestTracer.Span;
+import com.jjm.android.googleplaces.response.PlacesResponse;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.response.SearchResponse;
+import com.jjm.android.googleplaces.util.ApiKeys;
+
+/**
+ * <p>
+ * Executes {@link PlacesRequest}s. A client owns a single
+ * {@link HttpTransport}, {@link HttpRequestFactory} and
+ * {@link ModelObjectParser}, all of which are thread safe and meant to be
+ * shared by every request in the process. The parser uses generated parsers
+ * for response classes where they exist, see {@link JsonModelParser}.
+ * </p>
+ *
+ * <p>
+ * {@link PlacesTransport}, like {@link NetHttpTransport}, is built on
+ * <code>HttpURLConnection</code>, which keeps idle connections in a process wide keep-alive pool. A connection is
+ * only returned to that pool once the response body has been read to the end
+ * and closed, which {@link #execute(PlacesRequest)} always does. See
+ * {@link #configureConnectionPool(int, long)} for sizing the pool.
+ * </p>
+ *
+ * <p>
+ * Most code should just use {@link #getDefault()}, which is what
+ * {@link PlacesRequest#execute()} does.
+ * </p>
+ */
+@SuppressWarnings("deprecation") // AndroidJsonFactory
+public class PlacesClient {
+	/**
+	 * The default maximum number of idle connections kept alive per host.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 8;
+
+	/**
+	 * The default time an idle connection is kept in the pool before it is
+	 * closed.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = 60 * 1000;
+
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 20 * 1000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+
+	/**
+	 * The default number of threads used by {@link #executeAsync(PlacesRequest)}.
+	 */
+	public static final int DEFAULT_ASYNC_THREADS = 4;
+
+	/**
+	 * The default number of asynchronous requests that may wait for a thread
+	 * before new ones are rejected.
+	 */
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1024;
+
+	private static PlacesClient sDefault;
+
+	private final HttpTransport mTransport;
+	private final JsonFactory mJsonFactory;
+	private final ModelObjectParser mParser;
+	private final HttpRequestFactory mRequestFactory;
+
+	/**
+	 * Turns a response body into a response object, in place of
+	 * {@link HttpResponse#parseAs(Class)}.
+	 */
+	private interface BodyParser<T> {
+		T parse(HttpResponse response, InputStream content) throws IOException;
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private volatile RequestCoalescer mCoalescer = new RequestCoalescer();
+	private volatile ListeningExecutorService mExecutor;
+	private volatile RetryPolicy mRetryPolicy;
+	private volatile HedgingPolicy mHedgingPolicy;
+	private volatile ApiKeyRateLimiter mRateLimiter;
+	private final ConcurrentHashMap<String, CircuitBreaker> mCircuitBreakers =
+			new ConcurrentHashMap<String, CircuitBreaker>();
+	private volatile boolean mCircuitBreakersEnabled = true;
+	private volatile AdaptiveConcurrencyLimiter mConcurrencyLimiter;
+	private volatile PlacesMetrics mMetrics = new PlacesMetrics();
+	private volatile RequestTracer mTracer;
+	private volatile AccessLog mAccessLog;
+	private volatile DiskResponseCache mResponseCache;
+	private volatile PlaceCache mPlaceCache;
+	private volatile PlaceIndex mPlaceIndex;
+	private volatile String mRootUrl;
+	private volatile int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+	private volatile int mReadTimeout = DEFAULT_READ_TIMEOUT_MILLIS;
+
+	private final HttpRequestInitializer mInitializer = new HttpRequestInitializer() {
+		@Override
+		public void initialize(HttpRequest request) throws IOException {
+			request.setParser(mParser);
+			request.setConnectTimeout(mConnectTimeout);
+			request.setReadTimeout(mReadTimeout);
+		}
+	};
+
+	/**
+	 * Create a client using a {@link PlacesTransport} and an
+	 * {@link AndroidJsonFactory}.
+	 */
+	public PlacesClient() {
+		this(new PlacesTransport(), new AndroidJsonFactory());
+	}
+
+	/**
+	 * Create a client with the given transport and json factory. This is
+	 * mainly useful for running outside of android, where
+	 * {@link AndroidJsonFactory} is not available.
+	 */
+	public PlacesClient(HttpTransport transport, JsonFactory jsonFactory) {
+		mTransport = Preconditions.checkNotNull(transport);
+		mJsonFactory = Preconditions.checkNotNull(jsonFactory);
+		mParser = new ModelObjectParser(mJsonFactory);
+		mRequestFactory = mTransport.createRequestFactory(mInitializer);
+	}
+
+	/**
+	 * The process wide client. It is created on first use, after applying
+	 * the default connection pool settings.
+	 */
+	public static synchronized PlacesClient getDefault() {
+		if (sDefault == null) {
+			configureConnectionPool(DEFAULT_MAX_CONNECTIONS,
+					DEFAULT_KEEP_ALIVE_MILLIS, false);
+			sDefault = new PlacesClient();
+		}
+		return sDefault;
+	}
+
+	/**
+	 * Replace the process wide client returned by {@link #getDefault()}.
+	 */
+	public static synchronized void setDefault(PlacesClient client) {
+		sDefault = Preconditions.checkNotNull(client);
+	}
+
+	/**
+	 * <p>
+	 * Size the <code>HttpURLConnection</code> keep-alive pool used by
+	 * {@link PlacesTransport} and {@link NetHttpTransport}. This sets the <code>http.keepAlive</code>,
+	 * <code>http.maxConnections</code> and <code>http.keepAliveDuration</code>
+	 * system properties, so it affects every <code>HttpURLConnection</code>
+	 * in the process and should be called before the first request is made.
+	 * </p>
+	 * <p>
+	 * The idle eviction time is honored by android's connection pool. The
+	 * desktop JVM ignores it and evicts idle connections after the time
+	 * advertised by the server.
+	 * </p>
+	 *
+	 * @param maxConnections
+	 *            maximum idle connections kept per host.
+	 * @param keepAliveMillis
+	 *            how long an idle connection stays in the pool.
+	 */
+	public static void configureConnectionPool(int maxConnections,
+			long keepAliveMillis) {
+		configureConnectionPool(maxConnections, keepAliveMillis, true);
+	}
+
+	private static void configureConnectionPool(int maxConnections,
+			long keepAliveMillis, boolean override) {
+		Preconditions.checkArgument(maxConnections > 0);
+		Preconditions.checkArgument(keepAliveMillis > 0);
+		setProperty("http.keepAlive", "true", override);
+		setProperty("http.maxConnections", Integer.toString(maxConnections),
+				override);
+		setProperty("http.keepAliveDuration", Long.toString(keepAliveMillis),
+				override);
+	}
+
+	private static void setProperty(String name, String value, boolean override) {
+		if (override || System.getProperty(name) == null)
+			System.setProperty(name, value);
+	}
+
+	/**
+	 * The shared transport.
+	 */
+	public HttpTransport getTransport() {
+		return mTransport;
+	}
+
+	/**
+	 * The json factory used to parse responses.
+	 */
+	public JsonFactory getJsonFactory() {
+		return mJsonFactory;
+	}
+
+	/**
+	 * The shared request factory. Requests built by it have the json parser
+	 * and timeouts of this client.
+	 */
+	public HttpRequestFactory getRequestFactory() {
+		return mRequestFactory;
+	}
+
+	public int getConnectTimeout() {
+		return mConnectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout
+	 *            the connect timeout in milliseconds, or 0 for none.
+	 */
+	public PlacesClient setConnectTimeout(int connectTimeout) {
+		Preconditions.checkArgument(connectTimeout >= 0);
+		mConnectTimeout = connectTimeout;
+		return this;
+	}
+
+	public int getReadTimeout() {
+		return mReadTimeout;
+	}
+
+	/**
+	 * @param readTimeout
+	 *            the read timeout in milliseconds, or 0 for none.
+	 */
+	public PlacesClient setReadTimeout(int readTimeout) {
+		Preconditions.checkArgument(readTimeout >= 0);
+		mReadTimeout = readTimeout;
+		return this;
+	}
+
+	/**
+	 * The url requests without their own root url are sent to in place of
+	 * {@link PlacesRequest#DEFAULT_ROOT_URL}, or null if they go to the
+	 * places service.
+	 */
+	public String getRootUrl() {
+		return mRootUrl;
+	}
+
+	/**
+	 * Send requests somewhere other than the places service, such as the
+	 * <code>FakePlacesServer</code> in <code>benchmarks/</code>. Requests
+	 * with their own root url keep it.
+	 * 
+	 * @param rootUrl
+	 *            the scheme, host and port to use, or null for the places
+	 *            service.
+	 * @see PlacesRequest#setRootUrl(String)
+	 */
+	public PlacesClient setRootUrl(String rootUrl) {
+		mRootUrl = PlacesRequest.stripSlash(rootUrl);
+		return this;
+	}
+
+	/**
+	 * The coalescer used to share identical in-flight requests, or null if
+	 * coalescing is disabled.
+	 */
+	public RequestCoalescer getRequestCoalescer() {
+		return mCoalescer;
+	}
+
+	/**
+	 * Set the coalescer used to share identical in-flight requests. Pass
+	 * null to disable coalescing. It is enabled by default.
+	 */
+	public PlacesClient setRequestCoalescer(RequestCoalescer coalescer) {
+		mCoalescer = coalescer;
+		return this;
+	}
+
+	/**
+	 * The retry policy used for requests that don't have their own, or null
+	 * if they are not retried.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return mRetryPolicy;
+	}
+
+	/**
+	 * Set the retry policy used for requests that don't have their own. Pass
+	 * null to disable retries, which is the default.
+	 */
+	public PlacesClient setRetryPolicy(RetryPolicy retryPolicy) {
+		mRetryPolicy = retryPolicy;
+		return this;
+	}
+
+	/**
+	 * The hedging policy used for requests that don't have their own, or null
+	 * if they are not hedged.
+	 */
+	public HedgingPolicy getHedgingPolicy() {
+		return mHedgingPolicy;
+	}
+
+	/**
+	 * Set the hedging policy used for requests that don't have their own.
+	 * Pass null to disable hedging, which is the default. Hedges count
+	 * against the rate limiter and the concurrency limiter like any other
+	 * attempt.
+	 */
+	public PlacesClient setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+		mHedgingPolicy = hedgingPolicy;
+		return this;
+	}
+
+	/**
+	 * The circuit breaker for the endpoint with the given base url. A breaker
+	 * with the default settings is created the first time an endpoint is
+	 * used.
+	 *
+	 * @see #getCircuitBreaker(PlacesRequest)
+	 */
+	public CircuitBreaker getCircuitBreaker(String baseUrl) {
+		CircuitBreaker breaker = mCircuitBreakers.get(baseUrl);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(baseUrl);
+			breaker = mCircuitBreakers.putIfAbsent(baseUrl, created);
+			if (breaker == null)
+				breaker = created;
+		}
+		return breaker;
+	}
+
+	/**
+	 * The circuit breaker for the endpoint the request is sent to.
+	 */
+	public CircuitBreaker getCircuitBreaker(PlacesRequest<?> request) {
+		return getCircuitBreaker(request.getBaseUrl());
+	}
+
+	/**
+	 * Replace the circuit breaker for the endpoint with the given base url,
+	 * for example to change its thresholds.
+	 */
+	public PlacesClient setCircuitBreaker(String baseUrl, CircuitBreaker breaker) {
+		mCircuitBreakers.put(Preconditions.checkNotNull(baseUrl),
+				Preconditions.checkNotNull(breaker));
+		return this;
+	}
+
+	public boolean isCircuitBreakersEnabled() {
+		return mCircuitBreakersEnabled;
+	}
+
+	/**
+	 * Enable or disable the per endpoint circuit breakers. They are enabled
+	 * by default.
+	 */
+	public PlacesClient setCircuitBreakersEnabled(boolean enabled) {
+		mCircuitBreakersEnabled = enabled;
+		return this;
+	}
+
+	/**
+	 * The rate limiter that paces requests, or null if there is none.
+	 */
+	public ApiKeyRateLimiter getRateLimiter() {
+		return mRateLimiter;
+	}
+
+	/**
+	 * Set the rate limiter used to pace requests. A permit for the request's
+	 * api key is acquired before every attempt, including retries. Pass null
+	 * to disable rate limiting, which is the default.
+	 */
+	public PlacesClient setRateLimiter(ApiKeyRateLimiter rateLimiter) {
+		mRateLimiter = rateLimiter;
+		return this;
+	}
+
+	/**
+	 * The limiter that adapts the number of requests in flight, or null if
+	 * there is none.
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return mConcurrencyLimiter;
+	}
+
+	/**
+	 * Set the limiter that adapts the number of requests in flight to how
+	 * the service responds. Pass null to disable it, which is the default.
+	 */
+	public PlacesClient setConcurrencyLimiter(
+			AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		mConcurrencyLimiter = concurrencyLimiter;
+		return this;
+	}
+
+	/**
+	 * The metrics recorded for every attempt, or null if none are.
+	 */
+	public PlacesMetrics getMetrics() {
+		return mMetrics;
+	}
+
+	/**
+	 * Set the metrics attempts are recorded to. Pass null to stop recording.
+	 * Metrics are recorded by default.
+	 */
+	public PlacesClient setMetrics(PlacesMetrics metrics) {
+		mMetrics = metrics;
+		return this;
+	}
+
+	/**
+	 * The tracer that receives a span for each phase of each request, or
+	 * null if none does.
+	 */
+	public RequestTracer getTracer() {
+		return mTracer;
+	}
+
+	/**
+	 * Set the tracer that receives a span for each phase of each request.
+	 * Pass null to stop tracing, which is the default.
+	 * 
+	 * @see RingBufferTracer
+	 */
+	public PlacesClient setTracer(RequestTracer tracer) {
+		mTracer = tracer;
+		return this;
+	}
+
+	/**
+	 * The log every call is written to, or null if none is.
+	 */
+	public AccessLog getAccessLog() {
+		return mAccessLog;
+	}
+
+	/**
+	 * Set the log every call is written to. Pass null to stop logging, which
+	 * is the default. The log must be {@link AccessLog#start() started}
+	 * for calls to be written.
+	 */
+	public PlacesClient setAccessLog(AccessLog accessLog) {
+		mAccessLog = accessLog;
+		return this;
+	}
+
+	/**
+	 * The cache requests are answered from when they can be, or null if
+	 * there is none.
+	 */
+	public DiskResponseCache getResponseCache() {
+		return mResponseCache;
+	}
+
+	/**
+	 * <p>
+	 * Set the cache requests are answered from when they can be. Pass null
+	 * to stop caching, which is the default.
+	 * </p>
+	 * <p>
+	 * Responses with a status of <code>OK</code> or
+	 * <code>ZERO_RESULTS</code> are stored. When a stale response is
+	 * returned, the request is executed again on this client's executor to
+	 * refresh it, so it shouldn't be changed after it has been executed.
+	 * Streaming requests are never cached.
+	 * </p>
+	 */
+	public PlacesClient setResponseCache(DiskResponseCache responseCache) {
+		mResponseCache = responseCache;
+		return this;
+	}
+
+	/**
+	 * The cache of place details, or null if there is none.
+	 */
+	public PlaceCache getPlaceCache() {
+		return mPlaceCache;
+	}
+
+	/**
+	 * Set the cache of place details used by
+	 * {@link DetailsRequest#get(com.jjm.android.googleplaces.HasReference, PlacesClient)}.
+	 * Pass null to stop caching, which is the default.
+	 */
+	public PlacesClient setPlaceCache(PlaceCache placeCache) {
+		mPlaceCache = placeCache;
+		return this;
+	}
+
+	/**
+	 * The index of places seen, or null if there is none.
+	 */
+	public PlaceIndex getPlaceIndex() {
+		return mPlaceIndex;
+	}
+
+	/**
+	 * Set the index that every successful response is added to, and that
+	 * text searches and autocompletes are answered from when they fail. Pass
+	 * null for failures to be thrown, which is the default.
+	 */
+	public PlacesClient setPlaceIndex(PlaceIndex placeIndex) {
+		mPlaceIndex = placeIndex;
+		return this;
+	}
+
+	/**
+	 * Create a bounded executor suitable for
+	 * {@link #setExecutor(ExecutorService)}. Idle threads exit after a minute,
+	 * and requests submitted while <code>queueSize</code> others are waiting
+	 * are rejected.
+	 *
+	 * @param threads
+	 *            the maximum number of requests executing at once
+	 * @param queueSize
+	 *            the maximum number of requests waiting for a thread
+	 */
+	public static ExecutorService createExecutor(int threads, int queueSize) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+						queueSize), PlacesExecutors.threadFactory("PlacesClient"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * The executor used by {@link #executeAsync(PlacesRequest)}. If none has
+	 * been set, one is created using {@link #DEFAULT_ASYNC_THREADS} and
+	 * {@link #DEFAULT_ASYNC_QUEUE_SIZE}.
+	 */
+	public ListeningExecutorService getExecutor() {
+		ListeningExecutorService executor = mExecutor;
+		if (executor == null) {
+			synchronized (this) {
+				executor = mExecutor;
+				if (executor == null) {
+					executor = MoreExecutors.listeningDecorator(createExecutor(
+							DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_QUEUE_SIZE));
+					mExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Set the executor used by {@link #executeAsync(PlacesRequest)}. It should
+	 * be bounded; see {@link #createExecutor(int, int)}. The previous executor
+	 * is not shut down.
+	 */
+	public PlacesClient setExecutor(ExecutorService executor) {
+		mExecutor = MoreExecutors.listeningDecorator(executor);
+		return this;
+	}
+
+	/**
+	 * Execute a request using this client. If an identical request is already
+	 * in flight, this waits for it and returns the same response.
+	 *
+	 * @return the parsed response
+	 * @throws IOException
+	 */
+	public <T extends PlacesResponse> T execute(final PlacesRequest<T> request)
+			throws IOException {
+		RequestCoalescer coalescer = mCoalescer;
+		if (coalescer == null)
+			return executeCached(request, new PlacesCall());
+		return coalescer.execute(request.getCanonicalUrl(), new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return executeCached(request, new PlacesCall());
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Execute a request, passing the elements of one of the response's
+	 * arrays to a listener as soon as each has arrived, rather than after the
+	 * whole body has. The listener is called on the executing thread.
+	 * </p>
+	 * <p>
+	 * Elements already passed to the listener can't be taken back, so the
+	 * request is not coalesced, retried or hedged. Rate limiting, circuit
+	 * breakers and the concurrency limiter still apply.
+	 * </p>
+	 * <p>
+	 * The response cache and place index are used as by
+	 * {@link #execute(PlacesRequest)}. A cached response, or the index's
+	 * answer when the request fails, is passed to the listener element by
+	 * element; it starts again from index 0 if some streamed elements had
+	 * already been passed. A streamed response is stored and indexed once it
+	 * is complete.
+	 * </p>
+	 *
+	 * @param arrayField
+	 *            the json name of the array, such as <code>"predictions"</code>
+	 * @param elementClass
+	 *            the class of its elements
+	 * @return the whole response, including every element
+	 * @see JsonModelParser#parseStreaming(JsonParser, Class, String, Class,
+	 *      ElementListener)
+	 */
+	public <T extends PlacesResponse, E> T executeStreaming(
+			final PlacesRequest<T> request, final String arrayField,
+			final Class<E> elementClass,
+			final ElementListener<? super E> listener) throws IOException {
+		Preconditions.checkNotNull(listener);
+		DiskResponseCache cache = mResponseCache;
+		String url = cache != null ? request.getCanonicalUrl() : null;
+		if (cache != null) {
+			T cached = getCached(request, url, cache);
+			if (cached != null) {
+				JsonModelParser.replay(cached, arrayField, elementClass,
+						listener);
+				return cached;
+			}
+		}
+		PlaceIndex index = mPlaceIndex;
+		PlacesCall call = new PlacesCall();
+		T response;
+		try {
+			response = executeAttempt(request, call, 1, new BodyParser<T>() {
+				@Override
+				public T parse(HttpResponse response, InputStream content)
+						throws IOException {
+					JsonParser parser = mJsonFactory.createJsonParser(
+							content, response.getContentCharset());
+					try {
+						return JsonModelParser.parseStreaming(parser,
+								request.getResponseClass(), arrayField,
+								elementClass, listener);
+					} finally {
+						parser.close();
+					}
+				}
+			});
+		} catch (IOException e) {
+			T offline = index == null || call.isCancelled() ? null : index
+					.answer(request);
+			if (offline == null)
+				throw e;
+			JsonModelParser.replay(offline, arrayField, elementClass, listener);
+			return offline;
+		}
+		if (index != null && response.getStatus() == Status.OK)
+			index.addAll(response);
+		if (cache != null)
+			store(url, cache, response);
+		return response;
+	}
+
+	/**
+	 * <p>
+	 * Execute a request on this client's executor. If an identical request
+	 * is already in flight, the returned future completes with its response.
+	 * </p>
+	 * <p>
+	 * Cancelling the future with <code>mayInterruptIfRunning</code> set
+	 * disconnects the http connection. With a {@link PlacesTransport}, as
+	 * {@link #PlacesClient()} uses, that releases the executing thread
+	 * promptly, even before the response headers arrive; with other
+	 * transports the thread is only released once they have. If the
+	 * executor's queue is full, the future fails with a
+	 * {@link RejectedExecutionException}.
+	 * </p>
+	 */
+	public <T extends PlacesResponse> ListenableFuture<T> executeAsync(
+			final PlacesRequest<T> request) {
+		RequestCoalescer coalescer = mCoalescer;
+		if (coalescer == null)
+			return submit(request);
+		return coalescer.executeAsync(request.getCanonicalUrl(),
+				new Callable<ListenableFuture<T>>() {
+					@Override
+					public ListenableFuture<T> call() {
+						return submit(request);
+					}
+				});
+	}
+
+	private <T extends PlacesResponse> ListenableFuture<T> submit(
+			final PlacesRequest<T> request) {
+		ApiKeyRateLimiter limiter = mRateLimiter;
+		if (limiter == null || limiter.getMode() != ApiKeyRateLimiter.Mode.ASYNC)
+			return submit(request, new PlacesCall());
+
+		// Wait for the permit without holding an executor thread.  The key
+		// is chosen now, so the first attempt is sent with the key the 
+		// permit is for.
+		String apiKey = selectApiKey(request, 1);
+		final PlacesCall call = new PlacesCall();
+		call.setPermitHeld(apiKey);
+		return Futures.transform(limiter.acquireAsync(apiKey),
+				new AsyncFunction<Void, T>() {
+					@Override
+					public ListenableFuture<T> apply(Void input) {
+						return submit(request, call);
+					}
+				});
+	}
+
+	private <T extends PlacesResponse> ListenableFuture<T> submit(
+			final PlacesRequest<T> request, final PlacesCall call) {
+		final RequestTracer tracer = mTracer;
+		final long queued = tracer != null ? System.nanoTime() : 0;
+		final ListenableFuture<T> future;
+		try {
+			future = getExecutor().submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					if (tracer != null)
+						trace(tracer, Phase.QUEUE, request, 0, null, null,
+								queued, System.nanoTime());
+					return executeCached(request, call);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (future.isCancelled())
+					call.cancel();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	/**
+	 * Answer a request from the response cache if there is one, and execute
+	 * it if that can't.
+	 */
+	private <T extends PlacesResponse> T executeCached(
+			final PlacesRequest<T> request, PlacesCall call) throws IOException {
+		DiskResponseCache cache = mResponseCache;
+		if (cache == null)
+			return executeIndexed(request, call);
+		// The key is taken now, as the caller may change the request once
+		// this returns, such as to ask for the next page
+		String url = request.getCanonicalUrl();
+		T response = getCached(request, url, cache);
+		if (response != null)
+			return response;
+		response = executeIndexed(request, call);
+		store(url, cache, response);
+		return response;
+	}
+
+	/**
+	 * Parse the cached response to a request, refreshing it in the background
+	 * if it is stale.
+	 *
+	 * @return the response, or null if there is none or it can't be parsed.
+	 */
+	private <T extends PlacesResponse> T getCached(PlacesRequest<T> request,
+			String url, DiskResponseCache cache) {
+		CachedResponse cached = cache.get(request);
+		if (cached == null)
+			return null;
+		T response;
+		try {
+			response = mParser.parseAndClose(new ByteArrayInputStream(cached
+					.getBody()), UTF_8, request.getResponseClass());
+		} catch (IOException e) {
+			response = null;
+		} catch (RuntimeException e) {
+			response = null;
+		}
+		if (response == null) {
+			cache.remove(request);
+			return null;
+		}
+		if (!cached.isFresh() && cache.beginRevalidation(cached))
+			revalidate(request, url, cache, cached);
+		return response;
+	}
+
+	/**
+	 * Execute a request, adding the response to the place index if there is
+	 * one, and answering from the index if the request fails.
+	 */
+	private <T extends PlacesResponse> T executeIndexed(
+			PlacesRequest<T> request, PlacesCall call) throws IOException {
+		PlaceIndex index = mPlaceIndex;
+		if (index == null)
+			return executeOnce(request, call);
+		T response;
+		try {
+			response = executeOnce(request, call);
+		} catch (IOException e) {
+			T offline = call.isCancelled() ? null : index.answer(request);
+			if (offline == null)
+				throw e;
+			return offline;
+		}
+		if (response.getStatus() == Status.OK)
+			index.addAll(response);
+		return response;
+	}
+
+	/**
+	 * Refresh a stale cached response in the background. This runs on a copy
+	 * of the request, since the caller may change its own once the stale
+	 * response has been returned.
+	 */
+	private <T extends PlacesResponse> void revalidate(
+			PlacesRequest<T> request, final String url,
+			final DiskResponseCache cache, final CachedResponse cached) {
+		final PlacesRequest<T> copy = request.clone();
+		try {
+			getExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						store(url, cache, executeOnce(copy));
+					} catch (IOException e) {
+						// The stale response will do until the next request
+					} finally {
+						cache.endRevalidation(cached);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			cache.endRevalidation(cached);
+		}
+	}
+
+	/**
+	 * Store a response under the canonical url its request had when it was
+	 * sent.
+	 */
+	private void store(String url, DiskResponseCache cache,
+			PlacesResponse response) {
+		if (response.isOffline())
+			return;
+		// A page token expires long before the response would, and a
+		// cached one would leave a pager polling a dead token
+		if (response instanceof SearchResponse
+				&& ((SearchResponse) response).getNextPageToken() != null)
+			return;
+		Status status = response.getStatus();
+		if (status == Status.OK || status == Status.ZERO_RESULTS)
+			cache.put(url, mJsonFactory.toByteArray(response));
+	}
+
+	private <T extends PlacesResponse> T executeOnce(PlacesRequest<T> request)
+			throws IOException {
+		return executeOnce(request, new PlacesCall());
+	}
+
+	private <T extends PlacesResponse> T executeOnce(PlacesRequest<T> request,
+			PlacesCall call) throws IOException {
+		RetryPolicy policy = request.getRetryPolicy();
+		if (policy == null)
+			policy = mRetryPolicy;
+		if (policy == null)
+			return executeHedged(request, call, 1);
+
+		policy.onRequest();
+		int attempts = 0;
+		for (;;) {
+			attempts++;
+			try {
+				T response = executeHedged(request, call, attempts);
+				if (!policy.shouldRetry(response.getStatus(), attempts)) {
+					policy.onFinished(attempts);
+					return response;
+				}
+			} catch (IOException e) {
+				if (call.isCancelled() || !policy.shouldRetry(e, attempts)) {
+					policy.onFinished(attempts);
+					throw e;
+				}
+			}
+			policy.backOff(attempts);
+		}
+	}
+
+	/**
+	 * Make one attempt, hedging it if there is a hedging policy. Both
+	 * exchanges run on pool threads while the calling thread waits for the
+	 * first to succeed, so a slow original exchange can't hold the caller
+	 * once the hedge has answered. The original exchange starts at once; if
+	 * it hasn't finished after the policy's delay a second one is started.
+	 * The loser is cancelled. If both fail, the original exchange's
+	 * exception is thrown.
+	 */
+	private <T extends PlacesResponse> T executeHedged(
+			final PlacesRequest<T> request, PlacesCall call, final int attempt)
+			throws IOException {
+		final HedgingPolicy policy = request.getHedgingPolicy() != null ? request
+				.getHedgingPolicy() : mHedgingPolicy;
+		if (policy == null)
+			return executeAttempt(request, call, attempt);
+
+		policy.onRequest();
+		final PlacesCall primary = call.newChild(true);
+		final PlacesCall hedge = call.newChild(false);
+		final SettableFuture<T> result = SettableFuture.create();
+		final AtomicReference<Throwable> primaryError = new AtomicReference<Throwable>();
+		// The exchanges that may still answer, counting the hedge until the
+		// timer has decided not to send it
+		final AtomicInteger pending = new AtomicInteger(2);
+		final ScheduledFuture<?>[] timer = new ScheduledFuture<?>[1];
+
+		final class Exchange implements Runnable {
+			private final PlacesCall mCall;
+			private final PlacesCall mOther;
+
+			Exchange(PlacesCall exchangeCall, PlacesCall other) {
+				mCall = exchangeCall;
+				mOther = other;
+			}
+
+			@Override
+			public void run() {
+				try {
+					long start = System.nanoTime();
+					T response = executeAttempt(request, mCall, attempt);
+					policy.recordLatency(System.nanoTime() - start);
+					if (result.set(response)) {
+						if (mCall == hedge)
+							policy.onHedgeWon();
+						else
+							timer[0].cancel(false);
+						mOther.cancel();
+					}
+				} catch (Throwable t) {
+					if (mCall == primary) {
+						primaryError.set(t);
+						// Don't wait out the delay for a hedge that hasn't
+						// been sent
+						if (timer[0].cancel(false))
+							pending.decrementAndGet();
+					}
+				} finally {
+					finished();
+				}
+			}
+
+			void finished() {
+				if (pending.decrementAndGet() == 0)
+					result.setException(primaryError.get());
+			}
+		}
+
+		final Exchange hedged = new Exchange(hedge, primary);
+		timer[0] = PlacesExecutors.scheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (result.isDone() || !policy.tryHedge())
+					hedged.finished();
+				else
+					PlacesExecutors.hedgeExecutor().execute(hedged);
+			}
+		}, policy.getDelayNanos(), TimeUnit.NANOSECONDS);
+		PlacesExecutors.hedgeExecutor().execute(new Exchange(primary, hedge));
+
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			primary.cancel();
+			hedge.cancel();
+			Thread.currentThread().interrupt();
+			InterruptedIOException ex = new InterruptedIOException(
+					"interrupted waiting for hedged request");
+			ex.initCause(e);
+			throw ex;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private <T extends PlacesResponse> T executeAttempt(
+			PlacesRequest<T> request, PlacesCall call, int attempt)
+			throws IOException {
+		return executeAttempt(request, call, attempt, null);
+	}
+
+	/**
+	 * @param bodyParser
+	 *            parses the response, or null to use
+	 *            {@link HttpResponse#parseAs(Class)}
+	 */
+	private <T extends PlacesResponse> T executeAttempt(
+			PlacesRequest<T> request, PlacesCall call, int attempt,
+			BodyParser<T> bodyParser) throws IOException {
+		RequestTracer tracer = mTracer;
+		long throttled = tracer != null ? System.nanoTime() : 0;
+		call.checkCancelled();
+		CircuitBreaker breaker = circuitBreakerFor(request);
+		if (breaker != null)
+			breaker.acquire();
+		String apiKey = call.takePermit();
+		boolean permitHeld = apiKey != null;
+		if (!permitHeld)
+			apiKey = selectApiKey(request, attempt);
+		AdaptiveConcurrencyLimiter concurrency = mConcurrencyLimiter;
+		long token;
+		try {
+			ApiKeyRateLimiter limiter = mRateLimiter;
+			if (limiter != null && !permitHeld)
+				limiter.acquireForCall(apiKey);
+			token = concurrency != null ? concurrency.acquire() : 0;
+		} catch (IOException e) {
+			if (tracer != null)
+				trace(tracer, Phase.THROTTLE, request, attempt, null, e,
+						throttled, System.nanoTime());
+			if (breaker != null)
+				breaker.onIgnore();
+			throw e;
+		}
+		PlacesMetrics metrics = mMetrics;
+		EndpointMetrics endpoint = metrics != null ? metrics
+				.getEndpoint(request) : null;
+		AccessLog log = mAccessLog;
+		long start = System.nanoTime();
+		if (tracer != null) {
+			trace(tracer, Phase.THROTTLE, request, attempt, null, null,
+					throttled, start);
+			call.setTimed();
+		}
+		T response;
+		try {
+			response = exchange(request, apiKey, call, bodyParser, endpoint,
+					log != null);
+		} catch (SocketTimeoutException e) {
+			if (endpoint != null)
+				endpoint.onException(System.nanoTime() - start, e, call);
+			if (tracer != null)
+				traceExchange(tracer, request, attempt, call, start, null, e);
+			if (log != null)
+				log.log(request, attempt, null, e, System.nanoTime() - start,
+						call.getResponseBytes());
+			if (concurrency != null)
+				concurrency.onTimeout(token);
+			if (breaker != null)
+				breaker.onFailure();
+			throw e;
+		} catch (IOException e) {
+			if (endpoint != null)
+				endpoint.onException(System.nanoTime() - start, e, call);
+			if (tracer != null)
+				traceExchange(tracer, request, attempt, call, start, null, e);
+			if (log != null)
+				log.log(request, attempt, null, e, System.nanoTime() - start,
+						call.getResponseBytes());
+			if (concurrency != null)
+				concurrency.onIgnore(token);
+			if (breaker != null) {
+				if (isEndpointFailure(e, call))
+					breaker.onFailure();
+				else
+					breaker.onIgnore();
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			if (tracer != null)
+				traceExchange(tracer, request, attempt, call, start, null, e);
+			if (log != null)
+				log.log(request, attempt, null, e, System.nanoTime() - start,
+						call.getResponseBytes());
+			if (concurrency != null)
+				concurrency.onIgnore(token);
+			if (breaker != null)
+				breaker.onIgnore();
+			throw e;
+		}
+		long nanos = System.nanoTime() - start;
+		Status status = response.getStatus();
+		if (endpoint != null)
+			endpoint.onResponse(nanos, response);
+		if (tracer != null)
+			traceExchange(tracer, request, attempt, call, start, status, null);
+		if (log != null)
+			log.log(request, attempt, status, null, nanos,
+					call.getResponseBytes());
+		if (concurrency != null)
+			concurrency.onResponse(token, status);
+		if (breaker != null) {
+			if (status == Status.UNKOWN_ERROR)
+				breaker.onFailure();
+			else
+				breaker.onSuccess(nanos);
+		}
+		ApiKeys.reportStatus(apiKey, status);
+		return response;
+	}
+
+	private static void trace(RequestTracer tracer, Phase phase,
+			PlacesRequest<?> request, int attempt, Status status,
+			Throwable error, long start, long end) {
+		tracer.onSpan(new Span(phase, request.getBaseUrl(), request.getClass(),
+				attempt, status, error, start, end));
+	}
+
+	/**
+	 * Emit the {@link Phase#EXCHANGE} span of a timed call and, if the
+	 * headers arrived, the {@link Phase#PARSE} span after it.
+	 */
+	private static void traceExchange(RequestTracer tracer,
+			PlacesRequest<?> request, int attempt, PlacesCall call,
+			long start, Status status, Throwable error) {
+		long end = System.nanoTime();
+		long headers = call.getHeadersNanos();
+		if (headers == 0) {
+			trace(tracer, Phase.EXCHANGE, request, attempt, status, error,
+					start, end);
+		} else {
+			trace(tracer, Phase.EXCHANGE, request, attempt, null, null, start,
+					headers);
+			trace(tracer, Phase.PARSE, request, attempt, status, error,
+					headers, end);
+		}
+	}
+
+	/**
+	 * Does an exception say the endpoint is unhealthy? Cancellations and
+	 * client errors don't.
+	 */
+	private static boolean isEndpointFailure(IOException e, PlacesCall call) {
+		if (call.isCancelled() || e instanceof InterruptedIOException)
+			return false;
+		if (e instanceof HttpResponseException)
+			return ((HttpResponseException) e).getStatusCode() >= 500;
+		return true;
+	}
+
+	private CircuitBreaker circuitBreakerFor(PlacesRequest<?> request) {
+		return mCircuitBreakersEnabled ? getCircuitBreaker(request) : null;
+	}
+
+	/**
+	 * Choose the api key for an attempt. Requests using the default key
+	 * switch keys when retrying, or if their key has been quarantined since
+	 * the request was created.
+	 */
+	private static String selectApiKey(PlacesRequest<?> request, int attempt) {
+		String apiKey = request.getApiKey();
+		if (request.isDefaultApiKey()
+				&& (attempt > 1 || ApiKeys.isQuarantined(apiKey)))
+			apiKey = request.getDefaultApiKey();
+		return apiKey;
+	}
+
+	private <T extends PlacesResponse> T exchange(PlacesRequest<T> request,
+			String apiKey, PlacesCall call, BodyParser<T> bodyParser,
+			EndpointMetrics endpoint, boolean countBytes) throws IOException {
+		call.checkCancelled();
+		call.setResponseBytes(-1);
+		GenericUrl url = request.getGenericUrl(mRootUrl);
+		if (apiKey != null && !apiKey.equals(request.getApiKey()))
+			url.put("key", apiKey);
+		HttpResponse response;
+		call.attach();
+		try {
+			response = mRequestFactory.buildGetRequest(url).execute();
+		} finally {
+			PlacesCall.detach();
+		}
+		call.setResponse(response);
+		InputStream content = response.getContent();
+		CountingInputStream counting = null;
+		if ((endpoint != null || countBytes) && content != null)
+			content = counting = new CountingInputStream(content);
+		try {
+			if (bodyParser != null)
+				return bodyParser.parse(response, content);
+			// As HttpResponse.parseAs() does, but reading the counted stream
+			return mParser.parseAndClose(content, response.getContentCharset(),
+					request.getResponseClass());
+		} finally {
+			if (counting != null) {
+				call.setResponseBytes(counting.getCount());
+				if (endpoint != null)
+					endpoint.onResponseBytes(counting.getCount());
+			}
+		}
+	}
+}
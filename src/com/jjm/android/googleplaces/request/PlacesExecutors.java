@@ -0,0 +1,74 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared background threads used by the request pipeline. All threads are
+ * daemons, so they never keep the process alive.
+ */
+final class PlacesExecutors {
+	private static ScheduledExecutorService sScheduler;
+	private static ExecutorService sHedgeExecutor;
+
+	private PlacesExecutors() {
+	}
+
+	/**
+	 * A single thread for timers. Tasks run on it must not block.
+	 */
+	static synchronized ScheduledExecutorService scheduler() {
+		if (sScheduler == null) {
+			sScheduler = new ScheduledThreadPoolExecutor(1,
+					threadFactory("PlacesScheduler"));
+		}
+		return sScheduler;
+	}
+
+	/**
+	 * An unbounded pool for the exchanges of hedged attempts, both the
+	 * original and the hedge. Each runs while a caller waits for it, so the
+	 * number in flight is bounded by the callers and the
+	 * {@link HedgingPolicy} rather than by this pool.
+	 */
+	static synchronized ExecutorService hedgeExecutor() {
+		if (sHedgeExecutor == null) {
+			sHedgeExecutor = Executors.newCachedThreadPool(
+					threadFactory("PlacesHedge"));
+		}
+		return sHedgeExecutor;
+	}
+
+	static ThreadFactory threadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger mCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + " #" + mCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+}
@@ -0,0 +1,161 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * The metrics of a {@link PlacesClient}: an {@link EndpointMetrics} for each
+ * endpoint requests have been sent to, created on first use. Clients record
+ * metrics by default, see {@link PlacesClient#setMetrics(PlacesMetrics)}.
+ * </p>
+ * <p>
+ * Exporters added with {@link #addExporter(MetricsExporter)} are called by
+ * {@link #export()}, or periodically once
+ * {@link #scheduleExport(long, TimeUnit)} has been called.
+ * </p>
+ */
+public class PlacesMetrics {
+	private static final String TAG = "PlacesMetrics";
+
+	private final ConcurrentHashMap<String, EndpointMetrics> mEndpoints =
+			new ConcurrentHashMap<String, EndpointMetrics>();
+	private final CopyOnWriteArrayList<MetricsExporter> mExporters =
+			new CopyOnWriteArrayList<MetricsExporter>();
+	private ScheduledFuture<?> mScheduledExport;
+
+	/**
+	 * An exporter that writes each endpoint's metrics to the log.
+	 */
+	public static MetricsExporter logExporter(final String tag) {
+		Preconditions.checkNotNull(tag);
+		return new MetricsExporter() {
+			@Override
+			public void export(PlacesMetrics metrics) {
+				for (EndpointMetrics endpoint : metrics.getEndpoints())
+					Log.i(tag, endpoint.toString());
+			}
+		};
+	}
+
+	/**
+	 * The metrics for the endpoint with the given base url, created if there
+	 * are none yet.
+	 */
+	public EndpointMetrics getEndpoint(String baseUrl) {
+		EndpointMetrics endpoint = mEndpoints.get(baseUrl);
+		if (endpoint == null) {
+			EndpointMetrics created = new EndpointMetrics(baseUrl);
+			endpoint = mEndpoints.putIfAbsent(baseUrl, created);
+			if (endpoint == null)
+				endpoint = created;
+		}
+		return endpoint;
+	}
+
+	/**
+	 * The metrics for the endpoint a request is sent to.
+	 */
+	public EndpointMetrics getEndpoint(PlacesRequest<?> request) {
+		return getEndpoint(request.getBaseUrl());
+	}
+
+	/**
+	 * Every endpoint used so far.
+	 */
+	public Collection<EndpointMetrics> getEndpoints() {
+		List<EndpointMetrics> endpoints = new ArrayList<EndpointMetrics>(
+				mEndpoints.values());
+		return Collections.unmodifiableList(endpoints);
+	}
+
+	public PlacesMetrics addExporter(MetricsExporter exporter) {
+		mExporters.addIfAbsent(Preconditions.checkNotNull(exporter));
+		return this;
+	}
+
+	public PlacesMetrics removeExporter(MetricsExporter exporter) {
+		mExporters.remove(exporter);
+		return this;
+	}
+
+	/**
+	 * Pass the metrics to every exporter now. An exporter that throws doesn't
+	 * stop the others.
+	 */
+	public void export() {
+		for (MetricsExporter exporter : mExporters) {
+			try {
+				exporter.export(this);
+			} catch (RuntimeException e) {
+				Log.w(TAG, "exporter failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Call {@link #export()} every <code>period</code>, on a shared timer
+	 * thread, replacing any earlier schedule.
+	 */
+	public synchronized PlacesMetrics scheduleExport(long period,
+			TimeUnit unit) {
+		Preconditions.checkArgument(period > 0);
+		cancelExport();
+		mScheduledExport = PlacesExecutors.scheduler().scheduleAtFixedRate(
+				new Runnable() {
+					@Override
+					public void run() {
+						export();
+					}
+				}, period, period, unit);
+		return this;
+	}
+
+	/**
+	 * Stop calling {@link #export()} periodically.
+	 */
+	public synchronized PlacesMetrics cancelExport() {
+		if (mScheduledExport != null) {
+			mScheduledExport.cancel(false);
+			mScheduledExport = null;
+		}
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (EndpointMetrics endpoint : getEndpoints()) {
+			if (sb.length() > 0)
+				sb.append('\n');
+			sb.append(endpoint);
+		}
+		return sb.toString();
+	}
+}
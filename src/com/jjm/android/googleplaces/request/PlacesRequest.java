@@ -24,16 +24,12 @@ import java.util.Map;
 import android.content.Context;
 import android.location.Location;
 
-import com.google.api.client.extensions.android3.json.AndroidJsonFactory;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
-import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonObjectParser;
 import com.google.api.client.util.GenericData;
 import com.google.api.client.util.Key;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.jjm.android.googleplaces.HasGenericUrl;
 import com.jjm.android.googleplaces.response.PlacesResponse;
 import com.jjm.android.googleplaces.util.ApiKeys;
@@ -47,11 +43,14 @@ import com.jjm.android.googleplaces.util.LatLng;
  *            the type of response returned by the execute method on this
  *            request.
  */
-@SuppressWarnings("deprecation") // TODO Deal with this (deprecated class is
-								 // AndroidJsonFactory)
 public abstract class PlacesRequest<T extends PlacesResponse> extends
 		GenericData implements HasGenericUrl {
 	public static final double MAX_RADIUS = 5E5;
+	/**
+	 * The scheme and host of the places service, which the base url of
+	 * every request starts with.
+	 */
+	public static final String DEFAULT_ROOT_URL = "https://maps.googleapis.com";
 	@Key("key")
 	private String mApiKey;
 	@Key("sensor")
@@ -64,9 +63,14 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 	private String mLanguage;
 
 	private List<String> mTypes;
+	private boolean mDefaultApiKey;
+	private RetryPolicy mRetryPolicy;
+	private HedgingPolicy mHedgingPolicy;
+	private String mRootUrl;
 
 	public PlacesRequest() {
 		mApiKey = getDefaultApiKey();
+		mDefaultApiKey = true;
 	}
 
 	public PlacesRequest(String apiKey) {
@@ -85,6 +89,10 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 	 */
 	protected abstract Class<T> getResponseClass();
 
+	/**
+	 * Returns an api key for this request type.  If several keys have been
+	 * added, each call may return a different one.
+	 */
 	protected String getDefaultApiKey() {
 		return ApiKeys.requireApiKey(ApiKeys.ID_GOOGLE_PLACES);
 	}
@@ -113,6 +121,7 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 	 */
 	public PlacesRequest<T> setApiKey(String apiKey) {
 		mApiKey = apiKey;
+		mDefaultApiKey = false;
 		return this;
 	}
 
@@ -175,6 +184,10 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 		return this;
 	}
 
+	List<String> getTypesOrNull() {
+		return mTypes;
+	}
+
 	public List<String> getTypes() {
 		if (mTypes == null) {
 			mTypes = new ArrayList<String>();
@@ -189,6 +202,15 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 		return mApiKey;
 	}
 
+	/**
+	 * @return true if the api key was chosen by {@link #getDefaultApiKey()}
+	 * 		   rather than set explicitly.  The client may then switch to 
+	 * 		   another key, for example when retrying.
+	 */
+	public boolean isDefaultApiKey() {
+		return mDefaultApiKey;
+	}
+
 	/**
 	 * @return the sensor
 	 */
@@ -225,6 +247,84 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 		return mRadius;
 	}
 
+	/**
+	 * @return the retry policy for this request, or null if the client's
+	 * 		   policy is used.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return mRetryPolicy;
+	}
+
+	/**
+	 * @param retryPolicy
+	 *            the retry policy for this request, overriding the client's
+	 *            policy.
+	 */
+	public PlacesRequest<T> setRetryPolicy(RetryPolicy retryPolicy) {
+		mRetryPolicy = retryPolicy;
+		return this;
+	}
+
+	/**
+	 * @return the hedging policy for this request, or null if the client's
+	 * 		   policy is used.
+	 */
+	public HedgingPolicy getHedgingPolicy() {
+		return mHedgingPolicy;
+	}
+
+	/**
+	 * @param hedgingPolicy
+	 *            the hedging policy for this request, overriding the
+	 *            client's policy.
+	 */
+	public PlacesRequest<T> setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+		mHedgingPolicy = hedgingPolicy;
+		return this;
+	}
+
+	/**
+	 * @return the url this request is sent to in place of
+	 * 		   {@link #DEFAULT_ROOT_URL}, or null if the client's is used.
+	 */
+	public String getRootUrl() {
+		return mRootUrl;
+	}
+
+	/**
+	 * Send this request somewhere other than the places service, such as the
+	 * <code>FakePlacesServer</code> in <code>benchmarks/</code>. The
+	 * path of the base url is kept, so <code>http://localhost:8080</code>
+	 * sends an autocomplete request to
+	 * <code>http://localhost:8080/maps/api/place/autocomplete/json</code>.
+	 * 
+	 * @param rootUrl
+	 *            the scheme, host and port to use, or null for the client's.
+	 * @see PlacesClient#setRootUrl(String)
+	 */
+	public PlacesRequest<T> setRootUrl(String rootUrl) {
+		mRootUrl = stripSlash(rootUrl);
+		return this;
+	}
+
+	static String stripSlash(String rootUrl) {
+		if (rootUrl != null && rootUrl.endsWith("/"))
+			return rootUrl.substring(0, rootUrl.length() - 1);
+		return rootUrl;
+	}
+
+	/**
+	 * The base url, with the root replaced by this request's root url if it
+	 * has one, or else by <code>defaultRootUrl</code> if that is not null.
+	 */
+	String resolveBaseUrl(String defaultRootUrl) {
+		String rootUrl = mRootUrl != null ? mRootUrl : defaultRootUrl;
+		String baseUrl = getBaseUrl();
+		if (rootUrl == null || !baseUrl.startsWith(DEFAULT_ROOT_URL))
+			return baseUrl;
+		return rootUrl + baseUrl.substring(DEFAULT_ROOT_URL.length());
+	}
+
 	public PlacesRequest<T> useCurrentLocation(Context context) {
 		return setLocation(LatLng.lastKnown(context))
 				.setRadius(MAX_RADIUS)
@@ -232,16 +332,42 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 	}
 
 	/**
-	 * Execute the request.
+	 * Execute the request using {@link PlacesClient#getDefault()}.
 	 * @return The corresponding result instance.
 	 * @throws IOException
 	 */
 	public T execute() throws IOException{
-		return execute(createRequestFactory());
+		return execute(PlacesClient.getDefault());
+	}
+
+	/**
+	 * Execute the request using the given client.
+	 */
+	public T execute(PlacesClient client) throws IOException {
+		return client.execute(this);
 	}
 	
 	/**
-	 * Execute the request
+	 * Execute the request asynchronously using 
+	 * {@link PlacesClient#getDefault()}.
+	 * @see PlacesClient#executeAsync(PlacesRequest)
+	 */
+	public ListenableFuture<T> executeAsync() {
+		return executeAsync(PlacesClient.getDefault());
+	}
+
+	/**
+	 * Execute the request asynchronously using the given client.
+	 * @see PlacesClient#executeAsync(PlacesRequest)
+	 */
+	public ListenableFuture<T> executeAsync(PlacesClient client) {
+		return client.executeAsync(this);
+	}
+
+	/**
+	 * Execute the request.  The request factory must be configured
+	 * with a json parser, as the one returned by 
+	 * {@link PlacesClient#getRequestFactory()} is.
 	 */
 	public T execute(HttpRequestFactory requestFactory) throws IOException {
 		return requestFactory.buildGetRequest(getGenericUrl()).execute()
@@ -249,18 +375,55 @@ public abstract class PlacesRequest<T extends PlacesResponse> extends
 	}
 
 	public GenericUrl getGenericUrl() {
-		GenericUrl url = new GenericUrl(getBaseUrl());
+		return getGenericUrl(null);
+	}
+
+	/**
+	 * @see #resolveBaseUrl(String)
+	 */
+	GenericUrl getGenericUrl(String defaultRootUrl) {
+		String baseUrl = resolveBaseUrl(defaultRootUrl);
+		QueryEncoder encoder = QueryEncoder.forClass(getClass());
+		if (encoder != null)
+			return encoder.toGenericUrl(this, baseUrl);
+		GenericUrl url = new GenericUrl(baseUrl);
 		url.putAll(this);
 		prepareData(url);
 		return url;
 	}
-	
-	private HttpRequestFactory createRequestFactory(){
-		return new NetHttpTransport().createRequestFactory(new HttpRequestInitializer() {
-			@Override
-			public void initialize(HttpRequest request) throws IOException {
-				request.setParser(new JsonObjectParser(new AndroidJsonFactory()));
-			}
-		});
+
+	/**
+	 * The url of this request, including the api key.  This is the same as
+	 * <code>getGenericUrl().build()</code>, but faster.
+	 */
+	public String getUrl() {
+		QueryEncoder encoder = QueryEncoder.forClass(getClass());
+		if (encoder != null)
+			return encoder.encode(this, resolveBaseUrl(null), true);
+		return getGenericUrl().build();
+	}
+
+	/**
+	 * A copy of this request, which can be executed while this one is
+	 * changed.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public PlacesRequest<T> clone() {
+		return (PlacesRequest<T>) super.clone();
+	}
+
+	/**
+	 * The url of this request without the api key. Two requests with the 
+	 * same canonical url will get the same response, so this is used as the 
+	 * key for sharing and caching responses.
+	 */
+	public String getCanonicalUrl() {
+		QueryEncoder encoder = QueryEncoder.forClass(getClass());
+		if (encoder != null)
+			return encoder.encode(this, resolveBaseUrl(null), false);
+		GenericUrl url = getGenericUrl();
+		url.remove("key");
+		return url.build();
 	}
 }
@@ -0,0 +1,249 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A transport over {@link HttpURLConnection}, like {@link NetHttpTransport},
+ * that hands each connection to the {@link PlacesCall} executing on the
+ * thread before it connects. Cancelling the call then disconnects it at
+ * once, even while the thread is still waiting for the response headers;
+ * with another transport the connection can only be disconnected once they
+ * have arrived.
+ * </p>
+ * <p>
+ * {@link PlacesClient#PlacesClient()} uses one of these.
+ * </p>
+ */
+public final class PlacesTransport extends HttpTransport {
+	@Override
+	public boolean supportsHead() {
+		return true;
+	}
+
+	@Override
+	protected LowLevelHttpRequest buildDeleteRequest(String url)
+			throws IOException {
+		return new Request("DELETE", url);
+	}
+
+	@Override
+	protected LowLevelHttpRequest buildGetRequest(String url)
+			throws IOException {
+		return new Request("GET", url);
+	}
+
+	@Override
+	protected LowLevelHttpRequest buildHeadRequest(String url)
+			throws IOException {
+		return new Request("HEAD", url);
+	}
+
+	@Override
+	protected LowLevelHttpRequest buildPostRequest(String url)
+			throws IOException {
+		return new Request("POST", url);
+	}
+
+	@Override
+	protected LowLevelHttpRequest buildPutRequest(String url)
+			throws IOException {
+		return new Request("PUT", url);
+	}
+
+	private static final class Request extends LowLevelHttpRequest {
+		private final HttpURLConnection mConnection;
+		private HttpContent mContent;
+
+		Request(String method, String url) throws IOException {
+			mConnection = (HttpURLConnection) new URL(url).openConnection();
+			mConnection.setRequestMethod(method);
+			mConnection.setUseCaches(false);
+			mConnection.setInstanceFollowRedirects(false);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			mConnection.addRequestProperty(name, value);
+		}
+
+		@Override
+		public void setTimeout(int connectTimeout, int readTimeout) {
+			mConnection.setConnectTimeout(connectTimeout);
+			mConnection.setReadTimeout(readTimeout);
+		}
+
+		@Override
+		public void setContent(HttpContent content) {
+			mContent = content;
+		}
+
+		@Override
+		public LowLevelHttpResponse execute() throws IOException {
+			PlacesCall call = PlacesCall.current();
+			if (call != null)
+				call.setConnection(mConnection);
+			boolean connected = false;
+			try {
+				if (mContent != null)
+					writeContent();
+				mConnection.connect();
+				Response response = new Response(mConnection);
+				connected = true;
+				return response;
+			} finally {
+				if (!connected)
+					mConnection.disconnect();
+			}
+		}
+
+		/**
+		 * As {@link NetHttpTransport} does.
+		 */
+		private void writeContent() throws IOException {
+			String type = mContent.getType();
+			if (type != null)
+				addHeader("Content-Type", type);
+			String encoding = mContent.getEncoding();
+			if (encoding != null)
+				addHeader("Content-Encoding", encoding);
+			long length = mContent.getLength();
+			if (length >= 0)
+				addHeader("Content-Length", Long.toString(length));
+			String method = mConnection.getRequestMethod();
+			if ("POST".equals(method) || "PUT".equals(method)) {
+				mConnection.setDoOutput(true);
+				if (length >= 0 && length <= Integer.MAX_VALUE)
+					mConnection.setFixedLengthStreamingMode((int) length);
+				else
+					mConnection.setChunkedStreamingMode(0);
+				OutputStream out = mConnection.getOutputStream();
+				try {
+					mContent.writeTo(out);
+				} finally {
+					out.close();
+				}
+			} else {
+				Preconditions.checkArgument(length == 0,
+						"%s with non-zero content length is not supported",
+						method);
+			}
+		}
+	}
+
+	private static final class Response extends LowLevelHttpResponse {
+		private final HttpURLConnection mConnection;
+		private final int mStatusCode;
+		private final String mReasonPhrase;
+		private final List<String> mHeaderNames = new ArrayList<String>();
+		private final List<String> mHeaderValues = new ArrayList<String>();
+
+		Response(HttpURLConnection connection) throws IOException {
+			mConnection = connection;
+			int code = connection.getResponseCode();
+			mStatusCode = code == -1 ? 0 : code;
+			mReasonPhrase = connection.getResponseMessage();
+			for (Map.Entry<String, List<String>> header : connection
+					.getHeaderFields().entrySet()) {
+				if (header.getKey() == null)
+					continue;
+				for (String value : header.getValue()) {
+					if (value != null) {
+						mHeaderNames.add(header.getKey());
+						mHeaderValues.add(value);
+					}
+				}
+			}
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			if (HttpStatusCodes.isSuccess(mStatusCode))
+				return mConnection.getInputStream();
+			return mConnection.getErrorStream();
+		}
+
+		@Override
+		public String getContentEncoding() {
+			return mConnection.getContentEncoding();
+		}
+
+		@Override
+		public long getContentLength() {
+			String length = mConnection.getHeaderField("Content-Length");
+			return length == null ? -1 : Long.parseLong(length);
+		}
+
+		@Override
+		public String getContentType() {
+			return mConnection.getHeaderField("Content-Type");
+		}
+
+		@Override
+		public String getStatusLine() {
+			String line = mConnection.getHeaderField(0);
+			return line != null && line.startsWith("HTTP/1.") ? line : null;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return mStatusCode;
+		}
+
+		@Override
+		public String getReasonPhrase() {
+			return mReasonPhrase;
+		}
+
+		@Override
+		public int getHeaderCount() {
+			return mHeaderNames.size();
+		}
+
+		@Override
+		public String getHeaderName(int index) {
+			return mHeaderNames.get(index);
+		}
+
+		@Override
+		public String getHeaderValue(int index) {
+			return mHeaderValues.get(index);
+		}
+
+		@Override
+		public void disconnect() {
+			mConnection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.util.Key;
+
+/**
+ * <p>
+ * Writes the query string of a {@link PlacesRequest} without going through
+ * {@link GenericUrl}. The {@link Key} fields of each request class are found
+ * once, and their names escaped once; after that, encoding a request reads
+ * each field and escapes its value straight into a per thread buffer.
+ * </p>
+ *
+ * <p>
+ * The output is the same as {@link GenericUrl#build()}: fields in name order,
+ * then unknown keys, then <code>types</code>. Request classes that override
+ * {@link PlacesRequest#prepareData(Map)} can add arbitrary parameters, so
+ * they have no encoder and use {@link GenericUrl} as before.
+ * </p>
+ */
+final class QueryEncoder {
+	private static final String SAFE_CHARS = "-_.!~*'()@:$,;/?:";
+	private static final boolean[] SAFE = new boolean[128];
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final int MAX_BUFFER = 4096;
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++)
+			SAFE[c] = true;
+		for (char c = 'A'; c <= 'Z'; c++)
+			SAFE[c] = true;
+		for (char c = '0'; c <= '9'; c++)
+			SAFE[c] = true;
+		for (int i = 0; i < SAFE_CHARS.length(); i++)
+			SAFE[SAFE_CHARS.charAt(i)] = true;
+	}
+
+	private static final ConcurrentHashMap<Class<?>, QueryEncoder> sEncoders =
+			new ConcurrentHashMap<Class<?>, QueryEncoder>();
+	/**
+	 * Stands in for classes that can't be encoded, since the map can't hold
+	 * null.
+	 */
+	private static final QueryEncoder NONE = new QueryEncoder(new Param[0]);
+
+	private static final ThreadLocal<StringBuilder> sBuffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	private static final class Param {
+		final Field mField;
+		final String mName;
+		/**
+		 * The escaped name followed by '='.
+		 */
+		final String mPrefix;
+		final boolean mBoolean;
+
+		Param(Field field, String name) {
+			mField = field;
+			mName = name;
+			mPrefix = escape(name) + "=";
+			mBoolean = field.getType() == boolean.class;
+		}
+	}
+
+	/**
+	 * The parsed base url of the last request encoded, which is usually the
+	 * same for every request of a class.
+	 */
+	private static final class Base {
+		final String mUrl;
+		final String mPrefix;
+		final GenericUrl mPrototype;
+
+		Base(String url) {
+			mUrl = url;
+			mPrefix = url + "?";
+			mPrototype = new GenericUrl(url);
+		}
+	}
+
+	private final Param[] mParams;
+	private volatile Base mBase;
+
+	private QueryEncoder(Param[] params) {
+		mParams = params;
+	}
+
+	/**
+	 * The encoder for a request class.
+	 *
+	 * @return the encoder, or null if the class must use {@link GenericUrl}.
+	 */
+	static QueryEncoder forClass(Class<?> cls) {
+		QueryEncoder encoder = sEncoders.get(cls);
+		if (encoder == null) {
+			encoder = compile(cls);
+			QueryEncoder existing = sEncoders.putIfAbsent(cls, encoder);
+			if (existing != null)
+				encoder = existing;
+		}
+		return encoder != NONE ? encoder : null;
+	}
+
+	private static QueryEncoder compile(Class<?> cls) {
+		List<Param> params = new ArrayList<Param>();
+		for (Class<?> c = cls; c != null && c != Object.class; c = c
+				.getSuperclass()) {
+			if (c != PlacesRequest.class) {
+				try {
+					c.getDeclaredMethod("prepareData", Map.class);
+					return NONE;
+				} catch (NoSuchMethodException e) {
+					// Not overridden here
+				}
+			}
+			for (Field field : c.getDeclaredFields()) {
+				Key key = field.getAnnotation(Key.class);
+				if (key == null || Modifier.isStatic(field.getModifiers()))
+					continue;
+				String name = key.value();
+				if ("##default".equals(name))
+					name = field.getName();
+				field.setAccessible(true);
+				params.add(new Param(field, name));
+			}
+		}
+		Collections.sort(params, new Comparator<Param>() {
+			@Override
+			public int compare(Param a, Param b) {
+				return a.mName.compareTo(b.mName);
+			}
+		});
+		return new QueryEncoder(params.toArray(new Param[params.size()]));
+	}
+
+	/**
+	 * The full url of the request.
+	 *
+	 * @param baseUrl
+	 *            the request's base url
+	 * @param includeKey
+	 *            whether to include the api key
+	 */
+	String encode(PlacesRequest<?> request, String baseUrl, boolean includeKey) {
+		StringBuilder sb = sBuffer.get();
+		sb.setLength(0);
+		sb.append(base(baseUrl).mPrefix);
+		appendQuery(request, sb, includeKey);
+		String url = sb.toString();
+		if (sb.capacity() > MAX_BUFFER)
+			sBuffer.remove();
+		return url;
+	}
+
+	private Base base(String url) {
+		Base base = mBase;
+		if (base == null || !base.mUrl.equals(url)) {
+			base = new Base(url);
+			mBase = base;
+		}
+		return base;
+	}
+
+	/**
+	 * A {@link GenericUrl} with the request's parameters. The base url is
+	 * parsed once, and the parameters are copied without going through
+	 * {@link com.google.api.client.util.GenericData#putAll(Map)}.
+	 */
+	GenericUrl toGenericUrl(PlacesRequest<?> request, String baseUrl) {
+		GenericUrl url = base(baseUrl).mPrototype.clone();
+		for (Param param : mParams) {
+			Object value = get(param, request);
+			if (value != null)
+				url.put(param.mName, value);
+		}
+		Map<String, Object> unknown = request.getUnknownKeys();
+		if (!unknown.isEmpty())
+			url.putAll(unknown);
+		request.prepareData(url);
+		return url;
+	}
+
+	private void appendQuery(PlacesRequest<?> request, StringBuilder sb,
+			boolean includeKey) {
+		boolean first = true;
+		for (Param param : mParams) {
+			if (!includeKey && "key".equals(param.mName))
+				continue;
+			Object value = get(param, request);
+			if (value == null)
+				continue;
+			if (param.mBoolean) {
+				first = separator(sb, first);
+				sb.append(param.mPrefix).append(
+						((Boolean) value).booleanValue() ? "true" : "false");
+			} else {
+				first = appendParam(sb, first, param.mPrefix, value);
+			}
+		}
+		Map<String, Object> unknown = request.getUnknownKeys();
+		if (!unknown.isEmpty()) {
+			for (Map.Entry<String, Object> e : unknown.entrySet()) {
+				if (e.getValue() != null)
+					first = appendParam(sb, first, escape(e.getKey()) + "=",
+							e.getValue());
+			}
+		}
+		List<String> types = request.getTypesOrNull();
+		if (types != null && !types.isEmpty()) {
+			first = separator(sb, first);
+			sb.append("types=");
+			boolean firstType = true;
+			for (String type : types) {
+				if (!firstType)
+					sb.append("%7C");
+				firstType = false;
+				appendEscaped(sb, String.valueOf(type));
+			}
+		}
+	}
+
+	private static Object get(Param param, Object request) {
+		try {
+			return param.mField.get(request);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean separator(StringBuilder sb, boolean first) {
+		if (!first)
+			sb.append('&');
+		return false;
+	}
+
+	private static boolean appendParam(StringBuilder sb, boolean first,
+			String prefix, Object value) {
+		if (value instanceof Collection<?>) {
+			for (Object element : (Collection<?>) value) {
+				if (element != null)
+					first = appendParam(sb, first, prefix, element);
+			}
+			return first;
+		}
+		first = separator(sb, first);
+		String string = value.toString();
+		if (string.length() == 0) {
+			// GenericUrl leaves out the '=' for empty values
+			sb.append(prefix, 0, prefix.length() - 1);
+		} else {
+			sb.append(prefix);
+			appendEscaped(sb, string);
+		}
+		return first;
+	}
+
+	private static String escape(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 8);
+		appendEscaped(sb, s);
+		return sb.toString();
+	}
+
+	/**
+	 * Percent encode <code>s</code> as UTF-8, the same way as
+	 * {@link com.google.api.client.util.escape.CharEscapers#escapeUriQuery(String)}
+	 * but without creating a string.
+	 */
+	static void appendEscaped(StringBuilder sb, String s) {
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 128 && SAFE[c]) {
+				sb.append(c);
+				continue;
+			}
+			int cp = c;
+			if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				cp = Character.toCodePoint(c, s.charAt(++i));
+			} else if (c >= Character.MIN_SURROGATE
+					&& c <= Character.MAX_SURROGATE) {
+				throw new IllegalArgumentException(
+						"Invalid unicode character in " + s);
+			}
+			if (cp < 0x80) {
+				percent(sb, cp);
+			} else if (cp < 0x800) {
+				percent(sb, 0xC0 | (cp >> 6));
+				percent(sb, 0x80 | (cp & 0x3F));
+			} else if (cp < 0x10000) {
+				percent(sb, 0xE0 | (cp >> 12));
+				percent(sb, 0x80 | ((cp >> 6) & 0x3F));
+				percent(sb, 0x80 | (cp & 0x3F));
+			} else {
+				percent(sb, 0xF0 | (cp >> 18));
+				percent(sb, 0x80 | ((cp >> 12) & 0x3F));
+				percent(sb, 0x80 | ((cp >> 6) & 0x3F));
+				percent(sb, 0x80 | (cp & 0x3F));
+			}
+		}
+	}
+
+	private static void percent(StringBuilder sb, int b) {
+		sb.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+	}
+}
@@ -0,0 +1,42 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is refused by an {@link ApiKeyRateLimiter}: in
+ * {@link ApiKeyRateLimiter.Mode#FAIL_FAST} mode, when its key's daily quota
+ * is used up, or when the wait would be too long.  Nothing was sent to the
+ * service.
+ */
+@SuppressWarnings("serial")
+public class RateLimitExceededException extends IOException {
+	RateLimitExceededException(String apiKey) {
+		super("Rate limit exceeded for api key " + redact(apiKey));
+	}
+
+	/**
+	 * The last few characters of a key, enough to tell the keys in a pool
+	 * apart without putting the key itself in logs and crash reports.
+	 */
+	static String redact(String apiKey) {
+		if (apiKey == null || apiKey.length() < 12)
+			return "(redacted)";
+		return "\"..." + apiKey.substring(apiKey.length() - 4) + "\"";
+	}
+}
@@ -0,0 +1,251 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * <p>
+ * Coalesces identical requests that are in flight at the same time. The first
+ * caller for a key performs the call; callers that arrive while it is running
+ * wait for it and receive the same result (or exception).
+ * </p>
+ *
+ * <p>
+ * Keys are normally {@link PlacesRequest#getCanonicalUrl()}, which leaves out
+ * the api key. Note that coalesced callers share a single response instance,
+ * so responses should be treated as read only.
+ * </p>
+ *
+ * <p>
+ * Each asynchronous caller gets its own future. Cancelling it detaches that
+ * caller only; the shared call is cancelled once every caller waiting on it
+ * has cancelled.
+ * </p>
+ */
+public class RequestCoalescer {
+	private final ConcurrentHashMap<String, Flight> mInFlight =
+			new ConcurrentHashMap<String, Flight>();
+	private final AtomicLong mRequestCount = new AtomicLong();
+	private final AtomicLong mCoalescedCount = new AtomicLong();
+
+	/**
+	 * A call that is in flight, and the number of callers waiting on it.
+	 */
+	private static final class Flight {
+		final SettableFuture<Object> mResult = SettableFuture.create();
+		final AtomicInteger mSubscribers = new AtomicInteger(1);
+		volatile ListenableFuture<?> mUpstream;
+
+		/**
+		 * Add a subscriber, unless every previous subscriber has already
+		 * left, in which case the call is being torn down.
+		 */
+		boolean join() {
+			for (;;) {
+				int n = mSubscribers.get();
+				if (n == 0)
+					return false;
+				if (mSubscribers.compareAndSet(n, n + 1))
+					return true;
+			}
+		}
+
+		/**
+		 * Remove a subscriber, and return true if it was the last one.
+		 */
+		boolean leave() {
+			return mSubscribers.decrementAndGet() == 0;
+		}
+	}
+
+	/**
+	 * Run <code>call</code> on the current thread, or wait for an identical
+	 * call that is already running.
+	 *
+	 * @param key
+	 *            identifies the call
+	 * @param call
+	 *            performs the call
+	 * @return the result of the call
+	 * @throws IOException
+	 *             if the call threw one
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Callable<T> call) throws IOException {
+		mRequestCount.incrementAndGet();
+		for (;;) {
+			Flight flight = new Flight();
+			Flight existing = mInFlight.putIfAbsent(key, flight);
+			if (existing == null) {
+				try {
+					flight.mResult.set(call.call());
+				} catch (Throwable t) {
+					flight.mResult.setException(t);
+				} finally {
+					mInFlight.remove(key, flight);
+				}
+				return (T) await(flight.mResult);
+			}
+			if (existing.join()) {
+				mCoalescedCount.incrementAndGet();
+				return (T) await(existing.mResult);
+			}
+			mInFlight.remove(key, existing);
+		}
+	}
+
+	/**
+	 * Start a call using <code>starter</code>, or attach to an identical call
+	 * that is already running.
+	 *
+	 * @param key
+	 *            identifies the call
+	 * @param starter
+	 *            starts the call and returns its future. It is only invoked
+	 *            if no identical call is in flight.
+	 * @return a future for this caller.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ListenableFuture<T> executeAsync(final String key,
+			Callable<ListenableFuture<T>> starter) {
+		mRequestCount.incrementAndGet();
+		for (;;) {
+			final Flight flight = new Flight();
+			Flight existing = mInFlight.putIfAbsent(key, flight);
+			if (existing == null) {
+				ListenableFuture<T> upstream;
+				try {
+					upstream = starter.call();
+				} catch (Throwable t) {
+					upstream = Futures.immediateFailedFuture(t);
+				}
+				flight.mUpstream = upstream;
+				Futures.addCallback(upstream, new FutureCallback<T>() {
+					@Override
+					public void onSuccess(T result) {
+						mInFlight.remove(key, flight);
+						flight.mResult.set(result);
+					}
+
+					@Override
+					public void onFailure(Throwable t) {
+						mInFlight.remove(key, flight);
+						flight.mResult.setException(t);
+					}
+				});
+				return (ListenableFuture<T>) subscribe(key, flight);
+			}
+			if (existing.join()) {
+				mCoalescedCount.incrementAndGet();
+				return (ListenableFuture<T>) subscribe(key, existing);
+			}
+			mInFlight.remove(key, existing);
+		}
+	}
+
+	private ListenableFuture<Object> subscribe(final String key,
+			final Flight flight) {
+		final SettableFuture<Object> view = SettableFuture.create();
+		Futures.addCallback(flight.mResult, new FutureCallback<Object>() {
+			@Override
+			public void onSuccess(Object result) {
+				view.set(result);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				view.setException(t);
+			}
+		});
+		view.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (view.isCancelled() && flight.leave()) {
+					mInFlight.remove(key, flight);
+					ListenableFuture<?> upstream = flight.mUpstream;
+					if (upstream != null)
+						upstream.cancel(true);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return view;
+	}
+
+	private static Object await(SettableFuture<Object> future)
+			throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException ex = new InterruptedIOException(
+					"interrupted waiting for coalesced request");
+			ex.initCause(e);
+			throw ex;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * The number of calls to {@link #execute(String, Callable)} and
+	 * {@link #executeAsync(String, Callable)}.
+	 */
+	public long getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	/**
+	 * The number of calls that were answered by another caller's request.
+	 */
+	public long getCoalescedCount() {
+		return mCoalescedCount.get();
+	}
+
+	/**
+	 * The number of calls that actually went upstream.
+	 */
+	public long getUpstreamCount() {
+		return mRequestCount.get() - mCoalescedCount.get();
+	}
+
+	/**
+	 * The number of distinct calls currently in flight.
+	 */
+	public int getInFlightCount() {
+		return mInFlight.size();
+	}
+}
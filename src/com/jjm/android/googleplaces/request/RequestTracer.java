@@ -0,0 +1,169 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.util.concurrent.TimeUnit;
+
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+
+/**
+ * <p>
+ * Receives a timed span for each phase of each request a
+ * {@link PlacesClient} executes, to find out where the time of a slow
+ * request went. Install one with {@link PlacesClient#setTracer(RequestTracer)};
+ * {@link RingBufferTracer} keeps the most recent spans in memory.
+ * </p>
+ * <p>
+ * Spans are delivered on the thread executing the request, so
+ * {@link #onSpan(Span)} must be fast and must not throw. When no tracer is
+ * installed, the client doesn't create spans or even read the clock for
+ * them.
+ * </p>
+ */
+public interface RequestTracer {
+	public static enum Phase {
+		/**
+		 * Waiting for a thread of the client's executor, for
+		 * {@link PlacesClient#executeAsync(PlacesRequest)}.
+		 */
+		QUEUE,
+		/**
+		 * Waiting for the circuit breaker, the rate limiter and the
+		 * concurrency limiter.
+		 */
+		THROTTLE,
+		/**
+		 * From sending the request until the response headers arrive. This
+		 * includes any DNS lookup, connecting and TLS handshake, which
+		 * <code>HttpURLConnection</code> does not time separately, and the
+		 * service's own time.
+		 */
+		EXCHANGE,
+		/**
+		 * Reading and parsing the response body.
+		 */
+		PARSE
+	}
+
+	/**
+	 * One phase of one attempt of a request.
+	 */
+	public static final class Span {
+		private final Phase mPhase;
+		private final String mEndpoint;
+		private final Class<?> mRequestClass;
+		private final int mAttempt;
+		private final Status mStatus;
+		private final Throwable mError;
+		private final long mStartNanos;
+		private final long mDurationNanos;
+		private final String mThread;
+
+		public Span(Phase phase, String endpoint, Class<?> requestClass,
+				int attempt, Status status, Throwable error, long startNanos,
+				long endNanos) {
+			mPhase = phase;
+			mEndpoint = endpoint;
+			mRequestClass = requestClass;
+			mAttempt = attempt;
+			mStatus = status;
+			mError = error;
+			mStartNanos = startNanos;
+			mDurationNanos = endNanos - startNanos;
+			mThread = Thread.currentThread().getName();
+		}
+
+		public Phase getPhase() {
+			return mPhase;
+		}
+
+		/**
+		 * @return the base url of the request.
+		 */
+		public String getEndpoint() {
+			return mEndpoint;
+		}
+
+		public Class<?> getRequestClass() {
+			return mRequestClass;
+		}
+
+		/**
+		 * @return the attempt, starting at 1, or 0 for
+		 *         {@link Phase#QUEUE}, which comes before any attempt.
+		 */
+		public int getAttempt() {
+			return mAttempt;
+		}
+
+		/**
+		 * @return the status of the response, or null if there was none
+		 *         (yet).
+		 */
+		public Status getStatus() {
+			return mStatus;
+		}
+
+		/**
+		 * @return the exception that ended the phase, or null.
+		 */
+		public Throwable getError() {
+			return mError;
+		}
+
+		/**
+		 * @return when the phase started, from {@link System#nanoTime()}.
+		 */
+		public long getStartNanos() {
+			return mStartNanos;
+		}
+
+		public long getDurationNanos() {
+			return mDurationNanos;
+		}
+
+		/**
+		 * @return the name of the thread the phase ended on.
+		 */
+		public String getThread() {
+			return mThread;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(mPhase).append(' ').append(mRequestClass.getSimpleName());
+			if (mAttempt > 0)
+				sb.append(" #").append(mAttempt);
+			sb.append(' ').append(
+					String.format("%.3fms",
+							mDurationNanos / (double) TimeUnit.MILLISECONDS
+									.toNanos(1)));
+			if (mStatus != null)
+				sb.append(' ').append(mStatus);
+			if (mError != null)
+				sb.append(' ').append(mError.getClass().getSimpleName());
+			sb.append(" [").append(mThread).append(']');
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Called as each phase ends.
+	 */
+	void onSpan(Span span);
+}
@@ -0,0 +1,118 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Limits retries to a fraction of recent requests, so that retrying cannot
+ * multiply the load on a service that is already struggling. Within the
+ * window, retries are allowed while
+ * <code>retries &lt; minRetriesPerSecond * windowSeconds + ratio * requests</code>.
+ * </p>
+ * <p>
+ * Counts are kept in one second buckets without locking. Buckets are reset
+ * lazily, so the counts are approximate when many threads cross a second
+ * boundary at once, which is fine for this purpose.
+ * </p>
+ */
+public class RetryBudget {
+	public static final double DEFAULT_RATIO = 0.2;
+	public static final int DEFAULT_MIN_RETRIES_PER_SECOND = 5;
+	public static final int DEFAULT_WINDOW_SECONDS = 10;
+
+	private final double mRatio;
+	private final int mMinRetriesPerSecond;
+	private final int mWindowSeconds;
+
+	private final AtomicLongArray mEpochs;
+	private final AtomicLongArray mRequests;
+	private final AtomicLongArray mRetries;
+
+	public RetryBudget() {
+		this(DEFAULT_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND,
+				DEFAULT_WINDOW_SECONDS);
+	}
+
+	/**
+	 * @param ratio
+	 *            retries allowed per request in the window
+	 * @param minRetriesPerSecond
+	 *            retries allowed per second regardless of the request count,
+	 *            so that low traffic can still retry
+	 * @param windowSeconds
+	 *            the length of the window
+	 */
+	public RetryBudget(double ratio, int minRetriesPerSecond, int windowSeconds) {
+		Preconditions.checkArgument(ratio >= 0);
+		Preconditions.checkArgument(minRetriesPerSecond >= 0);
+		Preconditions.checkArgument(windowSeconds > 0);
+		mRatio = ratio;
+		mMinRetriesPerSecond = minRetriesPerSecond;
+		mWindowSeconds = windowSeconds;
+		mEpochs = new AtomicLongArray(windowSeconds);
+		mRequests = new AtomicLongArray(windowSeconds);
+		mRetries = new AtomicLongArray(windowSeconds);
+	}
+
+	/**
+	 * Record an original (non retry) request.
+	 */
+	public void onRequest() {
+		mRequests.incrementAndGet(bucket(now()));
+	}
+
+	/**
+	 * Try to spend a retry.
+	 *
+	 * @return true if the retry may proceed.
+	 */
+	public boolean tryRetry() {
+		long now = now();
+		long requests = 0, retries = 0;
+		for (int i = 0; i < mWindowSeconds; i++) {
+			if (now - mEpochs.get(i) < mWindowSeconds) {
+				requests += mRequests.get(i);
+				retries += mRetries.get(i);
+			}
+		}
+		double allowed = (double) mMinRetriesPerSecond * mWindowSeconds
+				+ mRatio * requests;
+		if (retries >= allowed)
+			return false;
+		mRetries.incrementAndGet(bucket(now));
+		return true;
+	}
+
+	private int bucket(long now) {
+		// nanoTime may be negative, so keep the index positive
+		int i = (int) (((now % mWindowSeconds) + mWindowSeconds) % mWindowSeconds);
+		long epoch = mEpochs.get(i);
+		if (epoch != now && mEpochs.compareAndSet(i, epoch, now)) {
+			mRequests.set(i, 0);
+			mRetries.set(i, 0);
+		}
+		return i;
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000000L;
+	}
+}
@@ -0,0 +1,288 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+
+/**
+ * <p>
+ * Decides whether a failed attempt at a {@link PlacesRequest} should be
+ * retried, and how long to wait first. A policy can be set on a request with
+ * {@link PlacesRequest#setRetryPolicy(RetryPolicy)} or on a client with
+ * {@link PlacesClient#setRetryPolicy(RetryPolicy)}, and may be shared by any
+ * number of requests.
+ * </p>
+ *
+ * <p>
+ * Responses with {@link Status#UNKOWN_ERROR} or {@link Status#OVER_QUERY_LIMIT}
+ * are retried. Transport errors are retried too, because every places
+ * request is an idempotent GET; http errors are only retried for 5xx, 408 and
+ * 429 codes. Cancelled calls, and calls refused by an
+ * {@link ApiKeyRateLimiter}, are never retried.
+ * </p>
+ *
+ * <p>
+ * The wait before attempt <i>n+1</i> is
+ * <code>min(maxBackoff, initialBackoff * multiplier^(n-1))</code>, with a
+ * random fraction of up to <code>jitter</code> of it taken off. Retries are
+ * also limited by a {@link RetryBudget}.
+ * </p>
+ */
+public class RetryPolicy {
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 200;
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+	public static final double DEFAULT_MULTIPLIER = 2;
+	public static final double DEFAULT_JITTER = 0.5;
+
+	private static final Random sRandom = new Random();
+
+	private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long mInitialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+	private long mMaxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+	private double mMultiplier = DEFAULT_MULTIPLIER;
+	private double mJitter = DEFAULT_JITTER;
+	private boolean mRetryTransportErrors = true;
+	private RetryBudget mBudget = new RetryBudget();
+
+	private volatile AtomicLongArray mAttemptCounts = new AtomicLongArray(
+			DEFAULT_MAX_ATTEMPTS + 1);
+	private final AtomicLong mBudgetExhaustedCount = new AtomicLong();
+
+	public int getMaxAttempts() {
+		return mMaxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts
+	 *            the maximum number of attempts, including the first one.
+	 */
+	public RetryPolicy setMaxAttempts(int maxAttempts) {
+		Preconditions.checkArgument(maxAttempts > 0);
+		mMaxAttempts = maxAttempts;
+		mAttemptCounts = new AtomicLongArray(maxAttempts + 1);
+		return this;
+	}
+
+	public long getInitialBackoffMillis() {
+		return mInitialBackoffMillis;
+	}
+
+	/**
+	 * @param initialBackoffMillis
+	 *            the wait before the first retry
+	 */
+	public RetryPolicy setInitialBackoffMillis(long initialBackoffMillis) {
+		Preconditions.checkArgument(initialBackoffMillis >= 0);
+		mInitialBackoffMillis = initialBackoffMillis;
+		return this;
+	}
+
+	public long getMaxBackoffMillis() {
+		return mMaxBackoffMillis;
+	}
+
+	/**
+	 * @param maxBackoffMillis
+	 *            the longest wait between attempts
+	 */
+	public RetryPolicy setMaxBackoffMillis(long maxBackoffMillis) {
+		Preconditions.checkArgument(maxBackoffMillis >= 0);
+		mMaxBackoffMillis = maxBackoffMillis;
+		return this;
+	}
+
+	public double getMultiplier() {
+		return mMultiplier;
+	}
+
+	/**
+	 * @param multiplier
+	 *            how much the wait grows after each attempt
+	 */
+	public RetryPolicy setMultiplier(double multiplier) {
+		Preconditions.checkArgument(multiplier >= 1);
+		mMultiplier = multiplier;
+		return this;
+	}
+
+	public double getJitter() {
+		return mJitter;
+	}
+
+	/**
+	 * @param jitter
+	 *            the largest fraction of the wait that is randomly taken off,
+	 *            between 0 (no jitter) and 1 ("full" jitter).
+	 */
+	public RetryPolicy setJitter(double jitter) {
+		Preconditions.checkArgument(jitter >= 0 && jitter <= 1);
+		mJitter = jitter;
+		return this;
+	}
+
+	public boolean isRetryTransportErrors() {
+		return mRetryTransportErrors;
+	}
+
+	/**
+	 * @param retryTransportErrors
+	 *            whether to retry when the request throws an
+	 *            {@link IOException}.
+	 */
+	public RetryPolicy setRetryTransportErrors(boolean retryTransportErrors) {
+		mRetryTransportErrors = retryTransportErrors;
+		return this;
+	}
+
+	public RetryBudget getRetryBudget() {
+		return mBudget;
+	}
+
+	/**
+	 * @param budget
+	 *            limits the rate of retries, or null for no limit.
+	 */
+	public RetryPolicy setRetryBudget(RetryBudget budget) {
+		mBudget = budget;
+		return this;
+	}
+
+	/**
+	 * Called once when a request begins executing, before its first attempt.
+	 */
+	void onRequest() {
+		RetryBudget budget = mBudget;
+		if (budget != null)
+			budget.onRequest();
+	}
+
+	/**
+	 * Should a response with the given status be retried?
+	 */
+	boolean shouldRetry(Status status, int attempts) {
+		if (status != Status.UNKOWN_ERROR && status != Status.OVER_QUERY_LIMIT)
+			return false;
+		return canRetry(attempts);
+	}
+
+	/**
+	 * Should an attempt that threw the given exception be retried?
+	 */
+	boolean shouldRetry(IOException e, int attempts) {
+		if (!mRetryTransportErrors || e instanceof RateLimitExceededException
+				|| e instanceof CircuitOpenException)
+			return false;
+		if (e instanceof HttpResponseException) {
+			int code = ((HttpResponseException) e).getStatusCode();
+			if (code < 500 && code != 408 && code != 429)
+				return false;
+		}
+		return canRetry(attempts);
+	}
+
+	private boolean canRetry(int attempts) {
+		if (attempts >= mMaxAttempts)
+			return false;
+		RetryBudget budget = mBudget;
+		if (budget != null && !budget.tryRetry()) {
+			mBudgetExhaustedCount.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The wait before the attempt following attempt number
+	 * <code>attempts</code>.
+	 */
+	long getBackoffMillis(int attempts) {
+		double backoff = mInitialBackoffMillis
+				* Math.pow(mMultiplier, attempts - 1);
+		backoff = Math.min(backoff, mMaxBackoffMillis);
+		return (long) (backoff * (1 - mJitter * sRandom.nextDouble()));
+	}
+
+	/**
+	 * Sleep before the attempt following attempt number <code>attempts</code>.
+	 */
+	void backOff(int attempts) throws InterruptedIOException {
+		try {
+			Thread.sleep(getBackoffMillis(attempts));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException ex = new InterruptedIOException(
+					"interrupted during retry backoff");
+			ex.initCause(e);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Record that a request finished after the given number of attempts.
+	 */
+	void onFinished(int attempts) {
+		AtomicLongArray counts = mAttemptCounts;
+		counts.incrementAndGet(Math.min(attempts, counts.length() - 1));
+	}
+
+	/**
+	 * The number of requests that finished after exactly <code>n</code>
+	 * attempts, for <code>n</code> between 1 and {@link #getMaxAttempts()}.
+	 */
+	public long getAttemptCount(int n) {
+		AtomicLongArray counts = mAttemptCounts;
+		return n > 0 && n < counts.length() ? counts.get(n) : 0;
+	}
+
+	/**
+	 * The total number of requests that finished under this policy.
+	 */
+	public long getRequestCount() {
+		AtomicLongArray counts = mAttemptCounts;
+		long total = 0;
+		for (int i = 1; i < counts.length(); i++)
+			total += counts.get(i);
+		return total;
+	}
+
+	/**
+	 * The total number of retries made under this policy.
+	 */
+	public long getRetryCount() {
+		AtomicLongArray counts = mAttemptCounts;
+		long total = 0;
+		for (int i = 2; i < counts.length(); i++)
+			total += (i - 1) * counts.get(i);
+		return total;
+	}
+
+	/**
+	 * The number of retries that were refused by the {@link RetryBudget}.
+	 */
+	public long getBudgetExhaustedCount() {
+		return mBudgetExhaustedCount.get();
+	}
+}
@@ -0,0 +1,117 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link RequestTracer} that keeps the most recent spans in memory, to be
+ * dumped when something was slow. Recording a span is a single increment
+ * and store, without locks.
+ */
+public class RingBufferTracer implements RequestTracer {
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final AtomicReferenceArray<Span> mSpans;
+	private final AtomicLong mNext = new AtomicLong();
+
+	public RingBufferTracer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity
+	 *            the number of spans kept
+	 */
+	public RingBufferTracer(int capacity) {
+		Preconditions.checkArgument(capacity > 0);
+		mSpans = new AtomicReferenceArray<Span>(capacity);
+	}
+
+	@Override
+	public void onSpan(Span span) {
+		long index = mNext.getAndIncrement();
+		mSpans.set((int) (index % mSpans.length()), span);
+	}
+
+	/**
+	 * The spans kept, oldest first. Spans recorded while this runs may or
+	 * may not be included.
+	 */
+	public List<Span> getSpans() {
+		long next = mNext.get();
+		int capacity = mSpans.length();
+		List<Span> spans = new ArrayList<Span>(capacity);
+		for (long i = Math.max(0, next - capacity); i < next; i++) {
+			Span span = mSpans.get((int) (i % capacity));
+			if (span != null)
+				spans.add(span);
+		}
+		return spans;
+	}
+
+	/**
+	 * The number of spans recorded, including those no longer kept.
+	 */
+	public long getSpanCount() {
+		return mNext.get();
+	}
+
+	/**
+	 * Forget every span.
+	 */
+	public void clear() {
+		for (int i = 0; i < mSpans.length(); i++)
+			mSpans.set(i, null);
+	}
+
+	/**
+	 * Write the spans kept, oldest first, one per line, with the time each
+	 * started relative to the first.
+	 */
+	public void dump(Writer out) {
+		PrintWriter writer = new PrintWriter(out);
+		List<Span> spans = getSpans();
+		long origin = spans.isEmpty() ? 0 : spans.get(0).getStartNanos();
+		for (Span span : spans) {
+			double offset = (span.getStartNanos() - origin)
+					/ (double) TimeUnit.MILLISECONDS.toNanos(1);
+			writer.printf(Locale.US, "%+10.3fms %s %s%n", offset, span
+					.getEndpoint(), span);
+		}
+		writer.flush();
+	}
+
+	/**
+	 * @return the output of {@link #dump(Writer)}.
+	 */
+	public String dump() {
+		StringWriter out = new StringWriter();
+		dump(out);
+		return out.toString();
+	}
+}
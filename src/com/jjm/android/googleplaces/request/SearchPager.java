@@ -0,0 +1,289 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.request;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.jjm.android.googleplaces.Place;
+import com.jjm.android.googleplaces.response.PlacesResponse.BadStatusException;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+import com.jjm.android.googleplaces.response.SearchResponse;
+
+/**
+ * <p>
+ * Iterates over every result of a search, fetching pages as they are needed.
+ * The first page is requested as soon as the pager is created, and each
+ * following page as soon as the caller reaches the one before it, so the
+ * next page is fetched while the caller iterates over the current one. At
+ * most two pages are held at once.
+ * </p>
+ *
+ * <p>
+ * A page token only becomes valid a short while after it is issued; until
+ * then the service answers {@link Status#INVALID_REQUEST}. The pager polls
+ * for the next page, starting just before the token is expected to become
+ * valid. The expected delay is learned from previous tokens.
+ * </p>
+ *
+ * <p>
+ * The request is modified to carry each page token, so it should not be used
+ * for anything else while it is being paged. Call {@link #close()} to stop
+ * fetching pages early.
+ * </p>
+ */
+public class SearchPager implements Iterator<Place>, Closeable {
+	public static final long DEFAULT_POLL_MILLIS = 200;
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 10 * 1000;
+
+	private static final long INITIAL_ACTIVATION_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(1800);
+	/**
+	 * How long tokens take to become valid, smoothed over all pagers.
+	 */
+	private static volatile long sActivationNanos = INITIAL_ACTIVATION_NANOS;
+
+	/**
+	 * Thrown by the {@link Iterator} methods when a page could not be
+	 * fetched, or had a bad status. The cause is the original exception.
+	 */
+	@SuppressWarnings("serial")
+	public static class PageException extends RuntimeException {
+		PageException(Throwable cause) {
+			super(cause);
+		}
+	}
+
+	private final PlacesRequest<SearchResponse> mRequest;
+	private final PlacesClient mClient;
+	private final long mPollNanos;
+	private final long mMaxWaitNanos;
+
+	private Iterator<Place> mCurrent = Collections.<Place> emptyList()
+			.iterator();
+	private ListenableFuture<SearchResponse> mNext;
+	private int mPageCount;
+	private volatile boolean mClosed;
+	private volatile ListenableFuture<SearchResponse> mInFlight;
+
+	public SearchPager(PlacesRequest<SearchResponse> request) {
+		this(request, PlacesClient.getDefault());
+	}
+
+	public SearchPager(PlacesRequest<SearchResponse> request,
+			PlacesClient client) {
+		this(request, client, DEFAULT_POLL_MILLIS, DEFAULT_MAX_WAIT_MILLIS);
+	}
+
+	/**
+	 * @param request
+	 *            a search request, which must implement
+	 *            {@link PageableRequest}
+	 * @param pollMillis
+	 *            the interval between attempts to use a page token that is
+	 *            not valid yet
+	 * @param maxWaitMillis
+	 *            how long to wait for a page token to become valid
+	 */
+	public SearchPager(PlacesRequest<SearchResponse> request,
+			PlacesClient client, long pollMillis, long maxWaitMillis) {
+		Preconditions.checkArgument(request instanceof PageableRequest,
+				"request is not pageable");
+		Preconditions.checkArgument(pollMillis > 0);
+		Preconditions.checkArgument(maxWaitMillis >= 0);
+		mRequest = request;
+		mClient = Preconditions.checkNotNull(client);
+		mPollNanos = TimeUnit.MILLISECONDS.toNanos(pollMillis);
+		mMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		mNext = fetch(((PageableRequest) request).getPageToken());
+	}
+
+	/**
+	 * Is there another page? This doesn't block. Once the pager is closed
+	 * there are no more pages.
+	 */
+	public boolean hasNextPage() {
+		return mNext != null && !mClosed;
+	}
+
+	/**
+	 * Wait for the next page, and start fetching the one after it. Results
+	 * of the current page that haven't been returned by {@link #next()} are
+	 * skipped.
+	 *
+	 * @throws NoSuchElementException
+	 *             if there are no more pages, or the pager was closed.
+	 * @throws BadStatusException
+	 *             if the page's status is not OK or ZERO_RESULTS. There are
+	 *             no more pages after it.
+	 */
+	public SearchResponse nextPage() throws IOException {
+		SearchResponse page = awaitNextPage();
+		if (page == null)
+			throw new NoSuchElementException();
+		return page;
+	}
+
+	/**
+	 * @return the next page, or null if there is none because the pager has
+	 *         been closed.
+	 */
+	private SearchResponse awaitNextPage() throws IOException {
+		if (!hasNextPage())
+			return null;
+		SearchResponse page;
+		try {
+			page = Uninterruptibles.getUninterruptibly(mNext);
+		} catch (CancellationException e) {
+			// Closed while waiting
+			mNext = null;
+			return null;
+		} catch (ExecutionException e) {
+			mNext = null;
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+		mPageCount++;
+		mNext = null;
+		page.throwBadStatus();
+		String token = page.getNextPageToken();
+		if (token != null && !mClosed)
+			mNext = fetch(token);
+		mCurrent = page.getResults().iterator();
+		return page;
+	}
+
+	/**
+	 * The number of pages returned so far.
+	 */
+	public int getPageCount() {
+		return mPageCount;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!mCurrent.hasNext()) {
+			try {
+				if (awaitNextPage() == null)
+					return false;
+			} catch (IOException e) {
+				throw new PageException(e);
+			} catch (BadStatusException e) {
+				throw new PageException(e);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Place next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return mCurrent.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stop fetching pages. Results of the current page can still be
+	 * iterated; after them {@link #hasNext()} returns false.
+	 */
+	@Override
+	public void close() {
+		mClosed = true;
+		ListenableFuture<SearchResponse> inFlight = mInFlight;
+		if (inFlight != null)
+			inFlight.cancel(true);
+	}
+
+	private ListenableFuture<SearchResponse> fetch(String token) {
+		SettableFuture<SearchResponse> result = SettableFuture.create();
+		((PageableRequest) mRequest).setPageToken(token);
+		if (token == null) {
+			attempt(result, null, 0);
+		} else {
+			long start = System.nanoTime();
+			long delay = Math.max(0, sActivationNanos - mPollNanos);
+			schedule(result, token, start, delay);
+		}
+		return result;
+	}
+
+	private void schedule(final SettableFuture<SearchResponse> result,
+			final String token, final long start, long delayNanos) {
+		PlacesExecutors.scheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				attempt(result, token, start);
+			}
+		}, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private void attempt(final SettableFuture<SearchResponse> result,
+			final String token, final long start) {
+		if (mClosed) {
+			result.cancel(false);
+			return;
+		}
+		ListenableFuture<SearchResponse> future = mClient
+				.executeAsync(mRequest);
+		mInFlight = future;
+		Futures.addCallback(future, new FutureCallback<SearchResponse>() {
+			@Override
+			public void onSuccess(SearchResponse response) {
+				if (token == null) {
+					result.set(response);
+					return;
+				}
+				long elapsed = System.nanoTime() - start;
+				if (response.getStatus() == Status.INVALID_REQUEST
+						&& elapsed < mMaxWaitNanos && !mClosed) {
+					// The token isn't valid yet
+					schedule(result, token, start, mPollNanos);
+					return;
+				}
+				if (response.getStatus() == Status.OK)
+					sActivationNanos += (elapsed - sActivationNanos) / 4;
+				result.set(response);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				result.setException(t);
+			}
+		});
+	}
+}
@@ -28,7 +28,8 @@ import com.jjm.android.googleplaces.response.SearchResponse;
 /**
  * TODO Document PlacesSearchRequest
  */
-public class SearchRequest extends PlacesRequest<SearchResponse> {
+public class SearchRequest extends PlacesRequest<SearchResponse>
+		implements PageableRequest {
 	public static enum RankBy {
 		@Value("prominence")
 		Prominence, @Value("distance")
@@ -43,6 +44,8 @@ public class SearchRequest extends PlacesRequest<SearchResponse> {
 	private String mKeyword;
 	@Key("rankby")
 	private RankBy mRankBy;
+	@Key("pagetoken")
+	private String mPageToken;
 
 	/*
 	 * (non-Javadoc)
@@ -106,6 +109,25 @@ public class SearchRequest extends PlacesRequest<SearchResponse> {
 
 
 
+	/**
+	 * @return the page token
+	 */
+	@Override
+	public String getPageToken() {
+		return mPageToken;
+	}
+
+	/**
+	 * @param pageToken
+	 *            the {@link SearchResponse#getNextPageToken()} of the
+	 *            previous page, or null for the first page
+	 */
+	@Override
+	public SearchRequest setPageToken(String pageToken) {
+		mPageToken = pageToken;
+		return this;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.jjm.android.googleplaces.request.PlacesRequest#getResponseClass()
 	 */
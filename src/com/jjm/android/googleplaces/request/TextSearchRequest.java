@@ -22,12 +22,15 @@ import com.jjm.android.googleplaces.response.SearchResponse;
 /** 
  *TODO Document PlacesTextSearchRequest
  */
-public class TextSearchRequest extends PlacesRequest<SearchResponse> {
+public class TextSearchRequest extends PlacesRequest<SearchResponse>
+		implements PageableRequest {
 	private static final String BASE_URL = 
 			"https://maps.googleapis.com/maps/api/place/textsearch/json";
 	
 	@Key("query")
 	private String mQuery;
+	@Key("pagetoken")
+	private String mPageToken;
 	
 	/* (non-Javadoc)
 	 * @see com.rawrsoft.qp.places.PlacesRequest#getBaseUrl()
@@ -52,6 +55,25 @@ public class TextSearchRequest extends PlacesRequest<SearchResponse> {
 		return this;
 	}
 
+	/**
+	 * @return the page token
+	 */
+	@Override
+	public String getPageToken() {
+		return mPageToken;
+	}
+
+	/**
+	 * @param pageToken
+	 *            the {@link SearchResponse#getNextPageToken()} of the
+	 *            previous page, or null for the first page
+	 */
+	@Override
+	public TextSearchRequest setPageToken(String pageToken) {
+		mPageToken = pageToken;
+		return this;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.jjm.android.googleplaces.request.PlacesRequest#getResponseClass()
 	 */
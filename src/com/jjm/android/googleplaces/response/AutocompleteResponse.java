@@ -25,7 +25,7 @@ import com.google.api.client.util.Key;
  */
 public class AutocompleteResponse extends PlacesResponse {
 	@Key("predictions")
-	private List<Prediction> mPredictions;
+	List<Prediction> mPredictions;
 
 	/**
 	 * Predictions for the provided text. This contains up to 5 items and is
@@ -35,4 +35,16 @@ public class AutocompleteResponse extends PlacesResponse {
 		return nullToEmpty(mPredictions);
 	}
 
+	/**
+	 * Make a response on the device from predictions seen before.
+	 * 
+	 * @see #isOffline()
+	 */
+	public static AutocompleteResponse offline(List<Prediction> predictions) {
+		AutocompleteResponse response = new AutocompleteResponse();
+		response.mPredictions = predictions;
+		response.setOffline(predictions);
+		return response;
+	}
+
 }
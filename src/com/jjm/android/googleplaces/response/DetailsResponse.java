@@ -24,7 +24,7 @@ import com.jjm.android.googleplaces.Place;
  */
 public class DetailsResponse extends PlacesResponse { 
 	@Key("result")
-	private Place mResult;
+	Place mResult;
 
 	/**
 	 * The place details search result.
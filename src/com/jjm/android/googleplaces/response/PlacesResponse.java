@@ -77,7 +77,7 @@ public abstract class PlacesResponse {
 	}
 
 	@Key("status")
-	private Status mStatus;
+	Status mStatus;
 
 	/**
 	 * The status of the request.
@@ -86,8 +86,28 @@ public abstract class PlacesResponse {
 		return mStatus;
 	}
 	
+	/** Not part of the json */
+	boolean mOffline;
+
+	/**
+	 * True if this response was made on the device from places seen before,
+	 * by a {@link com.jjm.android.googleplaces.cache.PlaceIndex} when the
+	 * request failed, rather than returned by the places service.
+	 */
+	public final boolean isOffline() {
+		return mOffline;
+	}
+
+	/**
+	 * Set the status of a response made on the device.
+	 */
+	final void setOffline(List<?> results) {
+		mStatus = results.isEmpty() ? Status.ZERO_RESULTS : Status.OK;
+		mOffline = true;
+	}
+	
 	@Key("html_attributions")
-	private List<String> mHtmlAttributions;
+	List<String> mHtmlAttributions;
 	
 	/**
 	 * Contain a set of attributions about this listing which must be displayed
@@ -23,21 +23,22 @@ import android.util.Log;
 
 import com.google.api.client.util.GenericData;
 import com.google.api.client.util.Key;
+import com.jjm.android.googleplaces.HasId;
 import com.jjm.android.googleplaces.HasReference;
 
 /**
  * An item returned by a places autocomplete request.
  */
-public class Prediction extends GenericData implements HasReference {
+public class Prediction extends GenericData implements HasReference, HasId {
 	/**
 	 * A matched section of the description. A section in the description is
 	 * typically terminated by a comma.
 	 */
 	public static class Term {
 		@Key("value")
-		private String mValue;
+		String mValue;
 		@Key("offset")
-		private int mOffset;
+		int mOffset;
 
 		/**
 		 * @return the text of the term.
@@ -71,15 +72,15 @@ public class Prediction extends GenericData implements HasReference {
 	private static final String TAG = "Prediction";
 
 	@Key("description")
-	private String mDescription;
+	String mDescription;
 	@Key("reference")
-	private String mReference;
+	String mReference;
 	@Key("id")
-	private String mId;
+	String mId;
 	@Key("terms")
-	private List<Term> mTerms;
+	List<Term> mTerms;
 	@Key("matched_substring")
-	private MatchedSubstring mMatchedSubstring;
+	MatchedSubstring mMatchedSubstring;
 
 	/**
 	 * The human-readable name for the returned result. For establishment
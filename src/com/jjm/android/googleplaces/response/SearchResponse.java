@@ -26,7 +26,7 @@ import com.jjm.android.googleplaces.Place;
  */
 public class SearchResponse extends PlacesResponse {
 	@Key("next_page_token")
-	private String mNextPageToken;
+	String mNextPageToken;
 
 	/**
 	 * This field contains a token that can be used to return up to 20
@@ -40,7 +40,7 @@ public class SearchResponse extends PlacesResponse {
 	}
 
 	@Key("results")
-	private List<Place> mResults;
+	List<Place> mResults;
 
 	/**
 	 * The search results. This field is never <code>null</code>.
@@ -49,4 +49,17 @@ public class SearchResponse extends PlacesResponse {
 		return nullToEmpty(mResults);
 	}
 
+	/**
+	 * Make a response on the device from places seen before. It has no next
+	 * page.
+	 * 
+	 * @see #isOffline()
+	 */
+	public static SearchResponse offline(List<Place> results) {
+		SearchResponse response = new SearchResponse();
+		response.mResults = results;
+		response.setOffline(results);
+		return response;
+	}
+
 }
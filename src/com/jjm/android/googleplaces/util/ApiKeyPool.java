@@ -0,0 +1,330 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.jjm.android.googleplaces.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
+
+/**
+ * <p>
+ * A set of interchangeable api keys, with a weight for each. Every call to
+ * {@link #select()} picks one key, either by weighted round robin or by
+ * picking the key with the fewest uses per unit of weight.
+ * </p>
+ * <p>
+ * Keys that get {@link Status#OVER_QUERY_LIMIT} or
+ * {@link Status#REQUEST_DENIED} responses are quarantined, and skipped by
+ * {@link #select()} until the quarantine ends. Repeated
+ * {@link Status#OVER_QUERY_LIMIT} responses double the quarantine, up to
+ * {@link #MAX_QUARANTINE_MILLIS}. Only the first such response of a burst
+ * counts: responses that arrive while the key is already quarantined were
+ * sent before it was, and don't lengthen the quarantine. If every key is quarantined, the one whose
+ * quarantine ends first is used.
+ * </p>
+ * <p>
+ * The set of keys is replaced atomically by {@link #setKeys(Map)}, so keys
+ * can be reloaded while requests are running. Selection never locks.
+ * </p>
+ */
+public class ApiKeyPool {
+	public static enum Strategy {
+		WEIGHTED_ROUND_ROBIN, LEAST_USED
+	}
+
+	public static final long DEFAULT_OVER_QUERY_LIMIT_QUARANTINE_MILLIS = 60 * 1000;
+	public static final long DEFAULT_REQUEST_DENIED_QUARANTINE_MILLIS = 10 * 60 * 1000;
+	public static final long MAX_QUARANTINE_MILLIS = 60 * 60 * 1000;
+
+	private static final class Entry {
+		final String mKey;
+		final int mWeight;
+		final AtomicLong mUses = new AtomicLong();
+		final AtomicInteger mStrikes = new AtomicInteger();
+		final AtomicLong mQuarantinedUntil = new AtomicLong();
+
+		Entry(String key, int weight) {
+			mKey = key;
+			mWeight = weight;
+		}
+
+		boolean isQuarantined(long now) {
+			return mQuarantinedUntil.get() - now > 0;
+		}
+	}
+
+	/**
+	 * An immutable view of the keys.
+	 */
+	private static final class Snapshot {
+		final Entry[] mEntries;
+		final int[] mCumulativeWeights;
+		final int mTotalWeight;
+		final Map<String, Entry> mByKey;
+
+		Snapshot(Entry[] entries) {
+			mEntries = entries;
+			mCumulativeWeights = new int[entries.length];
+			mByKey = new HashMap<String, Entry>();
+			int total = 0;
+			for (int i = 0; i < entries.length; i++) {
+				total += entries[i].mWeight;
+				mCumulativeWeights[i] = total;
+				mByKey.put(entries[i].mKey, entries[i]);
+			}
+			mTotalWeight = total;
+		}
+	}
+
+	private volatile Snapshot mSnapshot = new Snapshot(new Entry[0]);
+	private volatile Strategy mStrategy = Strategy.WEIGHTED_ROUND_ROBIN;
+	private volatile long mOverQueryLimitQuarantineMillis = DEFAULT_OVER_QUERY_LIMIT_QUARANTINE_MILLIS;
+	private volatile long mRequestDeniedQuarantineMillis = DEFAULT_REQUEST_DENIED_QUARANTINE_MILLIS;
+	private final AtomicLong mCursor = new AtomicLong();
+
+	public Strategy getStrategy() {
+		return mStrategy;
+	}
+
+	public ApiKeyPool setStrategy(Strategy strategy) {
+		mStrategy = Preconditions.checkNotNull(strategy);
+		return this;
+	}
+
+	/**
+	 * Set how long keys are quarantined.
+	 *
+	 * @param overQueryLimitMillis
+	 *            the initial quarantine after an
+	 *            {@link Status#OVER_QUERY_LIMIT} response
+	 * @param requestDeniedMillis
+	 *            the quarantine after a {@link Status#REQUEST_DENIED}
+	 *            response
+	 */
+	public ApiKeyPool setQuarantine(long overQueryLimitMillis,
+			long requestDeniedMillis) {
+		Preconditions.checkArgument(overQueryLimitMillis >= 0);
+		Preconditions.checkArgument(requestDeniedMillis >= 0);
+		mOverQueryLimitQuarantineMillis = overQueryLimitMillis;
+		mRequestDeniedQuarantineMillis = requestDeniedMillis;
+		return this;
+	}
+
+	/**
+	 * Add a key, or change the weight of a key that is already in the pool.
+	 */
+	public synchronized ApiKeyPool add(String key, int weight) {
+		Map<String, Integer> keys = getKeys();
+		keys.put(Preconditions.checkNotNull(key), weight);
+		return setKeys(keys);
+	}
+
+	/**
+	 * Remove a key.
+	 */
+	public synchronized ApiKeyPool remove(String key) {
+		Map<String, Integer> keys = getKeys();
+		keys.remove(key);
+		return setKeys(keys);
+	}
+
+	/**
+	 * Replace the keys in the pool. Keys that were already in the pool keep
+	 * their usage counts and quarantine.
+	 *
+	 * @param keys
+	 *            maps each key to its weight, which must be positive.
+	 */
+	public synchronized ApiKeyPool setKeys(Map<String, Integer> keys) {
+		Map<String, Entry> old = mSnapshot.mByKey;
+		Entry[] entries = new Entry[keys.size()];
+		int i = 0;
+		for (Map.Entry<String, Integer> e : keys.entrySet()) {
+			int weight = e.getValue();
+			Preconditions.checkArgument(weight > 0, "weight must be positive");
+			Entry existing = old.get(e.getKey());
+			if (existing != null && existing.mWeight == weight) {
+				entries[i++] = existing;
+			} else {
+				Entry entry = new Entry(Preconditions.checkNotNull(e.getKey()),
+						weight);
+				if (existing != null) {
+					entry.mUses.set(existing.mUses.get());
+					entry.mStrikes.set(existing.mStrikes.get());
+					entry.mQuarantinedUntil.set(existing.mQuarantinedUntil
+							.get());
+				}
+				entries[i++] = entry;
+			}
+		}
+		mSnapshot = new Snapshot(entries);
+		return this;
+	}
+
+	/**
+	 * The keys in the pool, mapped to their weights.
+	 */
+	public Map<String, Integer> getKeys() {
+		Map<String, Integer> keys = new LinkedHashMap<String, Integer>();
+		for (Entry entry : mSnapshot.mEntries)
+			keys.put(entry.mKey, entry.mWeight);
+		return keys;
+	}
+
+	public boolean contains(String key) {
+		return mSnapshot.mByKey.containsKey(key);
+	}
+
+	public boolean isEmpty() {
+		return mSnapshot.mEntries.length == 0;
+	}
+
+	/**
+	 * Pick a key for a request.
+	 *
+	 * @return the key, or null if the pool is empty.
+	 */
+	public String select() {
+		Snapshot snapshot = mSnapshot;
+		Entry[] entries = snapshot.mEntries;
+		if (entries.length == 0)
+			return null;
+		long now = System.currentTimeMillis();
+		Entry chosen = mStrategy == Strategy.LEAST_USED ? leastUsed(entries,
+				now) : roundRobin(snapshot, now);
+		if (chosen == null)
+			chosen = soonestReleased(entries);
+		chosen.mUses.incrementAndGet();
+		return chosen.mKey;
+	}
+
+	private Entry roundRobin(Snapshot snapshot, long now) {
+		Entry[] entries = snapshot.mEntries;
+		int slot = (int) ((mCursor.getAndIncrement() & Long.MAX_VALUE) % snapshot.mTotalWeight);
+		int start = 0;
+		while (snapshot.mCumulativeWeights[start] <= slot)
+			start++;
+		for (int i = 0; i < entries.length; i++) {
+			Entry entry = entries[(start + i) % entries.length];
+			if (!entry.isQuarantined(now))
+				return entry;
+		}
+		return null;
+	}
+
+	private static Entry leastUsed(Entry[] entries, long now) {
+		Entry best = null;
+		double bestUses = Double.MAX_VALUE;
+		for (Entry entry : entries) {
+			if (entry.isQuarantined(now))
+				continue;
+			double uses = (double) entry.mUses.get() / entry.mWeight;
+			if (uses < bestUses) {
+				best = entry;
+				bestUses = uses;
+			}
+		}
+		return best;
+	}
+
+	private static Entry soonestReleased(Entry[] entries) {
+		Entry best = entries[0];
+		for (Entry entry : entries) {
+			if (entry.mQuarantinedUntil.get()
+					- best.mQuarantinedUntil.get() < 0)
+				best = entry;
+		}
+		return best;
+	}
+
+	/**
+	 * Report the status of a response to a request made with
+	 * <code>key</code>.
+	 *
+	 * @return true if the key is in this pool.
+	 */
+	public boolean reportStatus(String key, Status status) {
+		Entry entry = mSnapshot.mByKey.get(key);
+		if (entry == null)
+			return false;
+		if (status == Status.OVER_QUERY_LIMIT) {
+			overQueryLimit(entry);
+		} else if (status == Status.REQUEST_DENIED) {
+			quarantineAtLeast(entry, System.currentTimeMillis()
+					+ mRequestDeniedQuarantineMillis);
+		} else if (status == Status.OK || status == Status.ZERO_RESULTS) {
+			if (entry.mStrikes.get() != 0)
+				entry.mStrikes.set(0);
+		}
+		return true;
+	}
+
+	/**
+	 * Start a quarantine, unless one is already running: only the report that
+	 * wins the compare-and-set counts as a strike.
+	 */
+	private void overQueryLimit(Entry entry) {
+		long now = System.currentTimeMillis();
+		while (true) {
+			long until = entry.mQuarantinedUntil.get();
+			if (until - now > 0)
+				return;
+			int strikes = Math.min(entry.mStrikes.get() + 1, 16);
+			long quarantine = Math.min(MAX_QUARANTINE_MILLIS,
+					mOverQueryLimitQuarantineMillis << (strikes - 1));
+			if (entry.mQuarantinedUntil.compareAndSet(until, now + quarantine)) {
+				entry.mStrikes.set(strikes);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Quarantine the key until at least <code>until</code>, never shortening
+	 * a longer quarantine.
+	 */
+	private static void quarantineAtLeast(Entry entry, long until) {
+		while (true) {
+			long current = entry.mQuarantinedUntil.get();
+			if (until - current <= 0
+					|| entry.mQuarantinedUntil.compareAndSet(current, until))
+				return;
+		}
+	}
+
+	/**
+	 * Is the key currently quarantined?
+	 */
+	public boolean isQuarantined(String key) {
+		Entry entry = mSnapshot.mByKey.get(key);
+		return entry != null
+				&& entry.isQuarantined(System.currentTimeMillis());
+	}
+
+	/**
+	 * The number of times the key has been selected.
+	 */
+	public long getUseCount(String key) {
+		Entry entry = mSnapshot.mByKey.get(key);
+		return entry != null ? entry.mUses.get() : 0;
+	}
+}
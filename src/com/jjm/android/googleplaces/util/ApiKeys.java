@@ -16,37 +16,106 @@
 */
 package com.jjm.android.googleplaces.util;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.base.Preconditions;
+import com.jjm.android.googleplaces.response.PlacesResponse.Status;
 
 /**
  * Container for API keys.  You should add your API keys from a static
  * initializer of a class that is always loaded, such as a main activity.
+ * 
+ * <p>Each id can have several keys, added with 
+ * {@link #addPooledApiKey(String, String, int)} and held in an 
+ * {@link ApiKeyPool}.  Requests
+ * are spread across the keys in the pool, and keys that are over their 
+ * quota or denied are skipped for a while.  This class is thread safe, and
+ * keys can be added or replaced at any time.
  */
 public class ApiKeys {
-	private static HashMap<String, String> sApiKeys =
-			new HashMap<String, String>();
+	private static final ConcurrentHashMap<String, ApiKeyPool> sApiKeys =
+			new ConcurrentHashMap<String, ApiKeyPool>();
 	
 	public static final String ID_GOOGLE_PLACES = "googlePlaces";
 	
 	/**
-	 * Add an api key.
+	 * Set the api key for an id, replacing any keys it had.  Calling this
+	 * again with a new key rotates the key.  To spread requests over 
+	 * several keys use {@link #addPooledApiKey(String, String)}.
 	 * @param id an id that can be used to retreive the api key.
 	 * @param apiKey the api key.
 	 */
 	public static void addApiKey(String id, String apiKey){
-		sApiKeys.put(Preconditions.checkNotNull(id), 
-				Preconditions.checkNotNull(apiKey));
+		setApiKeys(id, Collections.singletonMap(
+				Preconditions.checkNotNull(apiKey), 1));
 	}
 	
 	/**
-	 * Retreive an API key.
+	 * Add an api key with a weight of 1 to the pool of keys for an id,
+	 * keeping the keys already there.
+	 * @see #addPooledApiKey(String, String, int)
+	 */
+	public static void addPooledApiKey(String id, String apiKey){
+		addPooledApiKey(id, apiKey, 1);
+	}
+	
+	/**
+	 * Add an api key to the pool of keys for an id, keeping the keys
+	 * already there, or change its weight if it is already in the pool.
+	 * @param id an id that can be used to retreive the api key.
+	 * @param apiKey the api key.
+	 * @param weight the share of requests this key gets, relative to the
+	 * 		  other keys for the id.
+	 */
+	public static void addPooledApiKey(String id, String apiKey, int weight){
+		getKeyPool(id).add(Preconditions.checkNotNull(apiKey), weight);
+	}
+	
+	/**
+	 * Replace all of the keys for an id, for example after reloading them 
+	 * from configuration.  Keys that were already present keep their state.
+	 * @param id the id
+	 * @param apiKeys maps each key to its weight
+	 */
+	public static void setApiKeys(String id, Map<String, Integer> apiKeys){
+		getKeyPool(id).setKeys(apiKeys);
+	}
+	
+	/**
+	 * Remove an api key from the pool of keys for an id.
+	 */
+	public static void removeApiKey(String id, String apiKey){
+		ApiKeyPool pool = sApiKeys.get(id);
+		if(pool != null)
+			pool.remove(apiKey);
+	}
+	
+	/**
+	 * The pool of keys for an id.  It is created if it doesn't exist.
+	 */
+	public static ApiKeyPool getKeyPool(String id){
+		Preconditions.checkNotNull(id);
+		ApiKeyPool pool = sApiKeys.get(id);
+		if(pool == null){
+			ApiKeyPool created = new ApiKeyPool();
+			pool = sApiKeys.putIfAbsent(id, created);
+			if(pool == null)
+				pool = created;
+		}
+		return pool;
+	}
+	
+	/**
+	 * Retreive an API key.  If the id has several keys, one of them is 
+	 * selected by its {@link ApiKeyPool}.
 	 * @param id the id passed to {@link #addApiKey(String, String)}
 	 * @return the api key, or null if it is not found.
 	 */
 	public static String getApiKey(String id){
-		return sApiKeys.get(id);
+		ApiKeyPool pool = sApiKeys.get(id);
+		return pool != null ? pool.select() : null;
 	}
 	
 	/**
@@ -60,6 +129,28 @@ public class ApiKeys {
 		return key;
 	}
 	
+	/**
+	 * Report the status of a response to a request made with an api key, 
+	 * so that keys that are over their quota or denied can be quarantined.
+	 */
+	public static void reportStatus(String apiKey, Status status){
+		if(apiKey == null || status == null)
+			return;
+		for(ApiKeyPool pool : sApiKeys.values())
+			pool.reportStatus(apiKey, status);
+	}
+	
+	/**
+	 * Is the api key currently quarantined by the pool it belongs to?
+	 */
+	public static boolean isQuarantined(String apiKey){
+		for(ApiKeyPool pool : sApiKeys.values()){
+			if(pool.isQuarantined(apiKey))
+				return true;
+		}
+		return false;
+	}
+	
 	@SuppressWarnings("serial")
 	public static class ApiKeyNotFound extends RuntimeException {
 		ApiKeyNotFound(String id) {
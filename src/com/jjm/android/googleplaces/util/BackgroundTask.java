@@ -29,7 +29,9 @@ public abstract class BackgroundTask<Result> {
 	private Result mResult;
 	private boolean mCancelled;
 
-	private final AsyncTask<Void, Void, Void> mTask = new AsyncTask<Void, Void, Void>() {
+	private final Task mTask = new Task();
+
+	private class Task extends AsyncTask<Void, Object, Void> {
 		protected Void doInBackground(Void... params) {
 			try {
 				mResult = call();
@@ -43,6 +45,15 @@ public abstract class BackgroundTask<Result> {
 			onBefore();
 		}
 
+		protected void onProgressUpdate(Object... values) {
+			for (Object progress : values)
+				onProgress(progress);
+		}
+
+		void publish(Object progress) {
+			publishProgress(progress);
+		}
+
 		protected void onPostExecute(Void result) {
 			try {
 				if (mException == null) { 
@@ -58,7 +69,7 @@ public abstract class BackgroundTask<Result> {
 				onFinally();
 			}
 		}
-	};
+	}
 
 	/**
 	 * @see AsyncTask#execute(Object...)
@@ -105,6 +116,26 @@ public abstract class BackgroundTask<Result> {
 	protected void onSuccess(Result result) {
 	};
 
+	/**
+	 * Pass a value from {@link #call()} to {@link #onProgress(Object)}. May
+	 * be called from the background thread while the task is running.
+	 * 
+	 * @see AsyncTask#publishProgress(Object...)
+	 */
+	protected final void publishProgress(Object progress) {
+		mTask.publish(progress);
+	}
+
+	/**
+	 * Called on the UI thread with each value passed to
+	 * {@link #publishProgress(Object)}, before {@link #onSuccess(Object)}.
+	 * 
+	 * @param progress
+	 *            the value published
+	 */
+	protected void onProgress(Object progress) {
+	}
+
 	/**
 	 * Called on the UI thread when {@link #call()} throws an exception. This is
 	 * called whether or not the task has been cancelled.
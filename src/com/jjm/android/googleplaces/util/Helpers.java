@@ -16,23 +16,20 @@
 */
 package com.jjm.android.googleplaces.util;
 
-import java.io.IOException;
-
-import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
-import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
- 
+import com.jjm.android.googleplaces.request.PlacesClient;
+
 
 /**
  * @author Jon Mason <jonathan.j.mason@gmail.com>
  * TODO Document Helpers
  */
 public class Helpers {
+	/**
+	 * Returns the shared request factory of {@link PlacesClient#getDefault()}.
+	 * Nothing new is created per call, so this is cheap.
+	 */
 	public static HttpRequestFactory createJsonRequestFactory(){
-		return new NetHttpTransport().createRequestFactory(new HttpRequestInitializer() {
-			public void initialize(HttpRequest request) throws IOException {
-			}
-		});
+		return PlacesClient.getDefault().getRequestFactory();
 	}
 }
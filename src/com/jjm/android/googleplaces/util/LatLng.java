@@ -16,9 +16,16 @@ import com.google.api.client.util.ObjectParser;
  * @version 1 
  */
 public class LatLng {
-	@Key("lat") private double mLatitude;
-	@Key("lng") private double mLongitude;
+	@Key("lat") double mLatitude;
+	@Key("lng") double mLongitude;
 	
+	/**
+	 * Construct a <code>LatLng</code> at 0,0.  Parsers need a default 
+	 * constructor.
+	 */
+	public LatLng() {
+	}
+
 	/**
 	 * Construct a <code>LatLng</code> with integers as millidegrees.
 	 * @param latitudeE6 The latitude * 1E6
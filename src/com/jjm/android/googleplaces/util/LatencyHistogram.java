@@ -0,0 +1,202 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A lock-free histogram of latencies, with buckets laid out like an
+ * HdrHistogram: every power of two is split into 32 equal buckets, so a
+ * recorded value is off by at most 1/32 (about 3%) of itself, from a
+ * microsecond up to more than a day. The histogram takes about 9kB.
+ * </p>
+ * <p>
+ * Recording is a few increments of atomic counters, with no allocation, so
+ * it is cheap enough for every request. Reading a percentile scans the
+ * buckets; use {@link #snapshot()} to read several consistently.
+ * </p>
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Values are capped to 2^37 microseconds, about 38 hours */
+	private static final int MAX_EXPONENT = 37;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2)
+			* SUB_BUCKETS;
+	private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong mCount = new AtomicLong();
+	private final AtomicLong mSumMicros = new AtomicLong();
+	private final AtomicLong mMaxMicros = new AtomicLong();
+
+	/**
+	 * Record a latency.
+	 */
+	public void record(long nanos) {
+		long micros = Math.min(MAX_MICROS, Math.max(0,
+				TimeUnit.NANOSECONDS.toMicros(nanos)));
+		mCounts.incrementAndGet(bucket(micros));
+		mCount.incrementAndGet();
+		mSumMicros.addAndGet(micros);
+		long max = mMaxMicros.get();
+		while (micros > max && !mMaxMicros.compareAndSet(max, micros))
+			max = mMaxMicros.get();
+	}
+
+	/**
+	 * The number of latencies recorded.
+	 */
+	public long getCount() {
+		return mCount.get();
+	}
+
+	/**
+	 * The latency that <code>percentile</code> percent of the recorded
+	 * latencies are at or below, in nanoseconds.
+	 */
+	public long getPercentileNanos(double percentile) {
+		return snapshot().getPercentileNanos(percentile);
+	}
+
+	/**
+	 * A copy of the histogram as it is now. Latencies recorded while the
+	 * copy is being made may or may not be in it.
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = mCounts.get(i);
+			count += counts[i];
+		}
+		return new Snapshot(counts, count, mSumMicros.get(), mMaxMicros.get());
+	}
+
+	static int bucket(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * The smallest value in a bucket, in microseconds.
+	 */
+	static long lowestMicros(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * The number of values a bucket holds.
+	 */
+	static long widthMicros(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS)
+			return 1;
+		return 1L << (bucket / SUB_BUCKETS - 1);
+	}
+
+	/**
+	 * An unchanging copy of a {@link LatencyHistogram}.
+	 */
+	public static final class Snapshot {
+		private final long[] mCounts;
+		private final long mCount;
+		private final long mSumMicros;
+		private final long mMaxMicros;
+
+		Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+			mCounts = counts;
+			mCount = count;
+			mSumMicros = sumMicros;
+			mMaxMicros = maxMicros;
+		}
+
+		public long getCount() {
+			return mCount;
+		}
+
+		public long getMeanNanos() {
+			return mCount == 0 ? 0 : TimeUnit.MICROSECONDS.toNanos(mSumMicros
+					/ mCount);
+		}
+
+		/**
+		 * The largest latency recorded. For a snapshot returned by
+		 * {@link #since(Snapshot)}, the highest bucket with a latency in it.
+		 */
+		public long getMaxNanos() {
+			return TimeUnit.MICROSECONDS.toNanos(mMaxMicros);
+		}
+
+		/**
+		 * The latency that <code>percentile</code> percent of the recorded
+		 * latencies are at or below, in nanoseconds, or 0 if none were
+		 * recorded. It is the middle of the bucket the latency falls in.
+		 */
+		public long getPercentileNanos(double percentile) {
+			Preconditions.checkArgument(percentile >= 0 && percentile <= 100);
+			if (mCount == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100
+					* mCount));
+			if (rank >= mCount)
+				return getMaxNanos();
+			long seen = 0;
+			for (int i = 0; i < mCounts.length; i++) {
+				seen += mCounts[i];
+				if (seen >= rank) {
+					long micros = Math.min(mMaxMicros, lowestMicros(i)
+							+ widthMicros(i) / 2);
+					return TimeUnit.MICROSECONDS.toNanos(micros);
+				}
+			}
+			return getMaxNanos();
+		}
+
+		/**
+		 * The latencies recorded between an earlier snapshot of the same
+		 * histogram and this one, for reporting by interval.
+		 */
+		public Snapshot since(Snapshot earlier) {
+			long[] counts = new long[mCounts.length];
+			long count = 0;
+			int highest = -1;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = Math.max(0, mCounts[i] - earlier.mCounts[i]);
+				count += counts[i];
+				if (counts[i] > 0)
+					highest = i;
+			}
+			long max = highest < 0 ? 0 : Math.min(mMaxMicros,
+					lowestMicros(highest) + widthMicros(highest) - 1);
+			return new Snapshot(counts, count, Math.max(0, mSumMicros
+					- earlier.mSumMicros), max);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A bounded queue for many producers and a single consumer, without locks.
+ * {@link #offer(Object)} never blocks: when the buffer is full it returns
+ * false and the element is dropped, so producers on a hot path are never
+ * held up by a slow consumer.
+ * </p>
+ * <p>
+ * A producer claims a slot by advancing the tail, then publishes its
+ * element into the slot. The consumer takes elements in order, waiting for
+ * a claimed slot to be published, and clears each slot before advancing the
+ * head past it, so a producer only claims a slot once it is empty.
+ * </p>
+ */
+public class MpscRingBuffer<E> {
+	private final AtomicReferenceArray<E> mSlots;
+	private final int mMask;
+	private final AtomicLong mHead = new AtomicLong();
+	private final AtomicLong mTail = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            the most elements held, rounded up to a power of two
+	 */
+	public MpscRingBuffer(int capacity) {
+		Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		mSlots = new AtomicReferenceArray<E>(size);
+		mMask = size - 1;
+	}
+
+	/**
+	 * Add an element, from any thread.
+	 * 
+	 * @return false if the buffer was full and the element was dropped.
+	 */
+	public boolean offer(E element) {
+		Preconditions.checkNotNull(element);
+		long tail;
+		do {
+			tail = mTail.get();
+			if (tail - mHead.get() >= mSlots.length())
+				return false;
+		} while (!mTail.compareAndSet(tail, tail + 1));
+		mSlots.lazySet((int) tail & mMask, element);
+		return true;
+	}
+
+	/**
+	 * Remove the oldest element. Only one thread may call this.
+	 * 
+	 * @return the element, or null if the buffer is empty.
+	 */
+	public E poll() {
+		long head = mHead.get();
+		if (head == mTail.get())
+			return null;
+		int slot = (int) head & mMask;
+		E element = mSlots.get(slot);
+		while (element == null) {
+			// Claimed, but the producer hasn't published it yet
+			Thread.yield();
+			element = mSlots.get(slot);
+		}
+		mSlots.lazySet(slot, null);
+		mHead.lazySet(head + 1);
+		return element;
+	}
+
+	/**
+	 * The number of elements held, which may be out of date as soon as it
+	 * is returned.
+	 */
+	public int size() {
+		return (int) (mTail.get() - mHead.get());
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return mSlots.length();
+	}
+}
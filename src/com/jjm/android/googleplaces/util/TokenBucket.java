@@ -0,0 +1,116 @@
+/*
+	This file is part of GooglePlaces.
+
+    GooglePlaces is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GooglePlaces is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GooglePlaces.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jjm.android.googleplaces.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A lock-free token bucket. Tokens are added at a fixed rate up to a
+ * capacity, and each acquisition takes one.
+ * </p>
+ * <p>
+ * The bucket is stored as a single "theoretical arrival time" (the generic
+ * cell rate algorithm), so acquiring is one compare-and-set on an
+ * {@link AtomicLong} and the bucket never has to be refilled by a timer.
+ * </p>
+ */
+public class TokenBucket {
+	private final long mIntervalNanos;
+	private final long mToleranceNanos;
+	private final AtomicLong mArrival;
+
+	/**
+	 * @param permits
+	 *            the number of tokens added per <code>period</code>
+	 * @param period
+	 *            the length of the period
+	 * @param unit
+	 *            the unit of <code>period</code>
+	 * @param capacity
+	 *            the maximum number of tokens the bucket holds, which is the
+	 *            largest burst it allows. The bucket starts full.
+	 */
+	public TokenBucket(long permits, long period, TimeUnit unit, long capacity) {
+		Preconditions.checkArgument(permits > 0);
+		Preconditions.checkArgument(period > 0);
+		Preconditions.checkArgument(capacity > 0);
+		mIntervalNanos = Math.max(1, unit.toNanos(period) / permits);
+		mToleranceNanos = (capacity - 1) * mIntervalNanos;
+		mArrival = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Create a bucket that adds <code>permitsPerSecond</code> tokens each
+	 * second, and holds up to <code>capacity</code>.
+	 */
+	public static TokenBucket perSecond(double permitsPerSecond, long capacity) {
+		Preconditions.checkArgument(permitsPerSecond > 0);
+		return new TokenBucket(Math.max(1, Math.round(permitsPerSecond * 1000)),
+				1000, TimeUnit.SECONDS, capacity);
+	}
+
+	/**
+	 * Take a token if one is available now.
+	 *
+	 * @return true if a token was taken.
+	 */
+	public boolean tryAcquire() {
+		return reserve(0) == 0;
+	}
+
+	/**
+	 * Reserve a token, if one will be available within
+	 * <code>maxWaitNanos</code>.
+	 *
+	 * @return the number of nanoseconds the caller must wait before using the
+	 *         token, or -1 if none could be reserved. In that case nothing is
+	 *         taken from the bucket.
+	 */
+	public long reserve(long maxWaitNanos) {
+		for (;;) {
+			long now = System.nanoTime();
+			long arrival = mArrival.get();
+			long wait = arrival - mToleranceNanos - now;
+			if (wait < 0)
+				wait = 0;
+			if (wait > maxWaitNanos)
+				return -1;
+			long next = (arrival - now > 0 ? arrival : now) + mIntervalNanos;
+			if (mArrival.compareAndSet(arrival, next))
+				return wait;
+		}
+	}
+
+	/**
+	 * Return a token taken by {@link #tryAcquire()} or
+	 * {@link #reserve(long)} that was not used.
+	 */
+	public void release() {
+		mArrival.addAndGet(-mIntervalNanos);
+	}
+
+	/**
+	 * The time between tokens, in nanoseconds.
+	 */
+	public long getIntervalNanos() {
+		return mIntervalNanos;
+	}
+}
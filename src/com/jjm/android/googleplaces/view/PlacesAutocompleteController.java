@@ -16,6 +16,9 @@
  */
 package com.jjm.android.googleplaces.view;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import android.app.Activity;
@@ -33,13 +36,16 @@ import android.widget.SearchView.OnQueryTextListener;
 import android.widget.SearchView.OnSuggestionListener;
 import android.widget.TextView;
 
+import com.jjm.android.googleplaces.cache.NegativePrefixCache;
+import com.jjm.android.googleplaces.cache.PredictionTrie;
+import com.jjm.android.googleplaces.json.ElementListener;
 import com.jjm.android.googleplaces.request.AutocompleteRequest;
-import com.jjm.android.googleplaces.request.PlacesRequest;
+import com.jjm.android.googleplaces.request.AutocompleteScheduler;
+import com.jjm.android.googleplaces.request.CircuitOpenException;
 import com.jjm.android.googleplaces.response.AutocompleteResponse;
 import com.jjm.android.googleplaces.response.Prediction;
 import com.jjm.android.googleplaces.util.BackgroundTask;
 import com.jjm.android.googleplaces.util.GlobalDebug;
-import com.jjm.android.googleplaces.util.Helpers;
 
 /**
  * <p>
@@ -115,18 +121,22 @@ public class PlacesAutocompleteController implements GlobalDebug {
 		void bindView(Context context, View view, Prediction prediction);
 	}
 
-	@SuppressWarnings("unused")
 	private static final boolean DBG = GLOBAL_DEBUG;
 
 	private static final String TAG = "Autocompleter";
 
+	/**
+	 * The most predictions shown from {@link #getLocalPredictions()}.
+	 */
+	public static final int MAX_LOCAL_PREDICTIONS = 5;
+
 	private final SearchView mSearchView;
 	private final Context mContext;
 
-	private String mSearchText;
-	private boolean mSearching;
-	private int mThreshold = 1;
-	private boolean mActive = true;
+	private final AutocompleteScheduler mScheduler = new AutocompleteScheduler();
+	private NegativePrefixCache mNegativeCache = new NegativePrefixCache();
+	private PredictionTrie mLocalPredictions = new PredictionTrie();
+	private final Prediction[] mLocalResults = new Prediction[MAX_LOCAL_PREDICTIONS];
 	private List<Prediction> mPredictions;
 	private OnSearchListener mOnSearchListener;
 	private PredictionViewBinder mPredictionViewBinder;
@@ -136,7 +146,6 @@ public class PlacesAutocompleteController implements GlobalDebug {
 		mSearchView = searchView;
 		mSearchView.setOnQueryTextListener(mOnQueryTextListener);
 		mSearchView.setOnSuggestionListener(mOnSuggestionListener);
-		mSearching = false;
 	}
 
 	public PlacesAutocompleteController(SearchView searchView) {
@@ -144,21 +153,55 @@ public class PlacesAutocompleteController implements GlobalDebug {
 	}
 
 	public boolean isActive() {
-		return mActive;
+		return mScheduler.isActive();
 	}
 
 	public void setActive(boolean active) {
-		mActive = active;
-		if (mActive)
+		mScheduler.setActive(active);
+		if (active)
 			maybeStartSearch();
 	}
 
 	public int getThreshold() {
-		return mThreshold;
+		return mScheduler.getThreshold();
 	}
 
 	public void setThreshold(int threshold) {
-		mThreshold = Math.max(1, threshold);
+		mScheduler.setThreshold(threshold);
+	}
+
+	/**
+	 * @return the cache of inputs with no predictions, or null if there is
+	 *         none.
+	 */
+	public NegativePrefixCache getNegativeCache() {
+		return mNegativeCache;
+	}
+
+	/**
+	 * Set the cache of inputs with no predictions, which is used to skip
+	 * searching for text that extends one of them. Pass null to search for
+	 * everything. By default each controller has its own.
+	 */
+	public void setNegativeCache(NegativePrefixCache negativeCache) {
+		mNegativeCache = negativeCache;
+	}
+
+	/**
+	 * @return the predictions seen so far, or null if there are none kept.
+	 */
+	public PredictionTrie getLocalPredictions() {
+		return mLocalPredictions;
+	}
+
+	/**
+	 * Set where the predictions seen are kept. As the user types, matching
+	 * ones are shown at once, until the response for the new text arrives.
+	 * Pass null to only show responses. By default each controller has its
+	 * own; controllers can share one.
+	 */
+	public void setLocalPredictions(PredictionTrie localPredictions) {
+		mLocalPredictions = localPredictions;
 	}
 
 	/**
@@ -192,10 +235,12 @@ public class PlacesAutocompleteController implements GlobalDebug {
 
 		@Override
 		public boolean onSuggestionClick(int position) {
-			if (mPredictions != null && position < mPredictions.size()
-					&& mOnSearchListener != null) {
-				mOnSearchListener.onPredictionSelected(mPredictions
-						.get(position));
+			if (mPredictions != null && position < mPredictions.size()) {
+				Prediction prediction = mPredictions.get(position);
+				if (mLocalPredictions != null)
+					mLocalPredictions.onChosen(prediction);
+				if (mOnSearchListener != null)
+					mOnSearchListener.onPredictionSelected(prediction);
 			}
 			return false; /* So that the suggestions list closes */
 		}
@@ -228,6 +273,7 @@ public class PlacesAutocompleteController implements GlobalDebug {
 
 		@Override
 		public boolean onQueryTextChange(String newText) {
+			showLocalPredictions(newText);
 			maybeStartSearch();
 			return true;
 		}
@@ -253,19 +299,48 @@ public class PlacesAutocompleteController implements GlobalDebug {
 		return new PredictionsAdapter(createCursor());
 	}
 
+	/**
+	 * Show the predictions already seen that match the text, if there are
+	 * any. Whatever is showing is left otherwise.
+	 *
+	 * @return true if any were shown.
+	 */
+	private boolean showLocalPredictions(String text) {
+		if (mLocalPredictions == null || text.length() < getThreshold())
+			return false;
+		int count = mLocalPredictions.find(text, mLocalResults);
+		if (count == 0)
+			return false;
+		List<Prediction> predictions = new ArrayList<Prediction>(count);
+		for (int i = 0; i < count; i++) {
+			predictions.add(mLocalResults[i]);
+			mLocalResults[i] = null;
+		}
+		mPredictions = predictions;
+		mSearchView.setSuggestionsAdapter(createAdapter());
+		return true;
+	}
+
 	private void maybeStartSearch() {
-		if (!mActive || mSearching)
+		mScheduler.setText(mSearchView.getQuery().toString());
+		String input = mScheduler.nextSearch();
+		if (input == null)
 			return;
-		String currentText = mSearchView.getQuery().toString();
-		if (currentText.equals(mSearchText)
-				|| currentText.length() < mThreshold)
-			return;
-		mSearchText = currentText;
-		PlacesRequest<AutocompleteResponse> request = new AutocompleteRequest()
-				.setInput(currentText).useCurrentLocation(mContext);
+		AutocompleteRequest request = new AutocompleteRequest()
+				.setInput(input);
+		request.useCurrentLocation(mContext);
 		// TODO Include offset -- I can't figure out how to get it from
 		// the search view :(
 
+		if (mNegativeCache != null && mNegativeCache.isKnownEmpty(request)) {
+			if (DBG)
+				Log.d(TAG, "skipped \"" + input + "\", known to be empty");
+			mPredictions = Collections.emptyList();
+			mSearchView.setSuggestionsAdapter(createAdapter());
+			mScheduler.onSearchFinished();
+			maybeStartSearch();
+			return;
+		}
 		new SearchTask(request).execute();
 	}
 
@@ -314,36 +389,69 @@ public class PlacesAutocompleteController implements GlobalDebug {
 	}
 
 	private class SearchTask extends BackgroundTask<AutocompleteResponse> {
-		private final PlacesRequest<AutocompleteResponse> mRequest;
+		private final AutocompleteRequest mRequest;
+		private List<Prediction> mStreamed;
 
-		public SearchTask(PlacesRequest<AutocompleteResponse> request) {
+		public SearchTask(AutocompleteRequest request) {
 			mRequest = request;
 		}
 
 		@Override
-		protected void onBefore() {
-			mSearching = true;
+		protected AutocompleteResponse call() throws Exception {
+			return mRequest.execute(new ElementListener<Prediction>() {
+				@Override
+				public void onElement(Prediction prediction, int index) {
+					publishProgress(new Object[] { prediction, index });
+				}
+			});
 		}
 
 		@Override
-		protected AutocompleteResponse call() throws Exception {
-			return mRequest.execute(Helpers.createJsonRequestFactory());
+		protected void onProgress(Object progress) {
+			// Show each prediction as soon as it arrives, the full list
+			// replaces these in onSuccess. The client starts again from 0
+			// if the stream failed and it answers offline instead.
+			Object[] element = (Object[]) progress;
+			if (mStreamed == null || (Integer) element[1] == 0)
+				mStreamed = new ArrayList<Prediction>();
+			mStreamed.add((Prediction) element[0]);
+			mPredictions = mStreamed;
+			mSearchView.setSuggestionsAdapter(createAdapter());
 		}
 
 		@Override
 		protected void onSuccess(AutocompleteResponse result) {
+			if (mNegativeCache != null)
+				mNegativeCache.record(mRequest, result);
+			if (mLocalPredictions != null)
+				mLocalPredictions.addAll(result.getPredictions());
 			mPredictions = result.getPredictions();
 			mSearchView.setSuggestionsAdapter(createAdapter());
 		}
 
 		@Override
 		protected void onException(Exception ex) {
-			Log.e(TAG, "SearchTask threw exception", ex);
+			if (ex instanceof CircuitOpenException) {
+				if (DBG)
+					Log.d(TAG, ex.getMessage());
+			} else {
+				Log.e(TAG, "SearchTask threw exception", ex);
+			}
+			// The client had no offline answer either. Predictions that
+			// streamed in before the failure are for this input, so keep
+			// them; otherwise fall back to the ones seen before rather than
+			// leaving suggestions for older text up.
+			if (mStreamed != null || !(ex instanceof IOException))
+				return;
+			if (!showLocalPredictions(mRequest.getInput())) {
+				mPredictions = Collections.emptyList();
+				mSearchView.setSuggestionsAdapter(createAdapter());
+			}
 		}
 
 		@Override
 		protected void onFinally() {
-			mSearching = false;
+			mScheduler.onSearchFinished();
 			maybeStartSearch();
 		}
 	}